@@ -0,0 +1,149 @@
+package com.example.gmailish.data;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.gmailish.data.blacklist.BlacklistTcpClient;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bulk URL checks against a locally started blacklist server
+ * ("docker compose up cpp_server", port 4000 on the host, 10.0.2.2 from the
+ * emulator): one connection per command, as the server was used until now,
+ * against pipelined checks on one and on four pooled connections. Skipped
+ * when the server isn't reachable. Numbers go to logcat (tag below).
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlacklistTcpClientThroughputTest {
+
+    private static final String TAG = "BlacklistTcpThroughput";
+    private static final String HOST = BlacklistTcpClient.DEFAULT_HOST;
+    private static final int PORT = BlacklistTcpClient.DEFAULT_PORT;
+    private static final int URLS = 5_000;
+    private static final int LISTED = 50;
+    // One connection per URL is slow; time a slice of the batch and extrapolate the rate
+    private static final int ONE_BY_ONE = 500;
+    private static final int RUNS = 3;
+
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private final List<String> listed = new ArrayList<>();
+    private BlacklistTcpClient client;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("blacklist server not reachable at " + HOST + ":" + PORT, reachable());
+        client = new BlacklistTcpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client == null) return;
+        for (String url : listed) client.remove(url);
+        client.close();
+    }
+
+    @Test
+    public void pipelinedChecksMatchAndOutrunOneConnectionPerCommand() throws IOException {
+        for (int i = 0; i < LISTED; i++) {
+            String url = "http://bench-" + run + "-bad" + i + ".example.com/x";
+            assertTrue(client.add(url));
+            listed.add(url);
+        }
+        // 1% listed, spread through the batch
+        List<String> urls = new ArrayList<>(URLS);
+        for (int i = 0; i < URLS; i++) {
+            urls.add(i % 100 == 0 ? listed.get((i / 100) % LISTED)
+                    : "http://bench-" + run + "-ok" + i + ".example.org/p?q=" + i);
+        }
+
+        /* ===== Baseline: connect, one GET, close ===== */
+        long t0 = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ONE_BY_ONE; i++) {
+            assertEquals("url " + i, expected(i), getOnNewConnection(urls.get(i)));
+        }
+        double baselinePerSec = ONE_BY_ONE * 1e9 / (SystemClock.elapsedRealtimeNanos() - t0);
+
+        /* ===== Pipelined: one connection, then the default pool ===== */
+        double singlePerSec;
+        try (BlacklistTcpClient single = new BlacklistTcpClient(HOST, PORT, 1)) {
+            singlePerSec = bestRate(single, urls);
+        }
+        double pooledPerSec = bestRate(client, urls);
+
+        Log.i(TAG, String.format("urls/s one-per-connection=%.0f pipelined x1=%.0f (%.1fx) pooled=%.0f (%.1fx)",
+                baselinePerSec, singlePerSec, singlePerSec / baselinePerSec,
+                pooledPerSec, pooledPerSec / baselinePerSec));
+    }
+
+    @Test
+    public void removalIsVisibleOnPooledConnections() throws IOException {
+        String url = "http://bench-" + run + "-removed.example.com/x";
+        assertTrue(client.add(url));
+        listed.add(url);
+        assertTrue(client.check(url));
+
+        // The pooled session is still open: it must not answer from an older list
+        assertTrue(client.remove(url));
+        listed.remove(url);
+        assertFalse(client.check(url));
+        assertFalse(client.remove(url));
+    }
+
+    private double bestRate(BlacklistTcpClient c, List<String> urls) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            List<Boolean> result = c.check(urls);
+            best = Math.min(best, SystemClock.elapsedRealtimeNanos() - t0);
+            for (int i = 0; i < urls.size(); i++) assertEquals("url " + i, expected(i), result.get(i));
+        }
+        return urls.size() * 1e9 / best;
+    }
+
+    private static boolean expected(int i) {
+        return i % 100 == 0;
+    }
+
+    private static boolean getOnNewConnection(String url) throws IOException {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(HOST, PORT), 3000);
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            out.write(("GET " + url + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            in.readLine();
+            in.readLine();
+            String result = in.readLine();
+            return result != null && result.trim().equals("true true");
+        }
+    }
+
+    private static boolean reachable() {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(HOST, PORT), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
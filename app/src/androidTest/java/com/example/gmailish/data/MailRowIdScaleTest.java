@@ -0,0 +1,218 @@
+package com.example.gmailish.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.MailLabelCrossRef;
+import com.example.gmailish.data.local.LabelRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 50k-mail synthetic mailbox: storage and label-join time for the old TEXT-keyed
+ * schema (v6) against the rowId-keyed one (v7). Numbers go to logcat (tag below).
+ */
+@RunWith(AndroidJUnit4.class)
+public class MailRowIdScaleTest {
+
+    private static final String TAG = "MailRowIdScale";
+    private static final int MAILS = 50_000;
+    private static final int LABELS_PER_MAIL = 3;
+    private static final String OWNER = "owner-1";
+    private static final String[] LABELS = {
+            "primary", "starred", "sent", "drafts", "social",
+            "promotions", "updates", "work", "travel", "receipts"
+    };
+    private static final int QUERY_RUNS = 15;
+
+    private AppDatabase roomDb;
+    private SQLiteDatabase legacyDb;
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        roomDb = Room.inMemoryDatabaseBuilder(ctx, AppDatabase.class).build();
+        legacyDb = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void tearDown() {
+        roomDb.close();
+        legacyDb.close();
+    }
+
+    @Test
+    public void rowIdSchemaIsSmallerAndJoinsMatch() {
+        Random rnd = new Random(42);
+        List<String> ids = new ArrayList<>(MAILS);
+        for (int i = 0; i < MAILS; i++) ids.add(objectId(rnd, i));
+
+        /* ===== v6: TEXT mail id everywhere ===== */
+        legacyDb.execSQL("CREATE TABLE mails (id TEXT NOT NULL PRIMARY KEY, senderId TEXT, senderName TEXT, " +
+                "recipientId TEXT, recipientName TEXT, recipientEmail TEXT, subject TEXT, content TEXT, " +
+                "timestamp INTEGER, ownerId TEXT, read INTEGER NOT NULL, starred INTEGER NOT NULL, " +
+                "isDraft INTEGER NOT NULL DEFAULT 0)");
+        legacyDb.execSQL("CREATE INDEX index_mails_ownerId ON mails(ownerId)");
+        legacyDb.execSQL("CREATE INDEX index_mails_read ON mails(read)");
+        legacyDb.execSQL("CREATE INDEX index_mails_timestamp ON mails(timestamp)");
+        legacyDb.execSQL("CREATE TABLE mail_label_cross_ref (mailId TEXT NOT NULL, labelId INTEGER NOT NULL, " +
+                "PRIMARY KEY(mailId, labelId))");
+        legacyDb.execSQL("CREATE INDEX index_mail_label_cross_ref_mailId ON mail_label_cross_ref(mailId)");
+        legacyDb.execSQL("CREATE INDEX index_mail_label_cross_ref_labelId ON mail_label_cross_ref(labelId)");
+
+        legacyDb.beginTransaction();
+        try {
+            SQLiteStatement mailStmt = legacyDb.compileStatement(
+                    "INSERT INTO mails (id, senderId, senderName, recipientId, recipientName, recipientEmail, " +
+                            "subject, content, timestamp, ownerId, read, starred) VALUES (?,?,?,?,?,?,?,?,?,?,0,0)");
+            SQLiteStatement refStmt = legacyDb.compileStatement(
+                    "INSERT OR IGNORE INTO mail_label_cross_ref (mailId, labelId) VALUES (?,?)");
+            for (int i = 0; i < MAILS; i++) {
+                String id = ids.get(i);
+                mailStmt.bindString(1, id);
+                mailStmt.bindString(2, "sender-" + (i % 500));
+                mailStmt.bindString(3, "Sender " + (i % 500));
+                mailStmt.bindString(4, OWNER);
+                mailStmt.bindString(5, "Me");
+                mailStmt.bindString(6, "me@gmailish.com");
+                mailStmt.bindString(7, "Subject " + i);
+                mailStmt.bindString(8, "Body " + i);
+                mailStmt.bindLong(9, 1_700_000_000_000L + i * 60_000L);
+                mailStmt.bindString(10, OWNER);
+                mailStmt.executeInsert();
+                for (int label : labelsFor(i)) {
+                    refStmt.bindString(1, id);
+                    refStmt.bindLong(2, label + 1);
+                    refStmt.executeInsert();
+                }
+            }
+            legacyDb.setTransactionSuccessful();
+        } finally {
+            legacyDb.endTransaction();
+        }
+
+        /* ===== v7: rowId-keyed, loaded through the DAOs ===== */
+        List<Integer> labelIds = new ArrayList<>();
+        LabelRegistry registry = LabelRegistry.get(roomDb.labelDao());
+        for (String key : LABELS) labelIds.add(registry.intern(key, OWNER, key));
+
+        roomDb.runInTransaction(() -> {
+            List<MailEntity> batch = new ArrayList<>(MAILS);
+            for (int i = 0; i < MAILS; i++) {
+                batch.add(new MailEntity(ids.get(i), "sender-" + (i % 500), "Sender " + (i % 500),
+                        OWNER, "Me", "me@gmailish.com", "Subject " + i, "Body " + i,
+                        new Date(1_700_000_000_000L + i * 60_000L), OWNER, false, false));
+            }
+            roomDb.mailDao().upsertAll(batch);
+            List<MailLabelCrossRef> refs = new ArrayList<>(MAILS * LABELS_PER_MAIL);
+            for (int i = 0; i < MAILS; i++) {
+                long rowId = batch.get(i).getRowId();
+                for (int label : labelsFor(i)) refs.add(new MailLabelCrossRef(rowId, labelIds.get(label)));
+            }
+            roomDb.mailLabelDao().addAll(refs);
+        });
+
+        /* ===== Size ===== */
+        SupportSQLiteDatabase room = roomDb.getOpenHelper().getWritableDatabase();
+        long legacyBytes = dbBytes(legacyDb.rawQuery("PRAGMA page_count", null),
+                legacyDb.rawQuery("PRAGMA page_size", null));
+        long roomBytes = dbBytes(room.query("PRAGMA page_count"), room.query("PRAGMA page_size"));
+        Log.i(TAG, "bytes v6=" + legacyBytes + " v7=" + roomBytes +
+                " saved=" + (100 - roomBytes * 100 / Math.max(1, legacyBytes)) + "%");
+
+        /* ===== Join: mails for one label, newest first ===== */
+        String legacySql = "SELECT m.* FROM mails m INNER JOIN mail_label_cross_ref x ON m.id = x.mailId " +
+                "WHERE x.labelId = ? AND m.ownerId = ? ORDER BY m.timestamp DESC";
+        long[] legacyNs = new long[QUERY_RUNS];
+        long[] roomNs = new long[QUERY_RUNS];
+        int legacyRows = 0;
+        int roomRows = 0;
+        for (int run = 0; run < QUERY_RUNS; run++) {
+            int label = run % LABELS.length;
+
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            try (Cursor c = legacyDb.rawQuery(legacySql, new String[]{String.valueOf(label + 1), OWNER})) {
+                legacyRows = 0;
+                while (c.moveToNext()) legacyRows++;
+            }
+            legacyNs[run] = SystemClock.elapsedRealtimeNanos() - t0;
+
+            t0 = SystemClock.elapsedRealtimeNanos();
+            roomRows = roomDb.mailLabelDao().getMailsForLabelSync(labelIds.get(label), OWNER).size();
+            roomNs[run] = SystemClock.elapsedRealtimeNanos() - t0;
+
+            assertEquals("label " + LABELS[label], legacyRows, roomRows);
+        }
+        Log.i(TAG, "join median ms v6=" + medianMs(legacyNs) + " v7=" + medianMs(roomNs) +
+                " (rows/label ~" + roomRows + ", " + MAILS + " mails)");
+
+        assertTrue("rowId schema should be smaller: v6=" + legacyBytes + " v7=" + roomBytes,
+                roomBytes < legacyBytes);
+    }
+
+    @Test
+    public void remapKeepsRowAndLabels() {
+        LabelRegistry registry = LabelRegistry.get(roomDb.labelDao());
+        int sent = registry.intern("sent", OWNER, "sent");
+        MailEntity local = new MailEntity("draft-1", OWNER, "Me", OWNER, "Me", "me@gmailish.com",
+                "s", "c", new Date(), OWNER, true, false);
+        long rowId = roomDb.mailDao().upsert(local);
+        roomDb.mailLabelDao().link("draft-1", sent);
+
+        assertTrue(roomDb.mailDao().remapId("draft-1", "server-1"));
+
+        assertNull(roomDb.mailDao().getByIdSync("draft-1"));
+        assertEquals(Long.valueOf(rowId), roomDb.mailDao().getRowId("server-1"));
+        assertEquals(Arrays.asList("sent"), roomDb.mailLabelDao().getLabelsForMailSync("server-1"));
+    }
+
+    private static int[] labelsFor(int i) {
+        // Every mail is in "primary" plus two others, spread across the rest
+        int a = 1 + (i % (LABELS.length - 1));
+        int b = 1 + ((i / 7) % (LABELS.length - 1));
+        if (b == a) b = 1 + (b % (LABELS.length - 1));
+        return new int[]{0, a, b};
+    }
+
+    private static String objectId(Random rnd, int i) {
+        // 4-byte time, 5-byte random, 3-byte counter, like a Mongo ObjectId
+        return String.format("%08x%010x%06x", 1_700_000_000 + i / 10,
+                rnd.nextLong() & 0xffffffffffL, i & 0xffffff);
+    }
+
+    private static long dbBytes(Cursor pageCount, Cursor pageSize) {
+        try (Cursor a = pageCount; Cursor b = pageSize) {
+            a.moveToFirst();
+            b.moveToFirst();
+            return a.getLong(0) * b.getLong(0);
+        }
+    }
+
+    private static double medianMs(long[] ns) {
+        long[] copy = ns.clone();
+        Arrays.sort(copy);
+        return copy[copy.length / 2] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.gmailish.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.repository.MailRepository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Data layer at 1k, 10k and 100k synthetic mails (SyntheticMailbox), each in
+ * a fresh in-memory database with the production triggers: ingest through
+ * saveMailsAndLabels in sync-sized pages, list queries, a label join, search,
+ * and deletes. Numbers go to logcat (tag below).
+ *
+ * Regressions are judged by growth, not absolute times, so the suite means the
+ * same on any device: from one size to the next, an operation may grow about
+ * linearly if its work is proportional to the mailbox, and only a little if an
+ * index should keep it flat. A lost index or a per-row query shows up as
+ * growth past those limits and fails the test.
+ *
+ * Instrumentation arguments: scaleSizes (e.g. "1000,10000") and scaleSlack
+ * (multiplies the limits, default 1).
+ */
+@RunWith(AndroidJUnit4.class)
+public class MailboxScaleTest {
+
+    private static final String TAG = "MailboxScale";
+    private static final String OWNER = "owner-1";
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+    // InitialSyncWorker's page size, one transaction each
+    private static final int PAGE = 200;
+    private static final int LIST_LIMIT = 50;
+    private static final int DELETES = 200;
+    private static final int RUNS = 5;
+
+    // Allowed time growth per 10x mails: proportional work (2.5x slack), index-bound work
+    private static final double LINEAR_PER_10X = 25;
+    private static final double FLAT_PER_10X = 5;
+    // Timings under this are mostly noise; they are compared as this much
+    private static final double FLOOR_MS = 2.0;
+
+    private enum Growth { LINEAR, FLAT }
+
+    private static final Map<String, Growth> OPS = new LinkedHashMap<>();
+    static {
+        OPS.put("ingest", Growth.LINEAR);
+        OPS.put("threadsPage", Growth.FLAT);
+        OPS.put("starred", Growth.LINEAR);
+        OPS.put("labelJoin", Growth.LINEAR);
+        OPS.put("searchRare", Growth.FLAT);
+        OPS.put("searchCommon", Growth.LINEAR);
+        OPS.put("delete", Growth.FLAT);
+    }
+
+    @Test
+    public void dataLayerGrowsWithinLimits() {
+        int[] sizes = sizes();
+        double slack = slack();
+        List<Map<String, Double>> results = new ArrayList<>();
+        for (int n : sizes) {
+            Map<String, Double> ms = measure(n);
+            results.add(ms);
+            Log.i(TAG, "n=" + n + " ms " + ms + " ingest/mail=" +
+                    String.format("%.1fus", ms.get("ingest") * 1000 / n));
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (int s = 1; s < sizes.length; s++) {
+            double decades = Math.log10((double) sizes[s] / sizes[s - 1]);
+            for (Map.Entry<String, Growth> op : OPS.entrySet()) {
+                double before = Math.max(FLOOR_MS, results.get(s - 1).get(op.getKey()));
+                double after = Math.max(FLOOR_MS, results.get(s).get(op.getKey()));
+                double perDecade = op.getValue() == Growth.LINEAR ? LINEAR_PER_10X : FLAT_PER_10X;
+                double limit = Math.pow(perDecade * slack, decades);
+                double growth = after / before;
+                String line = String.format("%s %d->%d: x%.1f (limit x%.1f)",
+                        op.getKey(), sizes[s - 1], sizes[s], growth, limit);
+                Log.i(TAG, line);
+                if (growth > limit) failures.add(line);
+            }
+        }
+        assertTrue("grew past limits: " + failures, failures.isEmpty());
+    }
+
+    @Test
+    public void generatorIsDeterministic() {
+        SyntheticMailbox a = new SyntheticMailbox(new SyntheticMailbox.Config().mails(5_000));
+        SyntheticMailbox b = new SyntheticMailbox(new SyntheticMailbox.Config().mails(5_000));
+        SyntheticMailbox.Page whole = a.page(0, 5_000);
+        // A slice generated alone matches the same mails from a full run
+        SyntheticMailbox.Page slice = b.page(1_200, 1_400);
+        for (int i = 0; i < slice.mails.size(); i++) {
+            MailEntity x = whole.mails.get(1_200 + i);
+            MailEntity y = slice.mails.get(i);
+            assertEquals(x.getId(), y.getId());
+            assertEquals(x.computeContentHash(), y.computeContentHash());
+            assertEquals(whole.labels.get(x.getId()), slice.labels.get(y.getId()));
+        }
+
+        int rare = 0;
+        int unread = 0;
+        for (MailEntity m : whole.mails) {
+            if (m.getContent().contains(a.rareTerm())) rare++;
+            if (!m.getRead()) unread++;
+        }
+        assertEquals(a.config().rareMails, rare);
+        // 30% unread, within sampling noise
+        assertEquals(0.3, unread / 5_000.0, 0.03);
+    }
+
+    /* =========================
+       One mailbox size
+       ========================= */
+
+    private Map<String, Double> measure(int n) {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        AppDatabase db = Room.inMemoryDatabaseBuilder(ctx, AppDatabase.class)
+                .addCallback(AppDatabase.CALLBACK)
+                .build();
+        MailCache.get().clear();
+        Map<String, Double> ms = new LinkedHashMap<>();
+        try {
+            MailRepository repo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(),
+                    db.savedSearchDao());
+            SyntheticMailbox box = new SyntheticMailbox(new SyntheticMailbox.Config().mails(n));
+
+            /* ===== Ingest: sync pages, one transaction each ===== */
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            for (int from = 0; from < n; from += PAGE) {
+                SyntheticMailbox.Page page = box.page(from, Math.min(n, from + PAGE));
+                db.runInTransaction(() -> {
+                    repo.saveMailsAndLabels(page.mails, page.labels);
+                });
+            }
+            ms.put("ingest", (SystemClock.elapsedRealtimeNanos() - t0) / 1e6);
+            assertEquals(n, count(db, "mails"));
+
+            /* ===== Lists ===== */
+            ms.put("threadsPage", medianMs(() -> db.threadDao().threadsForOwnerSync(OWNER, LIST_LIMIT)));
+            ms.put("starred", medianMs(() -> repo.getStarred(OWNER)));
+            ms.put("labelJoin", medianMs(() -> repo.getMailsForLabelLocal("travel", OWNER)));
+
+            /* ===== Search ===== */
+            List<MailEntity> rare = repo.search(OWNER, box.rareTerm(), LIST_LIMIT);
+            assertEquals(Math.min(box.config().rareMails, n), rare.size());
+            ms.put("searchRare", medianMs(() -> repo.search(OWNER, box.rareTerm(), LIST_LIMIT)));
+            ms.put("searchCommon", medianMs(() -> repo.search(OWNER, "invoice", LIST_LIMIT)));
+
+            /* ===== Deletes: a fixed number, spread through the mailbox ===== */
+            int deletes = Math.min(DELETES, n);
+            t0 = SystemClock.elapsedRealtimeNanos();
+            for (int j = 0; j < deletes; j++) {
+                repo.deleteMail(box.mailId((int) ((long) j * n / deletes)));
+            }
+            ms.put("delete", (SystemClock.elapsedRealtimeNanos() - t0) / 1e6);
+            assertEquals(n - deletes, count(db, "mails"));
+        } finally {
+            db.close();
+            MailCache.get().clear();
+        }
+        return ms;
+    }
+
+    private static double medianMs(Supplier<?> query) {
+        query.get(); // warm the statement cache
+        long[] ns = new long[RUNS];
+        for (int r = 0; r < RUNS; r++) {
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            query.get();
+            ns[r] = SystemClock.elapsedRealtimeNanos() - t0;
+        }
+        Arrays.sort(ns);
+        return ns[RUNS / 2] / 1e6;
+    }
+
+    private static long count(AppDatabase db, String table) {
+        try (Cursor c = db.getOpenHelper().getReadableDatabase()
+                .query("SELECT COUNT(*) FROM " + table)) {
+            c.moveToFirst();
+            return c.getLong(0);
+        }
+    }
+
+    /* =========================
+       Arguments
+       ========================= */
+
+    private static int[] sizes() {
+        String arg = InstrumentationRegistry.getArguments().getString("scaleSizes");
+        if (arg == null || arg.trim().isEmpty()) return SIZES;
+        String[] parts = arg.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = Integer.parseInt(parts[i].trim());
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static double slack() {
+        Bundle args = InstrumentationRegistry.getArguments();
+        String arg = args.getString("scaleSlack");
+        return arg == null ? 1.0 : Double.parseDouble(arg);
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.gmailish.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.local.LabelRegistry;
+import com.example.gmailish.data.search.LocalSearch;
+import com.example.gmailish.data.search.SearchQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every search operator: the right mails come back, and EXPLAIN QUERY PLAN shows
+ * the filter answered from an index (no full scan of mails, cross-refs or labels).
+ * Text queries are checked on both paths: compile() and the ranked
+ * compileRanked() that LocalSearch runs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchQueryPlanTest {
+
+    private static final String OWNER = "owner-1";
+    private static final int LIMIT = 50;
+
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(ctx, AppDatabase.class).build();
+
+        LabelRegistry labels = LabelRegistry.get(db.labelDao());
+        int work = labels.intern("lbl-42", OWNER, "Work");
+        int primary = labels.intern("primary", OWNER, "primary");
+
+        insert("m1", "Alice Cooper", "bob@example.com", "Quarterly report", "numbers attached", day(2024, 1, 10), false, true);
+        insert("m2", "Bob Marley", "alice@example.com", "Lunch", "see you at noon", day(2024, 2, 20), true, false);
+        insert("m3", "Carol King", "dave@other.org", "Report draft", "second version of the report", day(2024, 3, 5), false, false);
+        insert("m4", "Alice Cooper", "carol@other.org", "Holiday", "photos from the trip", day(2024, 4, 1), true, true);
+        // Another owner's mail must never leak into results
+        db.mailDao().upsert(new MailEntity("x1", "s", "Alice Cooper", "r", "Me", "me@example.com",
+                "Quarterly report", "c", new Date(day(2024, 1, 10)), "owner-2", false, false));
+
+        db.mailLabelDao().link("m1", work);
+        db.mailLabelDao().link("m3", work);
+        db.mailLabelDao().link("m2", primary);
+        // Same key, other account: its own row
+        db.mailLabelDao().link("x1", labels.intern("primary", "owner-2", "primary"));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void freeText() {
+        assertIds("report", "m3", "m1");
+        assertIds("repo*", "m3", "m1");
+        assertIds("\"second version\"", "m3");
+        assertUsesFts("report");
+    }
+
+    @Test
+    public void from() {
+        assertIds("from:alice", "m4", "m1");
+        assertIds("from:\"alice cooper\" report", "m1");
+        assertUsesFts("from:alice");
+    }
+
+    @Test
+    public void to() {
+        assertIds("to:bob@example.com", "m1");
+        assertIds("to:other.org", "m4", "m3");
+        assertUsesFts("to:bob@example.com");
+    }
+
+    @Test
+    public void subject() {
+        assertIds("subject:report", "m3", "m1");
+        assertUsesFts("subject:report");
+    }
+
+    @Test
+    public void label() {
+        assertIds("label:work", "m3", "m1");
+        assertIds("label:lbl-42", "m3", "m1");
+        assertIds("label:inbox", "m2");
+        assertIds("label:nosuchlabel");
+        assertNotEquals(db.labelDao().getIdByKey(OWNER, "primary"), db.labelDao().getIdByKey("owner-2", "primary"));
+        assertPlanContains("label:work", "index_mail_label_cross_ref_labelId");
+    }
+
+    @Test
+    public void isUnreadReadStarred() {
+        assertIds("is:unread", "m3", "m1");
+        assertIds("is:read", "m4", "m2");
+        assertIds("is:starred", "m4", "m1");
+        assertIds("is:starred is:unread", "m1");
+        assertPlanContains("is:unread", "index_mails_ownerId_timestamp");
+        assertPlanContains("is:starred", "index_mails_ownerId_timestamp");
+    }
+
+    @Test
+    public void beforeAfter() {
+        assertIds("before:2024/03/05", "m2", "m1");
+        assertIds("after:2024-03-05", "m4", "m3");
+        assertIds("after:2024/02/01 before:2024/04/01", "m3", "m2");
+        assertPlanContains("before:2024/03/05", "index_mails_ownerId_timestamp");
+        assertPlanContains("after:2024/03/05", "index_mails_ownerId_timestamp");
+    }
+
+    @Test
+    public void combined() {
+        assertIds("report label:work is:unread after:2024/02/01", "m3");
+        List<String> plan = plan("report label:work is:unread after:2024/02/01");
+        assertNoFullScan(plan);
+        assertTrue(plan.toString(), String.join("\n", plan).contains("VIRTUAL TABLE INDEX"));
+    }
+
+    @Test
+    public void malformedOperatorsAreText() {
+        SearchQuery q = SearchQuery.parse("before:yesterday is:important lunch");
+        assertFalse(q.hasOperators());
+        assertEquals("before yesterday is important lunch", q.freeText());
+        // FTS syntax in user text is neutralized (keywords lowercased, quotes/-/: dropped)
+        assertEquals("near x lunch or", SearchQuery.parse("NEAR:x -lunch OR").matchExpression());
+        assertIds("NEAR:x -lunch OR");
+        assertIds("\"lunch", "m2");
+    }
+
+    @Test
+    public void rankedPlanUsesFts() {
+        for (String text : new String[]{"report", "from:alice", "report label:work is:unread after:2024/02/01"}) {
+            List<String> plan = rankedPlan(text, null);
+            assertNoFullScan(plan);
+            assertTrue(text + " -> " + plan, String.join("\n", plan).contains("VIRTUAL TABLE INDEX"));
+        }
+        // Refining a previous result: still no scan of mails
+        assertNoFullScan(rankedPlan("report", new long[]{1, 2, 3}));
+        // Filters only: nothing to rank
+        assertNull(SearchQuery.parse("is:unread label:work").compileRanked(OWNER, LIMIT, null));
+    }
+
+    @Test
+    public void rankedMatchesSameRowsAsCompile() {
+        for (String text : new String[]{"report", "repo*", "from:alice", "to:other.org", "subject:report",
+                "report label:work", "NEAR:x -lunch OR"}) {
+            List<String> ranked = rankedIds(text, null);
+            List<String> plain = new ArrayList<>();
+            for (MailEntity m : db.mailDao().searchSync(SearchQuery.parse(text).compile(OWNER, LIMIT).toQuery())) {
+                plain.add(m.getId());
+            }
+            Collections.sort(ranked);
+            Collections.sort(plain);
+            assertEquals(text, plain, ranked);
+        }
+    }
+
+    @Test
+    public void rankedOrderBeatsRecency() {
+        // Newest, but the word only once deep in a long body
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 60; i++) body.append("notes from the weekly sync ");
+        body.append("and the report");
+        insert("m5", "Dan Brown", "eve@example.com", "Weekly notes", body.toString(), day(2024, 5, 1), false, false);
+
+        // Subject and body > subject > body, though m5 is newest
+        assertEquals(Arrays.asList("m3", "m1", "m5"), rankedIds("report", null));
+
+        LocalSearch.Result r = new LocalSearch(db).run(SearchQuery.parse("report"), OWNER, 2, null, null);
+        assertEquals(2, r.mails.size());
+        assertEquals("m3", r.mails.get(0).getId());
+        // Every match is kept for refining, not just the page
+        assertEquals(3, r.rowIds.length);
+        assertTrue(r.complete);
+        // Snippets only where the body matched
+        assertTrue(r.snippets.containsKey("m3"));
+        assertFalse(r.snippets.containsKey("m1"));
+
+        // Refining keeps the ranking, within the previous rows only
+        LocalSearch.Result refined = new LocalSearch(db).run(SearchQuery.parse("report is:unread"), OWNER, LIMIT,
+                r.rowIds, null);
+        List<String> ids = new ArrayList<>();
+        for (MailEntity m : refined.mails) ids.add(m.getId());
+        assertEquals(Arrays.asList("m3", "m1", "m5"), ids);
+    }
+
+    /* ===== helpers ===== */
+
+    /** LocalSearch's order: best BM25 score first. */
+    private List<String> rankedIds(String text, long[] within) {
+        List<String> ids = new ArrayList<>();
+        for (MailEntity m : new LocalSearch(db).run(SearchQuery.parse(text), OWNER, LIMIT, within, null).mails) {
+            ids.add(m.getId());
+        }
+        return ids;
+    }
+
+    private List<String> rankedPlan(String text, long[] within) {
+        return explain(SearchQuery.parse(text).compileRanked(OWNER, LIMIT, within));
+    }
+
+    private void assertIds(String text, String... expected) {
+        SearchQuery q = SearchQuery.parse(text);
+        List<String> ids = new ArrayList<>();
+        for (MailEntity m : db.mailDao().searchSync(q.compile(OWNER, LIMIT).toQuery())) ids.add(m.getId());
+        assertEquals(text, Arrays.asList(expected), ids);
+    }
+
+    private void assertUsesFts(String text) {
+        assertPlanContains(text, "VIRTUAL TABLE INDEX");
+    }
+
+    private void assertPlanContains(String text, String needle) {
+        List<String> plan = plan(text);
+        assertNoFullScan(plan);
+        assertTrue(text + " -> " + plan, String.join("\n", plan).contains(needle));
+    }
+
+    /** SCAN is only fine on the FTS table (which is how SQLite reports a MATCH lookup). */
+    private static void assertNoFullScan(List<String> plan) {
+        for (String line : plan) {
+            if (line.startsWith("SCAN") && !line.contains("VIRTUAL TABLE")) {
+                fail("full scan: " + line + " in " + plan);
+            }
+        }
+    }
+
+    private List<String> plan(String text) {
+        return explain(SearchQuery.parse(text).compile(OWNER, LIMIT));
+    }
+
+    private List<String> explain(SearchQuery.Compiled c) {
+        List<String> out = new ArrayList<>();
+        try (Cursor cur = db.getOpenHelper().getReadableDatabase()
+                .query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + c.sql, c.args))) {
+            int detail = cur.getColumnIndexOrThrow("detail");
+            while (cur.moveToNext()) out.add(cur.getString(detail));
+        }
+        return out;
+    }
+
+    private void insert(String id, String senderName, String to, String subject, String content,
+                        long when, boolean read, boolean starred) {
+        db.mailDao().upsert(new MailEntity(id, "sender-" + id, senderName, "rcpt-" + id, to.split("@")[0],
+                to, subject, content, new Date(when), OWNER, read, starred));
+    }
+
+    private static long day(int y, int m, int d) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(y, m - 1, d, 12, 0);
+        return cal.getTimeInMillis();
+    }
+}
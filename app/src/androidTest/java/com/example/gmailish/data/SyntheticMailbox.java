@@ -0,0 +1,218 @@
+package com.example.gmailish.data;
+
+import com.example.gmailish.data.entity.MailEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic mailbox for scale tests. Mail i depends only on the
+ * seed and i, so any slice can be generated on its own (ingest in pages
+ * without holding the whole mailbox) and every run sees the same data.
+ *
+ * Shape: one category label per mail (weighted), optional extra labels,
+ * log-normal body sizes over a Zipf-ish vocabulary, Zipf-ish senders, a
+ * share of replies that continue an earlier subject (so threads form), and a
+ * fixed number of mails carrying {@link #rareTerm()} at any size.
+ */
+public final class SyntheticMailbox {
+
+    /** Knobs; defaults resemble a personal inbox. */
+    public static final class Config {
+        public int mails = 10_000;
+        public long seed = 42;
+        public String ownerId = "owner-1";
+        // Server label names; each mail gets exactly one of these
+        public String[] categories = {"inbox", "promotions", "social", "updates"};
+        public double[] categoryWeights = {0.5, 0.2, 0.15, 0.15};
+        // Each added independently with its probability
+        public String[] extraLabels = {"work", "travel", "receipts"};
+        public double[] extraLabelOdds = {0.10, 0.05, 0.05};
+        public double unreadRatio = 0.3;
+        public double starredRatio = 0.05;
+        public double replyRatio = 0.3;
+        // Body length: median * e^(sigma * N(0,1)), clamped
+        public int bodyMedianChars = 300;
+        public double bodySigma = 0.8;
+        public int bodyMaxChars = 8_000;
+        public int senders = 500;
+        // Mails carrying rareTerm(), spread evenly, whatever the mailbox size
+        public int rareMails = 20;
+
+        public Config mails(int n) {
+            this.mails = n;
+            return this;
+        }
+
+        public Config seed(long s) {
+            this.seed = s;
+            return this;
+        }
+    }
+
+    /** One page, shaped for MailRepository.saveMailsAndLabels. */
+    public static final class Page {
+        public final List<MailEntity> mails;
+        public final Map<String, List<String>> labels;
+
+        Page(List<MailEntity> mails, Map<String, List<String>> labels) {
+            this.mails = mails;
+            this.labels = labels;
+        }
+    }
+
+    private static final long BASE_TIME = 1_700_000_000_000L;
+    private static final String RARE = "quasarkite";
+    private static final String[] WORDS = {
+            "the", "meeting", "project", "update", "please", "review", "team", "report", "schedule", "invoice",
+            "order", "shipping", "account", "password", "weekend", "dinner", "flight", "hotel", "booking", "offer",
+            "sale", "discount", "newsletter", "photo", "family", "birthday", "party", "budget", "quarter", "release",
+            "deadline", "draft", "feedback", "contract", "payment", "receipt", "delivery", "ticket", "event", "invite",
+            "question", "answer", "support", "issue", "build", "deploy", "server", "client", "design", "launch"
+    };
+
+    private final Config config;
+
+    public SyntheticMailbox(Config config) {
+        this.config = config;
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /** A word that appears in exactly Config.rareMails mails. */
+    public String rareTerm() {
+        return RARE;
+    }
+
+    public String mailId(int i) {
+        // 4-byte time, 5-byte hash, 3-byte counter, like a Mongo ObjectId
+        return String.format("%08x%010x%06x", 1_700_000_000 + i / 10,
+                mix(config.seed, i) & 0xffffffffffL, i & 0xffffff);
+    }
+
+    /** Mails [from, to), with their labels. */
+    public Page page(int from, int to) {
+        List<MailEntity> mails = new ArrayList<>(to - from);
+        Map<String, List<String>> labels = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            MailEntity m = mail(i);
+            mails.add(m);
+            labels.put(m.getId(), labelsFor(i));
+        }
+        return new Page(mails, labels);
+    }
+
+    public MailEntity mail(int i) {
+        Random rnd = random(i, 0);
+        String subject = subject(i);
+        int sender = zipf(rnd, config.senders);
+        // Replies keep the thread's correspondent so the derived thread key matches
+        int root = rootOf(i);
+        if (root != i) sender = zipf(random(root, 0), config.senders);
+
+        return new MailEntity(
+                mailId(i),
+                "sender-" + sender, "Sender " + sender,
+                config.ownerId, "Me", "me@gmailish.com",
+                subject, body(i, rnd),
+                new Date(BASE_TIME + i * 60_000L + rnd.nextInt(60_000)),
+                config.ownerId,
+                rnd.nextDouble() >= config.unreadRatio,
+                // Starred is a label on the server; sync sets the flag from it
+                labelsFor(i).contains("starred"));
+    }
+
+    /* =========================
+       Internals
+       ========================= */
+
+    private List<String> labelsFor(int i) {
+        Random rnd = random(i, 1);
+        List<String> out = new ArrayList<>(3);
+        out.add(pick(rnd, config.categories, config.categoryWeights));
+        for (int k = 0; k < config.extraLabels.length; k++) {
+            if (rnd.nextDouble() < config.extraLabelOdds[k]) out.add(config.extraLabels[k]);
+        }
+        if (rnd.nextDouble() < config.starredRatio) out.add("starred");
+        return out;
+    }
+
+    // The earliest mail of i's thread: replies point back a bounded distance
+    private int rootOf(int i) {
+        int cur = i;
+        for (int hops = 0; hops < 8; hops++) {
+            Random rnd = random(cur, 2);
+            if (cur == 0 || rnd.nextDouble() >= config.replyRatio) return cur;
+            cur = Math.max(0, cur - 1 - rnd.nextInt(50));
+        }
+        return cur;
+    }
+
+    private String subject(int i) {
+        int root = rootOf(i);
+        Random rnd = random(root, 3);
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + rnd.nextInt(5);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) sb.append(' ');
+            sb.append(WORDS[zipf(rnd, WORDS.length) - 1]);
+        }
+        sb.append(" #").append(root);
+        return root == i ? sb.toString() : "Re: " + sb;
+    }
+
+    private String body(int i, Random rnd) {
+        double len = config.bodyMedianChars * Math.exp(config.bodySigma * rnd.nextGaussian());
+        int target = (int) Math.max(20, Math.min(config.bodyMaxChars, len));
+        StringBuilder sb = new StringBuilder(target + 16);
+        if (isRare(i)) sb.append(RARE).append(' ');
+        while (sb.length() < target) {
+            sb.append(WORDS[zipf(rnd, WORDS.length) - 1]).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    private boolean isRare(int i) {
+        int n = config.mails;
+        int k = Math.min(config.rareMails, n);
+        if (k <= 0) return false;
+        // Mails floor(j * n / k) for j in [0, k): only j = ceil(i * k / n) can land on i
+        int j = (int) (((long) i * k + n - 1) / n);
+        return j < k && (long) j * n / k == i;
+    }
+
+    private Random random(int i, int stream) {
+        return new Random(mix(config.seed, i * 8L + stream));
+    }
+
+    // 1..n, rank r with weight ~ 1/r (inverse CDF of the continuous 1/x)
+    private static int zipf(Random rnd, int n) {
+        int r = (int) Math.exp(rnd.nextDouble() * Math.log(n + 1));
+        return Math.max(1, Math.min(n, r));
+    }
+
+    private static String pick(Random rnd, String[] values, double[] weights) {
+        double total = Arrays.stream(weights).sum();
+        double u = rnd.nextDouble() * total;
+        for (int k = 0; k < values.length; k++) {
+            u -= weights[k];
+            if (u < 0) return values[k];
+        }
+        return values[values.length - 1];
+    }
+
+    // SplitMix64
+    private static long mix(long seed, long i) {
+        long z = seed + 0x9E3779B97F4A7C15L * (i + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.gmailish.data.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.repository.MailRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * MailEventStream against a stand-in server (MockWebServer): resuming with
+ * Last-Event-ID, reconnecting after the stream ends, and handling a 'reset'.
+ * Each stand-in stream ends after its body, which the client treats as a drop.
+ * The app's saved jwt and last event id are restored afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MailEventStreamTest {
+
+    private static final long WAIT_S = 10;
+
+    private Context context;
+    private SharedPreferences prefs;
+    private String savedJwt;
+    private String savedLastId;
+    private MockWebServer server;
+    private AppDatabase db;
+    private MailEventStream stream;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        prefs = context.getSharedPreferences("prefs", Context.MODE_PRIVATE);
+        savedJwt = prefs.getString("jwt", null);
+        savedLastId = prefs.getString(MailEventStream.KEY_LAST_EVENT_ID, null);
+        prefs.edit().putString("jwt", "test-jwt").remove(MailEventStream.KEY_LAST_EVENT_ID).commit();
+
+        server = new MockWebServer();
+        server.start();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CALLBACK)
+                .build();
+        MailRepository repo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
+        stream = new MailEventStream(context, repo, server.url("/api/mails/").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        stream.stop();
+        server.shutdown();
+        db.close();
+        prefs.edit()
+                .putString("jwt", savedJwt)
+                .putString(MailEventStream.KEY_LAST_EVENT_ID, savedLastId)
+                .commit();
+    }
+
+    @Test
+    public void resumesFromLastIdAndReconnectsWithTheNewest() throws Exception {
+        prefs.edit().putString(MailEventStream.KEY_LAST_EVENT_ID, "b.5").commit();
+        server.enqueue(sse("id: b.6\nevent: mail.read\ndata: {\"ids\":[\"m1\"],\"read\":true}\n\n"));
+        server.enqueue(sse(""));
+
+        CountDownLatch changed = new CountDownLatch(1);
+        stream.addListener(listener(changed, null));
+        stream.start();
+
+        RecordedRequest first = server.takeRequest(WAIT_S, TimeUnit.SECONDS);
+        assertNotNull("no connect", first);
+        assertEquals("/api/mails/events", first.getPath());
+        assertEquals("b.5", first.getHeader("Last-Event-ID"));
+        assertEquals("Bearer test-jwt", first.getHeader("Authorization"));
+        assertTrue("event not applied", changed.await(WAIT_S, TimeUnit.SECONDS));
+
+        // The stream ended: the client reconnects and resumes after what it applied
+        RecordedRequest second = server.takeRequest(WAIT_S, TimeUnit.SECONDS);
+        assertNotNull("no reconnect", second);
+        assertEquals("b.6", second.getHeader("Last-Event-ID"));
+    }
+
+    @Test
+    public void resetRequestsResyncAndResumesFromItsId() throws Exception {
+        // An id the server no longer knows (e.g. from before a restart) is answered with reset
+        prefs.edit().putString(MailEventStream.KEY_LAST_EVENT_ID, "old.42").commit();
+        server.enqueue(sse("id: b.9\nevent: reset\ndata: {}\n\n"));
+        server.enqueue(sse(""));
+
+        CountDownLatch resync = new CountDownLatch(1);
+        stream.addListener(listener(null, resync));
+        stream.start();
+
+        assertEquals("old.42", server.takeRequest(WAIT_S, TimeUnit.SECONDS).getHeader("Last-Event-ID"));
+        assertTrue("no resync", resync.await(WAIT_S, TimeUnit.SECONDS));
+        assertEquals("b.9", prefs.getString(MailEventStream.KEY_LAST_EVENT_ID, null));
+
+        RecordedRequest next = server.takeRequest(WAIT_S, TimeUnit.SECONDS);
+        assertNotNull("no reconnect", next);
+        assertEquals("b.9", next.getHeader("Last-Event-ID"));
+    }
+
+    @Test
+    public void reconnectsAfterAServerError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(sse(""));
+        stream.start();
+
+        RecordedRequest first = server.takeRequest(WAIT_S, TimeUnit.SECONDS);
+        assertNotNull("no connect", first);
+        assertNull(first.getHeader("Last-Event-ID"));
+        assertNotNull("no reconnect after 503", server.takeRequest(WAIT_S, TimeUnit.SECONDS));
+    }
+
+    /* =========================
+       Helpers
+       ========================= */
+
+    private static MockResponse sse(String body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody("retry: 3000\n\n" + body);
+    }
+
+    private static MailEventStream.Listener listener(CountDownLatch changed, CountDownLatch resync) {
+        return new MailEventStream.Listener() {
+            @Override public void onMailboxChanged() {
+                if (changed != null) changed.countDown();
+            }
+
+            @Override public void onResyncRequired() {
+                if (resync != null) resync.countDown();
+            }
+        };
+    }
+}
@@ -1,15 +1,58 @@
 package com.example.gmailish;
 
 import android.app.Application;
+import android.content.Context;
+import android.util.Log;
 
+import com.example.gmailish.data.blacklist.LinkScanStage;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.sync.BlacklistSyncWorker;
+import com.example.gmailish.data.sync.SyncPendingWorker;
 import com.example.gmailish.util.ThemeManager;
+import com.example.gmailish.utils.TokenManager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import dagger.hilt.android.HiltAndroidApp;
 
 @HiltAndroidApp
 public class GmailishApp extends Application {
+
+    // Unparks pending ops off the thread that saved the token; one for the process
+    private static final ExecutorService UNPARK = Executors.newSingleThreadExecutor();
+
     @Override
     public void onCreate() {
         super.onCreate();
+
+        // Link verdicts for new and edited mails, in the background
+        LinkScanStage.get(this).start();
+
+        // Blacklist changes since the last stored version
+        if (getSharedPreferences("prefs", Context.MODE_PRIVATE).getString("jwt", null) != null) {
+            BlacklistSyncWorker.enqueue(this);
+            BlacklistSyncWorker.schedulePeriodic(this);
+        }
+
+        // A new token (login or refresh) resumes ops parked on an expired session
+        TokenManager.get(this).addListener(token -> UNPARK.execute(() -> {
+            try {
+                int n = AppDbProvider.get(this).pendingOperationDao().unparkAll();
+                if (n > 0) {
+                    Log.d("GmailishApp", "unparked " + n + " pending ops");
+                    SyncPendingWorker.enqueue(this);
+                }
+            } catch (Exception e) {
+                Log.e("GmailishApp", "unpark error: " + e.getMessage(), e);
+            }
+        }));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MailCache.get().trimMemory(level);
     }
 }
@@ -0,0 +1,255 @@
+package com.example.gmailish.data.blacklist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.gmailish.data.dao.BlacklistDao;
+import com.example.gmailish.data.db.AppDbProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory mirror of the blacklist table as a Bloom filter, so a link check
+ * is k bit tests; only a possible hit (a listed URL or a ~1% false positive)
+ * costs a DAO lookup.
+ *
+ * The filter is saved to a file and mapped back in on the next start instead
+ * of being rebuilt from Room. Writes go through BlacklistRepository, which
+ * calls {@link #beforeWrite()} before touching the table and
+ * {@link #onAdded}/{@link #onRemoved} after: the file is marked stale before
+ * the table changes and clean only once a save covers every change since, so
+ * a crash in between means a rebuild, never a missed URL. Removed URLs stay
+ * in the bits (false positives, answered by the DAO) until the next rebuild.
+ */
+public final class BlacklistFilter {
+
+    private static final String TAG = "BlacklistFilter";
+
+    private static final String FILE_NAME = "blacklist.bloom";
+    private static final String PREF_DIRTY = "blacklist_bloom_dirty";
+    private static final double FPP = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+    // Sized for 2x the current list; past this fill the false-positive rate has roughly tripled
+    private static final double MAX_FILL = 0.6;
+    private static final int FILL_CHECK_EVERY = 256;
+    private static final int REBUILD_AFTER_REMOVALS = 256;
+
+    private static volatile BlacklistFilter INSTANCE;
+
+    public static BlacklistFilter get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (BlacklistFilter.class) {
+                if (INSTANCE == null) {
+                    Context app = context.getApplicationContext();
+                    INSTANCE = new BlacklistFilter(
+                            AppDbProvider.get(app).blacklistDao(),
+                            new File(app.getFilesDir(), FILE_NAME),
+                            app.getSharedPreferences("prefs", Context.MODE_PRIVATE));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final BlacklistDao dao;
+    private final File file;
+    private final SharedPreferences prefs;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+
+    // All below guarded by lock
+    private final Object lock = new Object();
+    private BloomFilter filter;            // null until first use
+    private long generation;               // bumps on every change; a save is clean only if it saw the latest
+    private boolean dirtyOnDisk;           // mirrors PREF_DIRTY
+    private boolean saveQueued;
+    private boolean rebuildQueued;
+    private List<String> addedDuringRebuild;
+    private int addsSinceFillCheck;
+    private int removedSinceBuild;
+
+    BlacklistFilter(BlacklistDao dao, File file, SharedPreferences prefs) {
+        this.dao = dao;
+        this.file = file;
+        this.prefs = prefs;
+        // No flag yet (first run, or an older install): treat the file as stale
+        this.dirtyOnDisk = prefs.getBoolean(PREF_DIRTY, true);
+    }
+
+    /* =========================
+       Checks (blocking; off the main thread)
+       ========================= */
+
+    /** Exact answer: the filter rules out most URLs, the DAO confirms possible hits. */
+    public boolean isBlacklisted(String url) {
+        if (url == null || url.isEmpty()) return false;
+        if (!mightContain(url)) return false;
+        return dao.exists(url);
+    }
+
+    public boolean mightContain(String url) {
+        synchronized (lock) {
+            ensureLoaded();
+            return filter.mightContain(url);
+        }
+    }
+
+    /** Load (or build) the filter in the background so the first check doesn't. */
+    public void warmUp() {
+        io.execute(() -> {
+            synchronized (lock) {
+                ensureLoaded();
+            }
+        });
+    }
+
+    /* =========================
+       Write hooks (BlacklistRepository)
+       ========================= */
+
+    /** Before the table changes: a crash after this point rebuilds on the next start. */
+    public void beforeWrite() {
+        synchronized (lock) {
+            generation++;
+            if (dirtyOnDisk) return;
+            dirtyOnDisk = true;
+            prefs.edit().putBoolean(PREF_DIRTY, true).commit();
+        }
+    }
+
+    public void onAdded(String url) {
+        if (url == null) return;
+        synchronized (lock) {
+            // Not loaded yet: the build reads the table, which already has it
+            if (filter == null) return;
+            filter.add(url);
+            if (addedDuringRebuild != null) addedDuringRebuild.add(url);
+            generation++;
+            if (++addsSinceFillCheck >= FILL_CHECK_EVERY) {
+                addsSinceFillCheck = 0;
+                if (filter.fillRatio() > MAX_FILL) scheduleRebuild();
+            }
+        }
+        scheduleSave();
+    }
+
+    /** Bits can't be cleared; the URL answers "maybe" until the next rebuild drops it. */
+    public void onRemoved(String url) {
+        synchronized (lock) {
+            if (filter == null) return;
+            if (++removedSinceBuild >= REBUILD_AFTER_REMOVALS) scheduleRebuild();
+        }
+        // Same bits, but beforeWrite marked the file stale
+        scheduleSave();
+    }
+
+    /** Rebuild from the table in the background (after a full resync); checks keep using the old bits meanwhile. */
+    public void rebuild() {
+        synchronized (lock) {
+            scheduleRebuild();
+        }
+    }
+
+    /* =========================
+       Load / build / save
+       ========================= */
+
+    private void ensureLoaded() {
+        if (filter != null) return;
+        if (!dirtyOnDisk) {
+            try {
+                filter = BloomFilter.readFrom(file);
+            } catch (IOException e) {
+                Log.w(TAG, "ensureLoaded: read failed: " + e.getMessage());
+            }
+        }
+        if (filter != null) {
+            Log.d(TAG, "ensureLoaded: mapped " + filter.bitCount() + " bits, k=" + filter.hashCount());
+            return;
+        }
+        filter = build();
+        generation++;
+        scheduleSave();
+    }
+
+    private BloomFilter build() {
+        long t0 = System.currentTimeMillis();
+        List<String> urls = dao.getAllUrlsSync();
+        BloomFilter f = BloomFilter.forCapacity(Math.max(MIN_CAPACITY, urls.size() * 2), FPP);
+        for (String u : urls) f.add(u);
+        Log.d(TAG, "build: " + urls.size() + " urls -> " + f.bitCount() + " bits, k=" + f.hashCount()
+                + " in " + (System.currentTimeMillis() - t0) + "ms");
+        return f;
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildQueued) return;
+        rebuildQueued = true;
+        io.execute(this::rebuildNow);
+    }
+
+    private void rebuildNow() {
+        synchronized (lock) {
+            rebuildQueued = false;
+            addedDuringRebuild = new ArrayList<>();
+        }
+        BloomFilter fresh;
+        try {
+            fresh = build();
+        } catch (Exception e) {
+            Log.w(TAG, "rebuild failed: " + e.getMessage());
+            synchronized (lock) {
+                addedDuringRebuild = null;
+            }
+            return;
+        }
+        synchronized (lock) {
+            // Adds that raced the table read
+            for (String u : addedDuringRebuild) fresh.add(u);
+            addedDuringRebuild = null;
+            filter = fresh;
+            addsSinceFillCheck = 0;
+            removedSinceBuild = 0;
+            generation++;
+        }
+        scheduleSave();
+    }
+
+    private void scheduleSave() {
+        synchronized (lock) {
+            if (saveQueued) return;
+            saveQueued = true;
+        }
+        io.execute(this::save);
+    }
+
+    private void save() {
+        BloomFilter snapshot;
+        long gen;
+        synchronized (lock) {
+            saveQueued = false;
+            if (filter == null) return;
+            snapshot = filter.copy();
+            gen = generation;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            snapshot.writeTo(tmp);
+            if (!tmp.renameTo(file)) throw new IOException("rename failed");
+        } catch (IOException e) {
+            Log.w(TAG, "save failed: " + e.getMessage());
+            return;
+        }
+        synchronized (lock) {
+            // A change after the snapshot keeps the file stale; its own save comes next
+            if (gen != generation || !dirtyOnDisk) return;
+            dirtyOnDisk = false;
+            prefs.edit().putBoolean(PREF_DIRTY, false).commit();
+        }
+    }
+}
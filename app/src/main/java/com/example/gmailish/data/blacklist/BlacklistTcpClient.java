@@ -0,0 +1,370 @@
+package com.example.gmailish.data.blacklist;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Client for the blacklist TCP server (src/server, "cpp_server"): one line per
+ * command ("GET url", "POST url", "DELETE url"), answered in order on the same
+ * connection.
+ *
+ * Bulk checks reuse pooled connections and pipeline: a window of GET lines goes
+ * out in one write, then the replies are read back in order, so a batch costs
+ * a few round trips per window instead of a connect and a round trip per URL.
+ * The window is bounded because the server answers each line as it reads it:
+ * if we wrote without reading, its replies would fill our receive buffer, it
+ * would stop reading, and both sides would block.
+ *
+ * The server keeps one blacklist for all sessions, so a long-lived connection
+ * answers with the current list. A pooled connection the network dropped
+ * while idle fails on first use; its slice is retried once on a new one.
+ *
+ * Blocking: call off the main thread.
+ */
+public final class BlacklistTcpClient implements Closeable {
+
+    private static final String TAG = "BlacklistTcpClient";
+
+    public static final String DEFAULT_HOST = "10.0.2.2";
+    public static final int DEFAULT_PORT = 4000;
+
+    private static final int DEFAULT_CONNECTIONS = 4;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int IO_TIMEOUT_MS = 5000;
+    // Idle longer than this and a NAT (the emulator's included) may have dropped it
+    private static final long MAX_IDLE_MS = 30_000;
+    // GET lines per write; the replies (~20 bytes each) stay well under a socket buffer
+    private static final int WINDOW = 256;
+    // Below this a batch isn't worth splitting across connections
+    private static final int MIN_SLICE = 64;
+
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final ExecutorService slices;
+
+    // Guarded by idle
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    public BlacklistTcpClient() {
+        this(DEFAULT_HOST, DEFAULT_PORT, DEFAULT_CONNECTIONS);
+    }
+
+    public BlacklistTcpClient(String host, int port, int maxConnections) {
+        this.address = InetSocketAddress.createUnresolved(host, port);
+        this.maxConnections = Math.max(1, maxConnections);
+        this.slices = Executors.newFixedThreadPool(this.maxConnections);
+    }
+
+    /* =========================
+       API
+       ========================= */
+
+    /**
+     * Whether each URL is on the server's blacklist, in input order. A URL the
+     * server can't take (empty, containing whitespace, or rejected with 400) is
+     * reported as not blacklisted.
+     */
+    public List<Boolean> check(List<String> urls) throws IOException {
+        Boolean[] out = new Boolean[urls.size()];
+        Arrays.fill(out, Boolean.FALSE);
+        if (urls.isEmpty()) return Arrays.asList(out);
+
+        int parts = Math.min(maxConnections, Math.max(1, urls.size() / MIN_SLICE));
+        int per = (urls.size() + parts - 1) / parts;
+        if (parts == 1) {
+            checkSlice(urls, 0, urls.size(), out);
+            return Arrays.asList(out);
+        }
+
+        List<Future<Void>> pending = new ArrayList<>(parts);
+        for (int from = 0; from < urls.size(); from += per) {
+            final int start = from;
+            final int end = Math.min(urls.size(), from + per);
+            pending.add(slices.submit(() -> {
+                checkSlice(urls, start, end, out);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<Void> f : pending) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (failure == null) {
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        if (failure != null) throw failure;
+        return Arrays.asList(out);
+    }
+
+    public boolean check(String url) throws IOException {
+        List<String> one = new ArrayList<>(1);
+        one.add(url);
+        return check(one).get(0);
+    }
+
+    /** POST: true once the server has the URL (201). */
+    public boolean add(String url) throws IOException {
+        return "201 Created".equals(write("POST", url));
+    }
+
+    /** DELETE: true if the server had the URL (204), false if not (404). */
+    public boolean remove(String url) throws IOException {
+        return "204 No Content".equals(write("DELETE", url));
+    }
+
+    @Override
+    public void close() {
+        List<Connection> drained;
+        synchronized (idle) {
+            closed = true;
+            drained = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (Connection c : drained) c.close();
+        slices.shutdownNow();
+    }
+
+    /* =========================
+       Pipelining
+       ========================= */
+
+    private void checkSlice(List<String> urls, int from, int to, Boolean[] out) throws IOException {
+        Connection c = borrow();
+        try {
+            checkSlice(c, urls, from, to, out);
+        } catch (IOException e) {
+            if (!c.reused) throw e;
+            // Stale pooled connection: once more on a fresh one (GETs are safe to repeat)
+            checkSlice(open(), urls, from, to, out);
+        }
+    }
+
+    private void checkSlice(Connection c, List<String> urls, int from, int to, Boolean[] out) throws IOException {
+        boolean ok = false;
+        try {
+            // Indexes of the URLs sent in the current window, in send order
+            int[] sent = new int[WINDOW];
+            int i = from;
+            while (i < to) {
+                int n = 0;
+                c.out.clear();
+                while (i < to && n < WINDOW) {
+                    String url = urls.get(i);
+                    if (sendable(url)) {
+                        c.put("GET " + url + "\n");
+                        sent[n++] = i;
+                    }
+                    i++;
+                }
+                if (n == 0) continue;
+                c.flush();
+                for (int k = 0; k < n; k++) out[sent[k]] = c.readGetReply();
+            }
+            ok = true;
+        } finally {
+            if (ok) giveBack(c);
+            else c.close();
+        }
+    }
+
+    /** One command, one reply. Not retried: a repeated DELETE would answer 404. */
+    private String write(String command, String url) throws IOException {
+        if (!sendable(url)) return "400 Bad Request";
+        Connection c = borrow();
+        boolean ok = false;
+        try {
+            c.out.clear();
+            c.put(command + " " + url + "\n");
+            c.flush();
+            String status = c.readLine();
+            ok = true;
+            return status;
+        } finally {
+            if (ok) giveBack(c);
+            else c.close();
+        }
+    }
+
+    // An empty line ends the session and whitespace splits the command: never send either
+    private static boolean sendable(String url) {
+        if (url == null || url.isEmpty()) return false;
+        for (int i = 0; i < url.length(); i++) {
+            char ch = url.charAt(i);
+            if (Character.isWhitespace(ch) || Character.isISOControl(ch)) return false;
+        }
+        return true;
+    }
+
+    /* =========================
+       Pool
+       ========================= */
+
+    private Connection borrow() throws IOException {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Connection c;
+            synchronized (idle) {
+                if (closed) throw new IOException("client closed");
+                c = idle.pollFirst();
+            }
+            if (c == null) return open();
+            if (now - c.lastUsed < MAX_IDLE_MS && c.channel.isOpen()) {
+                c.reused = true;
+                return c;
+            }
+            c.close();
+        }
+    }
+
+    private void giveBack(Connection c) {
+        c.lastUsed = System.currentTimeMillis();
+        boolean keep;
+        synchronized (idle) {
+            keep = !closed && idle.size() < maxConnections;
+            if (keep) idle.addFirst(c);
+        }
+        if (!keep) c.close();
+    }
+
+    private Connection open() throws IOException {
+        // Resolved per connect: the address was created unresolved so construction never does DNS
+        InetSocketAddress target = new InetSocketAddress(address.getHostString(), address.getPort());
+        if (target.isUnresolved()) throw new IOException("unknown host " + address.getHostString());
+        SocketChannel ch = SocketChannel.open();
+        Selector sel = null;
+        try {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            sel = Selector.open();
+            ch.register(sel, SelectionKey.OP_CONNECT);
+            if (!ch.connect(target)) {
+                if (sel.select(CONNECT_TIMEOUT_MS) == 0) throw new IOException("connect timed out");
+                ch.finishConnect();
+            }
+            return new Connection(ch, sel);
+        } catch (IOException e) {
+            Log.w(TAG, "connect " + address.getHostString() + ":" + address.getPort() + " failed: " + e.getMessage());
+            closeQuietly(ch);
+            if (sel != null) closeQuietly(sel);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /* =========================
+       Connection
+       ========================= */
+
+    /** Non-blocking channel driven through its own selector, so reads and writes can time out. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final Selector selector;
+        long lastUsed = System.currentTimeMillis();
+        boolean reused;
+        ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+        final ByteBuffer in = ByteBuffer.allocate(8 * 1024);
+        private final StringBuilder line = new StringBuilder();
+
+        Connection(SocketChannel channel, Selector selector) {
+            this.channel = channel;
+            this.selector = selector;
+            in.flip(); // empty, in read mode
+        }
+
+        void put(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < b.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + b.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(b);
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            SelectionKey key = channel.keyFor(selector);
+            while (out.hasRemaining()) {
+                if (channel.write(out) > 0) continue;
+                key.interestOps(SelectionKey.OP_WRITE);
+                if (selector.select(IO_TIMEOUT_MS) == 0) throw new IOException("write timed out");
+                selector.selectedKeys().clear();
+            }
+        }
+
+        /** "200 Ok", "", then "true true" only when both the filter and the list have it. */
+        Boolean readGetReply() throws IOException {
+            String status = readLine();
+            if (!"200 Ok".equals(status)) return Boolean.FALSE; // 400: not a URL to the server
+            readLine();
+            return "true true".equals(readLine().trim());
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                while (in.hasRemaining()) {
+                    char ch = (char) (in.get() & 0xff);
+                    if (ch == '\n') return line.toString();
+                    line.append(ch);
+                }
+                fill();
+            }
+        }
+
+        private void fill() throws IOException {
+            in.clear();
+            SelectionKey key = channel.keyFor(selector);
+            while (true) {
+                int n = channel.read(in);
+                if (n > 0) break;
+                if (n < 0) throw new IOException("server closed the connection");
+                key.interestOps(SelectionKey.OP_READ);
+                if (selector.select(IO_TIMEOUT_MS) == 0) throw new IOException("read timed out");
+                selector.selectedKeys().clear();
+            }
+            in.flip();
+        }
+
+        void close() {
+            try {
+                // An empty line ends the server session cleanly
+                if (channel.isConnected()) channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            } catch (IOException ignored) {
+            }
+            closeQuietly(selector);
+            closeQuietly(channel);
+        }
+    }
+}
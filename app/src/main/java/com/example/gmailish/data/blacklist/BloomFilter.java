@@ -0,0 +1,152 @@
+package com.example.gmailish.data.blacklist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter over strings: {@code bits} bits in a long[] and {@code hashes}
+ * probes per item. Probes use double hashing (h1 + i*h2) of one 64-bit hash,
+ * so a check is k bit tests with no allocation beyond the UTF-8 bytes.
+ *
+ * No false negatives: mightContain == false means the item was never added.
+ * Not thread-safe; BlacklistFilter guards it.
+ *
+ * File layout (little endian), read and written through a memory map:
+ *   int magic, int version, int bits, int hashes, then bits/64 longs.
+ */
+public final class BloomFilter {
+
+    private static final int MAGIC = 0x47424c46; // "GBLF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final int bits;
+    private final int hashes;
+    private final long[] words;
+
+    public BloomFilter(int bits, int hashes) {
+        if (bits <= 0 || hashes <= 0) throw new IllegalArgumentException("bits=" + bits + " hashes=" + hashes);
+        // Whole words, so the bitset maps 1:1 onto the file
+        this.words = new long[(bits + 63) >>> 6];
+        this.bits = words.length << 6;
+        this.hashes = hashes;
+    }
+
+    private BloomFilter(int bits, int hashes, long[] words) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.words = words;
+    }
+
+    /** Sized for {@code capacity} items at false-positive rate {@code fpp}. */
+    public static BloomFilter forCapacity(int capacity, double fpp) {
+        int n = Math.max(1, capacity);
+        double m = -n * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        int k = (int) Math.max(1, Math.round(m / n * Math.log(2)));
+        return new BloomFilter((int) Math.min(Integer.MAX_VALUE - 63, Math.ceil(m)), k);
+    }
+
+    public int bitCount() { return bits; }
+    public int hashCount() { return hashes; }
+
+    public void add(String item) {
+        long h1 = hash(item);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String item) {
+        long h1 = hash(item);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Fraction of bits set; the false-positive rate is about this to the power k. */
+    public double fillRatio() {
+        long set = 0;
+        for (long w : words) set += Long.bitCount(w);
+        return (double) set / bits;
+    }
+
+    public BloomFilter copy() {
+        return new BloomFilter(bits, hashes, words.clone());
+    }
+
+    /* =========================
+       Persistence (mmap)
+       ========================= */
+
+    /** Write to {@code file} in one mapped region; callers rename a temp file over the real one. */
+    public void writeTo(File file) throws IOException {
+        long size = HEADER_BYTES + (long) words.length * 8;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel ch = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(MAGIC).putInt(VERSION).putInt(bits).putInt(hashes);
+            map.asLongBuffer().put(words);
+            map.force();
+        }
+    }
+
+    /** Null if the file is missing, truncated or from another format version. */
+    public static BloomFilter readFrom(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_BYTES) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) return null;
+            int bits = map.getInt();
+            int hashes = map.getInt();
+            if (bits <= 0 || (bits & 63) != 0 || hashes <= 0) return null;
+            long[] words = new long[bits >>> 6];
+            if (map.remaining() < (long) words.length * 8) return null;
+            // One bulk copy out of the page cache, no per-word reads
+            map.asLongBuffer().get(words);
+            return new BloomFilter(bits, hashes, words);
+        }
+    }
+
+    /* =========================
+       Hashing
+       ========================= */
+
+    private int index(long h) {
+        return (int) Long.remainderUnsigned(h, bits);
+    }
+
+    // FNV-1a over the UTF-8 bytes (same bytes on every platform and run)
+    private static long hash(String item) {
+        byte[] b = item.getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte x : b) {
+            h ^= x & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Second probe stride from the first hash (MurmurHash3 finalizer); odd so it never sticks
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h | 1;
+    }
+}
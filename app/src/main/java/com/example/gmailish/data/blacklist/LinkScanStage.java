@@ -0,0 +1,228 @@
+package com.example.gmailish.data.blacklist;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.example.gmailish.data.dao.LinkScanDao;
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.LinkVerdictEntity;
+import com.example.gmailish.data.entity.MailLinkEntity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background link scan: every stored mail gets a verdict row (its links and
+ * how many are blacklisted), so the mail view reads a cached answer instead
+ * of scanning on open.
+ *
+ * Triggers (createTriggers) queue a mail in link_scan_queue when it is
+ * inserted or its subject or body changes (dropping the old verdict). Only
+ * queue writes wake a sweep, so read/star toggles cost nothing, and the sweep
+ * scans the queued rows in batches, by primary key. Per batch, links are extracted in one pass per mail (Links),
+ * the distinct URLs go through the Bloom filter, and only possible hits are
+ * confirmed with one IN query. Blacklist changes re-judge stored links
+ * (LinkScanDao.rejudgeLinksTo), they don't rescan.
+ */
+public final class LinkScanStage {
+
+    private static final String TAG = "LinkScanStage";
+
+    private static final int BATCH = 200;
+    // SQLite bound-variable limit is 999 on older devices
+    private static final int IN_CHUNK = 500;
+
+    private static volatile LinkScanStage INSTANCE;
+
+    public static LinkScanStage get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LinkScanStage.class) {
+                if (INSTANCE == null) {
+                    Context app = context.getApplicationContext();
+                    INSTANCE = new LinkScanStage(AppDbProvider.get(app), BlacklistFilter.get(app));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Result of scanning text that isn't stored (compose). */
+    public static final class Verdict {
+        public final int linkCount;
+        public final List<String> blacklisted;
+
+        Verdict(int linkCount, List<String> blacklisted) {
+            this.linkCount = linkCount;
+            this.blacklisted = blacklisted;
+        }
+    }
+
+    private final AppDatabase db;
+    private final LinkScanDao dao;
+    private final BlacklistFilter filter;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean sweepQueued = new AtomicBoolean(false);
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    // The sweep's own dequeue wakes one more sweep, which finds the queue empty
+    private final InvalidationTracker.Observer onMailsQueued = new InvalidationTracker.Observer("link_scan_queue") {
+        @Override public void onInvalidated(@NonNull Set<String> tables) {
+            requestSweep();
+        }
+    };
+
+    LinkScanStage(AppDatabase db, BlacklistFilter filter) {
+        this.db = db;
+        this.dao = db.linkScanDao();
+        this.filter = filter;
+    }
+
+    /** Once per process (GmailishApp): follow the queue and catch up on what is already in it. */
+    public void start() {
+        if (!started.compareAndSet(false, true)) return;
+        filter.warmUp();
+        worker.execute(() -> {
+            // addObserver touches the database: not on main
+            db.getInvalidationTracker().addObserver(onMailsQueued);
+        });
+        requestSweep();
+    }
+
+    /** Coalesced: a burst of writes costs one sweep (plus one if a write lands during it). */
+    public void requestSweep() {
+        if (sweepQueued.compareAndSet(false, true)) worker.execute(this::sweep);
+    }
+
+    /** Cached verdict, scanning the mail now if the sweep hasn't reached it. Blocking. */
+    public LinkVerdictEntity verdictFor(String mailId) {
+        LinkVerdictEntity v = dao.verdictForMailSync(mailId);
+        if (v != null) return v;
+        return db.runInTransaction(() -> {
+            LinkScanDao.ScanInput in = dao.scanInputSync(mailId);
+            if (in == null) return null;
+            List<LinkScanDao.ScanInput> one = new ArrayList<>();
+            one.add(in);
+            scanBatch(one);
+            return dao.verdictForMailSync(mailId);
+        });
+    }
+
+    /** Scan unsaved text (a mail being composed) without storing anything. Blocking. */
+    public Verdict scanText(String text) {
+        Set<String> links = new LinkedHashSet<>(Links.extract(text));
+        Set<String> bad = blacklisted(links);
+        List<String> hits = new ArrayList<>();
+        for (String u : links) if (bad.contains(u)) hits.add(u);
+        return new Verdict(links.size(), hits);
+    }
+
+    /* =========================
+       Sweep
+       ========================= */
+
+    private void sweep() {
+        // Clear first: a write during the sweep must queue another one
+        sweepQueued.set(false);
+        long t0 = System.currentTimeMillis();
+        int scanned = 0;
+        try {
+            while (true) {
+                // Read and write in one transaction: an edit can't slip between them
+                int n = db.runInTransaction(() -> {
+                    List<LinkScanDao.ScanInput> batch = dao.queuedSync(BATCH);
+                    if (!batch.isEmpty()) scanBatch(batch);
+                    return batch.size();
+                });
+                scanned += n;
+                if (n < BATCH) break;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "sweep failed after " + scanned + " mails: " + e.getMessage());
+            return;
+        }
+        if (scanned > 0) {
+            Log.d(TAG, "sweep: " + scanned + " mails in " + (System.currentTimeMillis() - t0) + "ms");
+        }
+    }
+
+    private void scanBatch(List<LinkScanDao.ScanInput> batch) {
+        long now = System.currentTimeMillis();
+        List<Set<String>> perMail = new ArrayList<>(batch.size());
+        Set<String> distinct = new LinkedHashSet<>();
+        for (LinkScanDao.ScanInput in : batch) {
+            // Counted as distinct URLs, like rejudgeLinksTo recounts them from mail_links
+            Set<String> links = new LinkedHashSet<>(Links.extract(join(in.subject, in.content)));
+            perMail.add(links);
+            distinct.addAll(links);
+        }
+        Set<String> bad = blacklisted(distinct);
+
+        List<Long> rowIds = new ArrayList<>(batch.size());
+        List<MailLinkEntity> rows = new ArrayList<>();
+        List<LinkVerdictEntity> verdicts = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            long rowId = batch.get(i).rowId;
+            Set<String> links = perMail.get(i);
+            int badCount = 0;
+            String first = null;
+            for (String u : links) {
+                rows.add(new MailLinkEntity(rowId, u));
+                if (bad.contains(u)) {
+                    if (first == null) first = u;
+                    badCount++;
+                }
+            }
+            rowIds.add(rowId);
+            verdicts.add(new LinkVerdictEntity(rowId, links.size(), badCount, first, now));
+        }
+        dao.saveScan(rowIds, rows, verdicts);
+    }
+
+    /** Bloom filter first; only its possible hits reach the table, in chunked IN queries. */
+    private Set<String> blacklisted(Set<String> urls) {
+        List<String> maybe = new ArrayList<>();
+        for (String u : urls) if (filter.mightContain(u)) maybe.add(u);
+        Set<String> confirmed = new HashSet<>();
+        for (int i = 0; i < maybe.size(); i += IN_CHUNK) {
+            confirmed.addAll(dao.blacklistedAmong(maybe.subList(i, Math.min(maybe.size(), i + IN_CHUNK))));
+        }
+        return confirmed;
+    }
+
+    private static String join(String subject, String content) {
+        return (subject != null ? subject : "") + " " + (content != null ? content : "");
+    }
+
+    /* =========================
+       Schema
+       ========================= */
+
+    /**
+     * Queue a mail when it is inserted or its text changes (dropping its verdict
+     * and links); a deleted mail leaves the queue with them. Idempotent.
+     */
+    public static void createTriggers(SupportSQLiteDatabase db) {
+        String drop = "DELETE FROM link_verdicts WHERE mailRowId = OLD.rowId; " +
+                "DELETE FROM mail_links WHERE mailRowId = OLD.rowId;";
+        String queue = "INSERT OR IGNORE INTO link_scan_queue (mailRowId) VALUES (NEW.rowId);";
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS link_scan_queue_after_insert AFTER INSERT ON mails " +
+                "BEGIN " + queue + " END");
+        // Full-row updates rewrite every column: fire only on a real change
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS link_scan_queue_after_update AFTER UPDATE OF subject, content ON mails " +
+                "WHEN OLD.subject IS NOT NEW.subject OR OLD.content IS NOT NEW.content " +
+                "BEGIN " + drop + " " + queue + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS link_scan_queue_after_delete AFTER DELETE ON mails " +
+                "BEGIN " + drop + " DELETE FROM link_scan_queue WHERE mailRowId = OLD.rowId; END");
+    }
+}
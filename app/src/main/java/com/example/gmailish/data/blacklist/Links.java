@@ -0,0 +1,70 @@
+package com.example.gmailish.data.blacklist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * URLs in mail text, found and canonicalized the way the server does
+ * (mailsController.extractUrls), so a local check agrees with the server's
+ * spam decision. The blacklist itself compares URLs as exact strings (as
+ * url.cpp does), so canonical means exactly what the server extracts: case
+ * is kept, bare "www." gets "http://", nothing else is rewritten.
+ *
+ * One pass over the text: each character is looked at a bounded number of
+ * times, unlike the server's regex, which backtracks over trailing
+ * punctuation and can go quadratic on long runs of it.
+ */
+public final class Links {
+
+    private Links() {}
+
+    /** Distinct URLs in order of appearance. */
+    public static List<String> extract(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null || text.isEmpty()) return out;
+        Set<String> seen = new HashSet<>();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            // Same start as the regex: a word boundary, then "http://", "https://" or "www."
+            int prefix = (i == 0 || !isWordChar(text.charAt(i - 1))) ? prefixLength(text, i) : 0;
+            if (prefix == 0) {
+                i++;
+                continue;
+            }
+            int end = i + prefix;
+            while (end < n && !isStop(text.charAt(end))) end++;
+            int stop = end;
+            // The regex's closing \b: drop trailing non-word characters
+            while (end > i + prefix && !isWordChar(text.charAt(end - 1))) end--;
+            if (end > i + prefix) {
+                String url = text.substring(i, end);
+                if (url.startsWith("www.")) url = "http://" + url;
+                if (seen.add(url)) out.add(url);
+            }
+            // Nothing after this point in the run can start another URL
+            i = Math.max(stop, i + 1);
+        }
+        return out;
+    }
+
+    /** Length of "http://", "https://" or "www." at i (case-insensitive), else 0. */
+    private static int prefixLength(String s, int i) {
+        if (s.regionMatches(true, i, "http://", 0, 7)) return 7;
+        if (s.regionMatches(true, i, "https://", 0, 8)) return 8;
+        if (s.regionMatches(true, i, "www.", 0, 4)) return 4;
+        return 0;
+    }
+
+    // Ends a URL: whitespace and the characters the server's regex excludes
+    private static boolean isStop(char c) {
+        return Character.isWhitespace(c) || c == '"' || c == '\'' || c == '<' || c == '>' || c == '(' || c == ')';
+    }
+
+    // JavaScript's \w: ASCII letters, digits and underscore
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
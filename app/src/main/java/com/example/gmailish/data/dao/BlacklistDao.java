@@ -16,9 +16,15 @@ public interface BlacklistDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void upsert(BlacklistEntity entry);
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(List<BlacklistEntity> entries);
+
     @Query("DELETE FROM blacklist WHERE url = :url")
     int delete(String url);
 
+    @Query("DELETE FROM blacklist WHERE url IN (:urls)")
+    int deleteAll(List<String> urls);
+
     // Optional: keep LiveData if some UI observes it
     @Query("SELECT * FROM blacklist ORDER BY url ASC")
     LiveData<List<BlacklistEntity>> observeAll();
@@ -27,6 +33,10 @@ public interface BlacklistDao {
     @Query("SELECT * FROM blacklist ORDER BY url ASC")
     List<BlacklistEntity> getAllSync();
 
+    // Bloom filter build: just the keys
+    @Query("SELECT url FROM blacklist")
+    List<String> getAllUrlsSync();
+
     @Query("SELECT EXISTS(SELECT 1 FROM blacklist WHERE url = :url LIMIT 1)")
     boolean exists(String url);
 }
@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
 import com.example.gmailish.data.entity.LabelEntity;
 
@@ -12,11 +13,35 @@ import java.util.List;
 @Dao
 public interface LabelDao {
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void upsert(LabelEntity label);
+    // IGNORE, never REPLACE: a replaced row would get a new id and orphan its cross-refs
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(LabelEntity label);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void upsertAll(List<LabelEntity> labels);
+    // Null name keeps the stored value
+    @Query("UPDATE labels SET name = COALESCE(:name, name) " +
+            "WHERE ownerId IS :ownerId AND labelKey = :labelKey")
+    int updateByKey(String ownerId, String labelKey, String name);
+
+    /** Insert or update by (ownerId, labelKey), keeping the row id. Returns the id. */
+    @Transaction
+    default int upsert(LabelEntity label) {
+        Integer id = getIdByKey(label.ownerId, label.labelKey);
+        if (id == null) return (int) insert(label);
+        updateByKey(label.ownerId, label.labelKey, label.name);
+        return id;
+    }
+
+    @Transaction
+    default void upsertAll(List<LabelEntity> labels) {
+        for (LabelEntity l : labels) upsert(l);
+    }
+
+    // IS, not =: a label saved without an owner has a NULL ownerId
+    @Query("SELECT id FROM labels WHERE ownerId IS :ownerId AND labelKey = :labelKey LIMIT 1")
+    Integer getIdByKey(String ownerId, String labelKey);
+
+    @Query("SELECT * FROM labels WHERE ownerId IS :ownerId AND labelKey = :labelKey LIMIT 1")
+    LabelEntity getByKey(String ownerId, String labelKey);
 
     // Existing: list by owner (generic)
     @Query("SELECT * FROM labels WHERE ownerId = :ownerId ORDER BY name ASC")
@@ -30,7 +55,15 @@ public interface LabelDao {
     @Query("SELECT * FROM labels WHERE ownerId = :ownerId AND name = :name LIMIT 1")
     LabelEntity getByName(String ownerId, String name);
 
-    // Delete by id (used by LabelRepository.deleteLabel)
-    @Query("DELETE FROM labels WHERE id = :labelId")
-    int deleteById(String labelId);
+    // O(1) rename: cross-refs point at the int id and are untouched
+    @Query("UPDATE labels SET name = :name WHERE id = :id")
+    int rename(int id, String name);
+
+    // Swap a local placeholder key for the server id, keeping the row and its mails
+    @Query("UPDATE labels SET labelKey = :newKey WHERE ownerId IS :ownerId AND labelKey = :oldKey")
+    int rekey(String ownerId, String oldKey, String newKey);
+
+    // Delete by key (used by LabelRepository.deleteLabel)
+    @Query("DELETE FROM labels WHERE ownerId IS :ownerId AND labelKey = :labelKey")
+    int deleteByKey(String ownerId, String labelKey);
 }
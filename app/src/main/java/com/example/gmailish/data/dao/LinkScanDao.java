@@ -0,0 +1,80 @@
+package com.example.gmailish.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import com.example.gmailish.data.entity.LinkVerdictEntity;
+import com.example.gmailish.data.entity.MailLinkEntity;
+
+import java.util.List;
+
+@Dao
+public interface LinkScanDao {
+
+    /** What the scanner reads of a mail. */
+    class ScanInput {
+        public long rowId;
+        public String subject;
+        public String content;
+    }
+
+    // Queued by the triggers: new mails, or edited since their last scan
+    @Query("SELECT m.rowId AS rowId, m.subject AS subject, m.content AS content FROM link_scan_queue q " +
+            "JOIN mails m ON m.rowId = q.mailRowId ORDER BY q.mailRowId LIMIT :limit")
+    List<ScanInput> queuedSync(int limit);
+
+    @Query("SELECT rowId, subject, content FROM mails WHERE id = :mailId LIMIT 1")
+    ScanInput scanInputSync(String mailId);
+
+    // Batch confirm of the Bloom filter's possible hits
+    @Query("SELECT url FROM blacklist WHERE url IN (:urls)")
+    List<String> blacklistedAmong(List<String> urls);
+
+    @Query("SELECT v.* FROM link_verdicts v JOIN mails m ON m.rowId = v.mailRowId WHERE m.id = :mailId LIMIT 1")
+    LinkVerdictEntity verdictForMailSync(String mailId);
+
+    @Query("DELETE FROM mail_links WHERE mailRowId IN (:rowIds)")
+    int clearLinks(List<Long> rowIds);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void addLinks(List<MailLinkEntity> links);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void putVerdicts(List<LinkVerdictEntity> verdicts);
+
+    @Query("DELETE FROM link_scan_queue WHERE mailRowId IN (:rowIds)")
+    int dequeue(List<Long> rowIds);
+
+    /** Replace the links and verdicts of a scanned batch and take it off the queue. */
+    @Transaction
+    default void saveScan(List<Long> rowIds, List<MailLinkEntity> links, List<LinkVerdictEntity> verdicts) {
+        clearLinks(rowIds);
+        if (!links.isEmpty()) addLinks(links);
+        putVerdicts(verdicts);
+        dequeue(rowIds);
+    }
+
+    /**
+     * A URL was added to or removed from the blacklist: recount the verdicts of
+     * the mails that link to it, from their stored links. No rescanning.
+     */
+    @Query("UPDATE link_verdicts SET " +
+            "blacklistedCount = (SELECT COUNT(*) FROM mail_links l JOIN blacklist b ON b.url = l.url " +
+            "WHERE l.mailRowId = link_verdicts.mailRowId), " +
+            "firstBlacklisted = (SELECT l.url FROM mail_links l JOIN blacklist b ON b.url = l.url " +
+            "WHERE l.mailRowId = link_verdicts.mailRowId LIMIT 1) " +
+            "WHERE mailRowId IN (SELECT mailRowId FROM mail_links WHERE url = :url)")
+    int rejudgeLinksTo(String url);
+
+    /** rejudgeLinksTo for a batch of changed URLs (a sync diff). */
+    @Query("UPDATE link_verdicts SET " +
+            "blacklistedCount = (SELECT COUNT(*) FROM mail_links l JOIN blacklist b ON b.url = l.url " +
+            "WHERE l.mailRowId = link_verdicts.mailRowId), " +
+            "firstBlacklisted = (SELECT l.url FROM mail_links l JOIN blacklist b ON b.url = l.url " +
+            "WHERE l.mailRowId = link_verdicts.mailRowId LIMIT 1) " +
+            "WHERE mailRowId IN (SELECT mailRowId FROM mail_links WHERE url IN (:urls))")
+    int rejudgeLinksToAny(List<String> urls);
+}
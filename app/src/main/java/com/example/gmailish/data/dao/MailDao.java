@@ -4,32 +4,152 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.thread.ThreadKeys;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Dao
 public interface MailDao {
 
-    // Upserts (blocking; call on background thread)
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void upsert(MailEntity mail);
+    // IGNORE, never REPLACE: a replaced row would get a new rowId and orphan its cross-refs
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(MailEntity mail);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void upsertAll(List<MailEntity> mails);
+    @Update
+    int update(MailEntity mail);
+
+    @Query("SELECT rowId FROM mails WHERE id = :mailId LIMIT 1")
+    Long getRowId(String mailId);
+
+    /** What upsert needs to decide between insert, update and skip. */
+    class RowState {
+        public long rowId;
+        public long contentHash;
+        public String threadKey;
+        // Enough to tell whether threadKey was derived from this row (see upsertIfChanged)
+        public String senderId;
+        public String recipientId;
+        public String subject;
+    }
+
+    @Query("SELECT rowId, contentHash, threadKey, senderId, recipientId, subject FROM mails WHERE id = :mailId LIMIT 1")
+    RowState getRowState(String mailId);
+
+    /**
+     * Insert, or update only if the content hash differs. An unchanged mail costs
+     * one indexed read and no write, so observers are not invalidated.
+     * Sets mail.rowId either way. Returns true if a row was written.
+     */
+    @Transaction
+    default boolean upsertIfChanged(MailEntity mail) {
+        long hash = mail.computeContentHash();
+        mail.setContentHash(hash);
+        RowState state = getRowState(mail.getId());
+        if (mail.getThreadKey() == null) {
+            // A stored mail stays in a thread it joined by reply (or got from the
+            // server). A key merely derived from the stored row is derived again:
+            // the server copy of a local sent mail names the recipient by user
+            // id, not by the address typed. Drafts always re-derive theirs.
+            boolean keep = state != null && state.threadKey != null && !mail.isDraft()
+                    && !state.threadKey.equals(ThreadKeys.derive(state.senderId, state.recipientId, state.subject));
+            mail.setThreadKey(keep ? state.threadKey : ThreadKeys.derive(mail));
+        }
+        if (state == null) {
+            mail.setRowId(insert(mail));
+            return true;
+        }
+        mail.setRowId(state.rowId);
+        if (state.contentHash == hash && mail.getThreadKey().equals(state.threadKey)) return false;
+        update(mail);
+        return true;
+    }
+
+    // Upserts (blocking; call on background thread). Keyed by server id, keeps the rowId.
+    @Transaction
+    default long upsert(MailEntity mail) {
+        upsertIfChanged(mail);
+        return mail.getRowId();
+    }
+
+    /** Like upsertAll, but returns the rowIds that were written (a mutable list). */
+    @Transaction
+    default List<Long> upsertChanged(List<MailEntity> mails) {
+        List<Long> written = new ArrayList<>();
+        for (MailEntity m : mails) if (upsertIfChanged(m)) written.add(m.getRowId());
+        return written;
+    }
+
+    /** Returns how many rows were written; the rest were unchanged. */
+    @Transaction
+    default int upsertAll(List<MailEntity> mails) {
+        int written = 0;
+        for (MailEntity m : mails) if (upsertIfChanged(m)) written++;
+        return written;
+    }
+
+    @Query("UPDATE mails SET id = :serverId WHERE id = :localId")
+    int rekey(String localId, String serverId);
+
+    @Query("DELETE FROM mail_label_cross_ref WHERE mailRowId = :rowId")
+    int clearLabelsForRow(long rowId);
+
+    /**
+     * Swap a local id for the server id in place: same rowId, so indexes on other
+     * columns and every cross-ref stay as they are. If the server row is already
+     * here (pushed by the event stream first) the local copy is dropped instead.
+     * Returns false when no row was rekeyed.
+     */
+    @Transaction
+    default boolean remapId(String localId, String serverId) {
+        if (localId.equals(serverId)) return true;
+        Long local = getRowId(localId);
+        if (local == null) return false;
+        if (getRowId(serverId) != null) {
+            clearLabelsForRow(local);
+            deleteById(localId);
+            return false;
+        }
+        return rekey(localId, serverId) > 0;
+    }
 
     // Simple updates (blocking)
-    @Query("UPDATE mails SET read = :read WHERE id = :mailId")
+    // Partial updates reset contentHash so the next sync rewrites the row
+    @Query("UPDATE mails SET read = :read, contentHash = 0 WHERE id = :mailId")
     int setRead(String mailId, boolean read);
 
-    @Query("UPDATE mails SET starred = :starred WHERE id = :mailId")
+    @Query("UPDATE mails SET starred = :starred, contentHash = 0 WHERE id = :mailId")
     int setStarred(String mailId, boolean starred);
 
     // (Optional) quick edit helpers for drafts — not required but convenient
-    @Query("UPDATE mails SET subject = :subject, content = :content WHERE id = :mailId")
+    @Query("UPDATE mails SET subject = :subject, content = :content, contentHash = 0 WHERE id = :mailId")
     int updateSubjectAndContent(String mailId, String subject, String content);
 
+    @Query("SELECT ownerId FROM mails WHERE id = :mailId LIMIT 1")
+    String getOwnerId(String mailId);
+
+    /**
+     * The user id behind an address this owner has written to, from a sent
+     * mail the server already returned (local copies carry the address). One
+     * read per send, over the owner's rows.
+     */
+    @Query("SELECT recipientId FROM mails WHERE ownerId = :ownerId AND senderId = :ownerId " +
+            "AND recipientEmail = :email COLLATE NOCASE AND recipientId <> recipientEmail " +
+            "ORDER BY timestamp DESC LIMIT 1")
+    String recipientIdForEmail(String ownerId, String email);
+
+    @Query("SELECT threadKey FROM mails WHERE id = :mailId LIMIT 1")
+    String getThreadKey(String mailId);
+
+    @Query("UPDATE mails SET threadKey = :threadKey WHERE id = :mailId")
+    int setThreadKey(String mailId, String threadKey);
+
     // Delete by id (blocking)
     @Query("DELETE FROM mails WHERE id = :mailId")
     int deleteById(String mailId);
@@ -38,16 +158,9 @@ public interface MailDao {
     @Query("SELECT * FROM mails WHERE ownerId = :ownerId ORDER BY timestamp DESC")
     List<MailEntity> getMailsByOwnerSync(String ownerId);
 
-    @Query(
-            "SELECT * FROM mails " +
-                    "WHERE ownerId = :ownerId AND (" +
-                    " subject LIKE :query OR " +
-                    " content LIKE :query OR " +
-                    " senderName LIKE :query OR " +
-                    " recipientEmail LIKE :query) " +
-                    "ORDER BY timestamp DESC"
-    )
-    List<MailEntity> searchMailsSync(String ownerId, String query);
+    /** Compiled search (see SearchQuery). */
+    @RawQuery
+    List<MailEntity> searchSync(SupportSQLiteQuery query);
 
     @Query("SELECT * FROM mails WHERE ownerId = :ownerId AND starred = 1 ORDER BY timestamp DESC")
     List<MailEntity> getStarredByOwnerSync(String ownerId);
@@ -56,7 +169,14 @@ public interface MailDao {
     @Query("SELECT * FROM mails WHERE id = :mailId LIMIT 1")
     MailEntity getByIdSync(String mailId);
 
+    // Any order; callers that care reorder by rowId
+    @Query("SELECT * FROM mails WHERE rowId IN (:rowIds)")
+    List<MailEntity> getByRowIdsSync(List<Long> rowIds);
+
     // (Optional) bulk fetch by ids — useful sometimes for batch UI work
+    @Query("SELECT id FROM mails WHERE rowId IN (:rowIds)")
+    List<String> getIdsForRows(List<Long> rowIds);
+
     @Query("SELECT * FROM mails WHERE id IN (:ids)")
     List<MailEntity> getByIdsSync(List<String> ids);
 }
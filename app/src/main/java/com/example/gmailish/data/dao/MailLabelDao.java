@@ -16,28 +16,88 @@ public interface MailLabelDao {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     long add(MailLabelCrossRef ref);
 
-    @Query("DELETE FROM mail_label_cross_ref WHERE mailId = :mailId AND labelId = :labelId")
-    int remove(String mailId, String labelId);
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void addAll(List<MailLabelCrossRef> refs);
+
+    @Query("SELECT rowId FROM mails WHERE id = :mailId LIMIT 1")
+    Long rowIdFor(String mailId);
+
+    /** Link by server/local mail id. Returns -1 if the mail is not stored or already linked. */
+    default long link(String mailId, int labelId) {
+        Long rowId = rowIdFor(mailId);
+        if (rowId == null) return -1;
+        return add(new MailLabelCrossRef(rowId, labelId));
+    }
+
+    @Query("DELETE FROM mail_label_cross_ref WHERE labelId = :labelId " +
+            "AND mailRowId = (SELECT rowId FROM mails WHERE id = :mailId)")
+    int remove(String mailId, int labelId);
 
-    @Query("DELETE FROM mail_label_cross_ref WHERE mailId = :mailId")
+    @Query("DELETE FROM mail_label_cross_ref " +
+            "WHERE mailRowId = (SELECT rowId FROM mails WHERE id = :mailId)")
     int clearForMail(String mailId);
 
-    // NEW: clear all cross-refs for a given label (used by LabelRepository.deleteLabel)
+    @Query("DELETE FROM mail_label_cross_ref WHERE mailRowId = :mailRowId")
+    int clearForRow(long mailRowId);
+
+    @Query("DELETE FROM mail_label_cross_ref WHERE mailRowId = :mailRowId AND labelId IN (:labelIds)")
+    int removeForRow(long mailRowId, List<Integer> labelIds);
+
+    // The owner's mails under a label (pruned after a complete label fetch)
+    @Query("SELECT x.mailRowId FROM mail_label_cross_ref x INNER JOIN mails m ON m.rowId = x.mailRowId " +
+            "WHERE x.labelId = :labelId AND m.ownerId = :ownerId")
+    List<Long> getRowIdsForLabelSync(int labelId, String ownerId);
+
+    // The subset a server label query could have returned: optional recipient/sender
+    // match, and no link to any excluded label (trash, spam, ...)
+    @Query("SELECT x.mailRowId FROM mail_label_cross_ref x INNER JOIN mails m ON m.rowId = x.mailRowId " +
+            "WHERE x.labelId = :labelId AND m.ownerId = :ownerId " +
+            "AND (:recipientId IS NULL OR m.recipientId = :recipientId) " +
+            "AND (:senderId IS NULL OR m.senderId = :senderId) " +
+            "AND NOT EXISTS (SELECT 1 FROM mail_label_cross_ref e " +
+            "WHERE e.mailRowId = x.mailRowId AND e.labelId IN (:excludedLabelIds))")
+    List<Long> getListableRowIdsSync(int labelId, String ownerId, String recipientId,
+                                     String senderId, List<Integer> excludedLabelIds);
+
+    @Query("DELETE FROM mail_label_cross_ref WHERE labelId = :labelId AND mailRowId IN (:rowIds)")
+    int removeRowsFromLabel(int labelId, List<Long> rowIds);
+
+    @Query("SELECT labelId FROM mail_label_cross_ref WHERE mailRowId = :mailRowId")
+    List<Integer> getLabelIdsForRowSync(long mailRowId);
+
+    // Clear all cross-refs for a given label (used by LabelRepository.deleteLabel)
     @Query("DELETE FROM mail_label_cross_ref WHERE labelId = :labelId")
-    int clearForLabel(String labelId);
+    int clearForLabel(int labelId);
 
     // For listing mails by label
-    @Query("SELECT m.* FROM mails m INNER JOIN mail_label_cross_ref x ON m.id = x.mailId WHERE x.labelId = :labelId ORDER BY m.timestamp DESC")
-    List<MailEntity> getMailsForLabelSync(String labelId);
+    @Query("SELECT m.* FROM mails m INNER JOIN mail_label_cross_ref x ON m.rowId = x.mailRowId WHERE x.labelId = :labelId ORDER BY m.timestamp DESC")
+    List<MailEntity> getMailsForLabelSync(int labelId);
 
-    // NEW: get labels for a mail (used by offline mail detail building)
-    @Query("SELECT labelId FROM mail_label_cross_ref WHERE mailId = :mailId")
+    // Label keys for a mail (used by offline mail detail building)
+    @Query("SELECT l.labelKey FROM mails m " +
+            "INNER JOIN mail_label_cross_ref x ON x.mailRowId = m.rowId " +
+            "INNER JOIN labels l ON l.id = x.labelId WHERE m.id = :mailId")
     List<String> getLabelsForMailSync(String mailId);
+
+    class RowLabel {
+        public long mailRowId;
+        public String labelKey;
+    }
+
+    // Label keys for a page of list rows in one query (warms MailCache)
+    @Query("SELECT x.mailRowId AS mailRowId, l.labelKey AS labelKey FROM mail_label_cross_ref x " +
+            "INNER JOIN labels l ON l.id = x.labelId WHERE x.mailRowId IN (:rowIds)")
+    List<RowLabel> getLabelKeysForRowsSync(List<Long> rowIds);
+
+    @Query("SELECT x.labelId FROM mails m " +
+            "INNER JOIN mail_label_cross_ref x ON x.mailRowId = m.rowId WHERE m.id = :mailId")
+    List<Integer> getLabelIdsForMailSync(String mailId);
+
     @Query(
             "SELECT m.* FROM mails m " +
-                    "INNER JOIN mail_label_cross_ref x ON m.id = x.mailId " +
+                    "INNER JOIN mail_label_cross_ref x ON m.rowId = x.mailRowId " +
                     "WHERE x.labelId = :labelId AND m.ownerId = :ownerId " +
                     "ORDER BY m.timestamp DESC"
     )
-    List<MailEntity> getMailsForLabelSync(String labelId, String ownerId);
-}
\ No newline at end of file
+    List<MailEntity> getMailsForLabelSync(int labelId, String ownerId);
+}
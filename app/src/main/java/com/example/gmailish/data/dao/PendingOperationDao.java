@@ -27,4 +27,11 @@ public interface PendingOperationDao {
 
     @Query("DELETE FROM pending_operations WHERE id = :id")
     int delete(String id);
+
+    // Session expired: hold the op until a new token arrives (see TokenManager)
+    @Query("UPDATE pending_operations SET status = 'PARKED' WHERE id = :id")
+    int park(String id);
+
+    @Query("UPDATE pending_operations SET status = 'PENDING' WHERE status = 'PARKED'")
+    int unparkAll();
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.example.gmailish.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.SavedSearchEntity;
+import com.example.gmailish.data.entity.SavedSearchMember;
+
+import java.util.List;
+
+@Dao
+public interface SavedSearchDao {
+
+    @Insert
+    long insert(SavedSearchEntity search);
+
+    @Query("DELETE FROM saved_searches WHERE id = :id")
+    int delete(int id);
+
+    @Query("SELECT * FROM saved_searches")
+    List<SavedSearchEntity> getAllSync();
+
+    @Query("SELECT * FROM saved_searches WHERE id = :id LIMIT 1")
+    SavedSearchEntity getByIdSync(int id);
+
+    /** Drawer row: a saved search with its counts. */
+    class WithCounts {
+        public int id;
+        public String name;
+        public String query;
+        public int total;
+        public int unread;
+    }
+
+    @Query("SELECT s.id AS id, s.name AS name, s.query AS query, " +
+            "COUNT(m.rowId) AS total, COALESCE(SUM(m.read = 0), 0) AS unread " +
+            "FROM saved_searches s " +
+            "LEFT JOIN saved_search_members x ON x.searchId = s.id " +
+            "LEFT JOIN mails m ON m.rowId = x.mailRowId " +
+            "WHERE s.ownerId = :ownerId GROUP BY s.id ORDER BY s.name COLLATE NOCASE")
+    List<WithCounts> getWithCountsSync(String ownerId);
+
+    @Query("SELECT m.* FROM saved_search_members x INNER JOIN mails m ON m.rowId = x.mailRowId " +
+            "WHERE x.searchId = :searchId ORDER BY m.timestamp DESC")
+    List<MailEntity> getMailsSync(int searchId);
+
+    /* ===== Membership (see SavedSearchIndex) ===== */
+
+    /** Compiled SearchQuery.compileRowIds. */
+    @RawQuery
+    List<Long> matchRowIdsSync(SupportSQLiteQuery query);
+
+    @Query("SELECT mailRowId FROM saved_search_members WHERE searchId = :searchId AND mailRowId IN (:rowIds)")
+    List<Long> getMemberRowsSync(int searchId, List<Long> rowIds);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void addMembers(List<SavedSearchMember> members);
+
+    @Query("DELETE FROM saved_search_members WHERE searchId = :searchId AND mailRowId IN (:rowIds)")
+    int removeMembers(int searchId, List<Long> rowIds);
+
+    @Query("DELETE FROM saved_search_members WHERE searchId = :searchId")
+    int clearForSearch(int searchId);
+
+    @Query("DELETE FROM saved_search_members WHERE mailRowId = :mailRowId")
+    int clearForRow(long mailRowId);
+}
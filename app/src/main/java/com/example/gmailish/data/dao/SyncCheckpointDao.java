@@ -0,0 +1,21 @@
+package com.example.gmailish.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.example.gmailish.data.entity.SyncCheckpointEntity;
+
+@Dao
+public interface SyncCheckpointDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(SyncCheckpointEntity checkpoint);
+
+    @Query("SELECT * FROM sync_checkpoints WHERE ownerId = :ownerId LIMIT 1")
+    SyncCheckpointEntity get(String ownerId);
+
+    @Query("DELETE FROM sync_checkpoints WHERE ownerId = :ownerId")
+    int delete(String ownerId);
+}
@@ -0,0 +1,33 @@
+package com.example.gmailish.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.ThreadEntity;
+
+import java.util.List;
+
+/** Reads only: rows are written by the triggers in ThreadSummaries. */
+@Dao
+public interface ThreadDao {
+
+    // Conversations newest first, one row each
+    @Query("SELECT * FROM threads WHERE ownerId = :ownerId ORDER BY latestTimestamp DESC LIMIT :limit")
+    List<ThreadEntity> threadsForOwnerSync(String ownerId, int limit);
+
+    // Conversations with at least one mail under the label; the summary covers the whole thread
+    @Query("SELECT t.* FROM threads t " +
+            "JOIN (SELECT DISTINCT m.threadKey FROM mail_label_cross_ref x " +
+            "JOIN mails m ON m.rowId = x.mailRowId " +
+            "WHERE x.labelId = :labelId AND m.ownerId = :ownerId) k ON t.threadKey = k.threadKey " +
+            "WHERE t.ownerId = :ownerId ORDER BY t.latestTimestamp DESC")
+    List<ThreadEntity> threadsForLabelSync(int labelId, String ownerId);
+
+    @Query("SELECT * FROM threads WHERE ownerId = :ownerId AND threadKey = :threadKey LIMIT 1")
+    ThreadEntity getSync(String ownerId, String threadKey);
+
+    // One conversation oldest first, as it is read
+    @Query("SELECT * FROM mails WHERE ownerId = :ownerId AND threadKey = :threadKey ORDER BY timestamp ASC")
+    List<MailEntity> mailsInThreadSync(String ownerId, String threadKey);
+}
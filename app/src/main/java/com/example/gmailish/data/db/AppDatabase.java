@@ -1,35 +1,70 @@
 package com.example.gmailish.data.db;
 
+import android.database.Cursor;
+
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
 import com.example.gmailish.data.dao.BlacklistDao;
+import com.example.gmailish.data.blacklist.LinkScanStage;
 import com.example.gmailish.data.dao.LabelDao;
+import com.example.gmailish.data.dao.LinkScanDao;
 import com.example.gmailish.data.dao.MailDao;
 import com.example.gmailish.data.dao.MailLabelDao;
 import com.example.gmailish.data.dao.PendingOperationDao;
+import com.example.gmailish.data.dao.SavedSearchDao;
+import com.example.gmailish.data.dao.SyncCheckpointDao;
+import com.example.gmailish.data.dao.ThreadDao;
 import com.example.gmailish.data.dao.UserDao;
 import com.example.gmailish.data.entity.BlacklistEntity;
 import com.example.gmailish.data.entity.LabelEntity;
+import com.example.gmailish.data.entity.LinkScanQueueEntity;
+import com.example.gmailish.data.entity.LinkVerdictEntity;
 import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.MailFtsEntity;
 import com.example.gmailish.data.entity.MailLabelCrossRef;
+import com.example.gmailish.data.entity.MailLinkEntity;
 import com.example.gmailish.data.entity.PendingOperationEntity;
+import com.example.gmailish.data.entity.SavedSearchEntity;
+import com.example.gmailish.data.entity.SavedSearchMember;
+import com.example.gmailish.data.entity.SyncCheckpointEntity;
+import com.example.gmailish.data.entity.ThreadEntity;
 import com.example.gmailish.data.entity.UserEntity;
+import com.example.gmailish.data.thread.ThreadKeys;
+import com.example.gmailish.data.thread.ThreadSummaries;
 
 @Database(
         entities = {
                 UserEntity.class,
                 MailEntity.class,
+                MailFtsEntity.class,
                 LabelEntity.class,
                 MailLabelCrossRef.class,
                 BlacklistEntity.class,
-                PendingOperationEntity.class
+                PendingOperationEntity.class,
+                SyncCheckpointEntity.class,
+                SavedSearchEntity.class,
+                SavedSearchMember.class,
+                ThreadEntity.class,
+                MailLinkEntity.class,
+                LinkVerdictEntity.class,
+                LinkScanQueueEntity.class
         },
-        // ⬇️ bump from 3 → 4 because we added "isDraft" to mails
-        version = 4,
+        // 4 → 5: sync_checkpoints for the paged initial sync
+        // 5 → 6: integer label ids (labels.labelKey keeps the old string id)
+        // 6 → 7: integer mail rowId; cross-refs become (mailRowId, labelId)
+        // 7 → 8: mails.contentHash for change-detecting upserts
+        // 8 → 9: mails_fts full-text index; (ownerId, timestamp) replaces the ownerId index
+        // 9 → 10: saved_searches and their materialized members
+        // 10 → 11: mails.threadKey and the trigger-maintained threads summary table
+        // 11 → 12: mail_links and link_verdicts for the background link scan
+        // 12 → 13: labels unique per (ownerId, labelKey) instead of labelKey
+        // 13 → 14: link_scan_queue, filled by triggers, replaces the unscanned-mails anti-join
+        version = 14,
         exportSchema = false
 )
 @TypeConverters({Converters.class})
@@ -41,6 +76,21 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract MailLabelDao mailLabelDao();
     public abstract BlacklistDao blacklistDao();
     public abstract PendingOperationDao pendingOperationDao();
+    public abstract SyncCheckpointDao syncCheckpointDao();
+    public abstract SavedSearchDao savedSearchDao();
+    public abstract ThreadDao threadDao();
+    public abstract LinkScanDao linkScanDao();
+
+    /**
+     * Room can't declare triggers, so the thread summary and link scan ones are
+     * (re)created on every open; IF NOT EXISTS makes that a no-op once they are there.
+     */
+    public static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override public void onOpen(SupportSQLiteDatabase db) {
+            ThreadSummaries.createTriggers(db);
+            LinkScanStage.createTriggers(db);
+        }
+    };
 
     /**
      * Migration 3 → 4: add the new "isDraft" column to the "mails" table.
@@ -58,4 +108,241 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    /**
+     * Migration 4 → 5: add "sync_checkpoints" so the initial sync can resume.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sync_checkpoints` (" +
+                    "`ownerId` TEXT NOT NULL, `cursor` TEXT, `fetched` INTEGER NOT NULL, " +
+                    "`total` INTEGER NOT NULL, `completed` INTEGER NOT NULL, `updatedAt` INTEGER, " +
+                    "PRIMARY KEY(`ownerId`))");
+        }
+    };
+
+    /**
+     * Migration 5 → 6: labels get an INTEGER id; the old string id moves to labelKey.
+     * Cross-refs are rewritten to point at the new int id.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `labels_new` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `labelKey` TEXT NOT NULL, " +
+                    "`ownerId` TEXT, `name` TEXT)");
+            db.execSQL("INSERT INTO labels_new (labelKey, ownerId, name) " +
+                    "SELECT id, ownerId, name FROM labels");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `mail_label_cross_ref_new` (" +
+                    "`mailId` TEXT NOT NULL, `labelId` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`mailId`, `labelId`))");
+            db.execSQL("INSERT OR IGNORE INTO mail_label_cross_ref_new (mailId, labelId) " +
+                    "SELECT x.mailId, l.id FROM mail_label_cross_ref x " +
+                    "JOIN labels_new l ON l.labelKey = x.labelId");
+
+            db.execSQL("DROP TABLE labels");
+            db.execSQL("DROP TABLE mail_label_cross_ref");
+            db.execSQL("ALTER TABLE labels_new RENAME TO labels");
+            db.execSQL("ALTER TABLE mail_label_cross_ref_new RENAME TO mail_label_cross_ref");
+
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_labels_ownerId` ON `labels` (`ownerId`)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_labels_labelKey` ON `labels` (`labelKey`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_labels_ownerId_name` ON `labels` (`ownerId`, `name`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mail_label_cross_ref_mailId` ON `mail_label_cross_ref` (`mailId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mail_label_cross_ref_labelId` ON `mail_label_cross_ref` (`labelId`)");
+        }
+    };
+
+    /**
+     * Migration 6 → 7: mails get an INTEGER rowId primary key; the string id stays
+     * as a unique column. Cross-refs are rewritten from mailId to mailRowId.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `mails_new` (" +
+                    "`rowId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `id` TEXT NOT NULL, " +
+                    "`senderId` TEXT, `senderName` TEXT, `recipientId` TEXT, `recipientName` TEXT, " +
+                    "`recipientEmail` TEXT, `subject` TEXT, `content` TEXT, `timestamp` INTEGER, " +
+                    "`ownerId` TEXT, `read` INTEGER NOT NULL, `starred` INTEGER NOT NULL, " +
+                    "`isDraft` INTEGER NOT NULL DEFAULT 0)");
+            // Oldest first so rowId order roughly follows arrival
+            db.execSQL("INSERT INTO mails_new (id, senderId, senderName, recipientId, recipientName, " +
+                    "recipientEmail, subject, content, timestamp, ownerId, read, starred, isDraft) " +
+                    "SELECT id, senderId, senderName, recipientId, recipientName, recipientEmail, " +
+                    "subject, content, timestamp, ownerId, read, starred, isDraft " +
+                    "FROM mails ORDER BY timestamp ASC");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `mail_label_cross_ref_new` (" +
+                    "`mailRowId` INTEGER NOT NULL, `labelId` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`mailRowId`, `labelId`))");
+            db.execSQL("INSERT OR IGNORE INTO mail_label_cross_ref_new (mailRowId, labelId) " +
+                    "SELECT m.rowId, x.labelId FROM mail_label_cross_ref x " +
+                    "JOIN mails_new m ON m.id = x.mailId");
+
+            db.execSQL("DROP TABLE mails");
+            db.execSQL("DROP TABLE mail_label_cross_ref");
+            db.execSQL("ALTER TABLE mails_new RENAME TO mails");
+            db.execSQL("ALTER TABLE mail_label_cross_ref_new RENAME TO mail_label_cross_ref");
+
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_mails_id` ON `mails` (`id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mails_ownerId` ON `mails` (`ownerId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mails_read` ON `mails` (`read`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mails_timestamp` ON `mails` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mail_label_cross_ref_labelId` ON `mail_label_cross_ref` (`labelId`)");
+        }
+    };
+
+    /**
+     * Migration 7 → 8: add "contentHash". Existing rows start at 0 (unknown),
+     * so each is rewritten once by the next sync and skipped after that.
+     */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE mails ADD COLUMN contentHash INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Migration 8 → 9: FTS4 index over mails (same table, options and sync
+     * triggers Room creates on a fresh install), filled from the existing rows.
+     */
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            String cols = "`subject`, `content`, `senderName`, `recipientName`, `recipientEmail`";
+            String newCols = "NEW.`subject`, NEW.`content`, NEW.`senderName`, NEW.`recipientName`, NEW.`recipientEmail`";
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `mails_fts` USING FTS4(" +
+                    "`subject` TEXT, `content` TEXT, `senderName` TEXT, `recipientName` TEXT, " +
+                    "`recipientEmail` TEXT, tokenize=unicode61, content=`mails`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_mails_fts_BEFORE_UPDATE " +
+                    "BEFORE UPDATE ON `mails` BEGIN DELETE FROM `mails_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_mails_fts_BEFORE_DELETE " +
+                    "BEFORE DELETE ON `mails` BEGIN DELETE FROM `mails_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_mails_fts_AFTER_UPDATE " +
+                    "AFTER UPDATE ON `mails` BEGIN INSERT INTO `mails_fts`(`docid`, " + cols + ") " +
+                    "VALUES (NEW.`rowid`, " + newCols + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_mails_fts_AFTER_INSERT " +
+                    "AFTER INSERT ON `mails` BEGIN INSERT INTO `mails_fts`(`docid`, " + cols + ") " +
+                    "VALUES (NEW.`rowid`, " + newCols + "); END");
+            db.execSQL("INSERT INTO `mails_fts`(`mails_fts`) VALUES('rebuild')");
+
+            db.execSQL("DROP INDEX IF EXISTS `index_mails_ownerId`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mails_ownerId_timestamp` ON `mails` (`ownerId`, `timestamp`)");
+        }
+    };
+
+    /**
+     * Migration 9 → 10: saved searches and their members. Both start empty;
+     * members are filled when a search is saved.
+     */
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `saved_searches` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `ownerId` TEXT NOT NULL, " +
+                    "`name` TEXT NOT NULL, `query` TEXT NOT NULL, `createdAt` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_searches_ownerId_name` ON `saved_searches` (`ownerId`, `name`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `saved_search_members` (" +
+                    "`searchId` INTEGER NOT NULL, `mailRowId` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`searchId`, `mailRowId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_search_members_mailRowId` ON `saved_search_members` (`mailRowId`)");
+        }
+    };
+
+    /**
+     * Migration 10 → 11: mails get a threadKey, derived here for existing rows
+     * (server thread ids arrive with the next sync), and the threads summary
+     * table is built once; triggers keep it current from then on.
+     */
+    public static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE mails ADD COLUMN threadKey TEXT");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mails_ownerId_threadKey_timestamp` " +
+                    "ON `mails` (`ownerId`, `threadKey`, `timestamp`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `threads` (" +
+                    "`ownerId` TEXT NOT NULL, `threadKey` TEXT NOT NULL, `latestRowId` INTEGER NOT NULL, " +
+                    "`latestMailId` TEXT, `latestTimestamp` INTEGER, `messageCount` INTEGER NOT NULL, " +
+                    "`unreadCount` INTEGER NOT NULL, `starred` INTEGER NOT NULL, `subject` TEXT, " +
+                    "`participants` TEXT, `snippet` TEXT, PRIMARY KEY(`ownerId`, `threadKey`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_threads_ownerId_latestTimestamp` " +
+                    "ON `threads` (`ownerId`, `latestTimestamp`)");
+
+            // Key derivation lives in Java (subject normalization), so fill row by row
+            SupportSQLiteStatement set = db.compileStatement("UPDATE mails SET threadKey = ? WHERE rowId = ?");
+            try (Cursor c = db.query("SELECT rowId, id, senderId, recipientId, subject FROM mails")) {
+                while (c.moveToNext()) {
+                    MailEntity m = new MailEntity(c.getString(1), c.getString(2), null, c.getString(3),
+                            null, null, c.getString(4), null, null, null, false, false, false);
+                    set.bindString(1, ThreadKeys.derive(m));
+                    set.bindLong(2, c.getLong(0));
+                    set.executeUpdateDelete();
+                }
+            }
+
+            ThreadSummaries.createTriggers(db);
+            ThreadSummaries.rebuild(db);
+        }
+    };
+
+    /**
+     * Migration 11 → 12: link scan tables. Both start empty, so every mail is
+     * unscanned and LinkScanStage catches up in the background.
+     */
+    public static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `mail_links` (" +
+                    "`mailRowId` INTEGER NOT NULL, `url` TEXT NOT NULL, PRIMARY KEY(`mailRowId`, `url`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_mail_links_url` ON `mail_links` (`url`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `link_verdicts` (" +
+                    "`mailRowId` INTEGER NOT NULL, `linkCount` INTEGER NOT NULL, " +
+                    "`blacklistedCount` INTEGER NOT NULL, `firstBlacklisted` TEXT, " +
+                    "`scannedAt` INTEGER NOT NULL, PRIMARY KEY(`mailRowId`))");
+            LinkScanStage.createTriggers(db);
+        }
+    };
+
+    /**
+     * Migration 12 → 13: label keys become unique per owner. A second account
+     * used to share the first one's rows ("inbox", "sent", ...); its cross-refs
+     * move to rows of its own.
+     */
+    public static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS `index_labels_labelKey`");
+            db.execSQL("DROP INDEX IF EXISTS `index_labels_ownerId`");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_labels_ownerId_labelKey` " +
+                    "ON `labels` (`ownerId`, `labelKey`)");
+
+            // Cross-refs whose mail belongs to someone other than the label row
+            // (no table aliases in UPDATE/DELETE before SQLite 3.33)
+            String x = "mail_label_cross_ref";
+            String foreign = "SELECT 1 FROM mails m JOIN labels l ON l.id = " + x + ".labelId " +
+                    "WHERE m.rowId = " + x + ".mailRowId AND m.ownerId IS NOT NULL AND m.ownerId IS NOT l.ownerId";
+            db.execSQL("INSERT OR IGNORE INTO labels (labelKey, ownerId, name) " +
+                    "SELECT DISTINCT l.labelKey, m.ownerId, l.name FROM " + x + " " +
+                    "JOIN mails m ON m.rowId = " + x + ".mailRowId JOIN labels l ON l.id = " + x + ".labelId " +
+                    "WHERE m.ownerId IS NOT NULL AND m.ownerId IS NOT l.ownerId");
+            db.execSQL("UPDATE OR IGNORE " + x + " SET labelId = (" +
+                    "SELECT o.id FROM mails m JOIN labels l ON l.id = " + x + ".labelId " +
+                    "JOIN labels o ON o.ownerId = m.ownerId AND o.labelKey = l.labelKey " +
+                    "WHERE m.rowId = " + x + ".mailRowId) " +
+                    "WHERE EXISTS (" + foreign + ")");
+            // Left over where the mail already had its own row's link
+            db.execSQL("DELETE FROM " + x + " WHERE EXISTS (" + foreign + ")");
+        }
+    };
+
+    /**
+     * Migration 13 → 14: the link scan reads a queue instead of looking for
+     * mails without a verdict. The old triggers (which only dropped verdicts)
+     * give way to queueing ones, and today's unscanned mails are queued once.
+     */
+    public static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `link_scan_queue` (" +
+                    "`mailRowId` INTEGER NOT NULL, PRIMARY KEY(`mailRowId`))");
+            db.execSQL("DROP TRIGGER IF EXISTS link_scan_after_update");
+            db.execSQL("DROP TRIGGER IF EXISTS link_scan_after_delete");
+            LinkScanStage.createTriggers(db);
+            db.execSQL("INSERT OR IGNORE INTO link_scan_queue (mailRowId) SELECT m.rowId FROM mails m " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM link_verdicts v WHERE v.mailRowId = m.rowId)");
+        }
+    };
 }
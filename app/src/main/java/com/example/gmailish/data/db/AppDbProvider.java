@@ -18,8 +18,14 @@ public final class AppDbProvider {
                                     AppDatabase.class,
                                     "gmailish.db"
                             )
-                            // Keep data when going 3 → 4
-                            .addMigrations(AppDatabase.MIGRATION_3_4)
+                            // Keep data across schema bumps
+                            .addMigrations(AppDatabase.MIGRATION_3_4, AppDatabase.MIGRATION_4_5,
+                                    AppDatabase.MIGRATION_5_6, AppDatabase.MIGRATION_6_7,
+                                    AppDatabase.MIGRATION_7_8, AppDatabase.MIGRATION_8_9,
+                                    AppDatabase.MIGRATION_9_10, AppDatabase.MIGRATION_10_11,
+                                    AppDatabase.MIGRATION_11_12, AppDatabase.MIGRATION_12_13,
+                                    AppDatabase.MIGRATION_13_14)
+                            .addCallback(AppDatabase.CALLBACK)
                             // Optional safety: if another future path is missing, wipe instead of crashing
                             .fallbackToDestructiveMigration()
                             .build();
@@ -2,25 +2,38 @@ package com.example.gmailish.data.entity;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Ignore;
 import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 @Entity(
         tableName = "labels",
         indices = {
-                @Index(value = {"ownerId"}),
-                @Index(value = {"ownerId", "name"}, unique = true)
+                // Per account: every owner has its own "inbox", "sent", ... rows
+                @Index(value = {"ownerId", "labelKey"}, unique = true),
+                @Index(value = {"ownerId", "name"})
         }
 )
 public class LabelEntity {
 
-    @PrimaryKey @NonNull public String id;
+    // Integer surrogate key: cross-refs store this, so renames never touch them
+    @PrimaryKey(autoGenerate = true) public int id;
+
+    // Stable string key: normalized name ("primary", "starred") or server/local id
+    @NonNull public String labelKey;
     public String ownerId;
     public String name;
 
-    public LabelEntity(@NonNull String id, String ownerId, String name) {
+    public LabelEntity(int id, @NonNull String labelKey, String ownerId, String name) {
         this.id = id;
+        this.labelKey = labelKey;
         this.ownerId = ownerId;
         this.name = name;
     }
+
+    /** New label; id is assigned on insert. */
+    @Ignore
+    public LabelEntity(@NonNull String labelKey, String ownerId, String name) {
+        this(0, labelKey, ownerId, name);
+    }
 }
@@ -0,0 +1,19 @@
+package com.example.gmailish.data.entity;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A mail the link scan still has to read: filled by triggers when a mail is
+ * inserted or its subject or body changes, emptied by LinkScanStage as it
+ * stores verdicts. A sweep reads this table instead of looking for mails
+ * without a verdict, so its cost follows what changed, not the mailbox.
+ */
+@Entity(tableName = "link_scan_queue")
+public class LinkScanQueueEntity {
+    @PrimaryKey public long mailRowId; // mails.rowId
+
+    public LinkScanQueueEntity(long mailRowId) {
+        this.mailRowId = mailRowId;
+    }
+}
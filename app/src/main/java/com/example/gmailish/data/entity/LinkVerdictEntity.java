@@ -0,0 +1,29 @@
+package com.example.gmailish.data.entity;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Cached link-scan result for one mail. A missing row means "not scanned
+ * yet": triggers drop the row and queue the mail (link_scan_queue) when its
+ * subject or body changes, and LinkScanStage fills it back in.
+ */
+@Entity(tableName = "link_verdicts")
+public class LinkVerdictEntity {
+    @PrimaryKey public long mailRowId; // mails.rowId
+
+    public int linkCount;
+    public int blacklistedCount;
+    // A blacklisted link, for the warning text; null when clean
+    public String firstBlacklisted;
+    public long scannedAt;
+
+    public LinkVerdictEntity(long mailRowId, int linkCount, int blacklistedCount,
+                             String firstBlacklisted, long scannedAt) {
+        this.mailRowId = mailRowId;
+        this.linkCount = linkCount;
+        this.blacklistedCount = blacklistedCount;
+        this.firstBlacklisted = firstBlacklisted;
+        this.scannedAt = scannedAt;
+    }
+}
@@ -12,14 +12,23 @@ import java.util.Date;
 @Entity(
         tableName = "mails",
         indices = {
-                @Index(value = {"ownerId"}),
+                @Index(value = {"id"}, unique = true),
+                // Owner's mails newest first without a sort; also serves ownerId-only lookups
+                @Index(value = {"ownerId", "timestamp"}),
+                // One conversation's mails newest first (thread summaries, thread view)
+                @Index(value = {"ownerId", "threadKey", "timestamp"}),
                 @Index(value = {"read"}),
                 @Index(value = {"timestamp"})
         }
 )
 public class MailEntity {
 
-    @PrimaryKey
+    // Local INTEGER key (SQLite rowid alias). Cross-refs point here, so the
+    // string id below can change (draft/local -> server id) with one UPDATE.
+    @PrimaryKey(autoGenerate = true)
+    private long rowId;
+
+    // Server id (or "draft-"/local UUID until the server assigns one)
     @NonNull
     private String id;
 
@@ -39,6 +48,13 @@ public class MailEntity {
     @ColumnInfo(name = "isDraft", defaultValue = "0")
     private boolean isDraft;
 
+    // Hash of the fields above; MailDao skips the write when it matches (0 = unknown)
+    @ColumnInfo(defaultValue = "0")
+    private long contentHash;
+
+    // Conversation (see ThreadKeys); MailDao fills it in when null
+    private String threadKey;
+
     /**
      * The ONLY constructor Room should use.
      * If you add/remove fields, update this signature so it includes them all in the same order.
@@ -94,6 +110,7 @@ public class MailEntity {
 
     // ---- Getters / Setters ----
 
+    public long getRowId() { return rowId; }
     @NonNull public String getId() { return id; }
     public String getSenderId() { return senderId; }
     public String getSenderName() { return senderName; }
@@ -107,7 +124,10 @@ public class MailEntity {
     public boolean getRead() { return read; }
     public boolean getStarred() { return starred; }
     public boolean isDraft() { return isDraft; }
+    public long getContentHash() { return contentHash; }
+    public String getThreadKey() { return threadKey; }
 
+    public void setRowId(long rowId) { this.rowId = rowId; }
     public void setId(@NonNull String id) { this.id = id; }
     public void setSenderId(String senderId) { this.senderId = senderId; }
     public void setSenderName(String senderName) { this.senderName = senderName; }
@@ -121,4 +141,35 @@ public class MailEntity {
     public void setRead(boolean read) { this.read = read; }
     public void setStarred(boolean starred) { this.starred = starred; }
     public void setDraft(boolean draft) { isDraft = draft; }
+    public void setContentHash(long contentHash) { this.contentHash = contentHash; }
+    public void setThreadKey(String threadKey) { this.threadKey = threadKey; }
+
+    /** 64-bit FNV-1a over every stored field except the keys. Never returns 0. */
+    public long computeContentHash() {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, senderId);
+        h = mix(h, senderName);
+        h = mix(h, recipientId);
+        h = mix(h, recipientName);
+        h = mix(h, recipientEmail);
+        h = mix(h, subject);
+        h = mix(h, content);
+        h = mix(h, timestamp != null ? Long.toString(timestamp.getTime()) : null);
+        h = mix(h, ownerId);
+        h = mix(h, (read ? "r" : "-") + (starred ? "s" : "-") + (isDraft ? "d" : "-"));
+        return h != 0 ? h : 1;
+    }
+
+    private static long mix(long h, String v) {
+        if (v != null) {
+            for (int i = 0; i < v.length(); i++) {
+                h ^= v.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        }
+        // Field separator, so ("ab", "c") and ("a", "bc") differ; null differs from ""
+        h ^= v != null ? 0x1f : 0x1e;
+        h *= 0x100000001b3L;
+        return h;
+    }
 }
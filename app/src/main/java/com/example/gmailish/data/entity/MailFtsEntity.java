@@ -0,0 +1,20 @@
+package com.example.gmailish.data.entity;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the searchable mail columns. External content: the text
+ * lives only in "mails" and Room's triggers keep the index in sync; the FTS
+ * docid is mails.rowId.
+ */
+@Fts4(contentEntity = MailEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "mails_fts")
+public class MailFtsEntity {
+    public String subject;
+    public String content;
+    public String senderName;
+    public String recipientName;
+    public String recipientEmail;
+}
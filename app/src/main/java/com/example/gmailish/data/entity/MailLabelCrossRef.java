@@ -1,23 +1,22 @@
 package com.example.gmailish.data.entity;
 
-import androidx.annotation.NonNull;
 import androidx.room.Entity;
 import androidx.room.Index;
 
 @Entity(
         tableName = "mail_label_cross_ref",
-        primaryKeys = {"mailId", "labelId"},
+        primaryKeys = {"mailRowId", "labelId"},
+        // No separate mailRowId index: the primary key already leads with it
         indices = {
-                @Index("mailId"),
                 @Index("labelId")
         }
 )
 public class MailLabelCrossRef {
-    @NonNull public String mailId;
-    @NonNull public String labelId;
+    public long mailRowId; // mails.rowId
+    public int labelId;    // labels.id (see LabelRegistry)
 
-    public MailLabelCrossRef(@NonNull String mailId, @NonNull String labelId) {
-        this.mailId = mailId;
+    public MailLabelCrossRef(long mailRowId, int labelId) {
+        this.mailRowId = mailRowId;
         this.labelId = labelId;
     }
 }
@@ -0,0 +1,26 @@
+package com.example.gmailish.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * A URL found in a mail's subject or body by the link scan. Indexed by url, so
+ * a blacklist change re-judges only the mails that link there.
+ */
+@Entity(
+        tableName = "mail_links",
+        primaryKeys = {"mailRowId", "url"},
+        indices = {
+                @Index("url")
+        }
+)
+public class MailLinkEntity {
+    public long mailRowId;    // mails.rowId
+    @NonNull public String url;
+
+    public MailLinkEntity(long mailRowId, @NonNull String url) {
+        this.mailRowId = mailRowId;
+        this.url = url;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.gmailish.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/** A named search (SearchQuery text) shown in the drawer like a label. */
+@Entity(
+        tableName = "saved_searches",
+        indices = {
+                @Index(value = {"ownerId", "name"})
+        }
+)
+public class SavedSearchEntity {
+
+    @PrimaryKey(autoGenerate = true) public int id;
+
+    @NonNull public String ownerId;
+    @NonNull public String name;
+    @NonNull public String query;
+    public long createdAt;
+
+    public SavedSearchEntity(int id, @NonNull String ownerId, @NonNull String name,
+                             @NonNull String query, long createdAt) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.name = name;
+        this.query = query;
+        this.createdAt = createdAt;
+    }
+
+    /** New saved search; id is assigned on insert. */
+    @Ignore
+    public SavedSearchEntity(@NonNull String ownerId, @NonNull String name, @NonNull String query) {
+        this(0, ownerId, name, query, System.currentTimeMillis());
+    }
+}
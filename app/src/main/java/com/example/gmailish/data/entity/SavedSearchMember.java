@@ -0,0 +1,26 @@
+package com.example.gmailish.data.entity;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Materialized result of a saved search: one row per matching mail. Kept up to
+ * date row by row by SavedSearchIndex, so opening a saved search is a key read.
+ */
+@Entity(
+        tableName = "saved_search_members",
+        primaryKeys = {"searchId", "mailRowId"},
+        // Maintenance looks rows up by mail; the primary key covers reads by search
+        indices = {
+                @Index("mailRowId")
+        }
+)
+public class SavedSearchMember {
+    public int searchId;   // saved_searches.id
+    public long mailRowId; // mails.rowId
+
+    public SavedSearchMember(int searchId, long mailRowId) {
+        this.searchId = searchId;
+        this.mailRowId = mailRowId;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.gmailish.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+
+/**
+ * Progress of the paged initial sync for one account (see InitialSyncWorker).
+ * The blacklist sync keeps its version here too, under
+ * BlacklistRepository.CHECKPOINT_KEY.
+ */
+@Entity(tableName = "sync_checkpoints")
+public class SyncCheckpointEntity {
+
+    @PrimaryKey @NonNull
+    public String ownerId;
+
+    // Opaque server cursor for the next page; null before the first page
+    public String cursor;
+
+    public int fetched;     // mails committed so far
+    public int total;       // server-reported total, -1 if unknown
+    public boolean completed;
+    public Date updatedAt;
+
+    public SyncCheckpointEntity(@NonNull String ownerId, String cursor, int fetched,
+                                int total, boolean completed, Date updatedAt) {
+        this.ownerId = ownerId;
+        this.cursor = cursor;
+        this.fetched = fetched;
+        this.total = total;
+        this.completed = completed;
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.gmailish.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+import java.util.Date;
+
+/**
+ * One row per conversation, kept current by triggers on mails (see
+ * ThreadSummaries), so a threaded list reads these rows and nothing else.
+ */
+@Entity(
+        tableName = "threads",
+        primaryKeys = {"ownerId", "threadKey"},
+        indices = {
+                // Owner's conversations newest first without a sort
+                @Index(value = {"ownerId", "latestTimestamp"})
+        }
+)
+public class ThreadEntity {
+
+    @NonNull public String ownerId;
+    @NonNull public String threadKey;
+
+    // Latest mail in the thread: opening the conversation starts there
+    public long latestRowId;
+    public String latestMailId;
+    public Date latestTimestamp;
+
+    public int messageCount;
+    public int unreadCount;
+    public boolean starred;
+
+    public String subject;
+    // Distinct sender names, comma separated
+    public String participants;
+    // Start of the latest mail's body
+    public String snippet;
+
+    public ThreadEntity(@NonNull String ownerId, @NonNull String threadKey) {
+        this.ownerId = ownerId;
+        this.threadKey = threadKey;
+    }
+}
@@ -16,11 +16,11 @@ public class LabelWithMails {
 
     @Relation(
             parentColumn = "id",
-            entityColumn = "id",
+            entityColumn = "rowId",
             associateBy = @Junction(
                     value = MailLabelCrossRef.class,
                     parentColumn = "labelId",
-                    entityColumn = "mailId"
+                    entityColumn = "mailRowId"
             )
     )
     public List<MailEntity> mails;
@@ -15,11 +15,11 @@ public class MailWithLabels {
     @Embedded public MailEntity mail;
 
     @Relation(
-            parentColumn = "id",
+            parentColumn = "rowId",
             entityColumn = "id",
             associateBy = @Junction(
                     value = MailLabelCrossRef.class,
-                    parentColumn = "mailId",
+                    parentColumn = "mailRowId",
                     entityColumn = "labelId"
             )
     )
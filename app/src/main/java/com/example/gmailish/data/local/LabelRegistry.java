@@ -0,0 +1,82 @@
+package com.example.gmailish.data.local;
+
+import com.example.gmailish.data.dao.LabelDao;
+import com.example.gmailish.data.entity.LabelEntity;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns label keys ("primary", "starred", server ids) to their integer row id,
+ * per owner: every account has its own "inbox" row, so keys are (ownerId, labelKey).
+ * Each key hits the labels table once per process; afterwards it is a map lookup.
+ * Process-wide because every DAO comes from the same AppDbProvider instance.
+ * Blocking on a miss; call off the main thread.
+ */
+public final class LabelRegistry {
+
+    private static volatile LabelRegistry INSTANCE;
+
+    private final LabelDao labelDao;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private LabelRegistry(LabelDao labelDao) {
+        this.labelDao = labelDao;
+    }
+
+    public static LabelRegistry get(LabelDao labelDao) {
+        LabelRegistry r = INSTANCE;
+        if (r == null || r.labelDao != labelDao) {
+            synchronized (LabelRegistry.class) {
+                r = INSTANCE;
+                // A different DAO means a different database (tests): start a fresh map
+                if (r == null || r.labelDao != labelDao) INSTANCE = r = new LabelRegistry(labelDao);
+            }
+        }
+        return r;
+    }
+
+    // Owner ids are ObjectIds and keys are names/ids: neither contains NUL
+    private static String key(String ownerId, String labelKey) {
+        return (ownerId != null ? ownerId : "") + '\u0000' + labelKey;
+    }
+
+    /** Id for the owner's key, creating the label row if needed. */
+    public int intern(String labelKey, String ownerId, String name) {
+        String k = key(ownerId, labelKey);
+        Integer id = ids.get(k);
+        if (id != null) return id;
+        id = labelDao.upsert(new LabelEntity(labelKey, ownerId, name != null ? name : labelKey));
+        ids.put(k, id);
+        return id;
+    }
+
+    /** Id for an existing label of the owner, or null (never creates). */
+    public Integer lookup(String ownerId, String labelKey) {
+        if (labelKey == null) return null;
+        String k = key(ownerId, labelKey);
+        Integer id = ids.get(k);
+        if (id != null) return id;
+        id = labelDao.getIdByKey(ownerId, labelKey);
+        if (id != null) ids.put(k, id);
+        return id;
+    }
+
+    /** Label row was upserted elsewhere; remember its id. */
+    public void remember(String ownerId, String labelKey, int id) {
+        ids.put(key(ownerId, labelKey), id);
+    }
+
+    public void rekey(String ownerId, String oldKey, String newKey) {
+        Integer id = ids.remove(key(ownerId, oldKey));
+        if (id != null) ids.put(key(ownerId, newKey), id);
+    }
+
+    public void forget(String ownerId, String labelKey) {
+        ids.remove(key(ownerId, labelKey));
+    }
+
+    /** E.g. after logout/destructive migration, when row ids may be reused. */
+    public void clear() {
+        ids.clear();
+    }
+}
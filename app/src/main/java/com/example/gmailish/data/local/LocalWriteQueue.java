@@ -0,0 +1,156 @@
+package com.example.gmailish.data.local;
+
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.gmailish.data.db.AppDatabase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer for small local mutations (stars, read marks, label links) and
+ * sync batches. Writes are held for up to WINDOW_MS and committed together in one
+ * transaction (group commit): one lock acquisition and one invalidation for the
+ * whole burst instead of one per tap.
+ *
+ * Writes with the same key collapse: only the latest is kept, and it moves to
+ * the end so it still runs after anything enqueued in between. Use keys like
+ * "star:<mailId>" for last-write-wins state; a null key is never collapsed.
+ *
+ * afterFlush()/flush() are the barrier for read-your-writes.
+ */
+public final class LocalWriteQueue {
+
+    private static final String TAG = "LocalWriteQueue";
+
+    private static final long WINDOW_MS = 30;
+    // Commit early rather than hold a long burst in one transaction
+    private static final int MAX_BATCH = 200;
+    private static final long FLUSH_TIMEOUT_MS = 10_000;
+
+    private static volatile LocalWriteQueue INSTANCE;
+
+    private final AppDatabase db;
+    private volatile Thread writerThread;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, TAG);
+        writerThread = t;
+        return t;
+    });
+
+    // Guarded by this
+    private final LinkedHashMap<String, Runnable> pending = new LinkedHashMap<>();
+    private final List<Runnable> barriers = new ArrayList<>();
+    private boolean scheduled;
+    private long seq;
+    private long collapsed;
+
+    // Writer thread only
+    private long batches;
+    private long ops;
+
+    private LocalWriteQueue(AppDatabase db) {
+        this.db = db;
+    }
+
+    public static LocalWriteQueue get(AppDatabase db) {
+        LocalWriteQueue q = INSTANCE;
+        if (q == null || q.db != db) {
+            synchronized (LocalWriteQueue.class) {
+                q = INSTANCE;
+                // A different database means tests: start a fresh queue
+                if (q == null || q.db != db) INSTANCE = q = new LocalWriteQueue(db);
+            }
+        }
+        return q;
+    }
+
+    /** Queue a blocking write. Runs on the writer thread inside a transaction. */
+    public synchronized void enqueue(String key, Runnable op) {
+        String k = key != null ? key : "#" + (seq++);
+        if (pending.remove(k) != null) collapsed++;
+        pending.put(k, op);
+        if (pending.size() >= MAX_BATCH) {
+            writer.execute(this::drain);
+        } else if (!scheduled) {
+            scheduled = true;
+            writer.schedule(this::drain, WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Run {@code then} on the writer thread once everything queued before this
+     * call is committed. Commits the current batch now instead of waiting.
+     */
+    public synchronized void afterFlush(Runnable then) {
+        barriers.add(then);
+        writer.execute(this::drain);
+    }
+
+    /** Block until everything queued so far is committed. Not on the main thread. */
+    public void flush() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("flush() on the main thread; use afterFlush()");
+        }
+        if (Thread.currentThread() == writerThread) {
+            drain(); // called from inside a queued write
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        afterFlush(done::countDown);
+        try {
+            if (!done.await(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "flush timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Runnable> batch;
+        List<Runnable> waiting;
+        long collapsedSoFar;
+        synchronized (this) {
+            scheduled = false;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            waiting = new ArrayList<>(barriers);
+            barriers.clear();
+            collapsedSoFar = collapsed;
+        }
+        if (!batch.isEmpty()) {
+            try {
+                db.runInTransaction(() -> {
+                    for (Runnable op : batch) {
+                        // One bad write must not roll back the rest of the batch
+                        try {
+                            op.run();
+                        } catch (Exception e) {
+                            Log.e(TAG, "write failed: " + e.getMessage(), e);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "batch commit failed: " + e.getMessage(), e);
+            }
+            batches++;
+            ops += batch.size();
+            Log.d(TAG, "commit: " + batch.size() + " writes | batches=" + batches +
+                    " ops=" + ops + " collapsed=" + collapsedSoFar);
+        }
+        for (Runnable r : waiting) {
+            try {
+                r.run();
+            } catch (Exception e) {
+                Log.e(TAG, "barrier callback failed: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.gmailish.data.local;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.gmailish.data.entity.MailEntity;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * App-wide LRU of recently listed mails with their label keys, so the detail
+ * screen can render a mail from the inbox without touching the database.
+ *
+ * Filled by the list queries (MailObservers) and the detail query, invalidated
+ * per mail by every local write. Bounded by an estimate of retained bytes and
+ * shrunk or emptied from Application.onTrimMemory.
+ */
+public final class MailCache {
+
+    private static final String TAG = "MailCache";
+
+    // ~120 bytes of object headers/fields per entry on top of the strings
+    private static final int ENTRY_OVERHEAD = 120;
+    private static final int MAX_BYTES = (int) Math.min(4L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+
+    public static final class Entry {
+        public final MailEntity mail;
+        public final List<String> labels;
+
+        Entry(MailEntity mail, List<String> labels) {
+            this.mail = mail;
+            this.labels = labels;
+        }
+    }
+
+    private static final MailCache INSTANCE = new MailCache();
+
+    private final LruCache<String, Entry> cache = new LruCache<String, Entry>(MAX_BYTES) {
+        @Override protected int sizeOf(String key, Entry e) {
+            MailEntity m = e.mail;
+            int chars = len(m.getId()) + len(m.getSenderId()) + len(m.getSenderName())
+                    + len(m.getRecipientId()) + len(m.getRecipientName()) + len(m.getRecipientEmail())
+                    + len(m.getSubject()) + len(m.getContent()) + len(m.getOwnerId());
+            for (String l : e.labels) chars += len(l);
+            return ENTRY_OVERHEAD + chars * 2;
+        }
+    };
+
+    private MailCache() {}
+
+    public static MailCache get() {
+        return INSTANCE;
+    }
+
+    /** Null on a miss. Never touches the database. */
+    public Entry get(String mailId) {
+        return mailId != null ? cache.get(mailId) : null;
+    }
+
+    public void put(MailEntity mail, List<String> labels) {
+        if (mail == null || mail.getId() == null) return;
+        cache.put(mail.getId(), new Entry(mail,
+                labels != null ? Collections.unmodifiableList(labels) : Collections.emptyList()));
+    }
+
+    /** A local write touched this mail (flags, labels, id remap, delete). */
+    public void invalidate(String mailId) {
+        if (mailId != null) cache.remove(mailId);
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /** From Application.onTrimMemory: halve when backgrounded, drop all when memory is tight. */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.size() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+        Log.d(TAG, "trimMemory level=" + level + " -> " + cache.size() + "/" + cache.maxSize() + " bytes");
+    }
+
+    private static int len(String s) {
+        return s != null ? s.length() : 0;
+    }
+}
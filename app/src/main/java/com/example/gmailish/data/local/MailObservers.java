@@ -0,0 +1,127 @@
+package com.example.gmailish.data.local;
+
+import com.example.gmailish.data.dao.MailLabelDao;
+import com.example.gmailish.data.dao.SavedSearchDao;
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.entity.LabelEntity;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.ThreadEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Observable versions of the list, detail and label-drawer queries.
+ * Each one lists the tables it reads, so only writes to those tables re-query.
+ */
+public final class MailObservers {
+
+    private static final String[] MAIL_TABLES = {"mails", "mail_label_cross_ref", "labels"};
+    private static final String[] LABEL_TABLES = {"labels"};
+    private static final String[] SAVED_SEARCH_TABLES = {"saved_searches", "saved_search_members", "mails"};
+    // Triggers rewrite threads on every mail write, so mails itself needn't be watched
+    private static final String[] THREAD_TABLES = {"threads", "mail_label_cross_ref", "labels"};
+    // Roughly the rows a user can tap without scrolling far
+    private static final int CACHE_WARM_ROWS = 50;
+
+    /** Detail screen snapshot: the mail row plus its label keys. */
+    public static final class MailDetail {
+        public final MailEntity mail;
+        public final List<String> labels;
+
+        MailDetail(MailEntity mail, List<String> labels) {
+            this.mail = mail;
+            this.labels = labels;
+        }
+    }
+
+    private final AppDatabase db;
+    private final LabelRegistry registry;
+
+    public MailObservers(AppDatabase db) {
+        this.db = db;
+        this.registry = LabelRegistry.get(db.labelDao());
+    }
+
+    public ObservableQuery<List<MailEntity>> mailsForLabel(String labelKey, String ownerId) {
+        return new ObservableQuery<>(db, "label:" + labelKey, MAIL_TABLES, () -> {
+            Integer id = registry.lookup(ownerId, labelKey);
+            if (id == null) return new ArrayList<>();
+            List<MailEntity> mails = ownerId != null
+                    ? db.mailLabelDao().getMailsForLabelSync(id, ownerId)
+                    : db.mailLabelDao().getMailsForLabelSync(id);
+            warmCache(mails);
+            return mails;
+        });
+    }
+
+    /** Conversation view: one summary row per thread with a mail under the label. */
+    public ObservableQuery<List<ThreadEntity>> threadsForLabel(String labelKey, String ownerId) {
+        return new ObservableQuery<>(db, "threads:" + labelKey, THREAD_TABLES, () -> {
+            Integer id = registry.lookup(ownerId, labelKey);
+            if (id == null || ownerId == null) return new ArrayList<>();
+            return db.threadDao().threadsForLabelSync(id, ownerId);
+        });
+    }
+
+    /** Top of the list goes into MailCache, so opening one of them needs no query. */
+    private void warmCache(List<MailEntity> mails) {
+        int n = Math.min(mails.size(), CACHE_WARM_ROWS);
+        if (n == 0) return;
+        List<Long> rowIds = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) rowIds.add(mails.get(i).getRowId());
+        Map<Long, List<String>> labels = new HashMap<>();
+        for (MailLabelDao.RowLabel r : db.mailLabelDao().getLabelKeysForRowsSync(rowIds)) {
+            List<String> list = labels.get(r.mailRowId);
+            if (list == null) labels.put(r.mailRowId, list = new ArrayList<>());
+            list.add(r.labelKey);
+        }
+        MailCache cache = MailCache.get();
+        for (int i = 0; i < n; i++) {
+            MailEntity m = mails.get(i);
+            List<String> l = labels.get(m.getRowId());
+            cache.put(m, l != null ? l : new ArrayList<>());
+        }
+    }
+
+    /** Emits null while the mail is not (or no longer) stored. */
+    public ObservableQuery<MailDetail> mailDetail(String mailId) {
+        return new ObservableQuery<>(db, "mail:" + mailId, MAIL_TABLES, () -> {
+            MailEntity m = db.mailDao().getByIdSync(mailId);
+            if (m == null) return null;
+            List<String> labels = db.mailLabelDao().getLabelsForMailSync(mailId);
+            MailCache.get().put(m, labels);
+            return new MailDetail(m, labels);
+        });
+    }
+
+    /** Owner is read on every run, so a login after subscribing is picked up. */
+    public ObservableQuery<List<LabelEntity>> labels(Supplier<String> ownerId) {
+        return new ObservableQuery<>(db, "labels", LABEL_TABLES, () -> {
+            String owner = ownerId.get();
+            if (owner == null) return new ArrayList<>();
+            return db.labelDao().getAllByOwner(owner);
+        });
+    }
+
+    /** Drawer: saved searches with total/unread counts, re-emitted as members or read flags change. */
+    public ObservableQuery<List<SavedSearchDao.WithCounts>> savedSearches(Supplier<String> ownerId) {
+        return new ObservableQuery<>(db, "saved-searches", SAVED_SEARCH_TABLES, () -> {
+            String owner = ownerId.get();
+            if (owner == null) return new ArrayList<>();
+            return db.savedSearchDao().getWithCountsSync(owner);
+        });
+    }
+
+    /** A saved search's mails: a read of its materialized members, no search. */
+    public ObservableQuery<List<MailEntity>> mailsForSavedSearch(int searchId) {
+        return new ObservableQuery<>(db, "saved:" + searchId, SAVED_SEARCH_TABLES, () -> {
+            List<MailEntity> mails = db.savedSearchDao().getMailsSync(searchId);
+            warmCache(mails);
+            return mails;
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.gmailish.data.local;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LiveData that re-runs a blocking query when Room's InvalidationTracker reports
+ * a write to one of {@code tables}. Writes to other tables do not wake it up.
+ *
+ * Invalidations are coalesced to one re-query per frame: the first one schedules
+ * a Choreographer callback, and any that land before it fires are absorbed. A
+ * write that lands while the query is running schedules exactly one more.
+ * Only observes while active (a started lifecycle owner is watching).
+ */
+public class ObservableQuery<T> extends LiveData<T> {
+
+    private static final String TAG = "ObservableQuery";
+
+    public interface Loader<T> {
+        /** Runs on the database query executor. */
+        T load();
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    // Observer add/remove, in call order: on the pooled query executor a quick
+    // active/inactive flip could run the remove first and leave the observer
+    // registered on a query nobody watches
+    private static final Executor REGISTRATION = Executors.newSingleThreadExecutor();
+
+    private final RoomDatabase db;
+    private final Executor executor;
+    private final Loader<T> loader;
+    private final String name;
+    private final InvalidationTracker.Observer observer;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean registered = new AtomicBoolean(false);
+
+    private final Runnable query = new Runnable() {
+        @Override public void run() {
+            // Clear first: a write during load() must trigger another pass
+            scheduled.set(false);
+            if (!hasActiveObservers()) return;
+            try {
+                postValue(loader.load());
+            } catch (Exception e) {
+                Log.w(TAG, name + ": query failed: " + e.getMessage());
+            }
+        }
+    };
+
+    private final Choreographer.FrameCallback onFrame = frameTimeNanos -> runQuery();
+    private final Runnable postFrame = () -> Choreographer.getInstance().postFrameCallback(onFrame);
+
+    public ObservableQuery(RoomDatabase db, String name, String[] tables, Loader<T> loader) {
+        this.db = db;
+        this.executor = db.getQueryExecutor();
+        this.loader = loader;
+        this.name = name;
+        this.observer = new InvalidationTracker.Observer(tables) {
+            @Override public void onInvalidated(@NonNull Set<String> invalidated) {
+                schedule();
+            }
+        };
+    }
+
+    @Override
+    protected void onActive() {
+        REGISTRATION.execute(() -> {
+            // addObserver syncs triggers, which touches the database: keep it off main
+            if (registered.compareAndSet(false, true)) {
+                db.getInvalidationTracker().addObserver(observer);
+            }
+        });
+        // First value (or a refresh after coming back) without waiting for a write
+        schedule();
+    }
+
+    @Override
+    protected void onInactive() {
+        REGISTRATION.execute(() -> {
+            if (registered.compareAndSet(true, false)) {
+                db.getInvalidationTracker().removeObserver(observer);
+            }
+        });
+        // Drop a pending frame so the next onActive() can schedule its own pass
+        MAIN.removeCallbacks(postFrame);
+        Choreographer.getInstance().removeFrameCallback(onFrame);
+        scheduled.set(false);
+    }
+
+    /** Force a re-query on the next frame (e.g. when a non-Room input changed). */
+    public void refresh() {
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        // Choreographer is per-looper; always post the frame callback from main
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            postFrame.run();
+        } else {
+            MAIN.post(postFrame);
+        }
+    }
+
+    private void runQuery() {
+        executor.execute(query);
+    }
+}
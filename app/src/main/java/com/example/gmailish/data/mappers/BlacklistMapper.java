@@ -0,0 +1,20 @@
+// BlacklistMapper.java
+package com.example.gmailish.data.mappers;
+
+import com.example.gmailish.data.entity.BlacklistEntity;
+
+import org.json.JSONObject;
+
+public final class BlacklistMapper {
+    /** An "added" entry of GET /api/blacklist/changes; null without a url. */
+    public static BlacklistEntity fromJson(JSONObject json) {
+        String url = json.optString("url", "");
+        if (url.isEmpty()) return null;
+        return new BlacklistEntity(
+                url,
+                MailMapper.parseDateOrNow(json.optString("createdAt", null)),
+                MailMapper.parseDateOrNow(json.optString("updatedAt", null))
+        );
+    }
+    private BlacklistMapper() {}
+}
@@ -3,6 +3,7 @@ package com.example.gmailish.data.mappers;
 
 import com.example.gmailish.data.entity.LabelEntity;
 import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.thread.ThreadKeys;
 import com.example.gmailish.data.entity.MailLabelCrossRef;
 
 import org.json.JSONArray;
@@ -25,7 +26,7 @@ public final class MailMapper {
             "yyyy-MM-dd"
     );
 
-    private static Date parseDateOrNow(String value) {
+    static Date parseDateOrNow(String value) {
         if (value == null || value.isBlank()) return new Date();
         for (String pattern : knownFormats) {
             try {
@@ -54,7 +55,7 @@ public final class MailMapper {
     }
 
     public static MailEntity mailEntityFromJson(JSONObject json) {
-        return new MailEntity(
+        MailEntity mail = new MailEntity(
                 json.optString("id"),
                 json.optString("senderId"),
                 json.optString("senderName"),
@@ -68,6 +69,9 @@ public final class MailMapper {
                 json.optBoolean("read", false),
                 json.optBoolean("starred", false)
         );
+        // Null when the server sends none; MailDao derives one then
+        mail.setThreadKey(ThreadKeys.fromServer(json.optString("threadId", null)));
+        return mail;
     }
 
     public static List<String> labelIdsFromJson(JSONObject json) {
@@ -75,9 +79,9 @@ public final class MailMapper {
         return toLabelIdList(arr);
     }
 
-    public static List<MailLabelCrossRef> crossRefsForMail(String mailId, List<String> labelIds) {
+    public static List<MailLabelCrossRef> crossRefsForMail(long mailRowId, List<Integer> labelIds) {
         List<MailLabelCrossRef> out = new ArrayList<>(labelIds.size());
-        for (String lid : labelIds) out.add(new MailLabelCrossRef(mailId, lid));
+        for (int lid : labelIds) out.add(new MailLabelCrossRef(mailRowId, lid));
         return out;
     }
 
@@ -0,0 +1,35 @@
+package com.example.gmailish.data.model;
+
+import java.util.Locale;
+
+/**
+ * Single place for label key normalization.
+ * Local (Room/UI) keys use "primary" where the server uses "inbox".
+ */
+public final class LabelNames {
+
+    public static final String INBOX = "inbox";     // server name
+    public static final String PRIMARY = "primary"; // local name for the same label
+    public static final String STARRED = "starred";
+    public static final String SENT = "sent";
+    public static final String DRAFTS = "drafts";
+    public static final String OUTBOX = "outbox";
+
+    /** Server/raw label → local key ("inbox" → "primary", lowercased). */
+    public static String toLocal(String label) {
+        if (label == null) return null;
+        String v = label.trim();
+        if (INBOX.equalsIgnoreCase(v)) return PRIMARY;
+        return v.toLowerCase(Locale.ROOT);
+    }
+
+    /** Local key → server label ("primary" → "inbox", lowercased). */
+    public static String toApi(String label) {
+        if (label == null) return null;
+        String v = label.trim();
+        if (PRIMARY.equalsIgnoreCase(v)) return INBOX;
+        return v.toLowerCase(Locale.ROOT);
+    }
+
+    private LabelNames() {}
+}
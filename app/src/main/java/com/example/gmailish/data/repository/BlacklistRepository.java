@@ -1,16 +1,40 @@
 package com.example.gmailish.data.repository;
 
+import com.example.gmailish.data.blacklist.BlacklistFilter;
 import com.example.gmailish.data.dao.BlacklistDao;
+import com.example.gmailish.data.dao.LinkScanDao;
+import com.example.gmailish.data.dao.SyncCheckpointDao;
+import com.example.gmailish.data.db.AppDatabase;
 import com.example.gmailish.data.entity.BlacklistEntity;
+import com.example.gmailish.data.entity.SyncCheckpointEntity;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class BlacklistRepository {
 
+    // Sync checkpoint row for the blacklist (user ids are ObjectIds, no clash)
+    public static final String CHECKPOINT_KEY = "blacklist";
+    // SQLite bound-variable limit is 999 on older devices
+    private static final int IN_CHUNK = 500;
+
+    private final AppDatabase db;
     private final BlacklistDao blacklistDao;
+    // Every table write goes through here so the filter mirror stays exact
+    private final BlacklistFilter filter;
+    // Cached link verdicts of mails that link to a changed URL are recounted
+    private final LinkScanDao linkScanDao;
+    private final SyncCheckpointDao checkpointDao;
 
-    public BlacklistRepository(BlacklistDao blacklistDao) {
-        this.blacklistDao = blacklistDao;
+    public BlacklistRepository(AppDatabase db, BlacklistFilter filter) {
+        this.db = db;
+        this.blacklistDao = db.blacklistDao();
+        this.filter = filter;
+        this.linkScanDao = db.linkScanDao();
+        this.checkpointDao = db.syncCheckpointDao();
     }
 
     // Reads (blocking; add a sync method to DAO if you only had Flow before)
@@ -18,16 +42,78 @@ public class BlacklistRepository {
         return blacklistDao.getAllSync();
     }
 
+    /** O(k) in memory for most URLs; the DAO is asked only on a possible hit. */
     public boolean isBlacklisted(String url) {
-        return blacklistDao.exists(url);
+        return filter.isBlacklisted(url);
     }
 
     // Writes (blocking)
     public void save(BlacklistEntity entry) {
+        filter.beforeWrite();
         blacklistDao.upsert(entry);
+        filter.onAdded(entry.url);
+        linkScanDao.rejudgeLinksTo(entry.url);
     }
 
     public int remove(String url) {
-        return blacklistDao.delete(url);
+        filter.beforeWrite();
+        int n = blacklistDao.delete(url);
+        if (n > 0) {
+            filter.onRemoved(url);
+            linkScanDao.rejudgeLinksTo(url);
+        }
+        return n;
+    }
+
+    /* =========================
+       Versioned sync (BlacklistSyncWorker)
+       ========================= */
+
+    /** Server version the table is synced to; 0 before the first sync. */
+    public long syncedVersion() {
+        SyncCheckpointEntity cp = checkpointDao.get(CHECKPOINT_KEY);
+        if (cp == null || cp.cursor == null) return 0;
+        try {
+            return Long.parseLong(cp.cursor);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Apply a server diff, the verdict recount and the new version in one
+     * transaction. With reset, local URLs the diff doesn't list are dropped
+     * (first sync, or the server didn't know our version).
+     */
+    public void applyChanges(List<BlacklistEntity> added, List<String> removed, boolean reset, long version) {
+        filter.beforeWrite();
+        List<String> dropped = new ArrayList<>(removed);
+        db.runInTransaction(() -> {
+            Set<String> addedUrls = new HashSet<>();
+            for (BlacklistEntity e : added) addedUrls.add(e.url);
+            if (reset) {
+                for (String url : blacklistDao.getAllUrlsSync()) {
+                    if (!addedUrls.contains(url)) dropped.add(url);
+                }
+            }
+
+            if (!added.isEmpty()) blacklistDao.upsertAll(added);
+            for (int i = 0; i < dropped.size(); i += IN_CHUNK) {
+                blacklistDao.deleteAll(dropped.subList(i, Math.min(dropped.size(), i + IN_CHUNK)));
+            }
+
+            List<String> changed = new ArrayList<>(addedUrls);
+            changed.addAll(dropped);
+            for (int i = 0; i < changed.size(); i += IN_CHUNK) {
+                linkScanDao.rejudgeLinksToAny(changed.subList(i, Math.min(changed.size(), i + IN_CHUNK)));
+            }
+
+            checkpointDao.upsert(new SyncCheckpointEntity(CHECKPOINT_KEY, String.valueOf(version),
+                    added.size() + dropped.size(), -1, true, new Date()));
+        });
+
+        // After the commit: a filter rebuild these trigger must read the new table
+        for (BlacklistEntity e : added) filter.onAdded(e.url);
+        for (String url : dropped) filter.onRemoved(url);
     }
 }
@@ -1,19 +1,35 @@
 package com.example.gmailish.data.repository;
 
+import android.util.Log;
+
 import com.example.gmailish.data.dao.LabelDao;
 import com.example.gmailish.data.dao.MailLabelDao;
+import com.example.gmailish.data.dao.SavedSearchDao;
 import com.example.gmailish.data.entity.LabelEntity;
+import com.example.gmailish.data.local.LabelRegistry;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.search.SavedSearchIndex;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 public class LabelRepository {
 
+    private static final String TAG = "LabelRepository";
+
     private final LabelDao labelDao;
     private final MailLabelDao mailLabelDao;
+    private final LabelRegistry registry;
+    // Links change what label: searches match, so the touched rows are re-checked
+    private final SavedSearchIndex savedSearches;
 
-    public LabelRepository(LabelDao labelDao, MailLabelDao mailLabelDao) {
+    public LabelRepository(LabelDao labelDao, MailLabelDao mailLabelDao, SavedSearchDao savedSearchDao) {
         this.labelDao = labelDao;
         this.mailLabelDao = mailLabelDao;
+        this.registry = LabelRegistry.get(labelDao);
+        this.savedSearches = SavedSearchIndex.get(savedSearchDao);
     }
 
     // Reads (blocking; call on background thread)
@@ -23,26 +39,76 @@ public class LabelRepository {
 
     // Writes (blocking)
     public void saveLabel(LabelEntity label) {
-        labelDao.upsert(label);
+        registry.remember(label.ownerId, label.labelKey, labelDao.upsert(label));
     }
 
     public void saveLabels(List<LabelEntity> labels) {
-        labelDao.upsertAll(labels);
+        for (LabelEntity l : labels) saveLabel(l);
+    }
+
+    public int deleteLabel(String ownerId, String labelKey) {
+        Integer id = registry.lookup(ownerId, labelKey);
+        if (id == null) return 0;
+        List<Long> rows = mailLabelDao.getRowIdsForLabelSync(id, ownerId);
+        mailLabelDao.clearForLabel(id);
+        refreshSavedRows(rows);
+        // Any cached mail may have carried this label
+        MailCache.get().clear();
+        registry.forget(ownerId, labelKey);
+        return labelDao.deleteByKey(ownerId, labelKey);
+    }
+
+    // Local placeholder key -> server id. Same row, so mails keep the label.
+    // False if there is nothing to rekey or the server key already has its own row.
+    public boolean rekeyLabel(String ownerId, String oldKey, String newKey, String name) {
+        Integer id = registry.lookup(ownerId, oldKey);
+        if (id == null || registry.lookup(ownerId, newKey) != null) return false;
+        labelDao.rekey(ownerId, oldKey, newKey);
+        registry.rekey(ownerId, oldKey, newKey);
+        if (name != null) labelDao.rename(id, name);
+        return true;
+    }
+
+    public void renameLabel(String ownerId, String labelKey, String name) {
+        Integer id = registry.lookup(ownerId, labelKey);
+        if (id != null) labelDao.rename(id, name);
     }
 
-    public int deleteLabel(String labelId) {
-        mailLabelDao.clearForLabel(labelId);
-        return labelDao.deleteById(labelId);
+    public void linkMail(String mailId, String labelKey, String ownerId) {
+        if (mailLabelDao.link(mailId, registry.intern(labelKey, ownerId, labelKey)) != -1) refreshSaved(mailId);
+        MailCache.get().invalidate(mailId);
+    }
+
+    public void unlinkMail(String mailId, String labelKey, String ownerId) {
+        Integer id = registry.lookup(ownerId, labelKey);
+        if (id != null && mailLabelDao.remove(mailId, id) > 0) refreshSaved(mailId);
+        MailCache.get().invalidate(mailId);
     }
 
     // NEW: ensure a label exists for this owner. Returns the id used (lowercased name).
     public String ensureLabel(String ownerId, String labelName) {
         if (labelName == null) return null;
-        String id = labelName.toLowerCase();
+        String key = labelName.toLowerCase(Locale.ROOT);
         LabelEntity existing = labelDao.getByName(ownerId, labelName);
         if (existing == null) {
-            labelDao.upsert(new LabelEntity(id, ownerId, labelName));
+            registry.intern(key, ownerId, labelName);
+        }
+        return key;
+    }
+
+    // -------- Saved searches (see SavedSearchIndex) --------
+    // Same rule as MailRepository: a failed refresh is logged, never fails the write
+
+    private void refreshSaved(String mailId) {
+        Long rowId = mailLabelDao.rowIdFor(mailId);
+        if (rowId != null) refreshSavedRows(Collections.singletonList(rowId));
+    }
+
+    private void refreshSavedRows(Collection<Long> rowIds) {
+        try {
+            savedSearches.refreshRows(rowIds);
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: refresh " + rowIds.size() + " rows failed: " + e.getMessage());
         }
-        return id;
     }
 }
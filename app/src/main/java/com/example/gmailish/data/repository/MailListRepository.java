@@ -0,0 +1,324 @@
+package com.example.gmailish.data.repository;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.thread.ThreadKeys;
+import com.example.gmailish.utils.ApiClient;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Read path for label lists: Room is the only source the UI observes
+ * (MailObservers.mailsForLabel), and this class keeps it fresh. A revalidation
+ * fetches the label from the server and writes it through saveMailsAndLabels;
+ * rows that did not change are skipped, so an up-to-date list emits nothing.
+ * The response is the whole label, so in the same write the owner's mails it
+ * no longer lists lose the label (deleted on the server, or label removed).
+ *
+ * Each label has a freshness TTL. Within it, revalidate() is a no-op unless
+ * forced (pull-to-refresh), and at most one fetch per label is in flight;
+ * callers that arrive meanwhile are answered when that fetch commits.
+ */
+public final class MailListRepository {
+
+    private static final String TAG = "MailListRepo";
+
+    private static final long TTL_DEFAULT_MS = 60_000L;
+    private static final Map<String, Long> TTL_MS = new HashMap<>();
+    static {
+        TTL_MS.put(LabelNames.PRIMARY, 30_000L);   // pushed events also land here
+        TTL_MS.put(LabelNames.STARRED, 120_000L);  // only changes on local actions
+        TTL_MS.put(LabelNames.SENT,    120_000L);
+        TTL_MS.put("spam",             600_000L);
+        TTL_MS.put("trash",            600_000L);
+    }
+
+    public interface Callback {
+        /** fetched=false when skipped (fresh/local-only); error is null on success. */
+        void onDone(boolean fetched, String error);
+    }
+
+    private static volatile MailListRepository INSTANCE;
+
+    private final Context app;
+    private final OkHttpClient client;
+    private final MailRepository mailRepo;
+    private final LocalWriteQueue writes;
+
+    // owner|label -> elapsedRealtime of the last successful fetch
+    private final ConcurrentHashMap<String, Long> fetchedAt = new ConcurrentHashMap<>();
+    // Bumped by invalidate(): a fetch started before it must not mark its label fresh
+    private final AtomicLong generation = new AtomicLong();
+    // owner|label -> callbacks waiting on the fetch in flight (lists only touched inside compute/remove)
+    private final ConcurrentHashMap<String, List<Callback>> inFlight = new ConcurrentHashMap<>();
+
+    private MailListRepository(Context context) {
+        this.app = context.getApplicationContext();
+        AppDatabase db = AppDbProvider.get(app);
+        this.mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
+        this.writes = LocalWriteQueue.get(db);
+        this.client = ApiClient.get(app);
+    }
+
+    public static MailListRepository get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (MailListRepository.class) {
+                if (INSTANCE == null) INSTANCE = new MailListRepository(context);
+            }
+        }
+        return INSTANCE;
+    }
+
+    /* =========================
+       Freshness
+       ========================= */
+
+    /** Drafts and outbox only exist locally; there is nothing to revalidate. */
+    public static boolean isLocalOnly(String labelKey) {
+        return LabelNames.DRAFTS.equals(labelKey) || LabelNames.OUTBOX.equals(labelKey);
+    }
+
+    public boolean isFresh(String labelKey, String ownerId) {
+        Long at = fetchedAt.get(key(labelKey, ownerId));
+        if (at == null) return false;
+        Long ttl = TTL_MS.get(labelKey);
+        return SystemClock.elapsedRealtime() - at < (ttl != null ? ttl : TTL_DEFAULT_MS);
+    }
+
+    /** Everything is stale again (resync required, logout). */
+    public void invalidate() {
+        generation.incrementAndGet();
+        fetchedAt.clear();
+    }
+
+    private static String key(String labelKey, String ownerId) {
+        return ownerId + "|" + labelKey;
+    }
+
+    /* =========================
+       Revalidation
+       ========================= */
+
+    /**
+     * Fetch the label and write it into Room unless it is fresh (or local-only).
+     * If it is already being fetched, {@code cb} waits for that fetch instead.
+     * The callback runs on a background thread.
+     */
+    public void revalidate(String labelKey, String ownerId, boolean force, Callback cb) {
+        String k = key(labelKey, ownerId);
+        if (isLocalOnly(labelKey) || (!force && isFresh(labelKey, ownerId))) {
+            Log.d(TAG, "revalidate: skip " + k + " (fresh or local-only)");
+            done(cb, false, null);
+            return;
+        }
+        boolean[] joined = {false};
+        inFlight.compute(k, (key, waiting) -> {
+            if (waiting == null) waiting = new ArrayList<>();
+            else joined[0] = true;
+            waiting.add(cb);
+            return waiting;
+        });
+        if (joined[0]) {
+            Log.d(TAG, "revalidate: " + k + " in flight, waiting for it");
+            return;
+        }
+
+        String token = app.getSharedPreferences("prefs", Context.MODE_PRIVATE).getString("jwt", null);
+        if (token == null) {
+            finish(k, false, "JWT token missing");
+            return;
+        }
+
+        long gen = generation.get();
+        String url = "http://10.0.2.2:3000/api/mails?label=" + LabelNames.toApi(labelKey);
+        Request request = new Request.Builder().url(url).header("Authorization", "Bearer " + token).build();
+
+        client.newCall(request).enqueue(new okhttp3.Callback() {
+            @Override public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "revalidate " + k + " network error: " + e.getMessage());
+                finish(k, false, "Failed to load '" + labelKey + "': " + e.getMessage());
+            }
+
+            @Override public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        finish(k, false, "Server error " + r.code() + " loading '" + labelKey + "'");
+                        return;
+                    }
+                    JSONArray array = new JSONArray(r.body() != null ? r.body().string() : "[]");
+                    String[] error = {null};
+                    writes.enqueue(null, () -> {
+                        try {
+                            int written = cacheServerList(array, ownerId, labelKey);
+                            if (generation.get() == gen) fetchedAt.put(k, SystemClock.elapsedRealtime());
+                            Log.d(TAG, "revalidate " + k + ": mails=" + array.length() + " rowsWritten=" + written);
+                        } catch (Exception e) {
+                            Log.e(TAG, "revalidate " + k + " write error: " + e.getMessage(), e);
+                            error[0] = "Parse error: " + e.getMessage();
+                        }
+                    });
+                    // Callback once committed, so the list has re-queried by the time it fires
+                    writes.afterFlush(() -> finish(k, error[0] == null, error[0]));
+                } catch (Exception e) {
+                    finish(k, false, "Parse error: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Ends the fetch for k and answers everyone who waited on it. */
+    private void finish(String k, boolean fetched, String error) {
+        List<Callback> waiting = inFlight.remove(k);
+        if (waiting == null) return;
+        for (Callback cb : waiting) done(cb, fetched, error);
+    }
+
+    private static void done(Callback cb, boolean fetched, String error) {
+        if (cb != null) cb.onDone(fetched, error);
+    }
+
+    /** Queue a server mail list for Room (All inboxes / full loads). */
+    public void cacheServerListAsync(JSONArray array) {
+        if (array == null || array.length() == 0) return;
+        String ownerId = app.getSharedPreferences("prefs", Context.MODE_PRIVATE).getString("user_id", null);
+        writes.enqueue(null, () -> {
+            try {
+                int written = cacheServerList(array, ownerId, null);
+                Log.d(TAG, "cacheServerList: mails=" + array.length() + " rowsWritten=" + written);
+            } catch (Exception e) {
+                Log.e(TAG, "cacheServerList error: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /* =========================
+       Server JSON -> Room (blocking)
+       ========================= */
+
+    /**
+     * Returns rows actually written; unchanged mails are skipped by the hash check.
+     * With {@code completeLabel}, the array is that whole label: the owner's other
+     * mails are unlinked from it. Call inside the write transaction.
+     */
+    public int cacheServerList(JSONArray array, String currentUserId, String completeLabel) throws Exception {
+        List<MailEntity> mails = new ArrayList<>();
+        Map<String, List<String>> mailToLabels = new HashMap<>();
+
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            String id = obj.optString("id");
+
+            List<String> labels = new ArrayList<>();
+            JSONArray raw = obj.optJSONArray("labels");
+            boolean starred = false;
+            if (raw != null) {
+                for (int j = 0; j < raw.length(); j++) {
+                    String v = raw.optString(j);
+                    if (v == null || v.isEmpty()) continue;
+                    if (LabelNames.STARRED.equalsIgnoreCase(v)) starred = true;
+                    labels.add(LabelNames.toLocal(v)); // server -> local
+                }
+            }
+
+            MailEntity mail = new MailEntity(
+                    id,
+                    resolveMe(obj.optString("senderId", null), currentUserId),
+                    obj.optString("senderName"),
+                    resolveMe(obj.optString("recipientId", null), currentUserId),
+                    obj.optString("recipientName", null),
+                    obj.optString("recipientEmail", null),
+                    obj.optString("subject"),
+                    obj.optString("content"),
+                    parseAnyTimestamp(obj.optString("timestamp", null)),
+                    resolveMe(obj.optString("ownerId", null), currentUserId),
+                    obj.optBoolean("read"),
+                    starred
+            );
+            mail.setThreadKey(ThreadKeys.fromServer(obj.optString("threadId", null)));
+            mails.add(mail);
+            mailToLabels.put(id, labels);
+        }
+        int written = mailRepo.saveMailsAndLabels(mails, mailToLabels);
+        if (completeLabel != null && currentUserId != null) {
+            // saveMailsAndLabels filled in every rowId
+            List<Long> listed = new ArrayList<>(mails.size());
+            for (MailEntity m : mails) listed.add(m.getRowId());
+            written += mailRepo.retainLabelMembers(completeLabel, currentUserId, listed);
+        }
+        return written;
+    }
+
+    private static String resolveMe(String value, String currentUserId) {
+        if (value == null || value.isEmpty()) return value;
+        if ("me".equalsIgnoreCase(value) && currentUserId != null && !currentUserId.isEmpty()) {
+            return currentUserId;
+        }
+        return value;
+    }
+
+    /** ISO-8601, epoch seconds/millis, or Date.toString(); null if none match. */
+    private static Date parseAnyTimestamp(String raw) {
+        if (raw == null || raw.isEmpty()) return null;
+
+        try {
+            if (android.os.Build.VERSION.SDK_INT >= 26) {
+                return Date.from(java.time.OffsetDateTime.parse(raw).toInstant());
+            } else {
+                String n = normalizeIso(raw);
+                SimpleDateFormat s =
+                        new SimpleDateFormat(n.contains(".")
+                                ? "yyyy-MM-dd'T'HH:mm:ss.SSSZ" : "yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+                if (n.endsWith("Z")) s.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+                return s.parse(n);
+            }
+        } catch (Exception ignored) {}
+
+        try {
+            if (raw.matches("^\\d{10,13}$")) {
+                long v = Long.parseLong(raw);
+                if (v < 1_000_000_000_000L) v *= 1000L;
+                return new Date(v);
+            }
+        } catch (Exception ignored) {}
+
+        try {
+            SimpleDateFormat s = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+            return s.parse(raw);
+        } catch (Exception ignored) {}
+
+        return null;
+    }
+
+    private static String normalizeIso(String iso) {
+        if (iso == null) return null;
+        int p = Math.max(iso.lastIndexOf('+'), iso.lastIndexOf('-'));
+        if (p > 10 && iso.length() >= p + 6 && iso.charAt(iso.length() - 3) == ':') {
+            return iso.substring(0, iso.length() - 3) + iso.substring(iso.length() - 2);
+        }
+        return iso;
+    }
+}
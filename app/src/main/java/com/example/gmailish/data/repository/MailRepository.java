@@ -5,19 +5,30 @@ import android.util.Log;
 import com.example.gmailish.data.dao.LabelDao;
 import com.example.gmailish.data.dao.MailDao;
 import com.example.gmailish.data.dao.MailLabelDao;
-import com.example.gmailish.data.entity.LabelEntity;
+import com.example.gmailish.data.dao.SavedSearchDao;
 import com.example.gmailish.data.entity.MailEntity;
 import com.example.gmailish.data.entity.MailLabelCrossRef;
+import com.example.gmailish.data.local.LabelRegistry;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.search.SavedSearchIndex;
+import com.example.gmailish.data.search.SearchQuery;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -28,15 +39,24 @@ public class MailRepository {
     private static final String LABEL_DRAFTS = "drafts";
     private static final String LABEL_SENT   = "sent";
     private static final String LABEL_OUTBOX = "outbox";
+    // SQLite bound-variable limit is 999 on older devices
+    private static final int IN_CHUNK = 500;
 
     private final MailDao mailDao;
     private final LabelDao labelDao;
     private final MailLabelDao mailLabelDao;
+    private final LabelRegistry labels;
+    private final MailCache cache = MailCache.get();
+    // Every write below re-checks the touched rows against the saved searches
+    private final SavedSearchIndex savedSearches;
 
-    public MailRepository(MailDao mailDao, LabelDao labelDao, MailLabelDao mailLabelDao) {
+    public MailRepository(MailDao mailDao, LabelDao labelDao, MailLabelDao mailLabelDao,
+                          SavedSearchDao savedSearchDao) {
         this.mailDao = mailDao;
         this.labelDao = labelDao;
         this.mailLabelDao = mailLabelDao;
+        this.labels = LabelRegistry.get(labelDao);
+        this.savedSearches = SavedSearchIndex.get(savedSearchDao);
     }
 
     // -------- Reads (blocking; call on background thread) --------
@@ -44,12 +64,11 @@ public class MailRepository {
         return mailDao.getMailsByOwnerSync(ownerId);
     }
 
-    public List<MailEntity> search(String ownerId, String likeQuery) {
-        return mailDao.searchMailsSync(ownerId, likeQuery);
-    }
-
-    public List<MailEntity> getByLabel(String labelId) {
-        return mailLabelDao.getMailsForLabelSync(labelId);
+    /** Gmail-style query text (words, from:, label:, is:, before:/after:), newest first. */
+    public List<MailEntity> search(String ownerId, String text, int limit) {
+        SearchQuery q = SearchQuery.parse(text);
+        if (q.isEmpty()) return new ArrayList<>();
+        return mailDao.searchSync(q.compile(ownerId, limit).toQuery());
     }
 
     public List<MailEntity> getStarred(String ownerId) {
@@ -104,43 +123,62 @@ public class MailRepository {
         }
     }
 
-    // -------- Local helper used by InboxViewModel --------
-    public List<MailEntity> getMailsForLabelLocal(String labelId) {
-        if (labelId == null || labelId.isEmpty()) return new ArrayList<>();
-        Log.d(TAG, "getMailsForLabelLocal: " + labelId);
-        return mailLabelDao.getMailsForLabelSync(labelId);
-    }
-
     // -------- Writes (blocking; call on background thread) --------
     public void saveMail(MailEntity mail) {
         Log.d(TAG, "saveMail: " + mail.getId());
-        mailDao.upsert(mail);
+        if (mailDao.upsertIfChanged(mail)) refreshSavedRow(mail.getRowId());
+        cache.invalidate(mail.getId());
     }
 
     public void saveMails(List<MailEntity> mails) {
         if (mails == null) mails = new ArrayList<>();
         Log.d(TAG, "saveMails: count=" + mails.size());
-        mailDao.upsertAll(mails);
+        refreshSavedRows(mailDao.upsertChanged(mails));
+        for (MailEntity m : mails) cache.invalidate(m.getId());
     }
 
     public int setRead(String mailId, boolean read) {
         Log.d(TAG, "setRead: id=" + mailId + " read=" + read);
-        return mailDao.setRead(mailId, read);
+        cache.invalidate(mailId);
+        int n = mailDao.setRead(mailId, read);
+        if (n > 0) refreshSaved(mailId);
+        return n;
     }
 
     public int setStarred(String mailId, boolean starred) {
         Log.d(TAG, "setStarred: id=" + mailId + " starred=" + starred);
-        return mailDao.setStarred(mailId, starred);
+        cache.invalidate(mailId);
+        int n = mailDao.setStarred(mailId, starred);
+        if (n > 0) refreshSaved(mailId);
+        return n;
     }
 
     public int deleteMail(String mailId) {
         Log.d(TAG, "deleteMail: id=" + mailId);
+        cache.invalidate(mailId);
+        forgetSaved(mailId);
         try { mailLabelDao.clearForMail(mailId); } catch (Exception ignore) {}
         return mailDao.deleteById(mailId);
     }
 
+    /**
+     * Local id -> server id in place (see MailDao.remapId). If the server copy
+     * was already stored the local row is dropped, and its saved-search
+     * memberships with it. Returns false when no row was rekeyed.
+     */
+    public boolean remapIdLocal(String localId, String serverId) {
+        Long localRow = mailDao.getRowId(localId);
+        boolean remapped = mailDao.remapId(localId, serverId);
+        if (!remapped && localRow != null) forgetSavedRow(localRow);
+        cache.invalidate(localId);
+        cache.invalidate(serverId);
+        return remapped;
+    }
+
     // -------- Local-only helpers --------
     public void deleteMailLocal(String mailId) {
+        cache.invalidate(mailId);
+        forgetSaved(mailId);
         try { mailLabelDao.clearForMail(mailId); } catch (Exception ignore) {}
         mailDao.deleteById(mailId);
     }
@@ -149,52 +187,109 @@ public class MailRepository {
         if (labelNameFallback == null || labelNameFallback.isEmpty()) {
             labelNameFallback = labelId;
         }
-        labelDao.upsert(new LabelEntity(labelId, ownerIdForLabel, labelNameFallback));
-        mailLabelDao.add(new MailLabelCrossRef(mailId, labelId));
+        int id = labels.intern(labelId, ownerIdForLabel, labelNameFallback);
+        if (mailLabelDao.link(mailId, id) != -1) refreshSaved(mailId);
+        cache.invalidate(mailId);
     }
 
     public void removeLabelFromMailLocal(String mailId, String labelId) {
-        mailLabelDao.remove(mailId, labelId);
+        // Labels are per owner: the mail's own owner picks the row
+        Integer id = labels.lookup(mailDao.getOwnerId(mailId), labelId);
+        if (id != null && mailLabelDao.remove(mailId, id) > 0) refreshSaved(mailId);
+        cache.invalidate(mailId);
     }
 
     public void replaceMailLabels(String mailId, List<String> labelIds, String ownerIdForLabels) {
         if (labelIds == null) labelIds = new ArrayList<>();
-        List<LabelEntity> toUpsert = new ArrayList<>();
-        for (String id : labelIds) {
-            toUpsert.add(new LabelEntity(id, ownerIdForLabels, id));
+        Long rowId = mailDao.getRowId(mailId);
+        if (rowId == null) return;
+        Set<Integer> wanted = new LinkedHashSet<>();
+        for (String key : labelIds) wanted.add(labels.intern(key, ownerIdForLabels, key));
+        int[] diff = syncLinks(rowId, wanted);
+        if (diff[0] + diff[1] > 0) refreshSavedRow(rowId);
+        cache.invalidate(mailId);
+    }
+
+    /**
+     * Make the row's label links exactly {@code wanted}, touching only the
+     * differences. Returns {added, removed}.
+     */
+    private int[] syncLinks(long rowId, Set<Integer> wanted) {
+        Set<Integer> current = new HashSet<>(mailLabelDao.getLabelIdsForRowSync(rowId));
+        List<Integer> stale = new ArrayList<>();
+        for (Integer id : current) if (!wanted.contains(id)) stale.add(id);
+        List<MailLabelCrossRef> fresh = new ArrayList<>();
+        for (Integer id : wanted) if (!current.contains(id)) fresh.add(new MailLabelCrossRef(rowId, id));
+        if (!stale.isEmpty()) mailLabelDao.removeForRow(rowId, stale);
+        if (!fresh.isEmpty()) mailLabelDao.addAll(fresh);
+        return new int[]{fresh.size(), stale.size()};
+    }
+
+    // -------- Saved searches (see SavedSearchIndex) --------
+    // Membership is derived data: a failed refresh is logged, never fails the write
+
+    private void refreshSaved(String mailId) {
+        try {
+            savedSearches.refreshRow(mailDao.getRowId(mailId));
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: refresh " + mailId + " failed: " + e.getMessage());
+        }
+    }
+
+    private void refreshSavedRow(Long rowId) {
+        try {
+            savedSearches.refreshRow(rowId);
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: refresh row " + rowId + " failed: " + e.getMessage());
         }
-        labelDao.upsertAll(toUpsert);
-        mailLabelDao.clearForMail(mailId);
-        for (String lid : labelIds) {
-            mailLabelDao.add(new MailLabelCrossRef(mailId, lid));
+    }
+
+    private void refreshSavedRows(Collection<Long> rowIds) {
+        try {
+            savedSearches.refreshRows(rowIds);
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: refresh " + rowIds.size() + " rows failed: " + e.getMessage());
+        }
+    }
+
+    private void forgetSaved(String mailId) {
+        try {
+            savedSearches.forgetRow(mailDao.getRowId(mailId));
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: forget " + mailId + " failed: " + e.getMessage());
+        }
+    }
+
+    private void forgetSavedRow(Long rowId) {
+        try {
+            savedSearches.forgetRow(rowId);
+        } catch (Exception e) {
+            Log.w(TAG, "saved searches: forget row " + rowId + " failed: " + e.getMessage());
         }
     }
 
     // == Outbox/Sent helpers for compose flow ==
     public void saveOutboxMailLocal(String id, String ownerId, String to, String subject, String content, Date ts) {
-        MailEntity senderMail = new MailEntity(
-                id,
-                ownerId,
-                "Me",
-                to != null ? to : "",
-                to != null ? to : "",
-                to,
-                subject,
-                content,
-                ts,
-                ownerId,
-                true,
-                false
-        );
-        mailDao.upsert(senderMail);
+        saveLocalCopy(id, ownerId, to, subject, content, ts);
     }
 
     public void saveSentMailLocal(String id, String ownerId, String to, String subject, String content, Date ts) {
+        saveLocalCopy(id, ownerId, to, subject, content, ts);
+    }
+
+    /**
+     * The sender's copy of a mail to {@code to}. Its recipient is the user id
+     * when an earlier sent mail tells us (so it threads with their replies
+     * right away); otherwise the address, re-derived once the server copy
+     * arrives (see MailDao.upsertIfChanged).
+     */
+    private void saveLocalCopy(String id, String ownerId, String to, String subject, String content, Date ts) {
+        String recipientId = to != null ? mailDao.recipientIdForEmail(ownerId, to) : null;
         MailEntity senderMail = new MailEntity(
                 id,
                 ownerId,
                 "Me",
-                to != null ? to : "",
+                recipientId != null ? recipientId : (to != null ? to : ""),
                 to != null ? to : "",
                 to,
                 subject,
@@ -205,47 +300,172 @@ public class MailRepository {
                 false
         );
         mailDao.upsert(senderMail);
+        refreshSavedRow(senderMail.getRowId());
+        cache.invalidate(id);
+    }
+
+    /**
+     * Reply metadata: put {@code mailId} in the thread of the mail it answers.
+     * Needed for local sent copies, whose recipient is an address rather than
+     * a user id, so the derived key would not match the original.
+     */
+    public void joinThread(String mailId, String parentMailId) {
+        if (mailId == null || parentMailId == null) return;
+        String key = mailDao.getThreadKey(parentMailId);
+        if (key == null) return;
+        if (mailDao.setThreadKey(mailId, key) > 0) {
+            refreshSaved(mailId);
+            cache.invalidate(mailId);
+        }
     }
 
     public void ensureLabelAndLink(String mailId, String ownerId, String labelName) {
-        labelDao.upsert(new LabelEntity(labelName.toLowerCase(), ownerId, labelName));
-        mailLabelDao.add(new MailLabelCrossRef(mailId, labelName.toLowerCase()));
+        int id = labels.intern(labelName.toLowerCase(Locale.ROOT), ownerId, labelName);
+        if (mailLabelDao.link(mailId, id) != -1) refreshSaved(mailId);
+        cache.invalidate(mailId);
     }
 
     // ===== Cache remote mails + label cross-refs =====
+    /**
+     * Writes only what changed: mails whose content hash differs and the
+     * cross-ref diff per mail. Returns the number of rows written (0 = no-op sync).
+     */
     public int saveMailsAndLabels(List<MailEntity> mails, Map<String, List<String>> mailIdToLabels) {
         if (mails == null) mails = new ArrayList<>();
         if (mailIdToLabels == null) mailIdToLabels = new java.util.HashMap<>();
-        Log.d(TAG, "saveMailsAndLabels: mails=" + mails.size());
-        // 1) Save mails
-        mailDao.upsertAll(mails);
-        // 2) Replace label links per mail
-        int crossRefCount = 0;
+        // 1) Save mails (upsert fills in each rowId)
+        List<Long> changedRows = mailDao.upsertChanged(mails);
+        int mailsWritten = changedRows.size();
+        // 2) Diff label links per mail
+        int refsAdded = 0;
+        int refsRemoved = 0;
         for (MailEntity m : mails) {
-            String mailId = m.getId();
-            List<String> labels = mailIdToLabels.get(mailId);
-            if (labels == null) labels = new ArrayList<>();
-            // Clear existing refs to avoid duplicates/stale links
-            try { mailLabelDao.clearForMail(mailId); } catch (Exception ignore) {}
-            for (String raw : labels) {
+            List<String> labels = mailIdToLabels.get(m.getId());
+            Set<Integer> wanted = new LinkedHashSet<>();
+            if (labels != null) {
+                for (String raw : labels) {
+                    if (raw == null || raw.isEmpty()) continue;
+                    String labelKey = LabelNames.toLocal(raw);
+                    // Interned: only the first sighting of a label touches the labels table
+                    wanted.add(this.labels.intern(labelKey, m.getOwnerId(), labelKey));
+                }
+            }
+            try {
+                int[] diff = syncLinks(m.getRowId(), wanted);
+                refsAdded += diff[0];
+                refsRemoved += diff[1];
+                if (diff[0] + diff[1] > 0) changedRows.add(m.getRowId());
+                // Mails the sync left untouched keep their cached copy
+                MailCache.Entry cached = cache.get(m.getId());
+                if (cached != null && (diff[0] + diff[1] > 0
+                        || cached.mail.getContentHash() != m.getContentHash())) {
+                    cache.invalidate(m.getId());
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "saveMailsAndLabels: links for " + m.getId() + " failed: " + e.getMessage());
+            }
+        }
+        // 3) Only rows that changed are re-checked against saved searches
+        refreshSavedRows(changedRows);
+        Log.d(TAG, "saveMailsAndLabels: mails written=" + mailsWritten +
+                " skipped=" + (mails.size() - mailsWritten) +
+                " crossRefs +" + refsAdded + " -" + refsRemoved);
+        return mailsWritten + refsAdded + refsRemoved;
+    }
+
+    /**
+     * After a complete server fetch of one label: unlink the owner's mails it no
+     * longer lists (deleted there, or the label was removed). Returns links removed.
+     * Only rows the server's label query could have returned are candidates (see
+     * getEmailsByLabelName in server/services/mail.js): a trashed mail missing from
+     * "sent", or a spam one missing from the inbox, keeps its link.
+     */
+    public int retainLabelMembers(String labelKey, String ownerId, Collection<Long> listedRowIds) {
+        Integer id = labels.lookup(ownerId, labelKey);
+        if (id == null) return 0;
+        Set<Long> listed = new HashSet<>(listedRowIds);
+        List<Long> stale = new ArrayList<>();
+        for (Long row : listableRows(id, labelKey, ownerId)) {
+            if (!listed.contains(row)) stale.add(row);
+        }
+        if (stale.isEmpty()) return 0;
+        for (int i = 0; i < stale.size(); i += IN_CHUNK) {
+            List<Long> chunk = stale.subList(i, Math.min(stale.size(), i + IN_CHUNK));
+            mailLabelDao.removeRowsFromLabel(id, chunk);
+            for (String mailId : mailDao.getIdsForRows(chunk)) cache.invalidate(mailId);
+        }
+        refreshSavedRows(stale);
+        Log.d(TAG, "retainLabelMembers: " + labelKey + " unlinked=" + stale.size());
+        return stale.size();
+    }
+
+    /** Rows under the label that pass the same filters as the server's label query. */
+    private List<Long> listableRows(int labelId, String labelKey, String ownerId) {
+        String recipient = null;
+        String sender = null;
+        List<String> excluded;
+        switch (labelKey) {
+            case "trash":
+                excluded = Collections.emptyList();
+                break;
+            case "spam":
+                recipient = ownerId;
+                excluded = Collections.emptyList();
+                break;
+            case LabelNames.PRIMARY:
+                recipient = ownerId;
+                excluded = Arrays.asList("spam", "trash", "archive");
+                break;
+            case LabelNames.SENT:
+                sender = ownerId;
+                excluded = Collections.singletonList("trash");
+                break;
+            case LabelNames.DRAFTS:
+                sender = ownerId;
+                excluded = Collections.emptyList();
+                break;
+            default:
+                excluded = Collections.singletonList("trash");
+        }
+        List<Integer> excludedIds = new ArrayList<>();
+        for (String key : excluded) {
+            Integer e = labels.lookup(ownerId, key);
+            if (e != null) excludedIds.add(e);
+        }
+        return mailLabelDao.getListableRowIdsSync(labelId, ownerId, recipient, sender, excludedIds);
+    }
+
+    // ===== Apply pushed change events (see MailEventStream) =====
+    public void applyRemoteLabels(String mailId, List<String> rawLabels, String ownerId) {
+        if (mailId == null || mailDao.getByIdSync(mailId) == null) return;
+        List<String> labels = new ArrayList<>();
+        boolean starred = false;
+        if (rawLabels != null) {
+            for (String raw : rawLabels) {
                 if (raw == null || raw.isEmpty()) continue;
-                String labelId = normalizeLabelId(raw);
-                // Ensure LabelEntity exists (ownerId can be null; use id as name fallback)
-                try {
-                    labelDao.upsert(new LabelEntity(labelId, m.getOwnerId(), labelId));
-                } catch (Exception ignored) {}
-                long res = mailLabelDao.add(new MailLabelCrossRef(mailId, labelId));
-                if (res != -1) crossRefCount++;
+                String id = LabelNames.toLocal(raw);
+                if (!labels.contains(id)) labels.add(id);
+                if ("starred".equals(id)) starred = true;
             }
         }
-        Log.d(TAG, "saveMailsAndLabels: crossRefs added=" + crossRefCount);
-        return crossRefCount;
+        replaceMailLabels(mailId, labels, ownerId);
+        if (mailDao.setStarred(mailId, starred) > 0) refreshSaved(mailId);
+        cache.invalidate(mailId);
+        Log.d(TAG, "applyRemoteLabels: id=" + mailId + " labels=" + labels);
     }
 
-    private String normalizeLabelId(String id) {
-        if (id == null) return null;
-        if ("inbox".equalsIgnoreCase(id)) return "primary";
-        return id.toLowerCase();
+    public void applyRemoteRead(List<String> mailIds, boolean read) {
+        if (mailIds == null) return;
+        List<Long> rows = new ArrayList<>();
+        for (String id : mailIds) {
+            if (mailDao.setRead(id, read) > 0) {
+                Long rowId = mailDao.getRowId(id);
+                if (rowId != null) rows.add(rowId);
+            }
+            cache.invalidate(id);
+        }
+        refreshSavedRows(rows);
+        Log.d(TAG, "applyRemoteRead: count=" + mailIds.size() + " read=" + read);
     }
 
     // NEW: helper used by move operation to decide which labels are "inbox-ish"
@@ -268,8 +488,8 @@ public class MailRepository {
             for (String label : cur) {
                 if ("starred".equalsIgnoreCase(label)) continue;
                 if (isInboxLabel(label)) {
-                    mailLabelDao.remove(mailId, normalizeLabelId(label));
-                    removed.add(normalizeLabelId(label));
+                    removeLabelFromMailLocal(mailId, label);
+                    removed.add(LabelNames.toLocal(label));
                 }
             }
         } catch (Exception ignored) {}
@@ -278,24 +498,30 @@ public class MailRepository {
 
     // NEW: Move a mail locally: clear inbox-ish labels and add target
     public List<String> moveMailLocal(String mailId, String ownerId, String targetLabelRaw) {
-        String target = normalizeLabelId(targetLabelRaw);
+        String target = LabelNames.toLocal(targetLabelRaw);
         if (target == null || target.isEmpty()) return new ArrayList<>();
         // ensure label exists
+        int targetId;
         try {
-            labelDao.upsert(new LabelEntity(target, ownerId, targetLabelRaw));
-        } catch (Exception ignored) {}
+            targetId = labels.intern(target, ownerId, targetLabelRaw);
+        } catch (Exception e) {
+            return new ArrayList<>();
+        }
         // remove old inbox labels and add target
         List<String> removed = clearInboxLabelsForMailLocal(mailId);
         try {
-            mailLabelDao.add(new MailLabelCrossRef(mailId, target));
+            mailLabelDao.link(mailId, targetId);
         } catch (Exception ignored) {}
+        refreshSaved(mailId);
+        cache.invalidate(mailId);
         return removed;
     }
 
     public List<MailEntity> getMailsForLabelLocal(String labelId, String ownerId) {
         if (labelId == null || labelId.isEmpty() || ownerId == null || ownerId.isEmpty())
             return new java.util.ArrayList<>();
-        return mailLabelDao.getMailsForLabelSync(labelId, ownerId);
+        Integer id = labels.lookup(ownerId, labelId);
+        return id != null ? mailLabelDao.getMailsForLabelSync(id, ownerId) : new ArrayList<>();
     }
 
     // =========================
@@ -342,6 +568,8 @@ public class MailRepository {
         );
 
         mailDao.upsert(draft);
+        refreshSavedRow(draft.getRowId());
+        cache.invalidate(id);
         ensureLabelAndLink(id, ownerId, LABEL_DRAFTS);
         Log.d(TAG, "upsertDraftLocal: id=" + id);
         return id;
@@ -351,6 +579,8 @@ public class MailRepository {
     /** Delete a draft and its label cross-refs. */
     public void deleteDraftLocal(String draftId) {
         if (draftId == null || draftId.isEmpty()) return;
+        cache.invalidate(draftId);
+        forgetSaved(draftId);
         try { mailLabelDao.clearForMail(draftId); } catch (Exception ignore) {}
         mailDao.deleteById(draftId);
         Log.d(TAG, "deleteDraftLocal: id=" + draftId);
@@ -369,12 +599,9 @@ public class MailRepository {
 
         String targetId = (newIdOrNull == null || newIdOrNull.isEmpty()) ? draftId : newIdOrNull;
 
-        // Remove old draft row if id changes; otherwise we’ll overwrite the same row.
-        if (!targetId.equals(draftId)) {
-            deleteDraftLocal(draftId);
-        } else {
-            try { removeLabelFromMailLocal(targetId, LABEL_DRAFTS); } catch (Exception ignore) {}
-        }
+        // New id: rekey the draft row in place (same rowId, cross-refs kept)
+        if (!targetId.equals(draftId)) remapIdLocal(draftId, targetId);
+        try { removeLabelFromMailLocal(targetId, LABEL_DRAFTS); } catch (Exception ignore) {}
 
         if (markAsSent) {
             saveSentMailLocal(targetId, ownerId, to, subject, content, ts != null ? ts : new Date());
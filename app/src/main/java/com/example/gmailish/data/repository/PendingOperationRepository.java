@@ -38,6 +38,14 @@ public class PendingOperationRepository {
         dao.delete(id);
     }
 
+    public void park(String id) {
+        dao.park(id);
+    }
+
+    public int unparkAll() {
+        return dao.unparkAll();
+    }
+
     // Convenience helpers to structure payload JSON
 
     public void enqueueLabelAdd(String mailId, String label) {
@@ -0,0 +1,57 @@
+package com.example.gmailish.data.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Okapi BM25 over an FTS4 matchinfo('pcnalx') blob, summed per column with
+ * field weights. Column order is MailFtsEntity's: subject, content,
+ * senderName, recipientName, recipientEmail.
+ *
+ * matchinfo layout (32-bit native-order ints):
+ *   p, c, n, a[c] avg tokens per column, l[c] tokens in this row,
+ *   x[3*p*c] {hits in this row, hits in all rows, rows with a hit}
+ */
+final class Bm25 {
+
+    static final String MATCHINFO = "pcnalx";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Subject and sender say more about a mail than a word deep in the body
+    private static final double[] WEIGHTS = {3.0, 1.0, 2.0, 1.0, 1.0};
+
+    private Bm25() {}
+
+    static double score(byte[] matchinfo) {
+        if (matchinfo == null || matchinfo.length < 12) return 0;
+        IntBuffer in = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int p = in.get(0);
+        int c = in.get(1);
+        double n = in.get(2);
+        int aAt = 3;
+        int lAt = aAt + c;
+        int xAt = lAt + c;
+        if (in.limit() < xAt + 3 * p * c) return 0;
+
+        double score = 0;
+        for (int phrase = 0; phrase < p; phrase++) {
+            for (int col = 0; col < c; col++) {
+                int x = xAt + 3 * (phrase * c + col);
+                double tf = in.get(x);
+                if (tf == 0) continue;
+                double docsWithHit = in.get(x + 2);
+                double avgLen = Math.max(1, in.get(aAt + col));
+                double len = in.get(lAt + col);
+                // Lucene's idf: never negative, even for words in most mails
+                double idf = Math.log(1 + (n - docsWithHit + 0.5) / (docsWithHit + 0.5));
+                double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * len / avgLen));
+                double weight = col < WEIGHTS.length ? WEIGHTS[col] : 1.0;
+                score += weight * idf * norm;
+            }
+        }
+        return score;
+    }
+}
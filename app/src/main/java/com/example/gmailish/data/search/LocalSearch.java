@@ -0,0 +1,128 @@
+package com.example.gmailish.data.search;
+
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.entity.MailEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a SearchQuery in two steps: the filter query returns rowIds only and can
+ * be cancelled mid-flight (a newer keystroke superseded it), then the rows are
+ * loaded by primary key. Blocking; call off the main thread.
+ *
+ * Text queries are ranked: the newest RANK_CANDIDATES matches are scored with
+ * BM25 (Bm25) and the best {@code limit} returned, best first. Snippets for the
+ * returned rows are cut within SNIPPET_BUDGET_MS; rows past the budget get none
+ * and show the start of the body as before.
+ */
+public final class LocalSearch {
+
+    private static final String TAG = "LocalSearch";
+
+    // Bounds ranking work on huge mailboxes; older matches beyond this aren't scored
+    private static final int RANK_CANDIDATES = 500;
+    private static final long SNIPPET_BUDGET_MS = 16;
+    private static final int SNIPPET_CHARS = 120;
+
+    public static final class Result {
+        public final List<MailEntity> mails;
+        /** Every row that matched (up to the candidate cap), for refining. */
+        public final long[] rowIds;
+        /** False if a cap cut the list short, so it can't be refined further. */
+        public final boolean complete;
+        /** By mail id; only rows whose body matched and that fit the budget. */
+        public final Map<String, Snippets.Snippet> snippets;
+
+        Result(List<MailEntity> mails, long[] rowIds, boolean complete, Map<String, Snippets.Snippet> snippets) {
+            this.mails = mails;
+            this.rowIds = rowIds;
+            this.complete = complete;
+            this.snippets = snippets;
+        }
+    }
+
+    private final AppDatabase db;
+
+    public LocalSearch(AppDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Matches, best (text) or newest (filters only) first. With {@code within}
+     * (a previous complete result) only those rows are checked. Throws
+     * android.os.OperationCanceledException when {@code signal} is cancelled.
+     */
+    public Result run(SearchQuery q, String ownerId, int limit, long[] within, CancellationSignal signal) {
+        long t0 = SystemClock.elapsedRealtime();
+        if (within != null && within.length == 0) {
+            return new Result(new ArrayList<>(), within, true, Collections.emptyMap());
+        }
+
+        List<Long> matched = new ArrayList<>();
+        List<Long> ids;
+        boolean complete;
+        SearchQuery.Compiled ranked = q.compileRanked(ownerId, RANK_CANDIDATES, within);
+        if (ranked != null) {
+            List<double[]> scored = new ArrayList<>(); // {score, index in matched}
+            try (Cursor cur = db.query(ranked.toQuery(), signal)) {
+                while (cur.moveToNext()) {
+                    scored.add(new double[]{Bm25.score(cur.getBlob(1)), matched.size()});
+                    matched.add(cur.getLong(0));
+                }
+            }
+            // Stable: equal scores keep newest-first
+            scored.sort((a, b) -> Double.compare(b[0], a[0]));
+            ids = new ArrayList<>(Math.min(limit, scored.size()));
+            for (int i = 0; i < scored.size() && i < limit; i++) ids.add(matched.get((int) scored.get(i)[1]));
+            complete = matched.size() < RANK_CANDIDATES;
+        } else {
+            SearchQuery.Compiled c = q.compileRowIds(ownerId, limit, within);
+            try (Cursor cur = db.query(c.toQuery(), signal)) {
+                while (cur.moveToNext()) matched.add(cur.getLong(0));
+            }
+            ids = matched;
+            complete = matched.size() < limit;
+        }
+        if (signal != null) signal.throwIfCanceled();
+        long tQuery = SystemClock.elapsedRealtime();
+
+        Map<Long, MailEntity> byRow = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (MailEntity m : db.mailDao().getByRowIdsSync(ids)) byRow.put(m.getRowId(), m);
+        }
+        List<MailEntity> mails = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            MailEntity m = byRow.get(id);
+            if (m != null) mails.add(m);
+        }
+
+        Map<String, Snippets.Snippet> snippets = new HashMap<>();
+        List<String> terms = q.highlightTerms();
+        if (!terms.isEmpty()) {
+            long deadline = SystemClock.elapsedRealtime() + SNIPPET_BUDGET_MS;
+            for (MailEntity m : mails) {
+                if (SystemClock.elapsedRealtime() > deadline) break;
+                Snippets.Snippet s = Snippets.extract(m.getContent(), terms, SNIPPET_CHARS);
+                if (s != null) snippets.put(m.getId(), s);
+            }
+        }
+
+        long[] rowIds = new long[matched.size()];
+        for (int i = 0; i < rowIds.length; i++) rowIds[i] = matched.get(i);
+
+        long tEnd = SystemClock.elapsedRealtime();
+        Log.d(TAG, "run: " + mails.size() + "/" + matched.size() + " rows" + (ranked != null ? " ranked" : "")
+                + (within != null ? " (refined from " + within.length + ")" : "")
+                + " query=" + (tQuery - t0) + "ms rest=" + (tEnd - tQuery) + "ms snippets=" + snippets.size());
+        return new Result(mails, rowIds, complete, snippets);
+    }
+}
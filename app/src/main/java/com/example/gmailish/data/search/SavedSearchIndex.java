@@ -0,0 +1,133 @@
+package com.example.gmailish.data.search;
+
+import android.util.Log;
+
+import com.example.gmailish.data.dao.SavedSearchDao;
+import com.example.gmailish.data.entity.SavedSearchEntity;
+import com.example.gmailish.data.entity.SavedSearchMember;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps saved_search_members in step with the mails. When mails are written,
+ * only those rows are re-checked against each saved search (the compiled query
+ * restricted to their rowIds, so primary-key lookups plus the MATCH), and only
+ * the membership differences are written. A full evaluation runs once, when a
+ * search is saved.
+ *
+ * Relative dates are not supported by SearchQuery, so a member never goes stale
+ * without a write to its row. Label renames are the exception: re-save the search.
+ * Blocking; call off the main thread.
+ */
+public final class SavedSearchIndex {
+
+    private static final String TAG = "SavedSearchIndex";
+
+    // Stays under SQLite's 999 bound variables per statement
+    private static final int CHUNK = 500;
+
+    private static volatile SavedSearchIndex INSTANCE;
+
+    private final SavedSearchDao dao;
+
+    private static final class Parsed {
+        final int id;
+        final String ownerId;
+        final SearchQuery query;
+
+        Parsed(SavedSearchEntity e) {
+            this.id = e.id;
+            this.ownerId = e.ownerId;
+            this.query = SearchQuery.parse(e.query);
+        }
+    }
+
+    private SavedSearchIndex(SavedSearchDao dao) {
+        this.dao = dao;
+    }
+
+    public static SavedSearchIndex get(SavedSearchDao dao) {
+        SavedSearchIndex i = INSTANCE;
+        if (i == null || i.dao != dao) {
+            synchronized (SavedSearchIndex.class) {
+                i = INSTANCE;
+                // A different DAO means a different database (tests)
+                if (i == null || i.dao != dao) INSTANCE = i = new SavedSearchIndex(dao);
+            }
+        }
+        return i;
+    }
+
+    /** Store a search and fill its members. Returns its id, or -1 for an empty query. */
+    public int save(String ownerId, String name, String text) {
+        SearchQuery q = SearchQuery.parse(text);
+        if (q.isEmpty() || ownerId == null) return -1;
+        int id = (int) dao.insert(new SavedSearchEntity(ownerId, name, text.trim()));
+        List<Long> rows = dao.matchRowIdsSync(q.compileRowIds(ownerId, Integer.MAX_VALUE, null).toQuery());
+        List<SavedSearchMember> members = new ArrayList<>(rows.size());
+        for (Long r : rows) members.add(new SavedSearchMember(id, r));
+        dao.addMembers(members);
+        Log.d(TAG, "save: id=" + id + " \"" + text + "\" members=" + members.size());
+        return id;
+    }
+
+    public void delete(int id) {
+        dao.clearForSearch(id);
+        dao.delete(id);
+    }
+
+    /** Re-check these mails (inserted, updated or relabelled) against every saved search. */
+    public void refreshRows(Collection<Long> rowIds) {
+        if (rowIds == null || rowIds.isEmpty()) return;
+        List<Parsed> all = load();
+        if (all.isEmpty()) return;
+        List<Long> rows = new ArrayList<>(new HashSet<>(rowIds));
+        int added = 0;
+        int removed = 0;
+        for (int from = 0; from < rows.size(); from += CHUNK) {
+            List<Long> chunk = rows.subList(from, Math.min(rows.size(), from + CHUNK));
+            long[] within = new long[chunk.size()];
+            for (int i = 0; i < within.length; i++) within[i] = chunk.get(i);
+            for (Parsed s : all) {
+                Set<Long> match = new HashSet<>(dao.matchRowIdsSync(
+                        s.query.compileRowIds(s.ownerId, within.length, within).toQuery()));
+                Set<Long> current = new HashSet<>(dao.getMemberRowsSync(s.id, chunk));
+                List<SavedSearchMember> fresh = new ArrayList<>();
+                List<Long> stale = new ArrayList<>();
+                for (Long r : match) if (!current.contains(r)) fresh.add(new SavedSearchMember(s.id, r));
+                for (Long r : current) if (!match.contains(r)) stale.add(r);
+                if (!fresh.isEmpty()) dao.addMembers(fresh);
+                if (!stale.isEmpty()) dao.removeMembers(s.id, stale);
+                added += fresh.size();
+                removed += stale.size();
+            }
+        }
+        if (added + removed > 0) {
+            Log.d(TAG, "refreshRows: rows=" + rows.size() + " members +" + added + " -" + removed);
+        }
+    }
+
+    public void refreshRow(Long rowId) {
+        if (rowId != null) refreshRows(Collections.singletonList(rowId));
+    }
+
+    /** The mail row is being deleted. */
+    public void forgetRow(Long rowId) {
+        if (rowId != null) dao.clearForRow(rowId);
+    }
+
+    /**
+     * Read on every refresh rather than cached: the table is a handful of rows,
+     * and a cache could miss a search saved in a transaction not yet committed.
+     */
+    private List<Parsed> load() {
+        List<Parsed> s = new ArrayList<>();
+        for (SavedSearchEntity e : dao.getAllSync()) s.add(new Parsed(e));
+        return s;
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.gmailish.data.search;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.example.gmailish.data.model.LabelNames;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Gmail-style search text parsed into filters and compiled to one parameterized
+ * query, so every filter runs inside SQLite on an index:
+ *
+ *   words, "a phrase", word*   mails_fts MATCH (subject, body, names, address)
+ *   from:x  to:x  subject:x    mails_fts MATCH with a column filter
+ *   label:x                    mail_label_cross_ref by labelId
+ *   is:unread  is:read         mails.read
+ *   is:starred                 mails.starred
+ *   before:d  after:d          (ownerId, timestamp) range; d = yyyy/mm/dd or yyyy-mm-dd
+ *
+ * before: is exclusive and after: inclusive of local midnight on that day.
+ * A malformed operator (bad date, empty value) is searched as plain text.
+ */
+public final class SearchQuery {
+
+    /** Compiled SQL plus its arguments, in order. */
+    public static final class Compiled {
+        public final String sql;
+        public final Object[] args;
+
+        Compiled(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+
+        public SupportSQLiteQuery toQuery() {
+            return new SimpleSQLiteQuery(sql, args);
+        }
+    }
+
+    // MATCH expression parts, implicitly ANDed
+    private final List<String> match = new ArrayList<>();
+    // Words for the server, which knows no operators
+    private final List<String> freeText = new ArrayList<>();
+    // Free-text words for highlighting; prefix words keep their trailing "*"
+    private final List<String> terms = new ArrayList<>();
+    private final List<String> labels = new ArrayList<>();
+    private Boolean read;
+    private boolean starred;
+    private Long beforeMs;
+    private Long afterMs;
+    private boolean operators;
+    private boolean phrases;
+
+    private SearchQuery() {}
+
+    /* =========================
+       Parsing
+       ========================= */
+
+    public static SearchQuery parse(String text) {
+        SearchQuery q = new SearchQuery();
+        for (String token : split(text != null ? text : "")) {
+            if (!q.operator(token)) q.text(token);
+        }
+        return q;
+    }
+
+    /** Whitespace-separated tokens; a quoted part (also after "op:") stays one token. */
+    private static List<String> split(String text) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                cur.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (cur.length() > 0) out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        if (cur.length() > 0) out.add(cur.toString());
+        return out;
+    }
+
+    private boolean operator(String token) {
+        int colon = token.indexOf(':');
+        if (colon <= 0) return false;
+        String op = token.substring(0, colon).toLowerCase(Locale.ROOT);
+        String value = unquote(token.substring(colon + 1));
+        if (value.isEmpty()) return false;
+
+        switch (op) {
+            case "from":
+                return columnTerms("senderName", value);
+            case "subject":
+                return columnTerms("subject", value);
+            case "to": {
+                List<String> words = words(value);
+                if (words.isEmpty()) return false;
+                // OR binds tighter than the implicit AND: each word in either column
+                for (String w : words) match.add("recipientName:" + w + " OR recipientEmail:" + w);
+                operators = true;
+                return true;
+            }
+            case "label":
+                labels.add(value);
+                operators = true;
+                return true;
+            case "is": {
+                String v = value.toLowerCase(Locale.ROOT);
+                if ("unread".equals(v)) read = false;
+                else if ("read".equals(v)) read = true;
+                else if ("starred".equals(v)) starred = true;
+                else return false;
+                operators = true;
+                return true;
+            }
+            case "before":
+            case "after": {
+                Long day = parseDay(value);
+                if (day == null) return false;
+                if ("before".equals(op)) beforeMs = beforeMs == null ? day : Math.min(beforeMs, day);
+                else afterMs = afterMs == null ? day : Math.max(afterMs, day);
+                operators = true;
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private boolean columnTerms(String column, String value) {
+        List<String> words = words(value);
+        if (words.isEmpty()) return false;
+        for (String w : words) match.add(column + ":" + w);
+        operators = true;
+        return true;
+    }
+
+    private void text(String token) {
+        if (token.startsWith("\"")) {
+            List<String> words = words(unquote(token));
+            if (words.isEmpty()) return;
+            match.add("\"" + String.join(" ", words) + "\"");
+            terms.addAll(words);
+            phrases = true;
+            freeText.add(String.join(" ", words));
+            return;
+        }
+        boolean prefix = token.endsWith("*");
+        List<String> words = words(token);
+        for (int i = 0; i < words.size(); i++) {
+            String w = words.get(i);
+            String term = prefix && i == words.size() - 1 ? w + "*" : w;
+            match.add(term);
+            terms.add(term);
+            freeText.add(w);
+        }
+    }
+
+    /**
+     * Letters and digits only, lowercased: the same split the unicode61 tokenizer
+     * makes, and nothing left that MATCH could read as syntax (quotes, "-", "*",
+     * ":" or the upper-case AND/OR/NOT/NEAR keywords).
+     */
+    private static List<String> words(String value) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                cur.append(Character.toLowerCase(c));
+            } else if (cur.length() > 0) {
+                out.add(cur.toString());
+                cur.setLength(0);
+            }
+        }
+        if (cur.length() > 0) out.add(cur.toString());
+        return out;
+    }
+
+    private static String unquote(String v) {
+        String t = v.trim();
+        if (t.length() >= 2 && t.startsWith("\"") && t.endsWith("\"")) t = t.substring(1, t.length() - 1);
+        else if (t.startsWith("\"")) t = t.substring(1);
+        return t.trim();
+    }
+
+    /** Local midnight of yyyy/mm/dd or yyyy-mm-dd, or null. */
+    private static Long parseDay(String v) {
+        String[] parts = v.split("[/-]");
+        if (parts.length != 3) return null;
+        try {
+            int y = Integer.parseInt(parts[0]);
+            int m = Integer.parseInt(parts[1]);
+            int d = Integer.parseInt(parts[2]);
+            if (y < 1970 || m < 1 || m > 12 || d < 1 || d > 31) return null;
+            Calendar cal = Calendar.getInstance();
+            cal.clear();
+            cal.set(y, m - 1, d);
+            return cal.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /* =========================
+       Compiling
+       ========================= */
+
+    /** Nothing to search for (blank text or only unusable tokens). */
+    public boolean isEmpty() {
+        return match.isEmpty() && labels.isEmpty() && read == null && !starred
+                && beforeMs == null && afterMs == null;
+    }
+
+    /**
+     * Plain words only (no operators, no phrases). Typing more of such a query
+     * only narrows it, so its results are a subset of the shorter query's.
+     */
+    public boolean isPlainText() {
+        return !operators && !phrases;
+    }
+
+    /** True if any operator was recognized; such queries can only be answered locally. */
+    public boolean hasOperators() {
+        return operators;
+    }
+
+    /** The plain words, for the server's substring search. */
+    public String freeText() {
+        return String.join(" ", freeText);
+    }
+
+    /** The FTS MATCH expression, or null if the query has no text part. */
+    public String matchExpression() {
+        return match.isEmpty() ? null : String.join(" ", match);
+    }
+
+    /** Free-text words to highlight in results (lowercase; "word*" = prefix). */
+    public List<String> highlightTerms() {
+        return Collections.unmodifiableList(terms);
+    }
+
+    public List<String> labels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    /** The owner's matching mails, newest first. */
+    public Compiled compile(String ownerId, int limit) {
+        return compile("m.*", ownerId, limit, null);
+    }
+
+    /**
+     * Only the rowIds of the matches, newest first. With {@code within}, only
+     * those rows are considered (refining a previous result).
+     */
+    public Compiled compileRowIds(String ownerId, int limit, long[] within) {
+        return compile("m.rowId", ownerId, limit, within);
+    }
+
+    /**
+     * Text queries only: rowId plus FTS matchinfo('pcnalx') for ranking (see
+     * Bm25), for the newest {@code limit} matches. Null without a text part.
+     */
+    public Compiled compileRanked(String ownerId, int limit, long[] within) {
+        String expr = matchExpression();
+        if (expr == null) return null;
+        // matchinfo() needs the FTS table itself in FROM, not behind an IN subquery
+        StringBuilder sql = new StringBuilder("SELECT m.rowId, matchinfo(mails_fts, '" + Bm25.MATCHINFO + "') " +
+                "FROM mails_fts JOIN mails m ON m.rowId = mails_fts.docid " +
+                "WHERE mails_fts MATCH ? AND m.ownerId = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(expr);
+        args.add(ownerId);
+        appendFilters(sql, args, ownerId, within);
+        sql.append(" ORDER BY m.timestamp DESC LIMIT ?");
+        args.add(limit);
+        return new Compiled(sql.toString(), args.toArray());
+    }
+
+    private Compiled compile(String columns, String ownerId, int limit, long[] within) {
+        StringBuilder sql = new StringBuilder("SELECT " + columns + " FROM mails m WHERE m.ownerId = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(ownerId);
+
+        String expr = matchExpression();
+        if (expr != null) {
+            sql.append(" AND m.rowId IN (SELECT docid FROM mails_fts WHERE mails_fts MATCH ?)");
+            args.add(expr);
+        }
+        appendFilters(sql, args, ownerId, within);
+        sql.append(" ORDER BY m.timestamp DESC LIMIT ?");
+        args.add(limit);
+        return new Compiled(sql.toString(), args.toArray());
+    }
+
+    /** Everything but the MATCH. */
+    private void appendFilters(StringBuilder sql, List<Object> args, String ownerId, long[] within) {
+        if (within != null) {
+            // Primary-key lookups; the MATCH then only has to check these rows
+            sql.append(" AND m.rowId IN (");
+            for (int i = 0; i < within.length; i++) {
+                sql.append(i == 0 ? "?" : ",?");
+                args.add(within[i]);
+            }
+            sql.append(")");
+        }
+        for (String label : labels) {
+            // The owner's labels: system ones by key ("primary", "starred"), user ones by key or display name
+            sql.append(" AND m.rowId IN (SELECT x.mailRowId FROM mail_label_cross_ref x WHERE x.labelId IN (" +
+                    "SELECT l.id FROM labels l WHERE l.ownerId = ? AND (l.labelKey = ? OR l.name = ? COLLATE NOCASE))))");
+            args.add(ownerId);
+            args.add(LabelNames.toLocal(label));
+            args.add(label);
+        }
+        if (read != null) sql.append(read ? " AND m.read = 1" : " AND m.read = 0");
+        if (starred) sql.append(" AND m.starred = 1");
+        if (afterMs != null) {
+            sql.append(" AND m.timestamp >= ?");
+            args.add(afterMs);
+        }
+        if (beforeMs != null) {
+            sql.append(" AND m.timestamp < ?");
+            args.add(beforeMs);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.gmailish.data.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the part of a mail body with the most query words and reports where
+ * they are, so the list can show (and highlight) the matching text instead of
+ * the start of the body. Words are split like the FTS tokenizer: runs of
+ * letters and digits, compared lowercase; "word*" terms match as prefixes.
+ */
+public final class Snippets {
+
+    // Long bodies: only the start is scanned, so one row can't stall the list
+    private static final int MAX_SCAN_CHARS = 8_000;
+    // Context kept before the first match in the window
+    private static final int LEAD_CHARS = 24;
+    private static final String ELLIPSIS = "…";
+
+    /** Snippet text plus highlight ranges as [start, end) pairs into it. */
+    public static final class Snippet {
+        public final String text;
+        public final int[] highlights;
+
+        Snippet(String text, int[] highlights) {
+            this.text = text;
+            this.highlights = highlights;
+        }
+    }
+
+    private Snippets() {}
+
+    /** Null if the body has none of the terms. */
+    public static Snippet extract(String body, List<String> terms, int maxChars) {
+        if (body == null || body.isEmpty() || terms == null || terms.isEmpty()) return null;
+        String text = body.length() > MAX_SCAN_CHARS ? body.substring(0, MAX_SCAN_CHARS) : body;
+
+        // Start/end of every matching word
+        List<int[]> hits = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            if (!Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) i++;
+            String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+            if (matches(word, terms)) hits.add(new int[]{start, i});
+        }
+        if (hits.isEmpty()) return null;
+
+        // Window with the most hits: for each hit as the first one, count what fits
+        int bestFirst = 0;
+        int bestCount = 0;
+        int last = 0;
+        for (int first = 0; first < hits.size(); first++) {
+            if (last < first) last = first;
+            int limit = hits.get(first)[0] - LEAD_CHARS + maxChars;
+            while (last + 1 < hits.size() && hits.get(last + 1)[1] <= limit) last++;
+            int count = last - first + 1;
+            if (count > bestCount) {
+                bestCount = count;
+                bestFirst = first;
+            }
+        }
+
+        int from = wordStartAtOrBefore(text, Math.max(0, hits.get(bestFirst)[0] - LEAD_CHARS));
+        int to = Math.min(text.length(), from + maxChars);
+        if (to < text.length()) to = wordEndAtOrBefore(text, to, hits.get(bestFirst)[1]);
+
+        String prefix = from > 0 ? ELLIPSIS : "";
+        String suffix = to < body.length() ? ELLIPSIS : "";
+        String snippet = prefix + text.substring(from, to).replace('\n', ' ') + suffix;
+
+        List<Integer> ranges = new ArrayList<>();
+        for (int h = bestFirst; h < hits.size(); h++) {
+            int[] hit = hits.get(h);
+            if (hit[1] > to) break;
+            ranges.add(hit[0] - from + prefix.length());
+            ranges.add(hit[1] - from + prefix.length());
+        }
+        int[] highlights = new int[ranges.size()];
+        for (int k = 0; k < highlights.length; k++) highlights[k] = ranges.get(k);
+        return new Snippet(snippet, highlights);
+    }
+
+    private static boolean matches(String word, List<String> terms) {
+        for (String t : terms) {
+            if (t.endsWith("*")) {
+                if (word.startsWith(t.substring(0, t.length() - 1))) return true;
+            } else if (word.equals(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Back up to the start of the word containing pos (not splitting a word). */
+    private static int wordStartAtOrBefore(String text, int pos) {
+        while (pos > 0 && Character.isLetterOrDigit(text.charAt(pos - 1))) pos--;
+        return pos;
+    }
+
+    /** Cut at the last word boundary before pos, but never before {@code min}. */
+    private static int wordEndAtOrBefore(String text, int pos, int min) {
+        int p = pos;
+        while (p > min && Character.isLetterOrDigit(text.charAt(p - 1)) && Character.isLetterOrDigit(text.charAt(p))) p--;
+        return p;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.gmailish.data.sync;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.gmailish.data.blacklist.BlacklistFilter;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.BlacklistEntity;
+import com.example.gmailish.data.mappers.BlacklistMapper;
+import com.example.gmailish.data.repository.BlacklistRepository;
+import com.example.gmailish.utils.ApiClient;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Brings the local blacklist table up to the server's version
+ * (GET /api/blacklist/changes): only URLs added or removed since the stored
+ * version are fetched. Pages are merged in memory (a later change to a URL
+ * wins) and applied with the new version in one transaction, so a failed
+ * sync leaves the table and its version as they were. The Bloom filter and
+ * cached link verdicts are updated per changed URL, not rebuilt.
+ */
+public class BlacklistSyncWorker extends Worker {
+
+    private static final String TAG = "BlacklistSyncWorker";
+    private static final String CHANGES_URL = "http://10.0.2.2:3000/api/blacklist/changes";
+
+    public static final String UNIQUE_NAME = "blacklist-sync";
+    private static final String PERIODIC_NAME = "blacklist-sync-periodic";
+
+    private static final int PAGE_SIZE = 500;
+
+    private final BlacklistRepository repo;
+    private final OkHttpClient client;
+
+    public BlacklistSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+        Context app = context.getApplicationContext();
+        repo = new BlacklistRepository(AppDbProvider.get(app), BlacklistFilter.get(app));
+        client = ApiClient.get(context);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SharedPreferences prefs = getApplicationContext().getSharedPreferences("prefs", MODE_PRIVATE);
+        if (prefs.getString("jwt", null) == null) {
+            Log.w(TAG, "doWork: not logged in");
+            return Result.failure();
+        }
+
+        long since = repo.syncedVersion();
+        // Nothing synced yet: whatever the table holds is reconciled against the full list
+        boolean reset = since == 0;
+        long version = since;
+        // url -> entry, or null for a removal
+        Map<String, BlacklistEntity> changes = new LinkedHashMap<>();
+
+        while (true) {
+            if (isStopped()) return Result.retry();
+            // Re-read each page: the Authenticator may have refreshed it
+            String jwt = prefs.getString("jwt", "");
+
+            Request req = new Request.Builder()
+                    .url(HttpUrl.get(CHANGES_URL).newBuilder()
+                            .addQueryParameter("since", String.valueOf(version))
+                            .addQueryParameter("limit", String.valueOf(PAGE_SIZE))
+                            .build())
+                    .header("Authorization", "Bearer " + jwt)
+                    .build();
+
+            JSONObject page;
+            try (Response r = client.newCall(req).execute()) {
+                if (r.code() == 401 || r.code() == 403) {
+                    Log.w(TAG, "doWork: auth rejected, code=" + r.code());
+                    return Result.failure();
+                }
+                if (!r.isSuccessful() || r.body() == null) {
+                    Log.w(TAG, "doWork: page failed, code=" + r.code());
+                    return Result.retry();
+                }
+                page = new JSONObject(r.body().string());
+            } catch (IOException e) {
+                Log.w(TAG, "doWork: network error: " + e.getMessage());
+                return Result.retry();
+            } catch (Exception e) {
+                Log.e(TAG, "doWork: bad page: " + e.getMessage(), e);
+                return Result.retry();
+            }
+
+            if (page.optBoolean("reset", false)) {
+                // Our version means nothing to the server: the pages restart from scratch
+                Log.w(TAG, "doWork: server reset from version " + version);
+                changes.clear();
+                reset = true;
+            }
+            JSONArray added = page.optJSONArray("added");
+            if (added != null) {
+                for (int i = 0; i < added.length(); i++) {
+                    JSONObject obj = added.optJSONObject(i);
+                    BlacklistEntity e = obj != null ? BlacklistMapper.fromJson(obj) : null;
+                    if (e != null) changes.put(e.url, e);
+                }
+            }
+            JSONArray removed = page.optJSONArray("removed");
+            if (removed != null) {
+                for (int i = 0; i < removed.length(); i++) {
+                    String url = removed.optString(i, "");
+                    if (!url.isEmpty()) changes.put(url, null);
+                }
+            }
+            version = page.optLong("version", version);
+            if (!page.optBoolean("more", false)) break;
+        }
+
+        if (!reset && changes.isEmpty() && version == since) {
+            Log.d(TAG, "doWork: up to date at version " + version);
+            return Result.success();
+        }
+
+        List<BlacklistEntity> toAdd = new ArrayList<>();
+        List<String> toRemove = new ArrayList<>();
+        for (Map.Entry<String, BlacklistEntity> c : changes.entrySet()) {
+            if (c.getValue() != null) toAdd.add(c.getValue());
+            else toRemove.add(c.getKey());
+        }
+        try {
+            repo.applyChanges(toAdd, toRemove, reset, version);
+        } catch (Exception e) {
+            Log.e(TAG, "doWork: apply failed: " + e.getMessage(), e);
+            return Result.retry();
+        }
+        Log.d(TAG, "doWork: version " + since + " -> " + version + ", +" + toAdd.size()
+                + " -" + toRemove.size() + (reset ? " (reset)" : ""));
+        return Result.success();
+    }
+
+    /* =========================
+       Scheduling
+       ========================= */
+
+    private static Constraints networkConstraints() {
+        return new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+    }
+
+    /** Catch up now (start, login); cheap when nothing changed. */
+    public static void enqueue(Context context) {
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(BlacklistSyncWorker.class)
+                .setConstraints(networkConstraints())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .addTag(UNIQUE_NAME)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_NAME,
+                ExistingWorkPolicy.KEEP,
+                req
+        );
+    }
+
+    /** Background refresh for long-running sessions. */
+    public static void schedulePeriodic(Context context) {
+        PeriodicWorkRequest req = new PeriodicWorkRequest.Builder(BlacklistSyncWorker.class, 6, TimeUnit.HOURS)
+                .setConstraints(networkConstraints())
+                .addTag(UNIQUE_NAME)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                PERIODIC_NAME,
+                ExistingPeriodicWorkPolicy.KEEP,
+                req
+        );
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.gmailish.data.sync;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.gmailish.data.dao.SyncCheckpointDao;
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.entity.SyncCheckpointEntity;
+import com.example.gmailish.data.mappers.MailMapper;
+import com.example.gmailish.data.repository.MailRepository;
+import com.example.gmailish.utils.ApiClient;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Pages through the whole mailbox (GET /api/mails/sync) after the first login.
+ * Every page and its checkpoint are committed in one transaction, so a killed
+ * process or dropped connection resumes from the last committed page.
+ */
+public class InitialSyncWorker extends Worker {
+
+    private static final String TAG = "InitialSyncWorker";
+    private static final String SYNC_URL = "http://10.0.2.2:3000/api/mails/sync";
+
+    public static final String UNIQUE_NAME = "initial-sync";
+    public static final String PROGRESS_FETCHED = "fetched";
+    public static final String PROGRESS_TOTAL = "total";
+
+    private static final int PAGE_SIZE = 200;
+    private static final int NOTIFICATION_ID = 1001;
+
+    private final AppDatabase db;
+    private final SyncCheckpointDao checkpointDao;
+    private final MailRepository mailRepo;
+    private final OkHttpClient client;
+
+    public InitialSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+        db = AppDbProvider.get(context.getApplicationContext());
+        checkpointDao = db.syncCheckpointDao();
+        mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
+        client = ApiClient.get(context).newBuilder()
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SharedPreferences prefs = getApplicationContext().getSharedPreferences("prefs", MODE_PRIVATE);
+        String jwt = prefs.getString("jwt", null);
+        String ownerId = prefs.getString("user_id", null);
+        if (jwt == null || ownerId == null) {
+            Log.w(TAG, "doWork: not logged in");
+            return Result.failure();
+        }
+
+        SyncCheckpointEntity cp = checkpointDao.get(ownerId);
+        if (cp == null) cp = new SyncCheckpointEntity(ownerId, null, 0, -1, false, new Date());
+        if (cp.completed) {
+            Log.d(TAG, "doWork: already completed for " + ownerId);
+            return Result.success();
+        }
+        Log.d(TAG, "doWork: resuming at fetched=" + cp.fetched + " cursor=" + cp.cursor);
+
+        promoteToForeground(cp);
+
+        while (!cp.completed) {
+            if (isStopped()) return Result.retry();
+            // Re-read each page: the Authenticator may have refreshed it
+            jwt = prefs.getString("jwt", jwt);
+
+            HttpUrl.Builder url = HttpUrl.get(SYNC_URL).newBuilder()
+                    .addQueryParameter("limit", String.valueOf(PAGE_SIZE));
+            if (cp.cursor != null) url.addQueryParameter("cursor", cp.cursor);
+
+            Request req = new Request.Builder()
+                    .url(url.build())
+                    .header("Authorization", "Bearer " + jwt)
+                    .build();
+
+            JSONObject page;
+            try (Response r = client.newCall(req).execute()) {
+                if (r.code() == 401 || r.code() == 403) {
+                    Log.w(TAG, "doWork: auth rejected, code=" + r.code());
+                    return Result.failure();
+                }
+                if (r.code() == 400) {
+                    // Cursor no longer valid on the server; start over from the top
+                    Log.w(TAG, "doWork: cursor rejected, restarting");
+                    cp = new SyncCheckpointEntity(ownerId, null, 0, -1, false, new Date());
+                    checkpointDao.upsert(cp);
+                    continue;
+                }
+                if (!r.isSuccessful() || r.body() == null) {
+                    Log.w(TAG, "doWork: page failed, code=" + r.code());
+                    return Result.retry();
+                }
+                page = new JSONObject(r.body().string());
+            } catch (IOException e) {
+                Log.w(TAG, "doWork: network error, will resume: " + e.getMessage());
+                return Result.retry();
+            } catch (Exception e) {
+                Log.e(TAG, "doWork: bad page: " + e.getMessage(), e);
+                return Result.retry();
+            }
+
+            cp = commitPage(cp, page);
+            reportProgress(cp);
+        }
+
+        Log.d(TAG, "doWork: done, fetched=" + cp.fetched);
+        return Result.success();
+    }
+
+    /** Writes one page of mails together with the advanced checkpoint. */
+    private SyncCheckpointEntity commitPage(SyncCheckpointEntity cp, JSONObject page) {
+        JSONArray arr = page.optJSONArray("mails");
+        List<MailEntity> mails = new ArrayList<>();
+        Map<String, List<String>> labels = new HashMap<>();
+        if (arr != null) {
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject obj = arr.optJSONObject(i);
+                if (obj == null) continue;
+                MailEntity entity = MailMapper.mailEntityFromJson(obj);
+                List<String> mailLabels = MailMapper.labelIdsFromJson(obj);
+                for (String l : mailLabels) {
+                    if ("starred".equalsIgnoreCase(l)) entity.setStarred(true);
+                    if ("drafts".equalsIgnoreCase(l)) entity.setDraft(true);
+                }
+                mails.add(entity);
+                labels.put(entity.getId(), mailLabels);
+            }
+        }
+
+        String next = page.isNull("nextCursor") ? null : page.optString("nextCursor", null);
+        int total = page.has("total") && !page.isNull("total") ? page.optInt("total", cp.total) : cp.total;
+        SyncCheckpointEntity advanced = new SyncCheckpointEntity(
+                cp.ownerId, next, cp.fetched + mails.size(), total, next == null, new Date());
+
+        db.runInTransaction(() -> {
+            if (!mails.isEmpty()) mailRepo.saveMailsAndLabels(mails, labels);
+            checkpointDao.upsert(advanced);
+        });
+        return advanced;
+    }
+
+    /* =========================
+       Progress / foreground
+       ========================= */
+
+    private void reportProgress(SyncCheckpointEntity cp) {
+        setProgressAsync(new Data.Builder()
+                .putInt(PROGRESS_FETCHED, cp.fetched)
+                .putInt(PROGRESS_TOTAL, cp.total)
+                .build());
+        promoteToForeground(cp);
+    }
+
+    private void promoteToForeground(SyncCheckpointEntity cp) {
+        try {
+            setForegroundAsync(createForegroundInfo(cp.fetched, cp.total));
+        } catch (Exception e) {
+            // Background start restrictions: keep going as a regular worker
+            Log.w(TAG, "setForeground failed: " + e.getMessage());
+        }
+    }
+
+    private ForegroundInfo createForegroundInfo(int fetched, int total) {
+        NotificationCompat.Builder b = SyncNotifications.builder(getApplicationContext(), "Syncing mailbox");
+        if (total > 0) {
+            b.setContentText(fetched + " / " + total)
+                    .setProgress(total, Math.min(fetched, total), false);
+        } else {
+            b.setProgress(0, 0, true);
+        }
+        return SyncNotifications.foregroundInfo(NOTIFICATION_ID, b.build());
+    }
+
+    /* =========================
+       Scheduling
+       ========================= */
+
+    /** Safe to call repeatedly; a finished sync returns immediately. */
+    public static void enqueue(Context context) {
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(InitialSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 10, TimeUnit.SECONDS)
+                .addTag(UNIQUE_NAME)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_NAME,
+                ExistingWorkPolicy.KEEP,
+                req
+        );
+    }
+}
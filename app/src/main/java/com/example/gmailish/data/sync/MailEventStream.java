@@ -0,0 +1,314 @@
+package com.example.gmailish.data.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.mappers.MailMapper;
+import com.example.gmailish.data.repository.MailListRepository;
+import com.example.gmailish.data.repository.MailRepository;
+import com.example.gmailish.utils.ApiClient;
+import com.example.gmailish.utils.TokenManager;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.hilt.android.qualifiers.ApplicationContext;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import okhttp3.sse.EventSources;
+
+/**
+ * Long-lived server-sent event channel (GET /api/mails/events).
+ * Applies compact change events straight to Room through MailRepository,
+ * reconnects with exponential backoff and resumes from the last event id.
+ */
+@Singleton
+public class MailEventStream {
+
+    private static final String TAG = "MailEventStream";
+    private static final String BASE_URL = "http://10.0.2.2:3000/api/mails/";
+    static final String KEY_LAST_EVENT_ID = "events_last_id";
+
+    private static final long BACKOFF_MIN_MS = 1_000L;
+    private static final long BACKOFF_MAX_MS = 60_000L;
+
+    /** Called on a background thread after events were applied to Room. */
+    public interface Listener {
+        void onMailboxChanged();
+        /**
+         * The server could not resume from our last id; a full reload is needed.
+         * Every cached list (MailListRepository) is already invalidated.
+         */
+        void onResyncRequired();
+    }
+
+    private final Context appContext;
+    private final MailRepository mailRepo;
+    private final MailListRepository listRepo;
+    private final OkHttpClient client;
+    private final String eventsUrl;
+    private final String mailsUrl;
+    private final ExecutorService applyExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Random jitter = new Random();
+
+    private EventSource source;
+    private boolean running;
+    private boolean wanted;     // start() called and not stop()ped by the UI
+    private boolean connected;
+    private long backoffMs = BACKOFF_MIN_MS;
+
+    @Inject
+    public MailEventStream(@ApplicationContext Context context, MailRepository mailRepo) {
+        this(context, mailRepo, BASE_URL);
+    }
+
+    /** {@code mailsUrl} ends in "/"; tests point it at a stand-in server. */
+    MailEventStream(Context context, MailRepository mailRepo, String mailsUrl) {
+        this.appContext = context.getApplicationContext();
+        this.mailRepo = mailRepo;
+        this.listRepo = MailListRepository.get(appContext);
+        this.mailsUrl = mailsUrl;
+        this.eventsUrl = mailsUrl + "events";
+        // No read timeout: the stream stays open and the server sends heartbeats
+        this.client = ApiClient.get(context).newBuilder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        // Reconnect after a re-login if the stream was dropped for auth
+        TokenManager.get(context).addListener(token -> {
+            synchronized (MailEventStream.this) {
+                if (wanted && !running) handler.post(this::start);
+            }
+        });
+    }
+
+    public void addListener(Listener l) { if (l != null) listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    public synchronized boolean isConnected() { return running && connected; }
+
+    /* =========================
+       Lifecycle
+       ========================= */
+
+    public synchronized void start() {
+        wanted = true;
+        if (running) return;
+        running = true;
+        backoffMs = BACKOFF_MIN_MS;
+        connect();
+    }
+
+    public synchronized void stop() {
+        wanted = false;
+        halt();
+    }
+
+    private synchronized void halt() {
+        running = false;
+        connected = false;
+        handler.removeCallbacksAndMessages(null);
+        if (source != null) {
+            source.cancel();
+            source = null;
+        }
+    }
+
+    private synchronized void connect() {
+        if (!running) return;
+        String jwt = prefs().getString("jwt", null);
+        if (jwt == null || jwt.isEmpty()) {
+            Log.w(TAG, "connect: no JWT, not connecting");
+            running = false;
+            return;
+        }
+
+        Request.Builder rb = new Request.Builder()
+                .url(eventsUrl)
+                .header("Authorization", "Bearer " + jwt)
+                .header("Accept", "text/event-stream");
+        String lastId = prefs().getString(KEY_LAST_EVENT_ID, null);
+        if (lastId != null) rb.header("Last-Event-ID", lastId);
+
+        Log.d(TAG, "connect: lastEventId=" + lastId);
+        source = EventSources.createFactory(client).newEventSource(rb.build(), new StreamListener());
+    }
+
+    private synchronized void scheduleReconnect(EventSource failed) {
+        if (!running || failed != source) return;
+        connected = false;
+        source = null;
+        long delay = backoffMs + jitter.nextInt((int) Math.max(1, backoffMs / 4));
+        backoffMs = Math.min(backoffMs * 2, BACKOFF_MAX_MS);
+        Log.d(TAG, "scheduleReconnect in " + delay + "ms");
+        handler.postDelayed(this::connect, delay);
+    }
+
+    private final class StreamListener extends EventSourceListener {
+        @Override
+        public void onOpen(@NonNull EventSource es, @NonNull Response response) {
+            synchronized (MailEventStream.this) {
+                if (es != source) return;
+                connected = true;
+                backoffMs = BACKOFF_MIN_MS;
+            }
+            Log.d(TAG, "onOpen");
+        }
+
+        @Override
+        public void onEvent(@NonNull EventSource es, @Nullable String id,
+                            @Nullable String type, @NonNull String data) {
+            applyExecutor.execute(() -> applyEvent(id, type, data));
+        }
+
+        @Override
+        public void onClosed(@NonNull EventSource es) {
+            Log.d(TAG, "onClosed");
+            scheduleReconnect(es);
+        }
+
+        @Override
+        public void onFailure(@NonNull EventSource es, @Nullable Throwable t, @Nullable Response response) {
+            int code = response != null ? response.code() : -1;
+            Log.w(TAG, "onFailure code=" + code + " err=" + (t != null ? t.getMessage() : null));
+            if (code == 401 || code == 403) {
+                // Session is gone; wait for a new token instead of hammering the server
+                halt();
+                return;
+            }
+            scheduleReconnect(es);
+        }
+    }
+
+    /* =========================
+       Event application
+       ========================= */
+
+    private void applyEvent(String id, String type, String data) {
+        if (type == null) return;
+        boolean changed = false;
+        try {
+            JSONObject obj = data.isEmpty() ? new JSONObject() : new JSONObject(data);
+            switch (type) {
+                case "mail.new":
+                    changed = fetchAndStore(toList(obj.optJSONArray("ids")));
+                    break;
+                case "mail.read":
+                    mailRepo.applyRemoteRead(toList(obj.optJSONArray("ids")), obj.optBoolean("read", true));
+                    changed = true;
+                    break;
+                case "mail.labels":
+                    mailRepo.applyRemoteLabels(obj.optString("id", null),
+                            toList(obj.optJSONArray("labels")), ownerId());
+                    changed = true;
+                    break;
+                case "mail.delete":
+                    for (String mailId : toList(obj.optJSONArray("ids"))) mailRepo.deleteMailLocal(mailId);
+                    changed = true;
+                    break;
+                case "reset":
+                    // Events were missed, so no cached label can be trusted to be fresh
+                    listRepo.invalidate();
+                    saveLastId(id);
+                    for (Listener l : listeners) l.onResyncRequired();
+                    return;
+                default:
+                    Log.w(TAG, "Unknown event type: " + type);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "applyEvent error type=" + type + ": " + e.getMessage(), e);
+        }
+        saveLastId(id);
+        if (changed) {
+            for (Listener l : listeners) l.onMailboxChanged();
+        }
+    }
+
+    /** New or edited mails only carry ids; pull each one and store it with its labels. */
+    private boolean fetchAndStore(List<String> ids) {
+        String jwt = prefs().getString("jwt", null);
+        if (ids.isEmpty() || jwt == null) return false;
+
+        List<MailEntity> mails = new ArrayList<>();
+        Map<String, List<String>> labels = new HashMap<>();
+        for (String mailId : ids) {
+            Request req = new Request.Builder()
+                    .url(mailsUrl + mailId)
+                    .header("Authorization", "Bearer " + jwt)
+                    .build();
+            try (Response r = client.newCall(req).execute()) {
+                if (!r.isSuccessful() || r.body() == null) {
+                    Log.w(TAG, "fetchAndStore: " + mailId + " code=" + r.code());
+                    continue;
+                }
+                JSONObject json = new JSONObject(r.body().string());
+                MailEntity entity = MailMapper.mailEntityFromJson(json);
+                List<String> mailLabels = MailMapper.labelIdsFromJson(json);
+                for (String l : mailLabels) {
+                    if ("starred".equalsIgnoreCase(l)) entity.setStarred(true);
+                }
+                mails.add(entity);
+                labels.put(entity.getId(), mailLabels);
+            } catch (Exception e) {
+                Log.e(TAG, "fetchAndStore error for " + mailId + ": " + e.getMessage());
+            }
+        }
+        if (mails.isEmpty()) return false;
+        mailRepo.saveMailsAndLabels(mails, labels);
+        return true;
+    }
+
+    /* =========================
+       Helpers
+       ========================= */
+
+    private List<String> toList(JSONArray arr) {
+        if (arr == null) return Collections.emptyList();
+        List<String> out = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            String v = arr.optString(i, null);
+            if (v != null && !v.isEmpty()) out.add(v);
+        }
+        return out;
+    }
+
+    private void saveLastId(String id) {
+        if (id != null && !id.isEmpty()) {
+            prefs().edit().putString(KEY_LAST_EVENT_ID, id).apply();
+        }
+    }
+
+    private String ownerId() {
+        return prefs().getString("user_id", "");
+    }
+
+    private SharedPreferences prefs() {
+        return appContext.getSharedPreferences("prefs", Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.gmailish.data.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.MailEntity;
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.mappers.MailMapper;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.repository.MailRepository;
+import com.example.gmailish.utils.ApiClient;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Fetches mail details ahead of a tap. The inbox reports the rows that are (or
+ * are about to be) on screen via setWindow(); unread ones that were not fetched
+ * recently are queued and fetched at most MAX_IN_FLIGHT at a time. Rows that
+ * leave the window are dropped from the queue and their calls cancelled.
+ *
+ * Results go through the same path as the detail screen (Room + MailCache), so
+ * a prefetched mail opens without a round trip. consume() records hit/miss.
+ */
+public final class MailPrefetcher {
+
+    private static final String TAG = "MailPrefetcher";
+
+    private static final int MAX_IN_FLIGHT = 3;
+    // A prefetched copy newer than this replaces the detail screen's own fetch
+    private static final long FRESH_MS = 120_000L;
+
+    private static volatile MailPrefetcher INSTANCE;
+
+    private final Context app;
+    private final OkHttpClient client;
+    private final MailRepository mailRepo;
+    private final LocalWriteQueue writes;
+
+    // Guarded by this
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final Map<String, Call> inFlight = new HashMap<>();
+    private Set<String> window = new LinkedHashSet<>();
+
+    private final ConcurrentHashMap<String, Long> prefetchedAt = new ConcurrentHashMap<>();
+
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private MailPrefetcher(Context context) {
+        this.app = context.getApplicationContext();
+        AppDatabase db = AppDbProvider.get(app);
+        this.mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
+        this.client = ApiClient.get(app);
+        this.writes = LocalWriteQueue.get(db);
+    }
+
+    public static MailPrefetcher get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (MailPrefetcher.class) {
+                if (INSTANCE == null) INSTANCE = new MailPrefetcher(context);
+            }
+        }
+        return INSTANCE;
+    }
+
+    /* =========================
+       Window (main thread)
+       ========================= */
+
+    /**
+     * Mail ids to prefetch, most urgent first (visible rows, then the rows the
+     * user is scrolling towards). Replaces the previous window.
+     */
+    public synchronized void setWindow(List<String> mailIds) {
+        window = new LinkedHashSet<>(mailIds);
+
+        // Scrolled away: cancel calls that are no longer wanted
+        Iterator<Map.Entry<String, Call>> it = inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Call> e = it.next();
+            if (!window.contains(e.getKey())) {
+                e.getValue().cancel();
+                it.remove();
+                cancelled.incrementAndGet();
+            }
+        }
+
+        queue.clear();
+        for (String id : window) {
+            if (!inFlight.containsKey(id) && !isFresh(id)) queue.add(id);
+        }
+        pump();
+    }
+
+    /** Stop everything (list hidden, logout). */
+    public synchronized void clearWindow() {
+        setWindow(new ArrayList<>());
+    }
+
+    private boolean isFresh(String mailId) {
+        Long at = prefetchedAt.get(mailId);
+        return at != null && SystemClock.elapsedRealtime() - at < FRESH_MS;
+    }
+
+    /* =========================
+       Fetching
+       ========================= */
+
+    private synchronized void pump() {
+        String token = app.getSharedPreferences("prefs", Context.MODE_PRIVATE).getString("jwt", null);
+        if (token == null) {
+            queue.clear();
+            return;
+        }
+        while (inFlight.size() < MAX_IN_FLIGHT && !queue.isEmpty()) {
+            start(queue.poll(), token);
+        }
+    }
+
+    private void start(String mailId, String token) {
+        Request request = new Request.Builder()
+                .url("http://10.0.2.2:3000/api/mails/" + mailId)
+                .get()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Call call = client.newCall(request);
+        inFlight.put(mailId, call);
+        started.incrementAndGet();
+
+        call.enqueue(new Callback() {
+            @Override public void onFailure(Call c, IOException e) {
+                if (!c.isCanceled()) {
+                    failed.incrementAndGet();
+                    Log.d(TAG, "prefetch " + mailId + " failed: " + e.getMessage());
+                }
+                finish(mailId, c);
+            }
+
+            @Override public void onResponse(Call c, Response response) {
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        failed.incrementAndGet();
+                        finish(mailId, c);
+                        return;
+                    }
+                    JSONObject json = new JSONObject(r.body() != null ? r.body().string() : "{}");
+                    writes.enqueue("detail:" + mailId, () -> {
+                        try {
+                            store(json);
+                            prefetchedAt.put(mailId, SystemClock.elapsedRealtime());
+                            fetched.incrementAndGet();
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            Log.w(TAG, "prefetch " + mailId + " store error: " + e.getMessage());
+                        }
+                    });
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    Log.w(TAG, "prefetch " + mailId + " parse error: " + e.getMessage());
+                }
+                finish(mailId, c);
+            }
+        });
+    }
+
+    private synchronized void finish(String mailId, Call call) {
+        // A cancelled call was already removed (and may have been replaced)
+        if (inFlight.get(mailId) == call) inFlight.remove(mailId);
+        pump();
+    }
+
+    /** Same cache path as the detail screen's own fetch. Blocking. */
+    private void store(JSONObject json) throws Exception {
+        MailEntity entity = MailMapper.mailEntityFromJson(json);
+        List<String> labels = new ArrayList<>();
+        for (String l : MailMapper.labelIdsFromJson(json)) labels.add(LabelNames.toLocal(l));
+        mailRepo.saveMail(entity);
+        String ownerId = entity.getOwnerId();
+        mailRepo.replaceMailLabels(entity.getId(), labels, ownerId != null ? ownerId : "");
+        MailCache.get().put(entity, labels);
+    }
+
+    /* =========================
+       Hits / metrics
+       ========================= */
+
+    /**
+     * Called when a mail is opened. True if a fresh prefetched copy is stored,
+     * in which case the caller can skip its own fetch.
+     */
+    public boolean consume(String mailId) {
+        boolean hit = isFresh(mailId);
+        prefetchedAt.remove(mailId);
+        if (hit) hits.incrementAndGet(); else misses.incrementAndGet();
+        Log.d(TAG, (hit ? "hit " : "miss ") + mailId + " | " + stats());
+        return hit;
+    }
+
+    /** Opened mails served by a prefetch, in percent (0 before any open). */
+    public int hitRatePercent() {
+        int h = hits.get();
+        int total = h + misses.get();
+        return total == 0 ? 0 : h * 100 / total;
+    }
+
+    public String stats() {
+        return "started=" + started.get() + " fetched=" + fetched.get() +
+                " cancelled=" + cancelled.get() + " failed=" + failed.get() +
+                " hits=" + hits.get() + " misses=" + misses.get() +
+                " hitRate=" + hitRatePercent() + "%";
+    }
+}
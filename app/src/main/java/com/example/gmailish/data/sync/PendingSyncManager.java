@@ -1,9 +1,12 @@
 package com.example.gmailish.data.sync;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.example.gmailish.data.entity.PendingOperationEntity;
 import com.example.gmailish.data.repository.PendingOperationRepository;
+import com.example.gmailish.utils.ApiClient;
+import com.example.gmailish.utils.TokenManager;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -15,6 +18,7 @@ import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import dagger.hilt.android.qualifiers.ApplicationContext;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -28,11 +32,14 @@ public class PendingSyncManager {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private final PendingOperationRepository pendingRepo;
-    private final OkHttpClient client = new OkHttpClient();
+    private final TokenManager tokens;
+    private final OkHttpClient client;
 
     @Inject
-    public PendingSyncManager(PendingOperationRepository pendingRepo) {
+    public PendingSyncManager(@ApplicationContext Context context, PendingOperationRepository pendingRepo) {
         this.pendingRepo = pendingRepo;
+        this.tokens = TokenManager.get(context);
+        this.client = ApiClient.get(context);
     }
 
     public void flush(String jwtToken) {
@@ -45,20 +52,29 @@ public class PendingSyncManager {
         if (ops == null || ops.isEmpty()) return;
 
         for (PendingOperationEntity op : ops) {
-            boolean success = false;
+            if (tokens.isSessionExpired()) {
+                // Refresh was rejected: hold the rest until the next login
+                pendingRepo.park(op.id);
+                continue;
+            }
+            tokens.awaitRefresh();
+            String current = tokens.getAccessToken();
+            if (current != null) jwtToken = current;
+
+            int code = 0;
             try {
                 JSONObject payload = new JSONObject(op.payloadJson);
                 switch (op.type) {
                     case "LABEL_ADD": {
                         String mailId = payload.optString("mailId");
                         String label = payload.optString("label");
-                        success = serverAddLabel(mailId, label, jwtToken);
+                        code = serverAddLabel(mailId, label, jwtToken);
                         break;
                     }
                     case "LABEL_REMOVE": {
                         String mailId = payload.optString("mailId");
                         String label = payload.optString("label");
-                        success = serverRemoveLabel(mailId, label, jwtToken);
+                        code = serverRemoveLabel(mailId, label, jwtToken);
                         break;
                     }
                     case "LABEL_MOVE": {
@@ -69,7 +85,7 @@ public class PendingSyncManager {
                         if (removedArr != null) {
                             for (int i = 0; i < removedArr.length(); i++) removed.add(removedArr.optString(i));
                         }
-                        success = serverMove(mailId, target, removed, jwtToken);
+                        code = serverMove(mailId, target, removed, jwtToken);
                         break;
                     }
                     default:
@@ -80,9 +96,16 @@ public class PendingSyncManager {
             }
 
             try {
-                if (success) {
+                if (code >= 200 && code < 300) {
                     pendingRepo.markDone(op.id);
+                } else if (code == 401 && tokens.isSessionExpired()) {
+                    // The session is gone; park rather than retry until a new login
+                    pendingRepo.park(op.id);
+                } else if (code == 403) {
+                    // Not allowed on this mail/label: a new token won't change that
+                    pendingRepo.delete(op.id);
                 } else {
+                    // Includes a 401 after a refresh that failed on the network: next flush retries
                     pendingRepo.incrementRetry(op.id);
                 }
             } catch (Exception e) {
@@ -91,7 +114,9 @@ public class PendingSyncManager {
         }
     }
 
-    private boolean serverAddLabel(String mailId, String label, String jwtToken) throws IOException {
+    /* Helpers return the HTTP status code (0 = not sent). */
+
+    private int serverAddLabel(String mailId, String label, String jwtToken) throws IOException {
         JSONObject json = new JSONObject();
         try { json.put("label", label); } catch (Exception ignored) {}
         RequestBody body = RequestBody.create(JSON, json.toString());
@@ -101,11 +126,11 @@ public class PendingSyncManager {
                 .header("Authorization", "Bearer " + jwtToken)
                 .build();
         try (Response r = client.newCall(req).execute()) {
-            return r.isSuccessful();
+            return r.code();
         }
     }
 
-    private boolean serverRemoveLabel(String mailId, String label, String jwtToken) throws IOException {
+    private int serverRemoveLabel(String mailId, String label, String jwtToken) throws IOException {
         JSONObject json = new JSONObject();
         try { json.put("label", label); json.put("action", "remove"); } catch (Exception ignored) {}
         RequestBody body = RequestBody.create(JSON, json.toString());
@@ -115,19 +140,21 @@ public class PendingSyncManager {
                 .header("Authorization", "Bearer " + jwtToken)
                 .build();
         try (Response r = client.newCall(req).execute()) {
-            return r.isSuccessful();
+            return r.code();
         }
     }
 
-    private boolean serverMove(String mailId, String target, List<String> removed, String jwtToken) throws IOException {
-        boolean ok = true;
+    /** Returns the first failing status, or the add-label status if all succeeded. */
+    private int serverMove(String mailId, String target, List<String> removed, String jwtToken) throws IOException {
+        int failed = 0;
         if (removed != null) {
             for (String l : removed) {
                 if (l == null || l.isEmpty() || "starred".equalsIgnoreCase(l)) continue;
-                if (!serverRemoveLabel(mailId, l, jwtToken)) ok = false;
+                int code = serverRemoveLabel(mailId, l, jwtToken);
+                if (failed == 0 && (code < 200 || code >= 300)) failed = code;
             }
         }
-        if (!serverAddLabel(mailId, target, jwtToken)) ok = false;
-        return ok;
+        int code = serverAddLabel(mailId, target, jwtToken);
+        return failed != 0 ? failed : code;
     }
 }
@@ -0,0 +1,76 @@
+package com.example.gmailish.data.sync;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process latency stats per sync lane, measured from when an op was
+ * queued (PendingOperationEntity.createdAt) to the server ack.
+ * Keeps the last WINDOW samples per lane.
+ */
+public final class SyncLaneMetrics {
+
+    private static final String TAG = "SyncLaneMetrics";
+    private static final int WINDOW = 128;
+
+    private static final Map<String, Window> lanes = new HashMap<>();
+
+    private SyncLaneMetrics() {}
+
+    public static final class Snapshot {
+        public final String lane;
+        public final long count;
+        public final long p50Ms;
+        public final long p95Ms;
+        public final long maxMs;
+
+        Snapshot(String lane, long count, long p50Ms, long p95Ms, long maxMs) {
+            this.lane = lane;
+            this.count = count;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.maxMs = maxMs;
+        }
+
+        @Override public String toString() {
+            return lane + ": n=" + count + " p50=" + p50Ms + "ms p95=" + p95Ms + "ms max=" + maxMs + "ms";
+        }
+    }
+
+    private static final class Window {
+        final long[] samples = new long[WINDOW];
+        int size;
+        int next;
+        long total;
+    }
+
+    public static synchronized void record(String lane, long latencyMs) {
+        Window w = lanes.get(lane);
+        if (w == null) {
+            w = new Window();
+            lanes.put(lane, w);
+        }
+        w.samples[w.next] = Math.max(0, latencyMs);
+        w.next = (w.next + 1) % WINDOW;
+        if (w.size < WINDOW) w.size++;
+        w.total++;
+    }
+
+    public static synchronized Snapshot snapshot(String lane) {
+        Window w = lanes.get(lane);
+        if (w == null || w.size == 0) return new Snapshot(lane, 0, 0, 0, 0);
+        long[] sorted = Arrays.copyOf(w.samples, w.size);
+        Arrays.sort(sorted);
+        return new Snapshot(lane, w.total,
+                sorted[(sorted.length - 1) / 2],
+                sorted[(int) Math.ceil(sorted.length * 0.95) - 1],
+                sorted[sorted.length - 1]);
+    }
+
+    public static void log(String lane) {
+        Log.d(TAG, snapshot(lane).toString());
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.gmailish.data.sync;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+import androidx.work.ForegroundInfo;
+
+/** Shared notification channel + ForegroundInfo for sync workers. */
+final class SyncNotifications {
+
+    static final String CHANNEL_ID = "sync";
+
+    private SyncNotifications() {}
+
+    static NotificationCompat.Builder builder(Context ctx, String title) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager nm = ctx.getSystemService(NotificationManager.class);
+            if (nm != null && nm.getNotificationChannel(CHANNEL_ID) == null) {
+                nm.createNotificationChannel(new NotificationChannel(
+                        CHANNEL_ID, "Mail sync", NotificationManager.IMPORTANCE_LOW));
+            }
+        }
+        return new NotificationCompat.Builder(ctx, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_notify_sync)
+                .setContentTitle(title)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+    }
+
+    static ForegroundInfo foregroundInfo(int id, Notification n) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(id, n, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(id, n);
+    }
+}
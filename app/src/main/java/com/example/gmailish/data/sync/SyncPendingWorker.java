@@ -4,12 +4,16 @@ import static android.content.Context.MODE_PRIVATE;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.work.Constraints;
+import androidx.work.Data;
 import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
 import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
 import androidx.work.WorkManager;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
@@ -21,20 +25,33 @@ import com.example.gmailish.data.dao.PendingOperationDao;
 import com.example.gmailish.data.db.AppDatabase;
 import com.example.gmailish.data.entity.LabelEntity;
 import com.example.gmailish.data.entity.MailEntity;
-import com.example.gmailish.data.entity.MailLabelCrossRef;
 import com.example.gmailish.data.entity.PendingOperationEntity;
+import com.example.gmailish.data.model.LabelNames;
 import com.example.gmailish.data.model.PendingOperationType;
 import com.example.gmailish.data.repository.LabelRepository;
+import com.example.gmailish.data.repository.MailRepository;
 import com.example.gmailish.data.repository.PendingOperationRepository;
+import com.example.gmailish.utils.ApiClient;
+import com.example.gmailish.utils.TokenManager;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -48,10 +65,33 @@ public class SyncPendingWorker extends Worker {
     private static final MediaType JSON = MediaType.parse("application/json");
     private static final String LABELS_URL = "http://10.0.2.2:3000/api/labels";
     private static final String MAILS_URL  = "http://10.0.2.2:3000/api/mails";
+    private static final String TAG = "SyncPendingWorker";
+
+    // Priority lanes: user sends run expedited and never wait behind label replay
+    public static final String KEY_LANE = "lane";
+    public static final String LANE_OUTBOX = "outbox";
+    public static final String LANE_BULK = "bulk";
+    private static final String KEY_RETRY = "retry";
+    private static final String OUTBOX_NAME = "sync-outbox";
+    // Failed sends retry here, so the expedited chain itself never sits in backoff
+    private static final String OUTBOX_RETRY_NAME = "sync-outbox-retry";
+    private static final long OUTBOX_RETRY_BASE_S = 10L;
+    private static final int OUTBOX_RETRY_MAX_SHIFT = 6;
+    private static final int NOTIFICATION_ID = 1002;
+
+    // Sends carry an Idempotency-Key (the op id), so they can run in parallel,
+    // be hedged and be retried eagerly without risking duplicates.
+    private static final int SEND_PARALLELISM = 4;
+    private static final long HEDGE_DELAY_MS = 1_500L;
+    private static final int SEND_ATTEMPTS = 3;
+    private static final long SEND_RETRY_BASE_MS = 300L;
 
     private final PendingOperationRepository pendingRepo;
     private final LabelRepository labelRepo;
+    // Mail rows are written through here so saved searches see sent mail
+    private final MailRepository mailRepo;
     private final OkHttpClient client;
+    private final TokenManager tokens;
 
     private final AppDatabase db;
     private final MailDao mailDao;
@@ -67,27 +107,50 @@ public class SyncPendingWorker extends Worker {
         mailLabelDao = db.mailLabelDao();
 
         this.pendingRepo = new PendingOperationRepository(pendingDao);
-        this.labelRepo = new LabelRepository(labelDao, mailLabelDao);
-        this.client = new OkHttpClient();
+        this.labelRepo = new LabelRepository(labelDao, mailLabelDao, db.savedSearchDao());
+        this.mailRepo = new MailRepository(mailDao, labelDao, mailLabelDao, db.savedSearchDao());
+        this.tokens = TokenManager.get(context);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(SEND_PARALLELISM * 2);
+        this.client = ApiClient.get(context).newBuilder()
+                .dispatcher(dispatcher)
+                .build();
     }
 
     @NonNull
     @Override
     public Result doWork() {
+        // No lane (older requests) means both, outbox first
+        String lane = getInputData().getString(KEY_LANE);
+        boolean runOutbox = lane == null || LANE_OUTBOX.equals(lane);
+        boolean runBulk = lane == null || LANE_BULK.equals(lane);
+
         List<PendingOperationEntity> ops = pendingRepo.getAllPending();
+        if (tokens.isSessionExpired()) {
+            // Nothing can succeed until login; park instead of burning retries
+            for (PendingOperationEntity op : ops) {
+                if (isSend(op) ? runOutbox : runBulk) pendingRepo.park(op.id);
+            }
+            Log.d(TAG, "session expired: parked lane=" + lane);
+            return Result.success();
+        }
+        List<PendingOperationEntity> sends = new ArrayList<>();
+        List<PendingOperationEntity> others = new ArrayList<>();
         for (PendingOperationEntity op : ops) {
+            if (isSend(op)) sends.add(op); else others.add(op);
+        }
+
+        if (runOutbox) runOutbox(sends);
+        if (!runBulk) return Result.success();
+
+        for (PendingOperationEntity op : others) {
+            tokens.awaitRefresh();
             try {
                 if (PendingOperationType.LABEL_CREATE.equals(op.type)) {
                     if (!handleLabelCreate(op)) continue;
 
-                } else if (PendingOperationType.MAIL_SEND.equals(op.type)) {
-                    if (!handleMailSend(op)) continue;
-
                 } else if (PendingOperationType.DRAFT_SAVE.equals(op.type)) {
                     if (!handleDraftSave(op)) continue;
-
-                } else if (PendingOperationType.DRAFT_SEND.equals(op.type)) {
-                    if (!handleDraftSend(op)) continue;
                 }
             } catch (IOException ioe) {
                 pendingRepo.incrementRetry(op.id);
@@ -97,9 +160,185 @@ public class SyncPendingWorker extends Worker {
                 return Result.retry();
             }
         }
+        if (!others.isEmpty()) SyncLaneMetrics.log(LANE_BULK);
         return Result.success();
     }
 
+    /** Needed for expedited work on API < 31, where it runs as a foreground service. */
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return SyncNotifications.foregroundInfo(NOTIFICATION_ID,
+                SyncNotifications.builder(getApplicationContext(), "Sending mail")
+                        .setProgress(0, 0, true)
+                        .build());
+    }
+
+    private static boolean isSend(PendingOperationEntity op) {
+        return PendingOperationType.MAIL_SEND.equals(op.type)
+                || PendingOperationType.DRAFT_SEND.equals(op.type);
+    }
+
+    /* =========================
+       Outbox (parallel sends)
+       ========================= */
+
+    /**
+     * Drains the outbox, then whatever was queued while it ran (enqueueOutbox
+     * keeps a running chain instead of appending behind it). Failed sends are
+     * retried by a delayed side request rather than Result.retry(), so the
+     * next user send never waits on this run's backoff.
+     */
+    private void runOutbox(List<PendingOperationEntity> sends) {
+        Set<String> tried = new HashSet<>();
+        boolean failed = false;
+        while (!sends.isEmpty() && !isStopped()) {
+            for (PendingOperationEntity op : sends) tried.add(op.id);
+            if (!drainOutbox(sends)) failed = true;
+
+            sends = new ArrayList<>();
+            for (PendingOperationEntity op : pendingRepo.getAllPending()) {
+                if (isSend(op) && !tried.contains(op.id)) sends.add(op);
+            }
+        }
+        if (failed) scheduleOutboxRetry(getApplicationContext(), getInputData().getBoolean(KEY_RETRY, false));
+    }
+
+    /** Sends all queued mails concurrently. Returns false if any send must be retried. */
+    private boolean drainOutbox(List<PendingOperationEntity> sends) {
+        if (sends.isEmpty()) return true;
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(SEND_PARALLELISM, sends.size()));
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        for (PendingOperationEntity op : sends) {
+            futures.add(pool.submit(() -> {
+                try {
+                    tokens.awaitRefresh();
+                    boolean settled = PendingOperationType.MAIL_SEND.equals(op.type)
+                            ? handleMailSend(op) : handleDraftSend(op);
+                    if (!settled) pendingRepo.incrementRetry(op.id);
+                    return settled;
+                } catch (Exception e) {
+                    Log.w(TAG, "send failed op=" + op.id + ": " + e.getMessage());
+                    pendingRepo.incrementRetry(op.id);
+                    return false;
+                }
+            }));
+        }
+
+        boolean ok = true;
+        for (Future<Boolean> f : futures) {
+            try {
+                if (!f.get()) ok = false;
+            } catch (Exception e) {
+                ok = false;
+            }
+        }
+        pool.shutdown();
+
+        Log.d(TAG, "outbox: queued=" + sends.size() + " drainMs=" + (System.currentTimeMillis() - start));
+        SyncLaneMetrics.log(LANE_OUTBOX);
+        return ok;
+    }
+
+    /** Called right after the server acked an op; feeds the per-lane latency stats. */
+    private void recordAck(PendingOperationEntity op, String lane) {
+        if (op.createdAt != null) {
+            SyncLaneMetrics.record(lane, System.currentTimeMillis() - op.createdAt.getTime());
+        }
+    }
+
+    /**
+     * Executes an idempotent send: a second copy is fired if the first is still
+     * in flight after HEDGE_DELAY_MS, and network errors / 5xx are retried a few
+     * times with short backoff before handing back to WorkManager.
+     */
+    private Response executeSend(Request req) throws IOException, InterruptedException {
+        IOException last = null;
+        for (int attempt = 0; attempt < SEND_ATTEMPTS; attempt++) {
+            if (attempt > 0) Thread.sleep(SEND_RETRY_BASE_MS << (attempt - 1));
+            try {
+                Response r = executeHedged(req);
+                if (r.code() < 500 || attempt == SEND_ATTEMPTS - 1) return r;
+                r.close();
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw last != null ? last : new IOException("send failed");
+    }
+
+    private Response executeHedged(Request req) throws IOException, InterruptedException {
+        Hedge hedge = new Hedge();
+        Call primary = client.newCall(req);
+        hedge.launch(primary);
+
+        Response r = hedge.await(HEDGE_DELAY_MS);
+        Call backup = null;
+        if (r == null && hedge.inFlight()) {
+            backup = client.newCall(req);
+            hedge.launch(backup);
+            r = hedge.await(Long.MAX_VALUE);
+        }
+
+        // Only the losers: cancelling the winner would tear down the body the caller still reads
+        Call won = hedge.winnerCall();
+        if (primary != won) primary.cancel();
+        if (backup != null && backup != won) backup.cancel();
+        if (r == null) throw hedge.error();
+        return r;
+    }
+
+    /** First response wins; late responses are closed. */
+    private static final class Hedge implements Callback {
+        private Response winner;
+        private Call winnerCall;
+        private IOException error;
+        private int pending;
+
+        synchronized void launch(Call call) {
+            pending++;
+            call.enqueue(this);
+        }
+
+        synchronized boolean inFlight() { return winner == null && pending > 0; }
+
+        synchronized Call winnerCall() { return winnerCall; }
+
+        synchronized IOException error() {
+            return error != null ? error : new IOException("no response");
+        }
+
+        synchronized Response await(long timeoutMs) throws InterruptedException {
+            long deadline = timeoutMs == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMs;
+            while (winner == null && pending > 0) {
+                long remaining = deadline == Long.MAX_VALUE ? 0 : deadline - System.currentTimeMillis();
+                if (deadline != Long.MAX_VALUE && remaining <= 0) break;
+                wait(remaining);
+            }
+            return winner;
+        }
+
+        @Override public synchronized void onResponse(@NonNull Call call, @NonNull Response response) {
+            pending--;
+            if (winner == null) {
+                winner = response;
+                winnerCall = call;
+            } else {
+                response.close();
+            }
+            notifyAll();
+        }
+
+        @Override public synchronized void onFailure(@NonNull Call call, @NonNull IOException e) {
+            pending--;
+            if (error == null) error = e;
+            notifyAll();
+        }
+    }
+
     /* =========================
        LABEL_CREATE
        ========================= */
@@ -130,15 +369,24 @@ public class SyncPendingWorker extends Worker {
 
                 String finalId = serverId != null ? serverId : localId;
                 String finalOwner = serverOwnerId != null ? serverOwnerId : (ownerId != null ? ownerId : "");
-                labelRepo.saveLabel(new LabelEntity(finalId, finalOwner, serverName));
-
-                if (localId != null && serverId != null && !serverId.equals(localId)) {
-                    labelRepo.deleteLabel(localId);
+                if (localId != null && !finalId.equals(localId)
+                        // Keep the row (and its int id) so mails tagged while offline stay tagged
+                        && !labelRepo.rekeyLabel(ownerId, localId, finalId, serverName)) {
+                    labelRepo.deleteLabel(ownerId, localId);
                 }
+                labelRepo.saveLabel(new LabelEntity(finalId, finalOwner, serverName));
                 pendingRepo.markDone(op.id);
+                recordAck(op, LANE_BULK);
             } else {
                 int code = response.code();
-                if (code == 401 || code == 403 || code >= 500) {
+                if (code == 401 && tokens.isSessionExpired()) {
+                    // The session is gone: wait for a new login
+                    pendingRepo.park(op.id);
+                    return false;
+                } else if (code == 401) {
+                    // The refresh itself failed (network, 5xx): retry, don't strand the op
+                    throw new IOException("token refresh failed");
+                } else if (code >= 500) {
                     pendingRepo.incrementRetry(op.id);
                     return false;
                 } else {
@@ -152,6 +400,7 @@ public class SyncPendingWorker extends Worker {
     /* =========================
        MAIL_SEND (Outbox → Sent)
        ========================= */
+    /** True once the op is settled (sent, dropped or parked); false if it needs a retry. */
     private boolean handleMailSend(PendingOperationEntity op) throws Exception {
         JSONObject payload = new JSONObject(op.payloadJson);
         String localId = payload.optString("localId", null);
@@ -162,7 +411,7 @@ public class SyncPendingWorker extends Worker {
 
         if (localId == null || ownerId == null || to == null) {
             pendingRepo.delete(op.id);
-            return false;
+            return true;
         }
 
         SharedPreferences prefs = getApplicationContext().getSharedPreferences("prefs", MODE_PRIVATE);
@@ -177,10 +426,11 @@ public class SyncPendingWorker extends Worker {
         Request req = new Request.Builder()
                 .url(MAILS_URL)
                 .header("Authorization", jwt.isEmpty() ? "" : "Bearer " + jwt)
+                .header("Idempotency-Key", op.id)
                 .post(RequestBody.create(JSON, body.toString()))
                 .build();
 
-        try (Response response = client.newCall(req).execute()) {
+        try (Response response = executeSend(req)) {
             if (response.isSuccessful()) {
                 String resp = response.body() != null ? response.body().string() : "{}";
                 String serverId;
@@ -202,30 +452,29 @@ public class SyncPendingWorker extends Worker {
                             new Date(), ownerId,
                             true, false
                     );
-                    mailDao.upsert(local);
+                    mailRepo.saveMail(local);
                 } else {
-                    MailEntity serverMail = new MailEntity(
-                            finalId,
-                            local.getSenderId(), local.getSenderName(),
-                            local.getRecipientId(), local.getRecipientName(), local.getRecipientEmail(),
-                            local.getSubject(), local.getContent(),
-                            local.getTimestamp(), local.getOwnerId(),
-                            true, local.getStarred()
-                    );
-                    mailLabelDao.clearForMail(localId);
-                    mailDao.deleteById(localId);
-                    mailDao.upsert(serverMail);
+                    // Same row, new id: no delete/reinsert, cross-refs untouched
+                    mailRepo.remapIdLocal(localId, finalId);
+                    mailRepo.setRead(finalId, true);
                 }
 
-                try { mailLabelDao.remove(finalId, "outbox"); } catch (Exception ignore) {}
-                labelRepo.saveLabel(new LabelEntity("sent", ownerId, "sent"));
-                mailLabelDao.add(new MailLabelCrossRef(finalId, "sent"));
+                try { labelRepo.unlinkMail(finalId, LabelNames.OUTBOX, ownerId); } catch (Exception ignore) {}
+                labelRepo.linkMail(finalId, LabelNames.SENT, ownerId);
 
                 pendingRepo.markDone(op.id);
+                recordAck(op, LANE_OUTBOX);
             } else {
                 int code = response.code();
-                if (code == 401 || code == 403 || code >= 500) {
-                    pendingRepo.incrementRetry(op.id);
+                if (code == 401 && tokens.isSessionExpired()) {
+                    // The session is gone: wait for a new login
+                    pendingRepo.park(op.id);
+                    return true;
+                } else if (code == 401) {
+                    // The refresh itself failed (network, 5xx): retry, don't strand the send
+                    return false;
+                } else if (code >= 500) {
+                    // Still failing after executeSend's own retries: back to WorkManager
                     return false;
                 } else {
                     pendingRepo.delete(op.id);
@@ -248,6 +497,7 @@ public class SyncPendingWorker extends Worker {
     /* =========================
        DRAFT_SEND (new)
        ========================= */
+    /** Same contract as handleMailSend. */
     private boolean handleDraftSend(PendingOperationEntity op) throws Exception {
         // Expected payload fields:
         // { "draftId": "...", "ownerId": "...", "to": "...", "subject": "...", "content": "..." }
@@ -261,7 +511,7 @@ public class SyncPendingWorker extends Worker {
         if (draftId == null || ownerId == null || to == null) {
             // malformed
             pendingRepo.delete(op.id);
-            return false;
+            return true;
         }
 
         // Send to server exactly like MAIL_SEND
@@ -276,10 +526,11 @@ public class SyncPendingWorker extends Worker {
         Request req = new Request.Builder()
                 .url(MAILS_URL)
                 .header("Authorization", jwt.isEmpty() ? "" : "Bearer " + jwt)
+                .header("Idempotency-Key", op.id)
                 .post(RequestBody.create(JSON, body.toString()))
                 .build();
 
-        try (Response response = client.newCall(req).execute()) {
+        try (Response response = executeSend(req)) {
             if (response.isSuccessful()) {
                 String resp = response.body() != null ? response.body().string() : "{}";
                 String serverId;
@@ -292,11 +543,11 @@ public class SyncPendingWorker extends Worker {
 
                 final String finalId = (serverId != null && !serverId.isEmpty()) ? serverId : draftId;
 
-                // 1) Remove the local draft
-                try { mailLabelDao.clearForMail(draftId); } catch (Exception ignore) {}
-                try { mailDao.deleteById(draftId); } catch (Exception ignore) {}
+                // 1) Turn the draft row into the sent row in place
+                try { mailRepo.remapIdLocal(draftId, finalId); } catch (Exception ignore) {}
+                try { labelRepo.unlinkMail(finalId, LabelNames.DRAFTS, ownerId); } catch (Exception ignore) {}
 
-                // 2) Create the local "sent" record
+                // 2) Write the "sent" contents (upsert keeps the rowId)
                 MailEntity sent = new MailEntity(
                         finalId,
                         ownerId, "Me",
@@ -307,16 +558,23 @@ public class SyncPendingWorker extends Worker {
                         ownerId,
                         true, false
                 );
-                mailDao.upsert(sent);
-                labelRepo.saveLabel(new LabelEntity("sent", ownerId, "sent"));
-                mailLabelDao.add(new MailLabelCrossRef(finalId, "sent"));
+                mailRepo.saveMail(sent);
+                labelRepo.linkMail(finalId, LabelNames.SENT, ownerId);
 
                 // 3) Done
                 pendingRepo.markDone(op.id);
+                recordAck(op, LANE_OUTBOX);
             } else {
                 int code = response.code();
-                if (code == 401 || code == 403 || code >= 500) {
-                    pendingRepo.incrementRetry(op.id);
+                if (code == 401 && tokens.isSessionExpired()) {
+                    // The session is gone: wait for a new login
+                    pendingRepo.park(op.id);
+                    return true;
+                } else if (code == 401) {
+                    // The refresh itself failed (network, 5xx): retry, don't strand the send
+                    return false;
+                } else if (code >= 500) {
+                    // Still failing after executeSend's own retries: back to WorkManager
                     return false;
                 } else {
                     // permanent client error -> drop
@@ -330,38 +588,73 @@ public class SyncPendingWorker extends Worker {
     /* =========================
        Enqueue unique work
        ========================= */
+
+    /** Schedules both lanes; prefer the lane-specific variants. */
     public static void enqueue(Context context) {
+        enqueueOutbox(context);
+        enqueueBulk(context);
+    }
+
+    /** User-initiated MAIL_SEND / DRAFT_SEND: expedited, own unique chain. */
+    public static void enqueueOutbox(Context context) {
         OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(SyncPendingWorker.class)
+                .setInputData(new Data.Builder().putString(KEY_LANE, LANE_OUTBOX).build())
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
                 .setConstraints(new Constraints.Builder()
                         .setRequiredNetworkType(NetworkType.CONNECTED)
                         .build())
                 .addTag("sync-pending")
                 .build();
+        // KEEP: a running drain picks up sends queued meanwhile (runOutbox re-reads)
         WorkManager.getInstance(context).enqueueUniqueWork(
-                "sync-pending-once",
+                OUTBOX_NAME,
                 ExistingWorkPolicy.KEEP,
                 req
         );
     }
 
-    /** Local DB holder (singleton). */
-    private static final class DbHolder {
-        private static volatile AppDatabase INSTANCE;
-        static AppDatabase getInstance(Context context) {
-            if (INSTANCE == null) {
-                synchronized (DbHolder.class) {
-                    if (INSTANCE == null) {
-                        INSTANCE = androidx.room.Room.databaseBuilder(
-                                        context.getApplicationContext(),
-                                        AppDatabase.class,
-                                        "gmailish.db"
-                                )
-                                .fallbackToDestructiveMigration()
-                                .build();
-                    }
-                }
-            }
-            return INSTANCE;
+    /** Delayed outbox run for sends that failed; backs off with the highest retry count. */
+    private void scheduleOutboxRetry(Context context, boolean fromRetryRun) {
+        int retries = 0;
+        for (PendingOperationEntity op : pendingRepo.getAllPending()) {
+            if (isSend(op)) retries = Math.max(retries, op.retryCount);
         }
+        long delayS = OUTBOX_RETRY_BASE_S << Math.min(Math.max(0, retries - 1), OUTBOX_RETRY_MAX_SHIFT);
+
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(SyncPendingWorker.class)
+                .setInputData(new Data.Builder()
+                        .putString(KEY_LANE, LANE_OUTBOX)
+                        .putBoolean(KEY_RETRY, true)
+                        .build())
+                .setInitialDelay(delayS, TimeUnit.SECONDS)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .addTag("sync-pending")
+                .build();
+        // From the retry run itself: queue behind it (KEEP would drop the request);
+        // otherwise an already scheduled retry covers these sends too
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                OUTBOX_RETRY_NAME,
+                fromRetryRun ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.KEEP,
+                req
+        );
+        Log.d(TAG, "outbox: retry in " + delayS + "s (retries=" + retries + ")");
+    }
+
+    /** Label create / draft save replay: regular background work. */
+    public static void enqueueBulk(Context context) {
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(SyncPendingWorker.class)
+                .setInputData(new Data.Builder().putString(KEY_LANE, LANE_BULK).build())
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .addTag("sync-pending")
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                "sync-bulk",
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                req
+        );
     }
 }
@@ -0,0 +1,69 @@
+package com.example.gmailish.data.thread;
+
+import com.example.gmailish.data.entity.MailEntity;
+
+import java.util.Locale;
+
+/**
+ * Conversation keys for mails.threadKey. Without reply metadata a key is
+ * derived from the normalized subject ("Re: Re: Lunch" = "lunch") and the pair
+ * of participants, so a reply and the mail it answers land in one thread.
+ *
+ *   d:<hash>  derived here when the mail is stored, and again on a later write
+ *             while the key is still the stored row's own (drafts: every save)
+ *   s:<id>    the server's thread id
+ *   (other)   inherited from the mail replied to (see MailRepository.joinThread)
+ */
+public final class ThreadKeys {
+
+    private static final String DERIVED = "d:";
+    private static final String SERVER = "s:";
+
+    private ThreadKeys() {}
+
+    public static String derive(MailEntity m) {
+        return derive(m.getSenderId(), m.getRecipientId(), m.getSubject());
+    }
+
+    public static String derive(String senderId, String recipientId, String subject) {
+        String a = participant(senderId);
+        String b = participant(recipientId);
+        // Order-free: the reply swaps sender and recipient
+        String pair = a.compareTo(b) <= 0 ? a + "\u0000" + b : b + "\u0000" + a;
+        return DERIVED + Long.toHexString(fnv(normalizeSubject(subject) + "\u0001" + pair));
+    }
+
+    public static String fromServer(String threadId) {
+        return threadId == null || threadId.trim().isEmpty() ? null : SERVER + threadId.trim();
+    }
+
+    /** Lowercase, reply/forward prefixes and list tags stripped, whitespace collapsed. */
+    public static String normalizeSubject(String subject) {
+        if (subject == null) return "";
+        String s = subject.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        boolean stripped = true;
+        while (stripped && !s.isEmpty()) {
+            stripped = false;
+            // "[list] ", "re: ", "re[2]: ", "fwd: ", "fw: ", "aw: " (any order, repeated)
+            String next = s.replaceFirst("^(\\[[^\\]]*\\]\\s*|(re|fwd?|aw)(\\[\\d+\\])?\\s*:\\s*)", "");
+            if (!next.equals(s)) {
+                s = next;
+                stripped = true;
+            }
+        }
+        return s.trim();
+    }
+
+    private static String participant(String id) {
+        return id != null ? id.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static long fnv(String v) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < v.length(); i++) {
+            h ^= v.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.gmailish.data.thread;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+/**
+ * SQL that keeps the threads table in step with mails. Triggers recompute only
+ * the thread a written row belongs to (before and after, if the row moved),
+ * from the (ownerId, threadKey, timestamp) index, so every write path —
+ * repository, adapter, workers, migrations — is covered without Java hooks.
+ */
+public final class ThreadSummaries {
+
+    private static final String TAG = "ThreadSummaries";
+
+    private static final int SNIPPET_CHARS = 200;
+
+    private static final String COLUMNS = "ownerId, threadKey, latestRowId, latestMailId, latestTimestamp, " +
+            "messageCount, unreadCount, starred, subject, participants, snippet";
+
+    // Columns whose change can change a summary
+    private static final String WATCHED = "id, senderName, subject, content, timestamp, ownerId, read, starred, threadKey";
+
+    private ThreadSummaries() {}
+
+    /** Triggers on mails; idempotent, run on every open (AppDatabase.CALLBACK) and when migrating. */
+    public static void createTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS threads_after_insert AFTER INSERT ON mails " +
+                "BEGIN " + refresh("NEW.ownerId", "NEW.threadKey") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS threads_after_delete AFTER DELETE ON mails " +
+                "BEGIN " + refresh("OLD.ownerId", "OLD.threadKey") + " END");
+        // The thread the row left (only if it moved), then the one it is in
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS threads_after_update_old AFTER UPDATE OF " + WATCHED + " ON mails " +
+                "WHEN OLD.threadKey IS NOT NEW.threadKey OR OLD.ownerId IS NOT NEW.ownerId " +
+                "BEGIN " + refresh("OLD.ownerId", "OLD.threadKey") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS threads_after_update_new AFTER UPDATE OF " + WATCHED + " ON mails " +
+                "BEGIN " + refresh("NEW.ownerId", "NEW.threadKey") + " END");
+    }
+
+    /** Recompute every thread (after filling threadKey for existing mails). */
+    public static void rebuild(SupportSQLiteDatabase db) {
+        long t0 = System.currentTimeMillis();
+        db.execSQL("DELETE FROM threads");
+        int n = 0;
+        SupportSQLiteStatement del = db.compileStatement("DELETE FROM threads WHERE ownerId = ? AND threadKey = ?");
+        SupportSQLiteStatement ins = db.compileStatement(summaryInsert("?1", "?2"));
+        try (Cursor c = db.query("SELECT DISTINCT ownerId, threadKey FROM mails " +
+                "WHERE ownerId IS NOT NULL AND threadKey IS NOT NULL")) {
+            while (c.moveToNext()) {
+                del.bindString(1, c.getString(0));
+                del.bindString(2, c.getString(1));
+                del.executeUpdateDelete();
+                ins.clearBindings();
+                ins.bindString(1, c.getString(0));
+                ins.bindString(2, c.getString(1));
+                ins.executeInsert();
+                n++;
+            }
+        }
+        Log.d(TAG, "rebuild: " + n + " threads in " + (System.currentTimeMillis() - t0) + "ms");
+    }
+
+    private static String refresh(String owner, String key) {
+        return "DELETE FROM threads WHERE ownerId = " + owner + " AND threadKey = " + key + "; " +
+                summaryInsert(owner, key) + ";";
+    }
+
+    /** Summary row of one thread: its latest mail plus aggregates over the thread. */
+    private static String summaryInsert(String owner, String key) {
+        return "INSERT INTO threads (" + COLUMNS + ") " +
+                "SELECT m.ownerId, m.threadKey, m.rowId, m.id, m.timestamp, " +
+                "a.n, a.unread, a.starred, m.subject, a.participants, " +
+                "replace(substr(m.content, 1, " + SNIPPET_CHARS + "), char(10), ' ') " +
+                "FROM mails m JOIN (SELECT COUNT(*) AS n, COALESCE(SUM(read = 0), 0) AS unread, " +
+                "COALESCE(MAX(starred), 0) AS starred, group_concat(DISTINCT senderName) AS participants " +
+                "FROM mails WHERE ownerId = " + owner + " AND threadKey = " + key + ") a " +
+                "WHERE m.ownerId = " + owner + " AND m.threadKey = " + key + " " +
+                "ORDER BY m.timestamp DESC, m.rowId DESC LIMIT 1";
+    }
+}
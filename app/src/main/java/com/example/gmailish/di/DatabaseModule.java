@@ -2,9 +2,12 @@ package com.example.gmailish.di;
 
 import android.content.Context;
 
-import androidx.room.Room;
-
+import com.example.gmailish.data.blacklist.BlacklistFilter;
+import com.example.gmailish.data.blacklist.LinkScanStage;
+import com.example.gmailish.data.dao.LinkScanDao;
 import com.example.gmailish.data.dao.PendingOperationDao;
+import com.example.gmailish.data.dao.SavedSearchDao;
+import com.example.gmailish.data.dao.SyncCheckpointDao;
 import com.example.gmailish.data.repository.PendingOperationRepository;
 import com.example.gmailish.data.dao.BlacklistDao;
 import com.example.gmailish.data.dao.LabelDao;
@@ -12,6 +15,9 @@ import com.example.gmailish.data.dao.MailDao;
 import com.example.gmailish.data.dao.MailLabelDao;
 import com.example.gmailish.data.dao.UserDao;
 import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.local.MailObservers;
 import com.example.gmailish.data.repository.BlacklistRepository;
 import com.example.gmailish.data.repository.LabelRepository;
 import com.example.gmailish.data.repository.MailRepository;
@@ -33,9 +39,8 @@ public final class DatabaseModule {
     @Provides
     @Singleton
     public AppDatabase provideDatabase(@ApplicationContext Context context) {
-        return Room.databaseBuilder(context, AppDatabase.class, "gmailish.db")
-                .fallbackToDestructiveMigration() // dev only
-                .build();
+        // Same instance as workers/ViewModels so migrations run once and invalidation is shared
+        return AppDbProvider.get(context);
     }
 
     @Provides public UserDao provideUserDao(AppDatabase db) { return db.userDao(); }
@@ -44,6 +49,9 @@ public final class DatabaseModule {
     @Provides public MailLabelDao provideMailLabelDao(AppDatabase db) { return db.mailLabelDao(); }
     @Provides public BlacklistDao provideBlacklistDao(AppDatabase db) { return db.blacklistDao(); }
     @Provides public PendingOperationDao providePendingOperationDao(AppDatabase db) { return db.pendingOperationDao(); }
+    @Provides public SyncCheckpointDao provideSyncCheckpointDao(AppDatabase db) { return db.syncCheckpointDao(); }
+    @Provides public SavedSearchDao provideSavedSearchDao(AppDatabase db) { return db.savedSearchDao(); }
+    @Provides public LinkScanDao provideLinkScanDao(AppDatabase db) { return db.linkScanDao(); }
 
     @Provides @Singleton
     public UserRepository provideUserRepository(UserDao userDao) {
@@ -51,18 +59,36 @@ public final class DatabaseModule {
     }
 
     @Provides @Singleton
-    public MailRepository provideMailRepository(MailDao mailDao, LabelDao labelDao, MailLabelDao mailLabelDao) {
-        return new MailRepository(mailDao, labelDao, mailLabelDao);
+    public MailRepository provideMailRepository(MailDao mailDao, LabelDao labelDao, MailLabelDao mailLabelDao,
+                                                SavedSearchDao savedSearchDao) {
+        return new MailRepository(mailDao, labelDao, mailLabelDao, savedSearchDao);
+    }
+
+    @Provides @Singleton
+    public MailObservers provideMailObservers(AppDatabase db) {
+        return new MailObservers(db);
+    }
+
+    @Provides @Singleton
+    public LocalWriteQueue provideLocalWriteQueue(AppDatabase db) {
+        return LocalWriteQueue.get(db);
+    }
+
+    @Provides @Singleton
+    public LabelRepository provideLabelRepository(LabelDao labelDao, MailLabelDao mailLabelDao,
+                                                  SavedSearchDao savedSearchDao) {
+        return new LabelRepository(labelDao, mailLabelDao, savedSearchDao);
     }
 
     @Provides @Singleton
-    public LabelRepository provideLabelRepository(LabelDao labelDao, MailLabelDao mailLabelDao) {
-        return new LabelRepository(labelDao, mailLabelDao);
+    public BlacklistRepository provideBlacklistRepository(@ApplicationContext Context context, AppDatabase db) {
+        return new BlacklistRepository(db, BlacklistFilter.get(context));
     }
 
     @Provides @Singleton
-    public BlacklistRepository provideBlacklistRepository(BlacklistDao blacklistDao) {
-        return new BlacklistRepository(blacklistDao);
+    public LinkScanStage provideLinkScanStage(@ApplicationContext Context context) {
+        // Same instance GmailishApp starts
+        return LinkScanStage.get(context);
     }
 
     @Provides @Singleton
@@ -71,7 +97,8 @@ public final class DatabaseModule {
     }
 
     @Provides @Singleton
-    public PendingSyncManager providePendingSyncManager(PendingOperationRepository repo) {
-        return new PendingSyncManager(repo);
+    public PendingSyncManager providePendingSyncManager(@ApplicationContext Context context,
+                                                        PendingOperationRepository repo) {
+        return new PendingSyncManager(context, repo);
     }
 }
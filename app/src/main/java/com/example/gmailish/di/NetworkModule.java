@@ -0,0 +1,31 @@
+package com.example.gmailish.di;
+
+import android.content.Context;
+
+import com.example.gmailish.utils.ApiClient;
+import com.example.gmailish.utils.TokenManager;
+
+import javax.inject.Singleton;
+
+import dagger.Module;
+import dagger.Provides;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.qualifiers.ApplicationContext;
+import dagger.hilt.components.SingletonComponent;
+import okhttp3.OkHttpClient;
+
+@Module
+@InstallIn(SingletonComponent.class)
+public final class NetworkModule {
+
+    @Provides @Singleton
+    public TokenManager provideTokenManager(@ApplicationContext Context context) {
+        return TokenManager.get(context);
+    }
+
+    // Same instance workers use via ApiClient.get, so the refresh is shared
+    @Provides @Singleton
+    public OkHttpClient provideOkHttpClient(@ApplicationContext Context context) {
+        return ApiClient.get(context);
+    }
+}
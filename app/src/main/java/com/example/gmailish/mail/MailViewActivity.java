@@ -16,6 +16,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.example.gmailish.R;
+import com.example.gmailish.utils.ApiClient;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -29,7 +30,6 @@ import java.util.List;
 import dagger.hilt.android.AndroidEntryPoint;
 
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Call;
@@ -52,6 +52,7 @@ public class MailViewActivity extends AppCompatActivity {
 
     private String mailId;
     private boolean isStarred;
+    private boolean starToggled;
     private String jwtToken;
 
     private JSONArray currentLabels;   // from /mails/:id
@@ -59,6 +60,11 @@ public class MailViewActivity extends AppCompatActivity {
 
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
+    // Result extras: what happened to the mail, so the inbox can patch its row
+    public static final String RESULT_MAIL_ID = "mailId";
+    public static final String RESULT_MOVED_TO = "movedTo";
+    public static final String RESULT_STARRED = "starred";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -97,17 +103,21 @@ public class MailViewActivity extends AppCompatActivity {
             if (mail == null) return;          // nothing to bind yet
             currentMail = mail;                // keep for reply/forward
             bindMailToViews(mail);             // bind once (no duplicates)
+            viewModel.checkLinks(mailId, mail.optString("subject"), mail.optString("content"));
+        });
+
+        viewModel.blacklistedLink.observe(this, url -> {
+            if (url != null) {
+                Toast.makeText(this, "Careful: " + url + " is blacklisted", Toast.LENGTH_LONG).show();
+            }
         });
 
         viewModel.errorMessage.observe(this, msg ->
                 Toast.makeText(this, msg, Toast.LENGTH_SHORT).show());
 
-        // OFFLINE-FIRST load and then refresh if online
+        // OFFLINE-FIRST load and then refresh if online (skipped when prefetched)
         viewModel.loadMailDetail(getApplicationContext(), mailId, jwtToken);
 
-        // (Optional improvement: this next line is redundant with loadMailDetail)
-        viewModel.fetchMailById(mailId, jwtToken);
-
         // Mark as read (network + local)
         if (jwtToken != null && !jwtToken.isEmpty()) {
             viewModel.markAsRead(mailId, jwtToken);
@@ -129,12 +139,15 @@ public class MailViewActivity extends AppCompatActivity {
             boolean willBeStarred = !isStarred;
             viewModel.addOrRemoveLabel(mailId, "starred", jwtToken, willBeStarred, getApplicationContext());
             isStarred = willBeStarred;
+            starToggled = true;
             updateStarIcon();
+            reportResult(null);
         });
 
         deleteButton.setOnClickListener(v -> {
             viewModel.deleteMail(mailId, jwtToken, getApplicationContext());
             Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
+            reportResult("trash");
             finish();
         });
 
@@ -142,6 +155,7 @@ public class MailViewActivity extends AppCompatActivity {
             // Use moveToLabel flow directly to keep offline + pending consistent
             viewModel.moveToLabelOfflineFirst(mailId, "archive", jwtToken, getApplicationContext(), () -> {
                 Toast.makeText(this, "Archived", Toast.LENGTH_SHORT).show();
+                reportResult("archive");
                 finish();
             });
         });
@@ -162,6 +176,7 @@ public class MailViewActivity extends AppCompatActivity {
                 } else if (id == R.id.menu_report_spam) {
                     viewModel.moveToLabelOfflineFirst(mailId, "spam", jwtToken, getApplicationContext(), () -> {
                         Toast.makeText(this, "Reported as spam", Toast.LENGTH_SHORT).show();
+                        reportResult("spam");
                         finish();
                     });
                     return true;
@@ -258,6 +273,7 @@ public class MailViewActivity extends AppCompatActivity {
         i.putExtra("EXTRA_MODE", "reply");
         i.putExtra("EXTRA_TO", email); // <-- email only
         i.putExtra("EXTRA_SUBJECT", prefixIfNeeded(subjectText.getText().toString(), "Re: "));
+        i.putExtra("EXTRA_IN_REPLY_TO", mailId); // the reply joins this mail's thread
         startActivity(i);
     }
 
@@ -291,7 +307,7 @@ public class MailViewActivity extends AppCompatActivity {
                     .header("Authorization", "Bearer " + token)
                     .build();
 
-            new OkHttpClient().newCall(req).enqueue(new Callback() {
+            ApiClient.get(this).newCall(req).enqueue(new Callback() {
                 @Override public void onFailure(Call call, java.io.IOException e) {
                     runOnUiThread(() -> cb.onResolved(""));
                 }
@@ -440,7 +456,7 @@ public class MailViewActivity extends AppCompatActivity {
                     .post(body)
                     .header("Authorization", "Bearer " + jwtToken)
                     .build();
-            new OkHttpClient().newCall(req).enqueue(new Callback() {
+            ApiClient.get(this).newCall(req).enqueue(new Callback() {
                 @Override public void onFailure(Call call, java.io.IOException e) {
                     runOnUiThread(() -> Toast.makeText(MailViewActivity.this,"Create label failed: " + e.getMessage(), Toast.LENGTH_SHORT).show());
                 }
@@ -491,6 +507,14 @@ public class MailViewActivity extends AppCompatActivity {
         } catch (Exception ignored) {}
     }
 
+    /** movedTo is the label the mail left for, or null if it stayed where it was. */
+    private void reportResult(String movedTo) {
+        Intent data = new Intent().putExtra(RESULT_MAIL_ID, mailId);
+        if (starToggled) data.putExtra(RESULT_STARRED, isStarred);
+        if (movedTo != null) data.putExtra(RESULT_MOVED_TO, movedTo);
+        setResult(RESULT_OK, data);
+    }
+
     private void removeLabelsSequentially(List<String> labels, int index, Runnable onComplete) {
         if (index >= labels.size()) { runOnUiThread(onComplete); return; }
         String label = labels.get(index);
@@ -519,6 +543,7 @@ public class MailViewActivity extends AppCompatActivity {
                     viewModel.moveToLabelOfflineFirst(mailId, targetLabel, jwtToken, getApplicationContext(), () -> {
                         runOnUiThread(() -> {
                             Toast.makeText(this, "Moved to " + folderNames[which], Toast.LENGTH_SHORT).show();
+                            reportResult(targetLabel);
                             finish();
                         });
                     });
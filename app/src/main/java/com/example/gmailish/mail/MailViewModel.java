@@ -4,12 +4,21 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.local.MailObservers;
 import com.example.gmailish.data.mappers.MailMapper;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.blacklist.LinkScanStage;
+import com.example.gmailish.data.entity.LinkVerdictEntity;
 import com.example.gmailish.data.repository.MailRepository;
 import com.example.gmailish.data.repository.PendingOperationRepository;
+import com.example.gmailish.data.sync.MailPrefetcher;
 import com.example.gmailish.data.entity.MailEntity;
 
 import org.json.JSONArray;
@@ -38,9 +47,12 @@ public class MailViewModel extends ViewModel {
     private static final String TAG = "MailVM";
 
     public MutableLiveData<String> errorMessage = new MutableLiveData<>();
-    public MutableLiveData<JSONObject> mailData = new MutableLiveData<>();
+    // Network results are set directly; the Room row is followed via MailObservers
+    public MediatorLiveData<JSONObject> mailData = new MediatorLiveData<>();
+    // First blacklisted link in the shown mail, or null
+    public MutableLiveData<String> blacklistedLink = new MutableLiveData<>();
 
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client;
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private List<JSONObject> userLabels = new ArrayList<>();
@@ -50,31 +62,49 @@ public class MailViewModel extends ViewModel {
 
     private final MailRepository mailRepository;
     private final PendingOperationRepository pendingRepo;
+    private final MailObservers observers;
+    private final LocalWriteQueue writes;
+    private final LinkScanStage linkScan;
+    private String lastCheckedText;
+
+    private LiveData<MailObservers.MailDetail> detailSource;
+    private String detailMailId;
 
     @Inject
-    public MailViewModel(MailRepository mailRepository, PendingOperationRepository pendingRepo) {
+    public MailViewModel(MailRepository mailRepository, PendingOperationRepository pendingRepo,
+                         OkHttpClient client, MailObservers observers, LocalWriteQueue writes,
+                         LinkScanStage linkScan) {
         this.mailRepository = mailRepository;
         this.pendingRepo = pendingRepo;
+        this.client = client;
+        this.observers = observers;
+        this.writes = writes;
+        this.linkScan = linkScan;
+    }
+
+    /**
+     * Call on the main thread after binding a mail. Reads the verdict the link
+     * scan cached at ingest (scanning now only if it hasn't got there yet).
+     * Re-binds of the same text (read flag, labels) skip even that.
+     */
+    public void checkLinks(String mailId, String subject, String content) {
+        String text = mailId + "\u0000" + subject + "\u0000" + content;
+        if (text.equals(lastCheckedText)) return;
+        lastCheckedText = text;
+        ioExecutor.execute(() -> {
+            try {
+                LinkVerdictEntity v = linkScan.verdictFor(mailId);
+                blacklistedLink.postValue(v != null && v.blacklistedCount > 0 ? v.firstBlacklisted : null);
+            } catch (Exception e) {
+                Log.w(TAG, "checkLinks failed: " + e.getMessage());
+            }
+        });
     }
 
     /* =========================
        Label helpers
        ========================= */
 
-    /** Local/Room/UI canonical: use "primary" instead of "inbox". */
-    private String normalizeLabelLocal(String label) {
-        if (label == null) return null;
-        String v = label.trim();
-        if (v.equalsIgnoreCase("inbox")) return "primary";
-        return v.toLowerCase();
-    }
-
-    /** Server API canonical: use "inbox" instead of "primary". */
-    private String apiLabel(String label) {
-        if (label == null) return null;
-        return "primary".equalsIgnoreCase(label) ? "inbox" : label.toLowerCase(java.util.Locale.ROOT);
-    }
-
     public void setUserLabels(List<JSONObject> labels) {
         this.userLabels = labels != null ? labels : new ArrayList<>();
     }
@@ -99,34 +129,42 @@ public class MailViewModel extends ViewModel {
        Detail loading
        ========================= */
 
+    /** Call on the main thread. */
     public void loadMailDetail(Context appContext, String mailId, String jwtToken) {
-        // 1) local immediately
-        ioExecutor.execute(() -> {
-            try {
-                MailEntity local = mailRepository.getByIdSync(mailId);
-                if (local != null) {
-                    List<String> labels = mailRepository.getLabelsForMailSync(mailId);
-                    // ensure local labels are "primary" not "inbox"
-                    List<String> fixed = new ArrayList<>();
-                    for (String l : labels) fixed.add(normalizeLabelLocal(l));
-                    JSONObject localJson = mailRepository.buildMailJson(local, fixed);
-                    if (localJson != null) {
-                        mailData.postValue(localJson);
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "loadMailDetail local error: " + e.getMessage(), e);
-            }
-        });
+        // 0) opened from a list: render from memory, before any query runs
+        MailCache.Entry cached = MailCache.get().get(mailId);
+        if (cached != null && mailData.getValue() == null) {
+            JSONObject json = mailRepository.buildMailJson(cached.mail, cached.labels);
+            if (json != null) mailData.setValue(json);
+        }
+
+        // 1) follow the local row: emits now, then after every write to it (read, labels, move)
+        followMail(mailId);
 
-        // 2) network refresh (if token present)
+        // 2) network refresh (if token present), unless the inbox prefetched it moments ago
         if (jwtToken == null || jwtToken.isEmpty()) {
             Log.w(TAG, "loadMailDetail: no JWT, skipping network");
             return;
         }
+        if (MailPrefetcher.get(appContext).consume(mailId)) return;
         fetchMailByIdAndCache(appContext, mailId, jwtToken);
     }
 
+    private void followMail(String mailId) {
+        if (detailSource != null && mailId.equals(detailMailId)) return;
+        if (detailSource != null) mailData.removeSource(detailSource);
+        detailMailId = mailId;
+        detailSource = observers.mailDetail(mailId);
+        mailData.addSource(detailSource, detail -> {
+            if (detail == null) return; // not cached (yet); the network copy covers it
+            // ensure local labels are "primary" not "inbox"
+            List<String> fixed = new ArrayList<>();
+            for (String l : detail.labels) fixed.add(LabelNames.toLocal(l));
+            JSONObject localJson = mailRepository.buildMailJson(detail.mail, fixed);
+            if (localJson != null) mailData.setValue(localJson);
+        });
+    }
+
     private void fetchMailByIdAndCache(Context appContext, String mailId, String jwtToken) {
         Request request = new Request.Builder()
                 .url("http://10.0.2.2:3000/api/mails/" + mailId)
@@ -156,7 +194,7 @@ public class MailViewModel extends ViewModel {
                         if (labels != null) {
                             JSONArray fixed = new JSONArray();
                             for (int i = 0; i < labels.length(); i++) {
-                                fixed.put(normalizeLabelLocal(labels.optString(i)));
+                                fixed.put(LabelNames.toLocal(labels.optString(i)));
                             }
                             mailJson.put("labels", fixed);
                         }
@@ -164,8 +202,8 @@ public class MailViewModel extends ViewModel {
                         // Post to UI
                         mailData.postValue(mailJson);
 
-                        // Cache to Room
-                        ioExecutor.execute(() -> {
+                        // Cache to Room (collapses with a prefetch of the same mail)
+                        writes.enqueue("detail:" + mailId, () -> {
                             try {
                                 MailEntity entity = MailMapper.mailEntityFromJson(mailJson);
                                 List<String> labelsLocal = MailMapper.labelIdsFromJson(mailJson);
@@ -219,14 +257,8 @@ public class MailViewModel extends ViewModel {
                             mailData.postValue(cur);
                         }
                     } catch (Exception ignored) { }
-                    // Cache local state
-                    ioExecutor.execute(() -> {
-                        try {
-                            mailRepository.setRead(mailId, true);
-                        } catch (Exception e) {
-                            Log.e(TAG, "markAsRead local update error: " + e.getMessage(), e);
-                        }
-                    });
+                    // Cache local state (grouped with other local writes)
+                    writes.enqueue("read:" + mailId, () -> mailRepository.setRead(mailId, true));
                 }
             }
         });
@@ -237,8 +269,8 @@ public class MailViewModel extends ViewModel {
        ========================= */
 
     public void addLabel(String mailId, String label, String jwtToken, Context appContext) {
-        String labelLocal = normalizeLabelLocal(label); // for Room/UI
-        String labelServer = apiLabel(labelLocal);      // for REST
+        String labelLocal = LabelNames.toLocal(label); // for Room/UI
+        String labelServer = LabelNames.toApi(labelLocal);      // for REST
         Log.d(TAG, "addLabel: mailId=" + mailId + " labelLocal=" + labelLocal + " labelServer=" + labelServer);
 
         JSONObject json = new JSONObject();
@@ -265,23 +297,19 @@ public class MailViewModel extends ViewModel {
                         errorMessage.postValue("Add label failed: " + r.code());
                         return;
                     }
-                    ioExecutor.execute(() -> {
-                        try {
-                            String ownerId = getOwnerId(appContext);
-                            mailRepository.addLabelToMailLocal(mailId, labelLocal, ownerId != null ? ownerId : "", labelLocal);
-                            tryUpdateLabelsInUi(mailId, true, labelLocal);
-                        } catch (Exception ex) {
-                            Log.e(TAG, "addLabel: local Room add error: " + ex.getMessage(), ex);
-                        }
-                    });
+                    String ownerId = getOwnerId(appContext);
+                    // Same key as removeLabel: a quick add/remove collapses to the last one
+                    writes.enqueue("label:" + mailId + ":" + labelLocal, () ->
+                            mailRepository.addLabelToMailLocal(mailId, labelLocal, ownerId != null ? ownerId : "", labelLocal));
+                    tryUpdateLabelsInUi(mailId, true, labelLocal);
                 }
             }
         });
     }
 
     public void removeLabel(String mailId, String label, String jwtToken, Context appContext) {
-        String labelLocal = normalizeLabelLocal(label); // for Room/UI
-        String labelServer = apiLabel(labelLocal);      // for REST
+        String labelLocal = LabelNames.toLocal(label); // for Room/UI
+        String labelServer = LabelNames.toApi(labelLocal);      // for REST
         Log.d(TAG, "removeLabel: mailId=" + mailId + " labelLocal=" + labelLocal + " labelServer=" + labelServer);
 
         JSONObject json = new JSONObject();
@@ -308,14 +336,9 @@ public class MailViewModel extends ViewModel {
                         errorMessage.postValue("Remove label failed: " + r.code());
                         return;
                     }
-                    ioExecutor.execute(() -> {
-                        try {
-                            mailRepository.removeLabelFromMailLocal(mailId, labelLocal);
-                            tryUpdateLabelsInUi(mailId, false, labelLocal);
-                        } catch (Exception ex) {
-                            Log.e(TAG, "removeLabel: local Room remove error: " + ex.getMessage(), ex);
-                        }
-                    });
+                    writes.enqueue("label:" + mailId + ":" + labelLocal, () ->
+                            mailRepository.removeLabelFromMailLocal(mailId, labelLocal));
+                    tryUpdateLabelsInUi(mailId, false, labelLocal);
                 }
             }
         });
@@ -328,8 +351,8 @@ public class MailViewModel extends ViewModel {
     }
 
     public void removeLabelWithCallback(String mailId, String label, String jwtToken, Runnable onSuccess) {
-        String labelLocal = normalizeLabelLocal(label);
-        String labelServer = apiLabel(labelLocal);
+        String labelLocal = LabelNames.toLocal(label);
+        String labelServer = LabelNames.toApi(labelLocal);
         Log.d(TAG, "removeLabelWithCallback: mailId=" + mailId + " labelLocal=" + labelLocal + " labelServer=" + labelServer);
 
         JSONObject json = new JSONObject();
@@ -397,8 +420,8 @@ public class MailViewModel extends ViewModel {
        ========================= */
 
     public void moveToLabelOfflineFirst(String mailId, String targetLabelRaw, String jwtToken, Context appContext, Runnable onSuccessUi) {
-        String targetLabelLocal = normalizeLabelLocal(targetLabelRaw); // Room/UI
-        String targetLabelServer = apiLabel(targetLabelLocal);         // REST
+        String targetLabelLocal = LabelNames.toLocal(targetLabelRaw); // Room/UI
+        String targetLabelServer = LabelNames.toApi(targetLabelLocal);         // REST
 
         if (targetLabelLocal == null || targetLabelLocal.isEmpty()) {
             errorMessage.postValue("Invalid target label");
@@ -426,7 +449,7 @@ public class MailViewModel extends ViewModel {
                 if (removedLocal != null) {
                     for (String labelLocal : removedLocal) {
                         if ("starred".equalsIgnoreCase(labelLocal)) continue;
-                        String labelServer = apiLabel(labelLocal);
+                        String labelServer = LabelNames.toApi(labelLocal);
 
                         JSONObject json = new JSONObject();
                         json.put("label", labelServer);
@@ -15,6 +15,10 @@ public class Email {
     // NEW: is this mail a draft? (derived from labels array)
     public boolean isDraft;
 
+    // Search results only: the matching part of the body, and [start, end) pairs to highlight in it
+    public String snippet;
+    public int[] snippetHighlights;
+
     public Email(String senderName,
                  String subject,
                  String content,
@@ -44,4 +48,12 @@ public class Email {
         this.to = to;
         this.isDraft = isDraft;
     }
+
+    /** Field-by-field copy, for changing a row without touching the list it came from. */
+    public Email copy() {
+        Email e = new Email(senderName, subject, content, timestamp, read, starred, id, to, isDraft);
+        e.snippet = snippet;
+        e.snippetHighlights = snippetHighlights;
+        return e;
+    }
 }
@@ -20,9 +20,15 @@ import androidx.lifecycle.LifecycleOwner;
 
 import com.bumptech.glide.Glide;
 import com.example.gmailish.R;
+import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.local.LabelRegistry;
+import com.example.gmailish.data.local.MailCache;
+import com.example.gmailish.data.repository.MailListRepository;
 import com.example.gmailish.model.User;
+import com.example.gmailish.ui.inbox.FirstScreenSnapshot;
 import com.example.gmailish.ui.inbox.InboxViewModel;
 import com.example.gmailish.ui.login.LoginActivity;
+import com.example.gmailish.utils.TokenManager;
 
 public class HeaderManager {
 
@@ -91,6 +97,11 @@ public class HeaderManager {
             SharedPreferences prefs =
                     activity.getSharedPreferences("prefs", MODE_PRIVATE);
             prefs.edit().remove("jwt").apply();
+            TokenManager.get(activity).clear();
+            FirstScreenSnapshot.clear(activity);
+            MailListRepository.get(activity).invalidate();
+            MailCache.get().clear();
+            LabelRegistry.get(AppDbProvider.get(activity).labelDao()).clear();
 
             Intent i = new Intent(activity, LoginActivity.class);
             i.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
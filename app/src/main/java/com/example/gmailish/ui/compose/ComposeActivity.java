@@ -1,5 +1,6 @@
 package com.example.gmailish.ui.compose;
 
+import android.app.AlertDialog;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
@@ -41,6 +42,7 @@ public class ComposeActivity extends AppCompatActivity {
     public static final String EXTRA_TO         = "EXTRA_TO";
     public static final String EXTRA_SUBJECT    = "EXTRA_SUBJECT";
     public static final String EXTRA_BODY       = "EXTRA_BODY";
+    public static final String EXTRA_IN_REPLY_TO = "EXTRA_IN_REPLY_TO"; // mail id being answered
 
     private EditText toField, subjectField, bodyField;
     private ImageView sendButton, backButton;
@@ -71,7 +73,7 @@ public class ComposeActivity extends AppCompatActivity {
 
         // DB + repo (local only for drafts)
         AppDatabase db = AppDbProvider.get(getApplicationContext());
-        mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao());
+        mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
 
         // Current user (saved by InboxVM / HeaderManager)
         SharedPreferences sp = getSharedPreferences("prefs", MODE_PRIVATE);
@@ -188,7 +190,26 @@ backButton.setOnClickListener(v -> {
             String content = bodyField.getText().toString().trim();
             Log.d(TAG, "Send tapped. to=" + to + ", subject=" + subject
                     + ", len(content)=" + (content != null ? content.length() : 0));
-            viewModel.sendEmail(this, to, subject, content);
+            // The server files mail with a blacklisted link as spam: warn first
+            viewModel.checkLinks(subject, content);
+        });
+
+        viewModel.blacklistedLink.observe(this, url -> {
+            if (url == null) return;
+            viewModel.blacklistedLink.setValue(null); // one answer per tap
+            String to = toField.getText().toString().trim();
+            String subject = subjectField.getText().toString().trim();
+            String content = bodyField.getText().toString().trim();
+            if (url.isEmpty()) {
+                viewModel.sendEmail(this, to, subject, content);
+                return;
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("Blacklisted link")
+                    .setMessage(url + " is blacklisted. The recipient will get this mail in Spam.")
+                    .setPositiveButton("Send anyway", (d, w) -> viewModel.sendEmail(this, to, subject, content))
+                    .setNegativeButton("Cancel", null)
+                    .show();
         });
 
         // Figure out how we opened the composer
@@ -304,6 +325,7 @@ backButton.setOnClickListener(v -> {
         String to      = getIntent().getStringExtra(EXTRA_TO);
         String subject = getIntent().getStringExtra(EXTRA_SUBJECT);
         String body    = getIntent().getStringExtra(EXTRA_BODY);
+        viewModel.setInReplyTo(getIntent().getStringExtra(EXTRA_IN_REPLY_TO));
 
         if (to != null && !to.isEmpty()) {
             toField.setText(normalizeToEmail(to));
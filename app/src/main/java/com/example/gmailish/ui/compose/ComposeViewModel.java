@@ -14,6 +14,7 @@ import com.example.gmailish.data.db.AppDatabase;
 import com.example.gmailish.data.entity.MailEntity;
 import com.example.gmailish.data.entity.PendingOperationEntity;
 import com.example.gmailish.data.model.PendingOperationType;
+import com.example.gmailish.data.blacklist.LinkScanStage;
 import com.example.gmailish.data.repository.LabelRepository;
 import com.example.gmailish.data.repository.MailRepository;
 import com.example.gmailish.data.sync.SyncPendingWorker;
@@ -50,18 +51,50 @@ public class ComposeViewModel extends ViewModel {
     /** Emits the active draft id after save/update so the Activity can keep it */
     public final MutableLiveData<String> draftIdLive = new MutableLiveData<>();
 
-    private final OkHttpClient client = new OkHttpClient();
+    /** Link check before sending: "" when clean, else the first blacklisted URL. */
+    public final MutableLiveData<String> blacklistedLink = new MutableLiveData<>();
+
+    private final OkHttpClient client;
     private final ExecutorService io = Executors.newSingleThreadExecutor();
 
     private final MailRepository mailRepo;
     private final LabelRepository labelRepo;
     private final AppDatabase db;
+    private final LinkScanStage linkScan;
+
+    // Mail being answered, if any; the sent copy joins its thread
+    private volatile String inReplyTo;
 
     @Inject
-    public ComposeViewModel(MailRepository mailRepo, LabelRepository labelRepo, AppDatabase db) {
+    public ComposeViewModel(MailRepository mailRepo, LabelRepository labelRepo, AppDatabase db,
+                            OkHttpClient client, LinkScanStage linkScan) {
         this.mailRepo = mailRepo;
         this.labelRepo = labelRepo;
         this.db = db;
+        this.client = client;
+        this.linkScan = linkScan;
+    }
+
+    /**
+     * Unsent text has no cached verdict: scan it with the same extractor and
+     * batch check as the background stage. A clean mail (the usual case) costs
+     * only Bloom filter probes.
+     */
+    public void checkLinks(String subject, String content) {
+        io.execute(() -> {
+            String hit = null;
+            try {
+                LinkScanStage.Verdict v = linkScan.scanText(subject + " " + content);
+                if (!v.blacklisted.isEmpty()) hit = v.blacklisted.get(0);
+            } catch (Exception e) {
+                Log.w(TAG, "checkLinks failed: " + e.getMessage());
+            }
+            blacklistedLink.postValue(hit != null ? hit : "");
+        });
+    }
+
+    public void setInReplyTo(String mailId) {
+        this.inReplyTo = mailId;
     }
 
     /* =========================
@@ -156,19 +189,22 @@ public class ComposeViewModel extends ViewModel {
             message.setValue("Missing current user");
             return;
         }
+        // One id per send attempt: the idempotency key online and the pending op id offline,
+        // so a send that timed out after the server committed is not delivered twice.
+        String opId = UUID.randomUUID().toString();
         if (isOnline(ctx)) {
-            sendOnline(ctx, ownerId, to, subject, content, draftId);
+            sendOnline(ctx, opId, ownerId, to, subject, content, draftId);
         } else {
-            sendOffline(ctx, ownerId, to, subject, content, draftId);
+            sendOffline(ctx, opId, ownerId, to, subject, content, draftId);
         }
     }
 
     // ONLINE path
-    private void sendOnline(Context ctx, String ownerId, String to, String subject, String content, String draftId) {
+    private void sendOnline(Context ctx, String opId, String ownerId, String to, String subject, String content, String draftId) {
         String jwt = getJwt(ctx);
         if (isEmpty(jwt)) {
             // treat as offline if no token
-            sendOffline(ctx, ownerId, to, subject, content, draftId);
+            sendOffline(ctx, opId, ownerId, to, subject, content, draftId);
             return;
         }
 
@@ -182,19 +218,20 @@ public class ComposeViewModel extends ViewModel {
             Request req = new Request.Builder()
                     .url("http://10.0.2.2:3000/api/mails")
                     .header("Authorization", "Bearer " + jwt)
+                    .header("Idempotency-Key", opId)
                     .post(RequestBody.create(JSON, json.toString()))
                     .build();
 
             client.newCall(req).enqueue(new Callback() {
                 @Override public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "sendOnline network error: " + e.getMessage());
-                    sendOffline(ctx, ownerId, to, subject, content, draftId);
+                    sendOffline(ctx, opId, ownerId, to, subject, content, draftId);
                 }
 
                 @Override public void onResponse(Call call, Response response) throws IOException {
                     if (!response.isSuccessful()) {
                         Log.e(TAG, "sendOnline server code=" + response.code());
-                        sendOffline(ctx, ownerId, to, subject, content, draftId);
+                        sendOffline(ctx, opId, ownerId, to, subject, content, draftId);
                         return;
                     }
                     String bodyStr = response.body() != null ? response.body().string() : "{}";
@@ -211,6 +248,7 @@ public class ComposeViewModel extends ViewModel {
                         try {
                             // Save in Room as "sent"
                             mailRepo.saveSentMailLocal(finalId, ownerId, to, subject, content, new Date());
+                            mailRepo.joinThread(finalId, inReplyTo);
                             mailRepo.ensureLabelAndLink(finalId, ownerId, "sent");
 
                             // If we sent from a draft, remove it
@@ -238,17 +276,18 @@ public class ComposeViewModel extends ViewModel {
             });
         } catch (Exception ex) {
             Log.e(TAG, "sendOnline JSON build error: " + ex.getMessage(), ex);
-            sendOffline(ctx, ownerId, to, subject, content, draftId);
+            sendOffline(ctx, opId, ownerId, to, subject, content, draftId);
         }
     }
 
     // OFFLINE path: create Outbox mail + pending MAIL_SEND
-    private void sendOffline(Context ctx, String ownerId, String to, String subject, String content, String draftId) {
+    private void sendOffline(Context ctx, String opId, String ownerId, String to, String subject, String content, String draftId) {
         final String localId = "local-" + UUID.randomUUID();
         io.execute(() -> {
             try {
                 // 1) Save mail locally as outbox
                 mailRepo.saveOutboxMailLocal(localId, ownerId, to, subject, content, new Date());
+                mailRepo.joinThread(localId, inReplyTo);
                 mailRepo.ensureLabelAndLink(localId, ownerId, "outbox");
 
                 // 2) Enqueue pending MAIL_SEND directly via injected DB
@@ -260,7 +299,7 @@ public class ComposeViewModel extends ViewModel {
                 payload.put("content", content);
 
                 db.pendingOperationDao().upsert(new PendingOperationEntity(
-                        UUID.randomUUID().toString(),
+                        opId,
                         PendingOperationType.MAIL_SEND,
                         payload.toString(),
                         new Date(System.currentTimeMillis()),
@@ -275,7 +314,7 @@ public class ComposeViewModel extends ViewModel {
                 }
 
                 // 4) Kick the worker
-                SyncPendingWorker.enqueue(ctx);
+                SyncPendingWorker.enqueueOutbox(ctx);
 
                 message.postValue("Saved to Outbox (queued for send)");
 
@@ -98,7 +98,7 @@ public class CreateLabelActivity extends AppCompatActivity {
                 );
 
                 pendingDao.upsert(op);
-                SyncPendingWorker.enqueue(getApplicationContext());
+                SyncPendingWorker.enqueueBulk(getApplicationContext());
 
                 runOnUiThread(() -> {
                     Toast.makeText(this, "Label created (queued for sync)", Toast.LENGTH_SHORT).show();
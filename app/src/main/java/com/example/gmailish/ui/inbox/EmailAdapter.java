@@ -2,8 +2,11 @@ package com.example.gmailish.ui.inbox;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.graphics.Typeface;
 import android.os.Build;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -13,18 +16,18 @@ import android.widget.TextView;
 
 import com.example.gmailish.data.db.AppDbProvider;
 import com.example.gmailish.data.db.AppDatabase;
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.repository.MailRepository;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.gmailish.R;
-import com.example.gmailish.mail.MailViewActivity;
 import com.example.gmailish.model.Email;
 import com.example.gmailish.ui.compose.ComposeActivity;
 
-import org.json.JSONObject;
-
-import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.OffsetDateTime;
@@ -32,26 +35,17 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executors;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import java.util.Objects;
 
 public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHolder> {
 
     private static final String TAG = "EmailAdapter";
 
     private final List<Email> emailList = new ArrayList<>();
-    private final OkHttpClient http = new OkHttpClient();
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     // Which label we are currently showing (e.g., "inbox", "starred", "drafts").
     private String currentLabel = null;
@@ -62,12 +56,44 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
         notifyDataSetChanged();
     }
 
+    /** Row actions; the view model applies them to the list, the adapter never edits rows itself. */
+    public interface Listener {
+        void onStarClicked(Email email);
+        void onMailOpened(Email email);
+    }
+
+    private final Listener listener;
+
+    public EmailAdapter(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Lists are immutable snapshots: diff against the previous one and rebind only what changed. */
     public void updateData(List<Email> newEmails) {
+        List<Email> next = newEmails != null ? newEmails : new ArrayList<>();
+        List<Email> prev = new ArrayList<>(emailList);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override public int getOldListSize() { return prev.size(); }
+            @Override public int getNewListSize() { return next.size(); }
+
+            @Override public boolean areItemsTheSame(int o, int n) {
+                return Objects.equals(prev.get(o).id, next.get(n).id);
+            }
+
+            @Override public boolean areContentsTheSame(int o, int n) {
+                Email a = prev.get(o), b = next.get(n);
+                return a.read == b.read && a.starred == b.starred && a.isDraft == b.isDraft
+                        && Objects.equals(a.senderName, b.senderName)
+                        && Objects.equals(a.subject, b.subject)
+                        && Objects.equals(a.content, b.content)
+                        && Objects.equals(a.snippet, b.snippet)
+                        && Arrays.equals(a.snippetHighlights, b.snippetHighlights)
+                        && Objects.equals(a.timestamp, b.timestamp);
+            }
+        });
         emailList.clear();
-        if (newEmails != null) {
-            emailList.addAll(newEmails);
-        }
-        notifyDataSetChanged();
+        emailList.addAll(next);
+        diff.dispatchUpdatesTo(this);
     }
 
     static class EmailViewHolder extends RecyclerView.ViewHolder {
@@ -104,7 +130,11 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
                 ? "[Draft] " + (email.subject != null ? email.subject : "")
                 : (email.subject != null ? email.subject : ""));
 
-        holder.content.setText(email.content != null ? email.content : "");
+        if (email.snippet != null) {
+            holder.content.setText(highlighted(email.snippet, email.snippetHighlights));
+        } else {
+            holder.content.setText(email.content != null ? email.content : "");
+        }
 
         String prettyTs = formatListTimestamp(email.timestamp);
         holder.timestamp.setText(prettyTs);
@@ -122,23 +152,7 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
             holder.starIcon.setOnClickListener(null);
         } else {
             holder.starIcon.setAlpha(1f);
-            holder.starIcon.setOnClickListener(v -> {
-                boolean newState = !email.starred;
-                email.starred = newState;
-                int p = holder.getAdapterPosition();
-                if (p != RecyclerView.NO_POSITION) notifyItemChanged(p);
-
-                Context app = v.getContext().getApplicationContext();
-                SharedPreferences prefs = app.getSharedPreferences("prefs", Context.MODE_PRIVATE);
-                String token = prefs.getString("jwt", null);
-
-                String labelId = "starred";
-                LocalLabelActions.applyStarLocally(app, email.id, newState, labelId);
-
-                if (token != null) {
-                    patchLabel(token, email.id, labelId, !newState);
-                }
-            });
+            holder.starIcon.setOnClickListener(v -> listener.onStarClicked(email));
         }
 
         holder.itemView.setOnClickListener(v -> {
@@ -151,15 +165,8 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
                 return;
             }
 
-            // Normal flow: open the mail viewer
-            if (!email.read) {
-                email.read = true;
-                int p = holder.getAdapterPosition();
-                if (p != RecyclerView.NO_POSITION) notifyItemChanged(p);
-            }
-            Intent intent = new Intent(v.getContext(), MailViewActivity.class);
-            intent.putExtra("mailId", email.id);
-            v.getContext().startActivity(intent);
+            // Normal flow: the activity marks it read and opens the mail viewer
+            listener.onMailOpened(email);
         });
     }
 
@@ -168,34 +175,25 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
         return emailList.size();
     }
 
+    /** Row at position, or null if out of range. */
+    public Email getItemAt(int position) {
+        return position >= 0 && position < emailList.size() ? emailList.get(position) : null;
+    }
+
     private void setStarIcon(ImageView iv, boolean starred) {
         iv.setImageResource(starred ? R.drawable.ic_star_shine : R.drawable.ic_star);
     }
 
-    private void patchLabel(String token, String mailId, String label, boolean remove) {
-        try {
-            JSONObject json = new JSONObject();
-            json.put("label", label);
-            if (remove) json.put("action", "remove");
-
-            RequestBody body = RequestBody.create(JSON, json.toString());
-            Request req = new Request.Builder()
-                    .url("http://10.0.2.2:3000/api/mails/" + mailId + "/label")
-                    .patch(body)
-                    .header("Authorization", "Bearer " + token)
-                    .build();
-
-            http.newCall(req).enqueue(new Callback() {
-                @Override public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                    Log.w(TAG, "patchLabel failed: " + e.getMessage());
-                }
-                @Override public void onResponse(@NonNull Call call, @NonNull Response response) {
-                    response.close();
-                }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "patchLabel exception: " + e.getMessage());
+    /** Search snippet with the matched words in bold; bad ranges are skipped. */
+    private static CharSequence highlighted(String text, int[] ranges) {
+        if (ranges == null || ranges.length < 2) return text;
+        SpannableString s = new SpannableString(text);
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            int start = ranges[i], end = ranges[i + 1];
+            if (start < 0 || end > text.length() || start >= end) continue;
+            s.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
+        return s;
     }
 
     /** Local-only helpers for toggling the "starred" label and flag. */
@@ -205,38 +203,22 @@ public class EmailAdapter extends RecyclerView.Adapter<EmailAdapter.EmailViewHol
         }
 
         static void applyStarLocally(Context ctx, String mailId, boolean starred, String labelIdRaw) {
-            String labelId = normalizeLabelId(labelIdRaw);
+            String labelId = LabelNames.toLocal(labelIdRaw);
             Log.d(TAG, "applyStarLocally: mailId=" + mailId + " starred=" + starred + " labelId=" + labelId);
 
-            Executors.newSingleThreadExecutor().execute(() -> {
-                try {
-                    var db = getDb(ctx);
-                    var labelDao = db.labelDao();
-                    var mailLabelDao = db.mailLabelDao();
-                    var mailDao = db.mailDao();
-
-                    mailDao.setStarred(mailId, starred);
-
-                    if (starred) {
-                        labelDao.upsert(new com.example.gmailish.data.entity.LabelEntity(labelId, null, labelId));
-                        mailLabelDao.add(new com.example.gmailish.data.entity.MailLabelCrossRef(mailId, labelId));
-                    } else {
-                        mailLabelDao.remove(mailId, labelId);
-                    }
-
-                    int count = mailLabelDao.getMailsForLabelSync(labelId).size();
-                    Log.d(TAG, "applyStarLocally: label '" + labelId + "' now has mails=" + count);
-                } catch (Throwable t) {
-                    Log.e(TAG, "applyStarLocally error: " + t.getMessage());
+            var db = getDb(ctx);
+            // Rapid toggles on one mail collapse to the last; the batch commits as one transaction
+            LocalWriteQueue.get(db).enqueue("star:" + mailId, () -> {
+                // Through the repository so saved searches (is:starred) follow the change
+                var repo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao(), db.savedSearchDao());
+                repo.setStarred(mailId, starred);
+                if (starred) {
+                    repo.addLabelToMailLocal(mailId, labelId, null, labelId);
+                } else {
+                    repo.removeLabelFromMailLocal(mailId, labelId);
                 }
             });
         }
-
-        static String normalizeLabelId(String id) {
-            if (id == null) return null;
-            if ("inbox".equalsIgnoreCase(id)) return "primary";
-            return id.toLowerCase(Locale.ROOT);
-        }
     }
 
     /* =========================
@@ -0,0 +1,167 @@
+package com.example.gmailish.ui.inbox;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.gmailish.model.Email;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * First screen of the last-viewed label (rows + unread badges) in a small binary
+ * file, so a cold start can render before Room or the network answer.
+ *
+ * Layout: magic, version, owner, label, savedAt, rows, badges. Anything that does
+ * not match (magic, version, owner, label) is treated as absent; a file that fails
+ * to parse is deleted. Bump VERSION whenever the layout changes.
+ */
+public final class FirstScreenSnapshot {
+
+    private static final String TAG = "FirstScreenSnapshot";
+
+    private static final String FILE = "first_screen.bin";
+    private static final int MAGIC = 0x474D4653; // "GMFS"
+    private static final int VERSION = 1;
+
+    /** Rows that fit one screen; the rest arrive from Room a frame later. */
+    static final int MAX_ROWS = 20;
+    private static final int MAX_PREVIEW = 140;
+
+    /** Launch extra that skips reading the snapshot (startup benchmark baseline). */
+    public static final String EXTRA_SKIP = "skip_first_screen_snapshot";
+
+    public final String ownerId;
+    public final String label;
+    public final long savedAt;
+    public final List<Email> emails;
+    public final Map<String, Integer> unreadCounts;
+
+    private FirstScreenSnapshot(String ownerId, String label, long savedAt,
+                                List<Email> emails, Map<String, Integer> unreadCounts) {
+        this.ownerId = ownerId;
+        this.label = label;
+        this.savedAt = savedAt;
+        this.emails = emails;
+        this.unreadCounts = unreadCounts;
+    }
+
+    private static AtomicFile file(Context ctx) {
+        return new AtomicFile(new File(ctx.getFilesDir(), FILE));
+    }
+
+    /* =========================
+       Read (main thread; one small file)
+       ========================= */
+
+    /** Snapshot for this owner/label, or null. */
+    public static FirstScreenSnapshot read(Context ctx, String ownerId, String label) {
+        if (ownerId == null || label == null) return null;
+        AtomicFile f = file(ctx);
+        if (!f.getBaseFile().exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(f.openRead()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                f.delete();
+                return null;
+            }
+            String owner = in.readUTF();
+            String savedLabel = in.readUTF();
+            if (!ownerId.equals(owner) || !label.equals(savedLabel)) return null;
+            long savedAt = in.readLong();
+
+            int rows = in.readUnsignedShort();
+            List<Email> emails = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                String id = in.readUTF();
+                String sender = in.readUTF();
+                String subject = in.readUTF();
+                String preview = in.readUTF();
+                String timestamp = in.readUTF();
+                String to = in.readUTF();
+                int flags = in.readUnsignedByte();
+                emails.add(new Email(sender, subject, preview, timestamp,
+                        (flags & 1) != 0, (flags & 2) != 0, id,
+                        to.isEmpty() ? null : to, (flags & 4) != 0));
+            }
+
+            int badges = in.readUnsignedShort();
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < badges; i++) counts.put(in.readUTF(), in.readInt());
+
+            return new FirstScreenSnapshot(owner, savedLabel, savedAt, emails, counts);
+        } catch (Exception e) {
+            Log.w(TAG, "read failed, dropping snapshot: " + e.getMessage());
+            f.delete();
+            return null;
+        }
+    }
+
+    /* =========================
+       Write (background)
+       ========================= */
+
+    public static void write(Context ctx, String ownerId, String label,
+                             List<Email> emails, Map<String, Integer> unreadCounts) {
+        if (ownerId == null || label == null || emails == null) return;
+        AtomicFile f = file(ctx);
+        FileOutputStream fos = null;
+        try {
+            fos = f.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(ownerId);
+            out.writeUTF(label);
+            out.writeLong(System.currentTimeMillis());
+
+            int rows = Math.min(emails.size(), MAX_ROWS);
+            out.writeShort(rows);
+            for (int i = 0; i < rows; i++) {
+                Email e = emails.get(i);
+                out.writeUTF(nz(e.id));
+                out.writeUTF(nz(e.senderName));
+                out.writeUTF(nz(e.subject));
+                out.writeUTF(preview(e.content));
+                out.writeUTF(nz(e.timestamp));
+                out.writeUTF(nz(e.to));
+                out.writeByte((e.read ? 1 : 0) | (e.starred ? 2 : 0) | (e.isDraft ? 4 : 0));
+            }
+
+            Map<String, Integer> counts = unreadCounts != null ? unreadCounts : new HashMap<>();
+            out.writeShort(counts.size());
+            for (Map.Entry<String, Integer> c : counts.entrySet()) {
+                out.writeUTF(nz(c.getKey()));
+                out.writeInt(c.getValue() != null ? c.getValue() : 0);
+            }
+            out.flush();
+            f.finishWrite(fos);
+        } catch (Exception e) {
+            Log.w(TAG, "write failed: " + e.getMessage());
+            if (fos != null) f.failWrite(fos);
+        }
+    }
+
+    /** Logout: the next owner must not see these rows. */
+    public static void clear(Context ctx) {
+        file(ctx).delete();
+    }
+
+    private static String nz(String s) {
+        return s != null ? s : "";
+    }
+
+    // The list row shows one line of content; keep the file small
+    private static String preview(String content) {
+        if (content == null) return "";
+        return content.length() > MAX_PREVIEW ? content.substring(0, MAX_PREVIEW) : content;
+    }
+}
@@ -7,6 +7,9 @@ import android.net.ConnectivityManager;
 import android.net.NetworkCapabilities;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -19,6 +22,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.OnBackPressedCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
@@ -33,13 +38,18 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.example.gmailish.R;
-import com.example.gmailish.data.db.AppDatabase;
-import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.dao.SavedSearchDao;
 import com.example.gmailish.data.entity.LabelEntity;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.sync.MailEventStream;
+import com.example.gmailish.data.sync.MailPrefetcher;
 import com.example.gmailish.data.sync.PendingSyncManager;
+import com.example.gmailish.mail.MailViewActivity;
+import com.example.gmailish.model.Email;
 import com.example.gmailish.ui.HeaderManager;
 import com.example.gmailish.ui.compose.ComposeActivity;
 import com.example.gmailish.util.ThemeManager;
+import com.example.gmailish.utils.ApiClient;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.navigation.NavigationView;
 
@@ -66,8 +76,28 @@ public class InboxActivity extends AppCompatActivity {
     private static final String TAG = "InboxActivity";
 
     @Inject PendingSyncManager pendingSyncManager;
+    @Inject MailEventStream mailEventStream;
+
+    // Events are already applied to Room. Label views follow Room and re-query on
+    // their own; this only matters for views without a live query.
+    private final MailEventStream.Listener mailEventListener = new MailEventStream.Listener() {
+        @Override public void onMailboxChanged() {
+            runOnUiThread(() -> {
+                reloadCurrentLabelLocal();
+                viewModel.refreshUnreadCounts();
+            });
+        }
+
+        @Override public void onResyncRequired() {
+            // The stream already invalidated every cached list; refetch the one shown
+            runOnUiThread(() -> reloadCurrentLabel());
+        }
+    };
 
     private static final String LABEL_ALL_INBOXES = "__ALL_INBOXES__";
+    // currentLabel of an open saved search is "saved:<id>"; its drawer item id is BASE + id
+    private static final String SAVED_SEARCH_PREFIX = "saved:";
+    private static final int SAVED_SEARCH_ITEM_BASE = 0x50000;
     private static final String KEY_ALL_INBOXES = "__ALL__";
 
     private static final String STATE_LABEL   = "state_label";
@@ -91,6 +121,27 @@ public class InboxActivity extends AppCompatActivity {
 
     private String currentLabel = "inbox";
     private int checkedMenuId   = R.id.nav_primary;
+    private List<LabelEntity> localLabels = new ArrayList<>();
+    private boolean fullyDrawnReported;
+    private boolean searching;
+    // Back from the mail screen: its result already patched the list, so onResume skips the reload
+    private boolean returningFromMail;
+
+    // The mail screen reports what it did to the row so the list is patched, not reloaded
+    private final ActivityResultLauncher<Intent> openMail = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(), result -> {
+                returningFromMail = true;
+                Intent data = result.getData();
+                if (result.getResultCode() != RESULT_OK || data == null) return;
+                String id = data.getStringExtra(MailViewActivity.RESULT_MAIL_ID);
+                if (data.hasExtra(MailViewActivity.RESULT_STARRED)) {
+                    viewModel.setStarredLocally(id, data.getBooleanExtra(MailViewActivity.RESULT_STARRED, false));
+                }
+                String movedTo = data.getStringExtra(MailViewActivity.RESULT_MOVED_TO);
+                if (movedTo != null && !movedTo.equalsIgnoreCase(LabelNames.toLocal(currentLabel))) {
+                    viewModel.removeFromList(id);
+                }
+            });
 
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
@@ -125,6 +176,8 @@ public class InboxActivity extends AppCompatActivity {
 
             if (LABEL_ALL_INBOXES.equals(currentLabel)) {
                 viewModel.loadAllInboxes();
+            } else if (savedSearchId(currentLabel) != null) {
+                viewModel.loadSavedSearch(savedSearchId(currentLabel));
             } else if ("drafts".equalsIgnoreCase(currentLabel)) {
                 viewModel.loadEmailsByLabelLocal(currentLabel);
             } else {
@@ -135,8 +188,11 @@ public class InboxActivity extends AppCompatActivity {
             currentLabel  = prefs.getString("last_label", "inbox");
             checkedMenuId = prefs.getInt("last_menu_id", R.id.nav_primary);
             navigationView.setCheckedItem(checkedMenuId);
+            seedFirstScreen(prefs);
             if (LABEL_ALL_INBOXES.equals(currentLabel)) {
                 viewModel.loadAllInboxes();
+            } else if (savedSearchId(currentLabel) != null) {
+                viewModel.loadSavedSearch(savedSearchId(currentLabel));
             } else if ("drafts".equalsIgnoreCase(currentLabel)) {
                 viewModel.loadEmailsByLabelLocal(currentLabel);
             } else {
@@ -203,12 +259,38 @@ public class InboxActivity extends AppCompatActivity {
         // Drawer selections (Drafts -> local)
         navigationView.setNavigationItemSelectedListener(menuItem -> {
             Log.d(TAG, "Nav Selected: " + menuItem.getTitle());
+            if (menuItem.getItemId() == R.id.nav_conversation_view) {
+                // A toggle, not a destination: the current label re-reads in the other mode
+                boolean on = !viewModel.isConversationView();
+                viewModel.setConversationView(on);
+                menuItem.setChecked(on);
+                drawerLayout.closeDrawer(GravityCompat.START);
+                return true;
+            }
             menuItem.setChecked(true);
             drawerLayout.closeDrawer(GravityCompat.START);
 
             int id = menuItem.getItemId();
 
-            if (id == R.id.nav_all_inboxes) {
+            if (menuItem.getGroupId() == R.id.saved_searches_group) {
+                // Materialized: the list is a read of the search's member rows
+                currentLabel = SAVED_SEARCH_PREFIX + (id - SAVED_SEARCH_ITEM_BASE);
+                checkedMenuId = id;
+                persistSelection();
+                adapter.setCurrentLabel(currentLabel);
+                viewModel.loadSavedSearch(id - SAVED_SEARCH_ITEM_BASE);
+
+            } else if (id == R.id.nav_save_search) {
+                EditText box = findViewById(R.id.searchBar);
+                String text = box.getText().toString().trim();
+                if (text.isEmpty()) {
+                    Toast.makeText(this, "Type a search first", Toast.LENGTH_SHORT).show();
+                } else {
+                    viewModel.saveSearch(null, text);
+                    Toast.makeText(this, "Saved \"" + text + "\"", Toast.LENGTH_SHORT).show();
+                }
+
+            } else if (id == R.id.nav_all_inboxes) {
                 currentLabel = LABEL_ALL_INBOXES;
                 checkedMenuId = R.id.nav_all_inboxes;
                 persistSelection();
@@ -277,6 +359,7 @@ public class InboxActivity extends AppCompatActivity {
         // Badges + unread counts
         navigationView.setCheckedItem(checkedMenuId);
         Menu menu = navigationView.getMenu();
+        menu.findItem(R.id.nav_conversation_view).setChecked(viewModel.isConversationView());
         setBadge(menu.findItem(R.id.nav_primary), "99+", 0xFFE6EDF6);
         setBadge(menu.findItem(R.id.nav_promotions), "26 new", 0xFFBFE6C8);
         setBadge(menu.findItem(R.id.nav_social), "27 new", 0xFFD5E4FF);
@@ -306,17 +389,35 @@ public class InboxActivity extends AppCompatActivity {
             }
         });
 
-        // Dynamic labels
+        // Dynamic labels (local ones follow the labels table)
+        viewModel.getLocalLabels().observe(this, labels -> {
+            localLabels = labels != null ? labels : new ArrayList<>();
+            loadLocalLabels(navigationView);
+        });
         loadUserLabels(navigationView);
-        loadLocalLabels(navigationView);
         viewModel.refreshUnreadCounts();
 
+        // Saved searches follow Room: counts change as mails arrive or get read
+        viewModel.getSavedSearches().observe(this, searches -> showSavedSearches(navigationView, searches));
+
         // Recycler
         recyclerView = findViewById(R.id.inboxRecyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setNestedScrollingEnabled(true);
-        adapter = new EmailAdapter();
+        adapter = new EmailAdapter(new EmailAdapter.Listener() {
+            @Override public void onStarClicked(Email email) {
+                viewModel.toggleStar(email.id, !email.starred);
+            }
+
+            @Override public void onMailOpened(Email email) {
+                viewModel.markReadLocally(email.id);
+                Intent intent = new Intent(InboxActivity.this, MailViewActivity.class);
+                intent.putExtra("mailId", email.id);
+                openMail.launch(intent);
+            }
+        });
         recyclerView.setAdapter(adapter);
+        PrefetchScrollListener.attach(recyclerView, adapter, MailPrefetcher.get(this));
         adapter.setCurrentLabel(currentLabel); // reflect initial/current tab
 
         swipeRefresh = findViewById(R.id.swipeRefresh);
@@ -332,10 +433,14 @@ public class InboxActivity extends AppCompatActivity {
             // Reload only the current view
             if (LABEL_ALL_INBOXES.equals(currentLabel)) {
                 viewModel.loadAllInboxes();
+            } else if (savedSearchId(currentLabel) != null) {
+                // Live from Room already; nothing to fetch
+                swipeRefresh.setRefreshing(false);
             } else if ("drafts".equalsIgnoreCase(currentLabel)) {
                 viewModel.loadEmailsByLabelLocal(currentLabel); // keep drafts local on refresh
+                swipeRefresh.setRefreshing(false);
             } else {
-                viewModel.loadEmailsByLabel(currentLabel);
+                viewModel.refreshEmailsByLabel(currentLabel);
             }
             viewModel.refreshUnreadCounts();
         });
@@ -343,7 +448,21 @@ public class InboxActivity extends AppCompatActivity {
         // Observe emails: update list and stop spinner
         viewModel.getEmails().observe(this, emails -> {
             adapter.updateData(emails);
-            if (swipeRefresh.isRefreshing()) swipeRefresh.setRefreshing(false);
+            if (!fullyDrawnReported && emails != null) {
+                // First content on screen (snapshot or Room), for startup metrics
+                fullyDrawnReported = true;
+                reportFullyDrawn();
+            }
+            // A label refresh shows the cached list first; keep spinning until it lands
+            boolean revalidating = Boolean.TRUE.equals(viewModel.getRefreshing().getValue());
+            if (!revalidating && swipeRefresh.isRefreshing()) swipeRefresh.setRefreshing(false);
+        });
+
+        // Label revalidation that found nothing new emits no list: stop the spinner here too
+        viewModel.getRefreshing().observe(this, refreshing -> {
+            if (!Boolean.TRUE.equals(refreshing) && swipeRefresh.isRefreshing()) {
+                swipeRefresh.setRefreshing(false);
+            }
         });
 
         // Compose
@@ -361,6 +480,24 @@ public class InboxActivity extends AppCompatActivity {
             }
             return false;
         });
+        // Search as you type; clearing the box goes back to the current label
+        searchBar.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override public void afterTextChanged(Editable s) {
+                if (s.toString().trim().isEmpty()) {
+                    if (searching) {
+                        searching = false;
+                        viewModel.cancelSearch();
+                        reloadCurrentLabelLocal();
+                    }
+                    return;
+                }
+                searching = true;
+                viewModel.onSearchTextChanged(s.toString());
+            }
+        });
 
         // Errors
         viewModel.getError().observe(this, msg -> {
@@ -397,7 +534,6 @@ public class InboxActivity extends AppCompatActivity {
 
         NavigationView navigationView = findViewById(R.id.navigationView);
         loadUserLabels(navigationView);
-        loadLocalLabels(navigationView);
         viewModel.refreshUnreadCounts();
 
         SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
@@ -414,16 +550,68 @@ public class InboxActivity extends AppCompatActivity {
             }).start();
         }
 
-        if (token != null) {
-            // Optional: do a silent cache sync here instead of posting to the UI
-            if (LABEL_ALL_INBOXES.equals(currentLabel)) {
-                viewModel.loadAllInboxes();
+        if (returningFromMail) {
+            // The row was already patched from the mail screen's result
+            returningFromMail = false;
+        } else if (searching) {
+            // Keep the search results; clearing the box goes back to the label
+        } else if (token != null) {
+            // A live event stream keeps Room current, so skip the network round trip
+            if (mailEventStream.isConnected()) {
+                reloadCurrentLabelLocal();
             } else {
-                viewModel.loadEmailsByLabel(currentLabel);
+                reloadCurrentLabel();
             }
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mailEventStream.addListener(mailEventListener);
+        mailEventStream.start();
+    }
+
+    @Override
+    protected void onStop() {
+        mailEventStream.removeListener(mailEventListener);
+        mailEventStream.stop();
+        super.onStop();
+    }
+
+    /** Cold start: render the last saved first screen before any query returns. */
+    private void seedFirstScreen(SharedPreferences prefs) {
+        if (LABEL_ALL_INBOXES.equals(currentLabel) || savedSearchId(currentLabel) != null) return;
+        if (getIntent().getBooleanExtra(FirstScreenSnapshot.EXTRA_SKIP, false)) return;
+        long t0 = SystemClock.uptimeMillis();
+        FirstScreenSnapshot snapshot = FirstScreenSnapshot.read(
+                this, prefs.getString("user_id", null), LabelNames.toLocal(currentLabel));
+        Log.d(TAG, "seedFirstScreen: " + (snapshot != null ? snapshot.emails.size() + " rows" : "none")
+                + " in " + (SystemClock.uptimeMillis() - t0) + "ms");
+        viewModel.seedFirstScreen(snapshot);
+    }
+
+    private void reloadCurrentLabel() {
+        if (LABEL_ALL_INBOXES.equals(currentLabel)) {
+            viewModel.loadAllInboxes();
+        } else if (savedSearchId(currentLabel) != null) {
+            viewModel.loadSavedSearch(savedSearchId(currentLabel));
+        } else {
+            viewModel.loadEmailsByLabel(currentLabel);
+        }
+    }
+
+    private void reloadCurrentLabelLocal() {
+        if (LABEL_ALL_INBOXES.equals(currentLabel)) {
+            // All Inboxes has no local-only query; fall back to the network merge
+            viewModel.loadAllInboxes();
+        } else if (savedSearchId(currentLabel) != null) {
+            viewModel.loadSavedSearch(savedSearchId(currentLabel));
+        } else {
+            viewModel.loadEmailsByLabelLocal(currentLabel);
+        }
+    }
+
     private void loadLabelInbox(String chosen) {
         Log.d(TAG, "loadLabelInbox: chosen=" + chosen);
         viewModel.loadEmailsByLabelLocal(chosen);
@@ -467,7 +655,7 @@ public class InboxActivity extends AppCompatActivity {
         String token = prefs.getString("jwt", null);
         if (token == null) return;
 
-        OkHttpClient client = new OkHttpClient();
+        OkHttpClient client = ApiClient.get(this);
         Request request = new Request.Builder()
                 .url("http://10.0.2.2:3000/api/labels")
                 .header("Authorization", "Bearer " + token)
@@ -530,49 +718,65 @@ public class InboxActivity extends AppCompatActivity {
         });
     }
 
+    /** Merge cached local labels (kept current by the observer) into the drawer. */
     private void loadLocalLabels(NavigationView navigationView) {
-        SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
-        String ownerId = prefs.getString("user_id", null);
-        if (ownerId == null) return;
-
-        new Thread(() -> {
-            try {
-                AppDatabase db = AppDbProvider.get(getApplicationContext());
-                List<LabelEntity> localLabels = db.labelDao().getAllByOwner(ownerId);
-                if (localLabels == null || localLabels.isEmpty()) return;
-
-                runOnUiThread(() -> {
-                    Menu menu = navigationView.getMenu();
-                    HashSet<String> existing = new HashSet<>();
-
-                    // 1) Seed with ALL current dynamic titles
-                    for (int i = 0; i < menu.size(); i++) {
-                        MenuItem item = menu.getItem(i);
-                        if (item != null && item.getGroupId() == R.id.dynamic_labels_group && item.getTitle() != null) {
-                            existing.add(item.getTitle().toString().toLowerCase());
-                        }
-                    }
-                    // 2) Seed with system labels so they NEVER get added to dynamic
-                    existing.addAll(SYSTEM_LABELS);
-
-                    // 3) Add only truly custom labels from local DB
-                    for (LabelEntity le : localLabels) {
-                        String title = le.name != null ? le.name.trim() : "";
-                        if (title.isEmpty()) continue;
-
-                        String lc = title.toLowerCase();
-                        if (existing.contains(lc)) continue; // skip system + duplicates
-
-                        MenuItem item = menu.add(R.id.dynamic_labels_group, Menu.NONE, Menu.NONE, title);
-                        item.setIcon(R.drawable.ic_label);
-                        item.setCheckable(true);
-                        item.setActionView(R.layout.menu_badge);
-                        setNumericBadge(item, 0, null);
-                        existing.add(lc); // prevent further dupes in same run
-                    }
-                });
-            } catch (Exception ignored) { }
-        }).start();
+        if (localLabels == null || localLabels.isEmpty()) return;
+
+        Menu menu = navigationView.getMenu();
+        HashSet<String> existing = new HashSet<>();
+
+        // 1) Seed with ALL current dynamic titles
+        for (int i = 0; i < menu.size(); i++) {
+            MenuItem item = menu.getItem(i);
+            if (item != null && item.getGroupId() == R.id.dynamic_labels_group && item.getTitle() != null) {
+                existing.add(item.getTitle().toString().toLowerCase());
+            }
+        }
+        // 2) Seed with system labels so they NEVER get added to dynamic
+        existing.addAll(SYSTEM_LABELS);
+
+        // 3) Add only truly custom labels from local DB
+        for (LabelEntity le : localLabels) {
+            String title = le.name != null ? le.name.trim() : "";
+            if (title.isEmpty()) continue;
+
+            String lc = title.toLowerCase();
+            if (existing.contains(lc)) continue; // skip system + duplicates
+
+            MenuItem item = menu.add(R.id.dynamic_labels_group, Menu.NONE, Menu.NONE, title);
+            item.setIcon(R.drawable.ic_label);
+            item.setCheckable(true);
+            item.setActionView(R.layout.menu_badge);
+            setNumericBadge(item, 0, null);
+            existing.add(lc); // prevent further dupes in same run
+        }
+    }
+
+    /** Saved search id of a "saved:<id>" label, or null. */
+    private static Integer savedSearchId(String label) {
+        if (label == null || !label.startsWith(SAVED_SEARCH_PREFIX)) return null;
+        try {
+            return Integer.parseInt(label.substring(SAVED_SEARCH_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Rebuild the saved-search entries under SEARCHES, badged with their unread count. */
+    private void showSavedSearches(NavigationView navigationView, List<SavedSearchDao.WithCounts> searches) {
+        MenuItem section = navigationView.getMenu().findItem(R.id.nav_saved_searches);
+        if (section == null || section.getSubMenu() == null) return;
+        Menu sub = section.getSubMenu();
+        sub.removeGroup(R.id.saved_searches_group);
+        if (searches == null) return;
+        for (SavedSearchDao.WithCounts s : searches) {
+            MenuItem item = sub.add(R.id.saved_searches_group, SAVED_SEARCH_ITEM_BASE + s.id, Menu.NONE, s.name);
+            item.setIcon(R.drawable.ic_search);
+            item.setCheckable(true);
+            item.setActionView(R.layout.menu_badge);
+            setNumericBadge(item, s.unread, null);
+        }
+        if (savedSearchId(currentLabel) != null) navigationView.setCheckedItem(checkedMenuId);
     }
 
     private void persistSelection() {
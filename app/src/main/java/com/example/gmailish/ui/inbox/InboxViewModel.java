@@ -5,19 +5,37 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkCapabilities;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.example.gmailish.data.dao.SavedSearchDao;
 import com.example.gmailish.data.db.AppDatabase;
 import com.example.gmailish.data.db.AppDbProvider;
+import com.example.gmailish.data.entity.LabelEntity;
 import com.example.gmailish.data.entity.MailEntity;
-import com.example.gmailish.data.repository.MailRepository;
+import com.example.gmailish.data.entity.ThreadEntity;
+import com.example.gmailish.data.local.LocalWriteQueue;
+import com.example.gmailish.data.local.MailObservers;
+import com.example.gmailish.data.model.LabelNames;
+import com.example.gmailish.data.repository.MailListRepository;
+import com.example.gmailish.data.search.LocalSearch;
+import com.example.gmailish.data.search.SavedSearchIndex;
+import com.example.gmailish.data.search.SearchQuery;
+import com.example.gmailish.data.search.Snippets;
 import com.example.gmailish.model.Email;
 import com.example.gmailish.model.User;
+import com.example.gmailish.utils.ApiClient;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -25,117 +43,471 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.inject.Inject;
+
+import dagger.hilt.android.lifecycle.HiltViewModel;
+
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 
+@HiltViewModel
 public class InboxViewModel extends AndroidViewModel {
 
     private static final String TAG = "InboxVM";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int SEARCH_LIMIT = 200;
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    // Shorter words match too much on the server; they are searched locally only
+    private static final int SEARCH_SERVER_MIN_CHARS = 3;
+    private static final long SEARCH_CACHE_TTL_MS = 60_000L;
+    private static final String PREF_CONVERSATION_VIEW = "conversation_view";
 
     // Special keys
     private static final String KEY_ALL_INBOXES = "__ALL__";
-    private static final String LABEL_INBOX     = "inbox";
-    private static final String LABEL_PRIMARY   = "primary";
-    private static final String LABEL_DRAFTS    = "drafts";
-    private static final String LABEL_SENT      = "sent";
-    private static final String LABEL_OUTBOX    = "outbox";
+    private static final String LABEL_PRIMARY   = LabelNames.PRIMARY;
+    private static final String LABEL_DRAFTS    = LabelNames.DRAFTS;
+    private static final String LABEL_SENT      = LabelNames.SENT;
+    private static final String LABEL_OUTBOX    = LabelNames.OUTBOX;
 
     // Buckets excluded from “All inboxes”
     private static final Set<String> EXCLUDED_LABELS = new HashSet<>(java.util.Arrays.asList(
             LABEL_SENT, LABEL_DRAFTS, LABEL_OUTBOX
     ));
 
-    private final MutableLiveData<List<Email>> emailsLiveData = new MutableLiveData<>();
+    // Network results and the live Room query both go through publishBase()
+    private final MediatorLiveData<List<Email>> emailsLiveData = new MediatorLiveData<>();
     private final MutableLiveData<String> errorLiveData       = new MutableLiveData<>();
     private final MutableLiveData<User> currentUserLiveData   = new MutableLiveData<>();
     private final MutableLiveData<Map<String, Integer>> unreadCountsLiveData = new MutableLiveData<>();
-
-    private final OkHttpClient client = new OkHttpClient();
-    private final MailRepository mailRepo;
-
-    public InboxViewModel(@NonNull Application application) {
+    private final MutableLiveData<Boolean> refreshingLiveData = new MutableLiveData<>(false);
+
+    private final OkHttpClient client;
+    private final MailListRepository listRepo;
+    private final LocalSearch localSearch;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+
+    // Search state (main thread; searchSeq is also read by the search threads).
+    // Every list switch goes through cancelSearch(), so searchSeq also tells a
+    // network list load whether its list is still the one shown.
+    private volatile long searchSeq;
+    private String pendingSearchText;
+    private CancellationSignal searchSignal;
+    private Call searchCall;
+    private LastLocalSearch lastLocalSearch;
+    // Recent queries -> results, so backspacing shows the earlier list at once
+    private final LruCache<String, CachedSearch> searchCache = new LruCache<>(16);
+    private final MailObservers observers;
+    private final LiveData<List<LabelEntity>> localLabels;
+    private final LiveData<List<SavedSearchDao.WithCounts>> savedSearches;
+    private final SavedSearchIndex savedSearchIndex;
+    private final LocalWriteQueue writes;
+    private final AppDatabase db;
+    // Thread rows: looks up the conversation's mails before a row action
+    private final ExecutorService threadReader = Executors.newSingleThreadExecutor();
+
+    // Live local query currently feeding emailsLiveData (null for search/all inboxes)
+    private LiveData<?> localSource;
+    private String localSourceKey;
+    private String localLabelKey;
+
+    // What is shown = last Room/server list + pending user actions (main thread)
+    private final OptimisticList optimistic = new OptimisticList();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    // First-screen snapshot state (main thread, except counts which the network thread sets)
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor();
+    private volatile Map<String, Integer> lastUnreadCounts;
+    private volatile String lastSnapshotLabel;
+    private volatile List<Email> lastSnapshotRows;
+    private String lastSnapshotSignature;
+
+    @Inject
+    public InboxViewModel(@NonNull Application application, MailObservers observers) {
         super(application);
         Log.d(TAG, "InboxViewModel: init");
-        AppDatabase db = AppDbProvider.get(application.getApplicationContext());
-        mailRepo = new MailRepository(db.mailDao(), db.labelDao(), db.mailLabelDao());
+        db = AppDbProvider.get(application.getApplicationContext());
+        // The app-wide instance (DatabaseModule): its caches and registry are shared
+        this.observers = observers;
+        listRepo = MailListRepository.get(application);
+        localSearch = new LocalSearch(db);
+        localLabels = observers.labels(this::currentOwnerId);
+        savedSearches = observers.savedSearches(this::currentOwnerId);
+        savedSearchIndex = SavedSearchIndex.get(db.savedSearchDao());
+        writes = LocalWriteQueue.get(db);
+        client = ApiClient.get(application);
     }
 
     public LiveData<List<Email>> getEmails() { return emailsLiveData; }
     public LiveData<String> getError() { return errorLiveData; }
     public LiveData<User> getCurrentUserLiveData() { return currentUserLiveData; }
     public LiveData<Map<String, Integer>> getUnreadCounts() { return unreadCountsLiveData; }
+    /** True while a label revalidation is running. */
+    public LiveData<Boolean> getRefreshing() { return refreshingLiveData; }
+    /** Label drawer: re-emits whenever the labels table changes. */
+    public LiveData<List<LabelEntity>> getLocalLabels() { return localLabels; }
+    /** Saved searches with live total/unread counts, for the drawer. */
+    public LiveData<List<SavedSearchDao.WithCounts>> getSavedSearches() { return savedSearches; }
+
+    /** Conversation view: labels list one row per thread (drafts and outbox stay per mail). */
+    public boolean isConversationView() {
+        return getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE)
+                .getBoolean(PREF_CONVERSATION_VIEW, false);
+    }
+
+    public void setConversationView(boolean on) {
+        getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE)
+                .edit().putBoolean(PREF_CONVERSATION_VIEW, on).apply();
+        // Re-follow the shown label in the new mode; searches and saved searches are per mail
+        String label = localLabelKey;
+        if (label != null) followLabel(label);
+    }
+
+    private String currentOwnerId() {
+        return getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE)
+                .getString("user_id", null);
+    }
 
     /* =========================
-       Timestamp helpers
+       Live local source (main thread)
        ========================= */
 
-    private String toIso8601(Date date) {
-        if (date == null) return "";
-        if (android.os.Build.VERSION.SDK_INT >= 26) {
-            return date.toInstant()
-                    .atZone(java.time.ZoneId.systemDefault())
-                    .format(java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-        } else {
-            SimpleDateFormat fmt =
-                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
-            return fmt.format(date);
+    /** Follow the label in Room. No-op if that label is already being followed. */
+    private void followLabel(String labelKey) {
+        cancelSearch();
+        String ownerId = currentOwnerId();
+        boolean threaded = isConversationView()
+                && !LABEL_DRAFTS.equals(labelKey) && !LABEL_OUTBOX.equals(labelKey);
+        String key = labelKey + "|" + ownerId + (threaded ? "|threads" : "");
+        if (localSource != null && key.equals(localSourceKey)) return;
+        stopFollowing();
+        localSourceKey = key;
+        localLabelKey = labelKey;
+        if (threaded) {
+            // Reads the precomputed summaries: one row per conversation, no grouping here
+            LiveData<List<ThreadEntity>> threads = observers.threadsForLabel(labelKey, ownerId);
+            localSource = threads;
+            emailsLiveData.addSource(threads, rows -> {
+                List<Email> mapped = mapThreadsToEmails(rows);
+                Log.d(TAG, "followLabel: " + labelKey + " -> " + mapped.size() + " threads");
+                publishBase(mapped, false);
+                saveFirstScreen(labelKey, mapped);
+            });
+            return;
         }
+        LiveData<List<MailEntity>> mails = observers.mailsForLabel(labelKey, ownerId);
+        localSource = mails;
+        emailsLiveData.addSource(mails, rows -> {
+            List<Email> mapped = mapEntitiesToEmails(rows);
+            Log.d(TAG, "followLabel: " + labelKey + " -> " + mapped.size());
+            publishBase(mapped, false);
+            saveFirstScreen(labelKey, mapped);
+        });
     }
 
-    private Date parseAnyTimestamp(String raw) {
-        if (raw == null || raw.isEmpty()) return null;
+    /** Follow a saved search's member rows: an indexed read that re-emits as mails change. */
+    public void loadSavedSearch(int searchId) {
+        errorLiveData.setValue(null);
+        cancelSearch();
+        String key = "saved:" + searchId;
+        if (localSource != null && key.equals(localSourceKey)) return;
+        stopFollowing();
+        localSourceKey = key;
+        LiveData<List<MailEntity>> source = observers.mailsForSavedSearch(searchId);
+        localSource = source;
+        emailsLiveData.addSource(source, mails -> {
+            List<Email> mapped = mapEntitiesToEmails(mails);
+            Log.d(TAG, "loadSavedSearch: " + searchId + " -> " + mapped.size());
+            publishBase(mapped, false);
+        });
+    }
 
-        // 1) ISO-8601
-        try {
-            if (android.os.Build.VERSION.SDK_INT >= 26) {
-                return Date.from(java.time.OffsetDateTime.parse(raw).toInstant());
-            } else {
-                String n = normalizeIso(raw);
-                SimpleDateFormat s =
-                        new SimpleDateFormat(n.contains(".")
-                                ? "yyyy-MM-dd'T'HH:mm:ss.SSSZ" : "yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
-                if (n.endsWith("Z")) s.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
-                return s.parse(n);
+    /** Save the search text under a name; its members are filled in the background. */
+    public void saveSearch(String name, String text) {
+        String ownerId = currentOwnerId();
+        if (ownerId == null || text == null || text.trim().isEmpty()) return;
+        String title = name != null && !name.trim().isEmpty() ? name.trim() : text.trim();
+        writes.enqueue("saved-search:" + ownerId + "|" + title, () -> {
+            int id = savedSearchIndex.save(ownerId, title, text);
+            if (id < 0) errorLiveData.postValue("Nothing to save in \"" + text.trim() + "\"");
+        });
+    }
+
+    /* =========================
+       Optimistic list (main thread)
+       ========================= */
+
+    /** Every list reaches the screen through here, so pending actions stay applied on top. */
+    private void publishBase(List<Email> list, boolean fromServer) {
+        emailsLiveData.setValue(optimistic.setBase(list, fromServer));
+    }
+
+    /**
+     * Network threads: hand a server list to the main thread, unless the user
+     * moved to another list since {@code seq} was taken.
+     */
+    private void postBase(long seq, List<Email> list) {
+        main.post(() -> {
+            if (seq != searchSeq) return;
+            publishBase(list, true);
+        });
+    }
+
+    private void showOptimistic() {
+        emailsLiveData.setValue(optimistic.current());
+    }
+
+    /**
+     * Star/unstar one row: shown at once, written to Room, then sent to the
+     * server. A rejected PATCH rolls the row and the local write back; a
+     * network failure keeps the local state (offline-first). A thread row
+     * (conversation view) stars or unstars every mail of the conversation.
+     */
+    public void toggleStar(String mailId, boolean starred) {
+        if (mailId == null) return;
+        // Unstarring inside Starred takes the row out of this list
+        boolean dropRow = !starred && LabelNames.STARRED.equals(localLabelKey);
+        long token = optimistic.apply(mailId, starChange(starred, dropRow));
+        showOptimistic();
+
+        if (!showingThreads()) {
+            starMails(token, Collections.singletonList(mailId), starred);
+            return;
+        }
+        String ownerId = currentOwnerId();
+        threadReader.execute(() -> {
+            List<String> ids = threadMailIds(ownerId, mailId, starred);
+            main.post(() -> starMails(token, ids, starred));
+        });
+    }
+
+    /** One PATCH per mail; the row rolls back if any of them is rejected. */
+    private void starMails(long token, List<String> mailIds, boolean starred) {
+        for (String id : mailIds) {
+            EmailAdapter.LocalLabelActions.applyStarLocally(getApplication(), id, starred, LabelNames.STARRED);
+        }
+        String jwt = getJwtToken();
+        if (jwt == null || mailIds.isEmpty()) {
+            optimistic.confirm(token);
+            showOptimistic();
+            return;
+        }
+        int[] left = {mailIds.size()};
+        boolean[] rejected = {false};
+        for (String id : mailIds) {
+            patchLabel(jwt, id, LabelNames.STARRED, !starred, ok -> main.post(() -> {
+                if (!ok) {
+                    rejected[0] = true;
+                    EmailAdapter.LocalLabelActions.applyStarLocally(getApplication(), id, !starred, LabelNames.STARRED);
+                }
+                if (--left[0] > 0) return;
+                if (rejected[0]) {
+                    optimistic.rollback(token);
+                    errorLiveData.setValue("Couldn't update star");
+                } else {
+                    optimistic.confirm(token);
+                }
+                showOptimistic();
+            }));
+        }
+    }
+
+    /**
+     * The mails of the thread whose latest mail is {@code mailId} that don't
+     * have the star state yet. Blocking.
+     */
+    private List<String> threadMailIds(String ownerId, String mailId, boolean starred) {
+        String key = db.mailDao().getThreadKey(mailId);
+        if (key == null || ownerId == null) return Collections.singletonList(mailId);
+        List<String> ids = new ArrayList<>();
+        for (MailEntity m : db.threadDao().mailsInThreadSync(ownerId, key)) {
+            if (m.getStarred() != starred) ids.add(m.getId());
+        }
+        return ids;
+    }
+
+    /** One row per conversation: row actions cover the thread, Room re-emits its summary. */
+    private boolean showingThreads() {
+        return localSourceKey != null && localSourceKey.endsWith("|threads");
+    }
+
+    /** Star state changed elsewhere (mail screen), already saved and sent. */
+    public void setStarredLocally(String mailId, boolean starred) {
+        if (mailId == null) return;
+        // A thread row sums all its mails; the changed one alone doesn't say how it looks
+        if (showingThreads()) return;
+        boolean dropRow = !starred && LabelNames.STARRED.equals(localLabelKey);
+        optimistic.confirm(optimistic.apply(mailId, starChange(starred, dropRow)));
+        showOptimistic();
+    }
+
+    /** Opened row: dimmed now; the mail screen does the write and the server call. */
+    public void markReadLocally(String mailId) {
+        if (mailId == null || showingThreads()) return;
+        optimistic.confirm(optimistic.apply(mailId, READ_CHANGE));
+        showOptimistic();
+    }
+
+    /** Deleted/archived/moved from the mail screen: drop the row without reloading the label. */
+    public void removeFromList(String mailId) {
+        // A thread row stays while the conversation has other mails
+        if (mailId == null || showingThreads()) return;
+        optimistic.confirm(optimistic.apply(mailId, REMOVE_CHANGE));
+        showOptimistic();
+    }
+
+    private static OptimisticList.Change starChange(boolean starred, boolean dropRow) {
+        return new OptimisticList.Change() {
+            @Override public Email apply(Email e) {
+                if (dropRow) return null;
+                Email c = e.copy();
+                c.starred = starred;
+                return c;
             }
-        } catch (Exception ignored) {}
 
-        // 2) Epoch seconds/millis
-        try {
-            if (raw.matches("^\\d{10,13}$")) {
-                long v = Long.parseLong(raw);
-                if (v < 1_000_000_000_000L) v *= 1000L;
-                return new Date(v);
+            @Override public boolean reflectedIn(Email base) {
+                return base == null || (!dropRow && base.starred == starred);
             }
-        } catch (Exception ignored) {}
+        };
+    }
 
-        // 3) Java Date.toString()
+    private static final OptimisticList.Change READ_CHANGE = new OptimisticList.Change() {
+        @Override public Email apply(Email e) {
+            if (e.read) return e;
+            Email c = e.copy();
+            c.read = true;
+            return c;
+        }
+
+        @Override public boolean reflectedIn(Email base) {
+            return base == null || base.read;
+        }
+    };
+
+    private static final OptimisticList.Change REMOVE_CHANGE = new OptimisticList.Change() {
+        @Override public Email apply(Email e) {
+            return null;
+        }
+
+        @Override public boolean reflectedIn(Email base) {
+            return base == null;
+        }
+    };
+
+    private interface Result {
+        void done(boolean ok);
+    }
+
+    /** ok=false only when the server answered with an error; network failures count as ok. */
+    private void patchLabel(String jwt, String mailId, String label, boolean remove, Result result) {
         try {
-            SimpleDateFormat s = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
-            return s.parse(raw);
-        } catch (Exception ignored) {}
+            JSONObject json = new JSONObject();
+            json.put("label", label);
+            if (remove) json.put("action", "remove");
+
+            Request req = new Request.Builder()
+                    .url("http://10.0.2.2:3000/api/mails/" + mailId + "/label")
+                    .patch(RequestBody.create(JSON, json.toString()))
+                    .header("Authorization", "Bearer " + jwt)
+                    .build();
+
+            client.newCall(req).enqueue(new Callback() {
+                @Override public void onFailure(Call call, IOException e) {
+                    Log.w(TAG, "patchLabel failed: " + e.getMessage());
+                    result.done(true);
+                }
 
-        return null;
+                @Override public void onResponse(Call call, Response response) {
+                    try (Response r = response) {
+                        if (!r.isSuccessful()) Log.w(TAG, "patchLabel rejected: code=" + r.code());
+                        result.done(r.isSuccessful());
+                    }
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "patchLabel exception: " + e.getMessage());
+            result.done(true);
+        }
+    }
+
+    /* =========================
+       Cold-start snapshot
+       ========================= */
+
+    /**
+     * Show the saved first screen until the live query answers. Only fills
+     * values that are still empty, so it never overwrites real data.
+     */
+    public void seedFirstScreen(FirstScreenSnapshot snapshot) {
+        if (snapshot == null) return;
+        if (emailsLiveData.getValue() == null) publishBase(snapshot.emails, false);
+        if (unreadCountsLiveData.getValue() == null) unreadCountsLiveData.setValue(snapshot.unreadCounts);
+        lastUnreadCounts = snapshot.unreadCounts;
+    }
+
+    private void saveFirstScreen(String labelKey, List<Email> emails) {
+        String ownerId = currentOwnerId();
+        // The rewrite is skipped when the visible rows are unchanged
+        String signature = labelKey + "|" + firstScreenSignature(emails);
+        if (signature.equals(lastSnapshotSignature)) return;
+        lastSnapshotSignature = signature;
+        lastSnapshotLabel = labelKey;
+        lastSnapshotRows = emails;
+        Map<String, Integer> counts = lastUnreadCounts;
+        snapshotWriter.execute(() ->
+                FirstScreenSnapshot.write(getApplication(), ownerId, labelKey, emails, counts));
+    }
+
+    private static String firstScreenSignature(List<Email> emails) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < emails.size() && i < FirstScreenSnapshot.MAX_ROWS; i++) {
+            Email e = emails.get(i);
+            sb.append(e.id).append(e.read ? 'r' : '-').append(e.starred ? 's' : '-')
+              .append(e.subject != null ? e.subject.hashCode() : 0).append(',');
+        }
+        return sb.toString();
     }
 
-    private String normalizeIso(String iso) {
-        if (iso == null) return null;
-        int p = Math.max(iso.lastIndexOf('+'), iso.lastIndexOf('-'));
-        if (p > 10 && iso.length() >= p + 6 && iso.charAt(iso.length() - 3) == ':') {
-            return iso.substring(0, iso.length() - 3) + iso.substring(iso.length() - 2);
+    /** Search and All inboxes have no local query; stop following so Room writes don't overwrite them. */
+    private void stopFollowing() {
+        if (localSource != null) emailsLiveData.removeSource(localSource);
+        localSource = null;
+        localSourceKey = null;
+        localLabelKey = null;
+    }
+
+    /* =========================
+       Timestamp helpers
+       ========================= */
+
+    private String toIso8601(Date date) {
+        if (date == null) return "";
+        if (android.os.Build.VERSION.SDK_INT >= 26) {
+            return date.toInstant()
+                    .atZone(java.time.ZoneId.systemDefault())
+                    .format(java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        } else {
+            SimpleDateFormat fmt =
+                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+            return fmt.format(date);
         }
-        return iso;
     }
 
     /* =========================
@@ -161,31 +533,6 @@ public class InboxViewModel extends AndroidViewModel {
         return false;
     }
 
-    private List<String> parseLabelsArray(JSONObject obj) {
-        List<String> out = new ArrayList<>();
-        JSONArray labels = obj.optJSONArray("labels");
-        if (labels != null) {
-            for (int j = 0; j < labels.length(); j++) {
-                String v = labels.optString(j);
-                if (v != null && !v.isEmpty()) out.add(v);
-            }
-        }
-        return out;
-    }
-
-    /** Local normalization: server "inbox" becomes local "primary" everywhere. */
-    private String normalizeLabel(String label) {
-        if (label == null) return null;
-        if (LABEL_INBOX.equalsIgnoreCase(label)) return LABEL_PRIMARY;
-        return label.toLowerCase(Locale.ROOT);
-    }
-
-    /** API mapping: when calling the server, convert local "primary" back to "inbox". */
-    private String apiLabel(String label) {
-        if (label == null) return null;
-        return LABEL_PRIMARY.equalsIgnoreCase(label) ? LABEL_INBOX : label.toLowerCase(Locale.ROOT);
-    }
-
     private String getJwtToken() {
         SharedPreferences prefs = getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE);
         String jwt = prefs.getString("jwt", null);
@@ -193,14 +540,6 @@ public class InboxViewModel extends AndroidViewModel {
         return jwt;
     }
 
-    private String resolveMe(String value, String currentUserId) {
-        if (value == null || value.isEmpty()) return value;
-        if ("me".equalsIgnoreCase(value) && currentUserId != null && !currentUserId.isEmpty()) {
-            return currentUserId;
-        }
-        return value;
-    }
-
     private List<Email> parseEmailList(JSONArray jsonArray) {
         try {
             List<Email> parsedEmails = new ArrayList<>();
@@ -229,69 +568,9 @@ public class InboxViewModel extends AndroidViewModel {
         }
     }
 
+    /** Full-list loads still cache what they fetched; label views revalidate instead. */
     private void syncToLocal(JSONArray jsonArray) {
-        if (jsonArray == null || jsonArray.length() == 0) {
-            Log.d(TAG, "syncToLocal: nothing to sync");
-            return;
-        }
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try {
-                SharedPreferences prefs = getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE);
-                String currentUserId = prefs.getString("user_id", null);
-
-                List<MailEntity> mails = new ArrayList<>();
-                Map<String, List<String>> mailToLabels = new HashMap<>();
-
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    JSONObject obj = jsonArray.getJSONObject(i);
-
-                    String id          = obj.optString("id");
-                    String senderName  = obj.optString("senderName");
-                    String subject     = obj.optString("subject");
-                    String content     = obj.optString("content");
-                    boolean read       = obj.optBoolean("read");
-                    boolean starred    = hasStarredLabel(obj);
-
-                    // Resolve identity fields including "me"
-                    String senderId    = resolveMe(obj.optString("senderId", null), currentUserId);
-                    String recipientId = resolveMe(obj.optString("recipientId", null), currentUserId);
-                    String ownerId     = resolveMe(obj.optString("ownerId", null), currentUserId);
-
-                    String recipientName  = obj.optString("recipientName", null);
-                    String recipientEmail = obj.optString("recipientEmail", null);
-
-                    // Parse timestamp (supports ISO/epoch/Date.toString)
-                    Date ts = parseAnyTimestamp(obj.optString("timestamp", null));
-
-                    MailEntity me = new MailEntity(
-                            id,
-                            senderId,
-                            senderName,
-                            recipientId,
-                            recipientName,
-                            recipientEmail,
-                            subject,
-                            content,
-                            ts,   // <-- parsed Date instead of null
-                            ownerId,
-                            read,
-                            starred
-                    );
-                    mails.add(me);
-
-                    List<String> labels = new ArrayList<>();
-                    for (String raw : parseLabelsArray(obj)) {
-                        labels.add(normalizeLabel(raw)); // server -> local
-                    }
-                    mailToLabels.put(id, labels);
-                }
-
-                int crossRefs = mailRepo.saveMailsAndLabels(mails, mailToLabels);
-                Log.d(TAG, "syncToLocal: mails=" + mails.size() + " crossRefs=" + crossRefs);
-            } catch (Throwable t) {
-                Log.e(TAG, "syncToLocal error: " + t.getMessage(), t);
-            }
-        });
+        listRepo.cacheServerListAsync(jsonArray);
     }
 
     private List<Email> mapEntitiesToEmails(List<MailEntity> mails) {
@@ -313,6 +592,29 @@ public class InboxViewModel extends AndroidViewModel {
         return mapped;
     }
 
+    /**
+     * A thread row opens (and stars) its latest mail; the sender column lists the
+     * participants with the message count, as Gmail does.
+     */
+    private List<Email> mapThreadsToEmails(List<ThreadEntity> threads) {
+        List<Email> mapped = new ArrayList<>();
+        if (threads == null) return mapped;
+        for (ThreadEntity t : threads) {
+            String who = t.participants != null ? t.participants.replace(",", ", ") : "";
+            if (t.messageCount > 1) who = who + " (" + t.messageCount + ")";
+            mapped.add(new Email(
+                    who,
+                    t.subject,
+                    t.snippet,
+                    toIso8601(t.latestTimestamp),
+                    t.unreadCount == 0,
+                    t.starred,
+                    t.latestMailId
+            ));
+        }
+        return mapped;
+    }
+
     /* =========================
        Unread counts
        ========================= */
@@ -362,7 +664,7 @@ public class InboxViewModel extends AndroidViewModel {
                         boolean excluded = false;
                         Set<String> perMailLabels = new HashSet<>();
                         for (int j = 0; j < labels.length(); j++) {
-                            String lb = normalizeLabel(labels.optString(j, ""));
+                            String lb = LabelNames.toLocal(labels.optString(j, ""));
                             perMailLabels.add(lb);
                             if (EXCLUDED_LABELS.contains(lb)) excluded = true;
                         }
@@ -377,6 +679,15 @@ public class InboxViewModel extends AndroidViewModel {
 
                     counts.put(KEY_ALL_INBOXES, allInboxesUnread);
                     unreadCountsLiveData.postValue(counts);
+                    lastUnreadCounts = counts;
+                    // Badges changed; refresh them in the snapshot of the rows already saved
+                    String label = lastSnapshotLabel;
+                    List<Email> rows = lastSnapshotRows;
+                    if (label != null && rows != null) {
+                        String ownerId = currentOwnerId();
+                        snapshotWriter.execute(() ->
+                                FirstScreenSnapshot.write(getApplication(), ownerId, label, rows, counts));
+                    }
                 } catch (Exception e) {
                     Log.e(TAG, "refreshUnreadCounts parse error: " + e.getMessage());
                 }
@@ -429,6 +740,9 @@ public class InboxViewModel extends AndroidViewModel {
 
     public void loadEmails(String jwtToken) {
         Log.d(TAG, "loadEmails called. hasToken=" + (jwtToken != null));
+        cancelSearch();
+        stopFollowing();
+        long seq = searchSeq;
         Request request = new Request.Builder()
                 .url("http://10.0.2.2:3000/api/mails")
                 .header("Authorization", "Bearer " + jwtToken)
@@ -450,7 +764,7 @@ public class InboxViewModel extends AndroidViewModel {
                     JSONArray array = new JSONArray(body);
 
                     List<Email> parsed = parseEmailList(array);
-                    if (parsed != null) emailsLiveData.postValue(parsed);
+                    if (parsed != null) postBase(seq, parsed);
 
                     syncToLocal(array);
                 } catch (Exception e) {
@@ -461,25 +775,140 @@ public class InboxViewModel extends AndroidViewModel {
         });
     }
 
+    /* =========================
+       Search (main thread)
+       ========================= */
+
+    /** Search box text changed: search once typing pauses. */
+    public void onSearchTextChanged(String text) {
+        main.removeCallbacks(debouncedSearch);
+        pendingSearchText = text;
+        main.postDelayed(debouncedSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private final Runnable debouncedSearch = () -> runSearch(pendingSearchText, true);
+
+    /**
+     * Search now (IME action). Local results first (operators compiled to SQL
+     * over the FTS index), then the server's when it answers. Operator queries
+     * stay local: the server only does plain substring search.
+     */
     public void searchEmails(String query) {
+        main.removeCallbacks(debouncedSearch);
+        runSearch(query, false);
+    }
+
+    /** Leave search: drop pending/running searches so none lands on the next list. */
+    public void cancelSearch() {
+        main.removeCallbacks(debouncedSearch);
+        searchSeq++;
+        if (searchSignal != null) searchSignal.cancel();
+        searchSignal = null;
+        if (searchCall != null) searchCall.cancel();
+        searchCall = null;
+    }
+
+    private void runSearch(String raw, boolean asYouType) {
+        String text = raw != null ? raw.trim() : "";
+        cancelSearch();
+        if (text.isEmpty()) return;
         errorLiveData.setValue(null);
+        stopFollowing();
+
+        long seq = searchSeq;
+        String ownerId = currentOwnerId();
+        // While typing, the last word is a prefix: "repo" finds "report"
+        boolean prefix = asYouType && !raw.endsWith(" ");
+        SearchQuery query = SearchQuery.parse(prefix ? withPrefixLastWord(text) : text);
+        if (query.isEmpty()) return;
+
+        String key = ownerId + "|" + (prefix ? "*|" : "|") + text;
+        CachedSearch cached = searchCache.get(key);
+        boolean fresh = cached != null && SystemClock.elapsedRealtime() - cached.at < SEARCH_CACHE_TTL_MS;
+        if (fresh) {
+            Log.d(TAG, "search cache hit: " + text);
+            publishBase(cached.emails, cached.fromServer);
+        } else {
+            searchLocal(seq, key, text, query, prefix, ownerId);
+        }
+        if (!query.hasOperators() && query.freeText().length() >= SEARCH_SERVER_MIN_CHARS
+                && !(fresh && cached.fromServer)) {
+            searchServer(seq, key, query.freeText());
+        }
+    }
+
+    private static String withPrefixLastWord(String text) {
+        int sp = text.lastIndexOf(' ');
+        String last = text.substring(sp + 1);
+        if (last.contains(":") || last.contains("\"") || last.endsWith("*")) return text;
+        return text + "*";
+    }
+
+    private void searchLocal(long seq, String key, String text, SearchQuery query, boolean prefix, String ownerId) {
+        // Typed more of a plain prefix query whose last result was complete: only re-check those rows
+        LastLocalSearch prev = lastLocalSearch;
+        long[] within = null;
+        if (prev != null && prev.complete && prev.prefix && query.isPlainText() && prev.plainText
+                && Objects.equals(prev.ownerId, ownerId) && text.startsWith(prev.text)) {
+            within = prev.rowIds;
+        }
+        long[] refineFrom = within;
+
+        CancellationSignal signal = new CancellationSignal();
+        searchSignal = signal;
+        searchExecutor.execute(() -> {
+            // Superseded while queued
+            if (seq != searchSeq) return;
+            try {
+                LocalSearch.Result r = localSearch.run(query, ownerId, SEARCH_LIMIT, refineFrom, signal);
+                List<Email> emails = mapEntitiesToEmails(r.mails);
+                for (Email e : emails) {
+                    Snippets.Snippet s = r.snippets.get(e.id);
+                    if (s == null) continue;
+                    e.snippet = s.text;
+                    e.snippetHighlights = s.highlights;
+                }
+                main.post(() -> {
+                    if (seq != searchSeq) return;
+                    lastLocalSearch = new LastLocalSearch(ownerId, text, query.isPlainText(), prefix, r.rowIds, r.complete);
+                    CachedSearch c = searchCache.get(key);
+                    // A server answer that already landed wins over the local one
+                    if (c != null && c.fromServer && c.at >= SystemClock.elapsedRealtime() - SEARCH_CACHE_TTL_MS) return;
+                    searchCache.put(key, new CachedSearch(emails, false));
+                    publishBase(emails, false);
+                });
+            } catch (OperationCanceledException e) {
+                Log.d(TAG, "local search cancelled: " + text);
+            } catch (Exception e) {
+                Log.w(TAG, "local search failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void searchServer(long seq, String key, String freeText) {
         String token = getJwtToken();
-        Log.d(TAG, "searchEmails: q=" + query + " hasToken=" + (token != null));
+        if (token == null) return;
 
+        HttpUrl url = HttpUrl.get("http://10.0.2.2:3000/api/mails/search").newBuilder()
+                .addPathSegment(freeText)
+                .build();
         Request request = new Request.Builder()
-                .url("http://10.0.2.2:3000/api/mails/search/" + query)
+                .url(url)
                 .header("Authorization", "Bearer " + token)
                 .build();
 
-        client.newCall(request).enqueue(new Callback() {
+        Call call = client.newCall(request);
+        searchCall = call;
+        call.enqueue(new Callback() {
 
-            @Override public void onFailure(Call call, IOException e) {
-                Log.e(TAG, "Search network error: " + e.getMessage());
-                errorLiveData.postValue("Search error: " + e.getMessage());
+            @Override public void onFailure(Call c, IOException e) {
+                // Cancelled by a newer search, or offline: the local results are already showing
+                if (!c.isCanceled()) Log.w(TAG, "Search network error: " + e.getMessage());
             }
 
-            @Override public void onResponse(Call call, Response response) throws IOException {
+            @Override public void onResponse(Call c, Response response) throws IOException {
                 try (Response r = response) {
+                    if (seq != searchSeq) return;
                     if (!r.isSuccessful()) {
                         errorLiveData.postValue("Search failed: " + r.code());
                         return;
@@ -487,7 +916,12 @@ public class InboxViewModel extends AndroidViewModel {
                     String jsonStr = r.body() != null ? r.body().string() : "[]";
                     JSONArray array = new JSONArray(jsonStr);
                     List<Email> parsedEmails = parseEmailList(array);
-                    if (parsedEmails != null) emailsLiveData.postValue(parsedEmails);
+                    if (parsedEmails == null) return;
+                    main.post(() -> {
+                        if (seq != searchSeq) return;
+                        searchCache.put(key, new CachedSearch(parsedEmails, true));
+                        publishBase(parsedEmails, true);
+                    });
                 } catch (Exception e) {
                     errorLiveData.postValue("JSON parse error: " + e.getMessage());
                 }
@@ -495,75 +929,74 @@ public class InboxViewModel extends AndroidViewModel {
         });
     }
 
-    public void loadEmailsByLabel(String label) {
-        errorLiveData.setValue(null);
-        String token = getJwtToken();
-        String normalized = normalizeLabel(label); // local name (primary, starred, etc.)
+    private static final class CachedSearch {
+        final List<Email> emails;
+        final boolean fromServer;
+        final long at = SystemClock.elapsedRealtime();
 
-        // Drafts are local-only
-        if (LABEL_DRAFTS.equalsIgnoreCase(normalized)) {
-            loadEmailsByLabelLocal(LABEL_DRAFTS);
-            return;
+        CachedSearch(List<Email> emails, boolean fromServer) {
+            this.emails = emails;
+            this.fromServer = fromServer;
         }
+    }
 
-        Log.d(TAG, "loadEmailsByLabel (remote): raw=" + label + " normalized(local)=" + normalized);
-
-        if (token == null) {
-            errorLiveData.postValue("JWT token missing");
-            return;
+    private static final class LastLocalSearch {
+        final String ownerId;
+        final String text;
+        final boolean plainText;
+        // Last word matched as a prefix, so anything typed after it can only narrow
+        final boolean prefix;
+        final long[] rowIds;
+        final boolean complete;
+
+        LastLocalSearch(String ownerId, String text, boolean plainText, boolean prefix,
+                        long[] rowIds, boolean complete) {
+            this.ownerId = ownerId;
+            this.text = text;
+            this.plainText = plainText;
+            this.prefix = prefix;
+            this.rowIds = rowIds;
+            this.complete = complete;
         }
+    }
 
-        // Convert local "primary" back to server "inbox"
-        String serverLabel = apiLabel(normalized);
-        String url = "http://10.0.2.2:3000/api/mails?label=" + serverLabel;
-
-        Request request = new Request.Builder().url(url).header("Authorization", "Bearer " + token).build();
-
-        client.newCall(request).enqueue(new Callback() {
+    /**
+     * Stale-while-revalidate: the Room copy is shown right away, and the label is
+     * re-fetched in the background only when its TTL has expired. Server results
+     * land in Room and reach the list through the same query.
+     */
+    public void loadEmailsByLabel(String label) {
+        revalidateLabel(label, false);
+    }
 
-            @Override public void onFailure(Call call, IOException e) {
-                Log.e(TAG, "Label '" + label + "' network error: " + e.getMessage());
-                errorLiveData.postValue("Failed to load '" + label + "': " + e.getMessage());
-            }
+    /** Pull-to-refresh: same as loadEmailsByLabel but ignores the TTL. */
+    public void refreshEmailsByLabel(String label) {
+        revalidateLabel(label, true);
+    }
 
-            @Override public void onResponse(Call call, Response response) throws IOException {
-                try (Response r = response) {
-                    if (!r.isSuccessful()) {
-                        errorLiveData.postValue("Server error " + r.code() + " loading '" + normalized + "'");
-                        return;
-                    }
-                    String body = r.body() != null ? r.body().string() : "[]";
-                    JSONArray array = new JSONArray(body);
-                    List<Email> parsed = parseEmailList(array);
-                    if (parsed != null) emailsLiveData.postValue(parsed);
-                    syncToLocal(array);
-                } catch (Exception e) {
-                    errorLiveData.postValue("Parse error: " + e.getMessage());
-                }
-            }
+    private void revalidateLabel(String label, boolean force) {
+        errorLiveData.setValue(null);
+        String normalized = LabelNames.toLocal(label); // local name (primary, starred, etc.)
+        Log.d(TAG, "revalidateLabel: raw=" + label + " normalized(local)=" + normalized + " force=" + force);
+        followLabel(normalized);
+
+        refreshingLiveData.setValue(true);
+        listRepo.revalidate(normalized, currentOwnerId(), force, (fetched, error) -> {
+            if (error != null) errorLiveData.postValue(error);
+            // An unchanged list writes nothing and emits nothing: end the spinner here
+            refreshingLiveData.postValue(false);
         });
     }
 
+    /**
+     * Follow the label in Room: the list re-emits by itself after stars, moves,
+     * syncs and pushed events, so callers don't need to reload after writes.
+     */
     public void loadEmailsByLabelLocal(String labelIdRaw) {
         errorLiveData.setValue(null);
-        String labelId = normalizeLabel(labelIdRaw);
+        String labelId = LabelNames.toLocal(labelIdRaw);
         Log.d(TAG, "loadEmailsByLabelLocal: raw=" + labelIdRaw + " normalized(local)=" + labelId);
-
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try {
-                SharedPreferences prefs = getApplication().getSharedPreferences("prefs", Context.MODE_PRIVATE);
-                String ownerId = prefs.getString("user_id", null);
-
-                List<MailEntity> mails = mailRepo.getMailsForLabelLocal(labelId, ownerId);
-                List<Email> mapped = mapEntitiesToEmails(mails);
-
-                Log.d(TAG, "loadEmailsByLabelLocal: mapped=" + mapped.size());
-                emailsLiveData.postValue(mapped);
-            } catch (Exception e) {
-                Log.e(TAG, "loadEmailsByLabelLocal error: " + e.getMessage());
-                errorLiveData.postValue("Failed to load local mails for '" + labelIdRaw + "'");
-            }
-        });
+        followLabel(labelId);
     }
 
     public boolean isOnline() {
@@ -579,6 +1012,9 @@ public class InboxViewModel extends AndroidViewModel {
 
     public void loadAllInboxes() {
         errorLiveData.setValue(null);
+        cancelSearch();
+        stopFollowing();
+        long seq = searchSeq;
         String token = getJwtToken();
         Log.d(TAG, "loadAllInboxes hasToken=" + (token != null));
 
@@ -620,7 +1056,7 @@ public class InboxViewModel extends AndroidViewModel {
                         JSONArray labels = obj.optJSONArray("labels");
                         if (labels != null) {
                             for (int j = 0; j < labels.length(); j++) {
-                                String lb = normalizeLabel(labels.optString(j, ""));
+                                String lb = LabelNames.toLocal(labels.optString(j, ""));
                                 if (EXCLUDED_LABELS.contains(lb)) {
                                     exclude = true;
                                     break;
@@ -657,7 +1093,7 @@ public class InboxViewModel extends AndroidViewModel {
                     });
 
                     Log.d(TAG, "AllInboxes parsed count=" + parsedEmails.size());
-                    emailsLiveData.postValue(parsedEmails);
+                    postBase(seq, parsedEmails);
 
                     // Keep local cache in sync for offline
                     try {
@@ -0,0 +1,127 @@
+package com.example.gmailish.ui.inbox;
+
+import android.os.SystemClock;
+
+import com.example.gmailish.model.Email;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The displayed list = the last list from Room or the server ("base") with the
+ * user's not-yet-settled changes applied on top. Lists are never mutated: every
+ * change builds a new list of new Email objects, so the adapter can diff old
+ * against new.
+ *
+ * A change stays applied until the base reflects it (Room caught up), a server
+ * list replaces the base after it was confirmed, or it is rolled back. Main
+ * thread only.
+ */
+final class OptimisticList {
+
+    /** One user action on one row. */
+    interface Change {
+        /** The row after the action; null removes it from this list. */
+        Email apply(Email e);
+
+        /** True once the base row (null if absent) already shows the action. */
+        boolean reflectedIn(Email base);
+    }
+
+    // A confirmed change the base never reflected (e.g. the write failed later) is dropped after this
+    private static final long CONFIRMED_TTL_MS = 10_000L;
+
+    private static final class Pending {
+        final String mailId;
+        final Change change;
+        long confirmedAt; // 0 = waiting for the server
+
+        Pending(String mailId, Change change) {
+            this.mailId = mailId;
+            this.change = change;
+        }
+    }
+
+    private List<Email> base = Collections.emptyList();
+    private final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>();
+    private long nextToken = 1;
+
+    /**
+     * New base. {@code fromServer} lists are authoritative, so confirmed changes
+     * are dropped; local (Room) lists drop only the changes they reflect.
+     */
+    List<Email> setBase(List<Email> list, boolean fromServer) {
+        base = list != null ? Collections.unmodifiableList(new ArrayList<>(list)) : Collections.emptyList();
+        Map<String, Email> byId = null;
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            if (p.confirmedAt == 0) continue;
+            if (fromServer || now - p.confirmedAt > CONFIRMED_TTL_MS) {
+                it.remove();
+                continue;
+            }
+            if (byId == null) byId = index(base);
+            if (p.change.reflectedIn(byId.get(p.mailId))) it.remove();
+        }
+        return current();
+    }
+
+    /** Apply a change now. Returns the token for confirm()/rollback(). */
+    long apply(String mailId, Change change) {
+        long token = nextToken++;
+        pending.put(token, new Pending(mailId, change));
+        return token;
+    }
+
+    /** The server accepted it; keep it shown until the base catches up. */
+    void confirm(long token) {
+        Pending p = pending.get(token);
+        if (p == null) return;
+        if (p.change.reflectedIn(index(base).get(p.mailId))) {
+            pending.remove(token);
+        } else {
+            p.confirmedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /** The server rejected it; the row goes back to what the base says. */
+    void rollback(long token) {
+        pending.remove(token);
+    }
+
+    List<Email> current() {
+        if (pending.isEmpty()) return base;
+        Map<String, List<Change>> byMail = new HashMap<>();
+        for (Pending p : pending.values()) {
+            List<Change> l = byMail.get(p.mailId);
+            if (l == null) byMail.put(p.mailId, l = new ArrayList<>());
+            l.add(p.change);
+        }
+        List<Email> out = new ArrayList<>(base.size());
+        for (Email e : base) {
+            List<Change> changes = byMail.get(e.id);
+            Email row = e;
+            if (changes != null) {
+                for (Change c : changes) {
+                    row = c.apply(row);
+                    if (row == null) break;
+                }
+            }
+            if (row != null) out.add(row);
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    private static Map<String, Email> index(List<Email> list) {
+        Map<String, Email> m = new HashMap<>(list.size() * 2);
+        for (Email e : list) m.put(e.id, e);
+        return m;
+    }
+}
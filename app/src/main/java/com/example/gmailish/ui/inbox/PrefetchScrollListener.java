@@ -0,0 +1,94 @@
+package com.example.gmailish.ui.inbox;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.gmailish.data.sync.MailPrefetcher;
+import com.example.gmailish.model.Email;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds MailPrefetcher with the unread rows on screen plus a few rows ahead in
+ * the scroll direction. During a fling the window is left alone (rows fly past
+ * too fast to be tapped); it is recomputed once scrolling slows or stops.
+ */
+final class PrefetchScrollListener extends RecyclerView.OnScrollListener {
+
+    // Faster than this (px per ms) counts as a fling
+    private static final float FLING_PX_PER_MS = 2.5f;
+    private static final int LOOKAHEAD_ROWS = 4;
+
+    private final EmailAdapter adapter;
+    private final MailPrefetcher prefetcher;
+
+    private long lastScrollAt;
+    private int lastDirection = 1;
+
+    PrefetchScrollListener(EmailAdapter adapter, MailPrefetcher prefetcher) {
+        this.adapter = adapter;
+        this.prefetcher = prefetcher;
+    }
+
+    /** Attach to the list; the window also follows data changes. */
+    static PrefetchScrollListener attach(RecyclerView list, EmailAdapter adapter, MailPrefetcher prefetcher) {
+        PrefetchScrollListener l = new PrefetchScrollListener(adapter, prefetcher);
+        list.addOnScrollListener(l);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override public void onChanged() {
+                // Wait for layout so the visible range matches the new data
+                list.post(() -> l.update(list));
+            }
+        });
+        return l;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView list, int dx, int dy) {
+        if (dy == 0) return;
+        lastDirection = dy > 0 ? 1 : -1;
+        long now = SystemClock.uptimeMillis();
+        long dt = Math.max(1, now - lastScrollAt);
+        lastScrollAt = now;
+        if (Math.abs(dy) / (float) dt > FLING_PX_PER_MS) return;
+        update(list);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView list, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) update(list);
+    }
+
+    void update(RecyclerView list) {
+        RecyclerView.LayoutManager lm = list.getLayoutManager();
+        if (!(lm instanceof LinearLayoutManager)) return;
+        LinearLayoutManager llm = (LinearLayoutManager) lm;
+        int first = llm.findFirstVisibleItemPosition();
+        int last = llm.findLastVisibleItemPosition();
+        int count = adapter.getItemCount();
+        if (first == RecyclerView.NO_POSITION || count == 0) {
+            prefetcher.clearWindow();
+            return;
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (int i = first; i <= last && i < count; i++) addIfWanted(ids, adapter.getItemAt(i));
+        // Then the rows the user is heading towards
+        for (int k = 1; k <= LOOKAHEAD_ROWS; k++) {
+            int i = lastDirection > 0 ? last + k : first - k;
+            if (i < 0 || i >= count) break;
+            addIfWanted(ids, adapter.getItemAt(i));
+        }
+        prefetcher.setWindow(ids);
+    }
+
+    private static void addIfWanted(List<String> ids, Email e) {
+        // Drafts are local-only; read mails are rarely reopened
+        if (e == null || e.read || e.isDraft || e.id == null || e.id.isEmpty()) return;
+        ids.add(e.id);
+    }
+}
@@ -11,6 +11,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.example.gmailish.R;
+import com.example.gmailish.data.sync.BlacklistSyncWorker;
+import com.example.gmailish.data.sync.InitialSyncWorker;
 import com.example.gmailish.ui.inbox.InboxActivity;
 import com.example.gmailish.ui.register.RegisterActivity;
 
@@ -41,6 +43,10 @@ public class LoginActivity extends AppCompatActivity {
         viewModel.loginResult.observe(this, success -> {
             if (success) {
                 Toast.makeText(this, "Login successful!", Toast.LENGTH_SHORT).show();
+                // Pull the full mailbox in resumable pages in the background
+                InitialSyncWorker.enqueue(getApplicationContext());
+                BlacklistSyncWorker.enqueue(getApplicationContext());
+                BlacklistSyncWorker.schedulePeriodic(getApplicationContext());
                 // TODO: Replace InboxActivity with your real inbox screen
                 Intent intent2 = new Intent(this, InboxActivity.class);
                 startActivity(intent2);
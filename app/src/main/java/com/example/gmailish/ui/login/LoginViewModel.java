@@ -1,13 +1,13 @@
 package com.example.gmailish.ui.login;
 
 import android.app.Application;
-import android.content.Context;
-import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
 
+import com.example.gmailish.utils.TokenManager;
+
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -57,12 +57,16 @@ public class LoginViewModel extends AndroidViewModel {
                 if (response.isSuccessful()) {
                     String setCookie = response.header("Set-Cookie");
 
+                    String refreshToken = null;
+                    try {
+                        String bodyStr = response.body() != null ? response.body().string() : "{}";
+                        refreshToken = new JSONObject(bodyStr).optString("refreshToken", null);
+                    } catch (Exception ignore) { }
+
                     if (setCookie != null && setCookie.contains("token=")) {
                         token = extractTokenFromCookie(setCookie);
-
-                        SharedPreferences prefs = getApplication()
-                                .getSharedPreferences("prefs", Context.MODE_PRIVATE);
-                        prefs.edit().putString("jwt", token).apply();
+                        // Also wakes anything parked on the previous (expired) session
+                        TokenManager.get(getApplication()).saveTokens(token, refreshToken);
                     }
 
                     loginResult.postValue(true);
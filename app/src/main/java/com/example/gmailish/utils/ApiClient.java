@@ -0,0 +1,61 @@
+package com.example.gmailish.utils;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import okhttp3.Authenticator;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Shared OkHttpClient for authenticated API calls. One connection pool, and
+ * every 401 goes through TokenManager's single-flight refresh before the
+ * request is replayed once with the new token.
+ * Use newBuilder() for per-caller tweaks (timeouts, dispatcher).
+ */
+public final class ApiClient {
+
+    private static volatile OkHttpClient INSTANCE;
+
+    private ApiClient() {}
+
+    public static OkHttpClient get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ApiClient.class) {
+                if (INSTANCE == null) {
+                    TokenManager tokens = TokenManager.get(context);
+                    INSTANCE = new OkHttpClient.Builder()
+                            .authenticator(new TokenAuthenticator(tokens))
+                            .build();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private static final class TokenAuthenticator implements Authenticator {
+        private final TokenManager tokens;
+
+        TokenAuthenticator(TokenManager tokens) { this.tokens = tokens; }
+
+        @Nullable
+        @Override
+        public Request authenticate(@Nullable Route route, Response response) {
+            // Already replayed once with a fresh token: give up
+            if (response.priorResponse() != null) return null;
+
+            String header = response.request().header("Authorization");
+            if (header == null || !header.startsWith("Bearer ")) return null;
+            String failed = header.substring("Bearer ".length());
+
+            String fresh = tokens.refreshAfterFailure(failed);
+            if (fresh == null) return null;
+            return response.request().newBuilder()
+                    .header("Authorization", "Bearer " + fresh)
+                    .build();
+        }
+    }
+}
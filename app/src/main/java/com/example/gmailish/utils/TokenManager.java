@@ -1,4 +1,150 @@
 package com.example.gmailish.utils;
 
-public class TokenManager {
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Owns the access/refresh token pair (stored in "prefs" as jwt / refresh_token).
+ * Refresh is single-flight: concurrent 401s wait for one POST /api/tokens/refresh
+ * and then reuse its result. Listeners hear about every new access token.
+ */
+public final class TokenManager {
+
+    private static final String TAG = "TokenManager";
+    private static final String REFRESH_URL = "http://10.0.2.2:3000/api/tokens/refresh";
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final String KEY_JWT = "jwt";
+    private static final String KEY_REFRESH = "refresh_token";
+
+    private static volatile TokenManager INSTANCE;
+
+    public interface Listener {
+        /** Called on the thread that stored the token. */
+        void onTokenAvailable(String accessToken);
+    }
+
+    private final SharedPreferences prefs;
+    // Plain client: refresh must never go through the Authenticator that calls us
+    private final OkHttpClient refreshClient = new OkHttpClient();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object refreshLock = new Object();
+
+    private volatile boolean refreshing;
+    private volatile boolean sessionExpired;
+
+    private TokenManager(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences("prefs", Context.MODE_PRIVATE);
+    }
+
+    public static TokenManager get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (TokenManager.class) {
+                if (INSTANCE == null) INSTANCE = new TokenManager(context);
+            }
+        }
+        return INSTANCE;
+    }
+
+    public void addListener(Listener l) { if (l != null) listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    public String getAccessToken() { return prefs.getString(KEY_JWT, null); }
+
+    /** True once refresh was rejected; cleared by the next saveTokens (e.g. login). */
+    public boolean isSessionExpired() { return sessionExpired; }
+
+    /** New tokens from login or refresh. A null refresh token keeps the stored one. */
+    public void saveTokens(String accessToken, String refreshToken) {
+        SharedPreferences.Editor e = prefs.edit().putString(KEY_JWT, accessToken);
+        if (refreshToken != null) e.putString(KEY_REFRESH, refreshToken);
+        e.apply();
+        sessionExpired = false;
+        for (Listener l : listeners) {
+            try { l.onTokenAvailable(accessToken); } catch (Exception ignore) {}
+        }
+    }
+
+    public void clear() {
+        prefs.edit().remove(KEY_JWT).remove(KEY_REFRESH).apply();
+    }
+
+    /**
+     * Blocks while another thread is refreshing, so queue dispatch does not fire
+     * requests with a token that is about to be replaced.
+     */
+    public void awaitRefresh() {
+        if (!refreshing) return;
+        synchronized (refreshLock) {
+            // entering the lock means the in-flight refresh has finished
+        }
+    }
+
+    /**
+     * Returns a token newer than {@code failedToken}, refreshing if needed.
+     * Returns null if no token could be had. Only when isSessionExpired() is
+     * that final (park work until login); otherwise the refresh failed on the
+     * network or the server and a later retry may succeed.
+     * Blocking; never call on the main thread.
+     */
+    public String refreshAfterFailure(String failedToken) {
+        synchronized (refreshLock) {
+            String current = getAccessToken();
+            if (current != null && !current.equals(failedToken)) {
+                // Someone else already refreshed while we were waiting
+                return current;
+            }
+            if (sessionExpired) return null;
+
+            String refreshToken = prefs.getString(KEY_REFRESH, null);
+            if (refreshToken == null) {
+                Log.w(TAG, "refresh: no refresh token");
+                sessionExpired = true;
+                return null;
+            }
+
+            refreshing = true;
+            try {
+                JSONObject body = new JSONObject().put("refreshToken", refreshToken);
+                Request req = new Request.Builder()
+                        .url(REFRESH_URL)
+                        .post(RequestBody.create(JSON, body.toString()))
+                        .build();
+                try (Response r = refreshClient.newCall(req).execute()) {
+                    if (r.code() == 400 || r.code() == 401 || r.code() == 403) {
+                        Log.w(TAG, "refresh: rejected code=" + r.code());
+                        sessionExpired = true;
+                        return null;
+                    }
+                    if (!r.isSuccessful() || r.body() == null) {
+                        // Transient: leave the session alone, caller retries later
+                        Log.w(TAG, "refresh: failed code=" + r.code());
+                        return null;
+                    }
+                    JSONObject obj = new JSONObject(r.body().string());
+                    String token = obj.optString("token", null);
+                    if (token == null || token.isEmpty()) return null;
+                    saveTokens(token, obj.optString("refreshToken", null));
+                    Log.d(TAG, "refresh: ok");
+                    return token;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "refresh error: " + e.getMessage());
+                return null;
+            } finally {
+                refreshing = false;
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package com.example.gmailish.data.search;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ranking order from hand-built matchinfo('pcnalx') blobs, one phrase over
+ * MailFtsEntity's five columns (subject, content, senderName, recipientName,
+ * recipientEmail).
+ */
+public class Bm25Test {
+
+    private static final int COLS = 5;
+    private static final int SUBJECT = 0;
+    private static final int CONTENT = 1;
+    private static final int SENDER = 2;
+
+    // Average tokens per column across the mailbox
+    private static final int[] AVG = {6, 120, 2, 2, 3};
+
+    @Test
+    public void moreHitsRankHigher() {
+        double once = Bm25.score(hit(1000, CONTENT, 1, 120, 50));
+        double thrice = Bm25.score(hit(1000, CONTENT, 3, 120, 50));
+        assertTrue(thrice > once);
+    }
+
+    @Test
+    public void subjectAndSenderOutweighBody() {
+        // Each field of average length, so only the weights differ
+        double body = Bm25.score(hit(1000, CONTENT, 1, AVG[CONTENT], 50));
+        double subject = Bm25.score(hit(1000, SUBJECT, 1, AVG[SUBJECT], 50));
+        double sender = Bm25.score(hit(1000, SENDER, 1, AVG[SENDER], 50));
+        assertTrue(subject > sender);
+        assertTrue(sender > body);
+    }
+
+    @Test
+    public void rareWordsRankHigher() {
+        double rare = Bm25.score(hit(1000, CONTENT, 1, 120, 3));
+        double common = Bm25.score(hit(1000, CONTENT, 1, 120, 900));
+        assertTrue(rare > common);
+        // Lucene's idf: a word in every mail still scores, never negative
+        assertTrue(Bm25.score(hit(1000, CONTENT, 1, 120, 1000)) > 0);
+    }
+
+    @Test
+    public void shorterFieldsRankHigher() {
+        double shortBody = Bm25.score(hit(1000, CONTENT, 1, 40, 50));
+        double longBody = Bm25.score(hit(1000, CONTENT, 1, 2000, 50));
+        assertTrue(shortBody > longBody);
+    }
+
+    @Test
+    public void hitsInSeveralColumnsAdd() {
+        int[] tf = new int[COLS];
+        tf[SUBJECT] = 1;
+        double subjectOnly = Bm25.score(blob(1, 1000, tf, 50));
+        tf[CONTENT] = 1;
+        double both = Bm25.score(blob(1, 1000, tf, 50));
+        assertTrue(both > subjectOnly);
+    }
+
+    @Test
+    public void everyPhraseCounts() {
+        int[] tf = new int[COLS];
+        tf[CONTENT] = 1;
+        assertTrue(Bm25.score(blob(2, 1000, tf, 50)) > Bm25.score(blob(1, 1000, tf, 50)));
+    }
+
+    @Test
+    public void malformedBlobsScoreZero() {
+        assertEquals(0, Bm25.score(null), 0);
+        assertEquals(0, Bm25.score(new byte[8]), 0);
+        byte[] whole = hit(1000, CONTENT, 1, 120, 50);
+        byte[] cut = new byte[whole.length - 4];
+        System.arraycopy(whole, 0, cut, 0, cut.length);
+        assertEquals(0, Bm25.score(cut), 0);
+    }
+
+    /* ===== helpers ===== */
+
+    /** One phrase, {@code tf} hits in {@code col} of a row where that column has {@code len} tokens. */
+    private static byte[] hit(int rows, int col, int tf, int len, int rowsWithHit) {
+        int[] tfs = new int[COLS];
+        tfs[col] = tf;
+        int[] lens = {AVG[0], AVG[1], AVG[2], AVG[3], AVG[4]};
+        lens[col] = len;
+        return blob(1, rows, tfs, lens, rowsWithHit);
+    }
+
+    private static byte[] blob(int phrases, int rows, int[] tf, int rowsWithHit) {
+        return blob(phrases, rows, tf, AVG, rowsWithHit);
+    }
+
+    /** Same hits for every phrase; native order like SQLite's. */
+    private static byte[] blob(int phrases, int rows, int[] tf, int[] lens, int rowsWithHit) {
+        ByteBuffer b = ByteBuffer.allocate(4 * (3 + 2 * COLS + 3 * phrases * COLS)).order(ByteOrder.nativeOrder());
+        b.putInt(phrases).putInt(COLS).putInt(rows);
+        for (int a : AVG) b.putInt(a);
+        for (int l : lens) b.putInt(l);
+        for (int p = 0; p < phrases; p++) {
+            for (int col = 0; col < COLS; col++) {
+                b.putInt(tf[col]);
+                b.putInt(tf[col] * rowsWithHit);
+                b.putInt(tf[col] > 0 ? rowsWithHit : 0);
+            }
+        }
+        return b.array();
+    }
+}
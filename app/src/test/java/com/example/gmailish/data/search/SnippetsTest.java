@@ -0,0 +1,118 @@
+package com.example.gmailish.data.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Window choice and highlight ranges, plus the cost that LocalSearch's 16 ms
+ * snippet budget relies on: the first screen of results gets its snippets
+ * well inside it (later rows may run out and show the body start), and one
+ * worst-case body (scan cap full of hits) takes a small part of it, so the
+ * deadline check between rows can't overshoot by much.
+ */
+public class SnippetsTest {
+
+    private static final long BUDGET_MS = 16;
+    // LocalSearch's SNIPPET_CHARS; rows visible before the first scroll
+    private static final int CHARS = 120;
+    private static final int SCREEN = 20;
+    private static final int RUNS = 9;
+
+    @Test
+    public void noHitNoSnippet() {
+        assertNull(Snippets.extract("nothing to see here", terms("invoice"), CHARS));
+        assertNull(Snippets.extract("", terms("invoice"), CHARS));
+        assertNull(Snippets.extract("invoice", Collections.emptyList(), CHARS));
+    }
+
+    @Test
+    public void highlightsCoverTheMatchingWords() {
+        Snippets.Snippet s = Snippets.extract("Your Invoice for March, invoices attached", terms("invoice*"), CHARS);
+        assertNotNull(s);
+        assertEquals(Arrays.asList("Invoice", "invoices"), highlighted(s));
+        // Whole words only without the prefix star
+        s = Snippets.extract("Your Invoice for March, invoices attached", terms("invoice"), CHARS);
+        assertEquals(Collections.singletonList("Invoice"), highlighted(s));
+    }
+
+    @Test
+    public void picksTheWindowWithMostHits() {
+        String body = "budget once at the start. " + filler(400)
+                + "the budget review and the budget numbers for the budget meeting " + filler(400);
+        Snippets.Snippet s = Snippets.extract(body, terms("budget"), CHARS);
+        assertNotNull(s);
+        assertTrue(s.text, s.text.startsWith("…"));
+        assertTrue(s.text, s.text.endsWith("…"));
+        assertEquals(Arrays.asList("budget", "budget", "budget"), highlighted(s));
+        // Ellipses aside, never longer than asked for
+        assertTrue(s.text.length() <= CHARS + 2);
+    }
+
+    @Test
+    public void onlyTheScanCapIsSearched() {
+        // A hit past the first 8,000 chars is never looked for
+        assertNull(Snippets.extract(filler(9_000) + " invoice", terms("invoice"), CHARS));
+        assertNotNull(Snippets.extract(filler(7_000) + " invoice", terms("invoice"), CHARS));
+    }
+
+    @Test
+    public void firstScreenFitsTheBudget() {
+        List<String> bodies = new ArrayList<>(SCREEN);
+        for (int i = 0; i < SCREEN; i++) bodies.add(filler(300 + (i % 7) * 100) + " invoice " + filler(200));
+        List<String> terms = terms("invoice", "meeting*");
+        long ms = medianMs(() -> {
+            for (String b : bodies) Snippets.extract(b, terms, CHARS);
+        });
+        assertTrue("screen took " + ms + "ms", ms <= BUDGET_MS / 2);
+    }
+
+    @Test
+    public void worstCaseBodyIsASmallPartOfTheBudget() {
+        // Every word a hit, well past the scan cap
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 20_000) sb.append("meeting ");
+        String body = sb.toString();
+        List<String> terms = terms("meet*");
+        long ms = medianMs(() -> Snippets.extract(body, terms, CHARS));
+        assertTrue("one body took " + ms + "ms", ms <= BUDGET_MS / 4);
+    }
+
+    /* ===== helpers ===== */
+
+    private static List<String> terms(String... t) {
+        return Arrays.asList(t);
+    }
+
+    private static List<String> highlighted(Snippets.Snippet s) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < s.highlights.length; i += 2) {
+            out.add(s.text.substring(s.highlights[i], s.highlights[i + 1]));
+        }
+        return out;
+    }
+
+    private static String filler(int chars) {
+        String[] words = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit"};
+        StringBuilder sb = new StringBuilder(chars + 16);
+        for (int i = 0; sb.length() < chars; i++) sb.append(words[i % words.length]).append(' ');
+        return sb.toString().trim();
+    }
+
+    private static long medianMs(Runnable work) {
+        for (int i = 0; i < 3; i++) work.run(); // warm up the JIT
+        long[] ns = new long[RUNS];
+        for (int r = 0; r < RUNS; r++) {
+            long t0 = System.nanoTime();
+            work.run();
+            ns[r] = System.nanoTime() - t0;
+        }
+        Arrays.sort(ns);
+        return ns[RUNS / 2] / 1_000_000;
+    }
+}
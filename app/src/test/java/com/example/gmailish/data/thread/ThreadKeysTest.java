@@ -0,0 +1,60 @@
+package com.example.gmailish.data.thread;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThreadKeysTest {
+
+    @Test
+    public void replyAndForwardPrefixesAreStripped() {
+        assertEquals("lunch", ThreadKeys.normalizeSubject("Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("Re: Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("RE: re: Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("Fwd: Re: Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("FW:Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("AW: Lunch"));
+        assertEquals("lunch", ThreadKeys.normalizeSubject("Re[2]: Lunch"));
+    }
+
+    @Test
+    public void listTagsAreStripped() {
+        assertEquals("release notes", ThreadKeys.normalizeSubject("[team] Re: [announce] Release notes"));
+    }
+
+    @Test
+    public void whitespaceIsCollapsed() {
+        assertEquals("weekly sync", ThreadKeys.normalizeSubject("  Re:   Weekly\t\n sync  "));
+    }
+
+    @Test
+    public void prefixesOnlyAtTheStart() {
+        // "re" as a word, or a colon later on, is part of the subject
+        assertEquals("regarding: budget", ThreadKeys.normalizeSubject("Regarding: budget"));
+        assertEquals("notes re: budget", ThreadKeys.normalizeSubject("Notes re: budget"));
+    }
+
+    @Test
+    public void emptySubjects() {
+        assertEquals("", ThreadKeys.normalizeSubject(null));
+        assertEquals("", ThreadKeys.normalizeSubject("   "));
+        assertEquals("", ThreadKeys.normalizeSubject("Re: "));
+    }
+
+    @Test
+    public void replySharesTheKey() {
+        String sent = ThreadKeys.derive("user-a", "user-b", "Lunch");
+        // Sender and recipient swap in the reply
+        assertEquals(sent, ThreadKeys.derive("user-b", "user-a", "Re: Lunch"));
+        assertEquals(sent, ThreadKeys.derive("USER-A ", "user-b", "lunch"));
+        assertNotEquals(sent, ThreadKeys.derive("user-a", "user-c", "Lunch"));
+        assertNotEquals(sent, ThreadKeys.derive("user-a", "user-b", "Dinner"));
+    }
+
+    @Test
+    public void serverKeys() {
+        assertEquals("s:t1", ThreadKeys.fromServer(" t1 "));
+        assertNull(ThreadKeys.fromServer(" "));
+        assertNull(ThreadKeys.fromServer(null));
+    }
+}
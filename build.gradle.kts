@@ -1,3 +1,4 @@
 plugins {
     id("com.android.application") version "8.5.2" apply false
+    id("com.android.test") version "8.5.2" apply false
     id("com.google.dagger.hilt.android") version "2.51.1" apply false}
\ No newline at end of file
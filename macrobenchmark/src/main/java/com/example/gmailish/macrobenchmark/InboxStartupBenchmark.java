@@ -0,0 +1,68 @@
+package com.example.gmailish.macrobenchmark;
+
+import android.content.Intent;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Cold start of InboxActivity, with and without the first-screen snapshot.
+ * timeToFullDisplayMs is time-to-first-content: the activity reports fully
+ * drawn on the first list it shows (snapshot rows, or the Room query).
+ *
+ * Needs a logged-in install (jwt + user_id in prefs) that has opened the inbox
+ * once, so a snapshot exists. Run: ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class InboxStartupBenchmark {
+
+    private static final String PACKAGE = "com.example.gmailish";
+    private static final String INBOX = PACKAGE + ".ui.inbox.InboxActivity";
+    // FirstScreenSnapshot.EXTRA_SKIP in the app
+    private static final String EXTRA_SKIP = "skip_first_screen_snapshot";
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule rule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartWithoutSnapshot() {
+        measure(true);
+    }
+
+    @Test
+    public void coldStartWithSnapshot() {
+        measure(false);
+    }
+
+    private void measure(boolean skipSnapshot) {
+        rule.measureRepeated(
+                PACKAGE,
+                Collections.singletonList(new StartupTimingMetric()),
+                new CompilationMode.Partial(),
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    Intent intent = new Intent()
+                            .setClassName(PACKAGE, INBOX)
+                            .putExtra(EXTRA_SKIP, skipSnapshot);
+                    scope.startActivityAndWait(intent);
+                    return Unit.INSTANCE;
+                });
+    }
+}
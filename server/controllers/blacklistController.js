@@ -1,9 +1,25 @@
 // server/controllers/blacklistController.js
 const {
   addUrl,
-  removeUrl
+  removeUrl,
+  changesSince
 } = require('../services/blacklistService');
 
+// GET /api/blacklist/changes?since=<version>&limit=<1-1000>
+exports.getChanges = async (req, res) => {
+  const since = req.query.since === undefined ? 0 : Number(req.query.since);
+  if (!Number.isInteger(since) || since < 0) {
+    return res.status(400).json({ error: 'Invalid since' });
+  }
+  const limit = Math.min(Math.max(parseInt(req.query.limit, 10) || 500, 1), 1000);
+  try {
+    return res.status(200).json(await changesSince(since, limit));
+  } catch (err) {
+    console.error('getChanges error:', err);
+    return res.status(500).json({ error: 'Internal server error' });
+  }
+};
+
 // POST /api/blacklist
 exports.addToBlacklist = async (req, res) => {
   const { id: url } = req.body;
@@ -2,6 +2,7 @@
 
 const mailsService = require('../services/mail');
 const Mail         = require('../models/mail');
+const events       = require('../services/events');
 const {
   isBlacklisted,
   addUrl,
@@ -85,13 +86,15 @@ exports.sendMail = async (req, res) => {
     const check = await containsBlacklistedUrl(`${subject} ${content}`);
     const recipientLabels = check.blacklisted ? ['spam'] : ['inbox'];
 
-    const { sentMail } = await mailsService.createMail(
+    const { inboxMail, sentMail } = await mailsService.createMail(
       req.user.id,
       to,
       subject.trim(),
       content.trim(),
       recipientLabels
     );
+    events.publish(inboxMail.ownerId, 'mail.new', { ids: [inboxMail.id] });
+    events.publish(sentMail.ownerId, 'mail.new', { ids: [sentMail.id] });
     return res.status(201).json(sentMail);
   } catch (err) {
     if (err.message === 'Sender not found' || err.message === 'Recipient not found') {
@@ -119,6 +122,24 @@ exports.getInbox = async (req, res) => {
   }
 };
 
+/**
+ * Page through every mail the user owns for the initial sync.
+ * Query: cursor (opaque, from the previous page), limit (1-500, default 200).
+ */
+exports.syncMails = async (req, res) => {
+  try {
+    const limit = Math.min(Math.max(parseInt(req.query.limit, 10) || 200, 1), 500);
+    const page = await mailsService.getMailsPage(req.user.id, req.query.cursor, limit);
+    return res.status(200).json(page);
+  } catch (err) {
+    if (err.message === 'Invalid cursor') {
+      return res.status(400).json({ error: err.message });
+    }
+    console.error('syncMails error:', err);
+    return res.status(500).json({ error: 'Internal server error' });
+  }
+};
+
 /**
  * Get all spam mails for the authenticated user.
  */
@@ -165,6 +186,7 @@ exports.toggleSpam = async (req, res) => {
     }
 
     await mail.save();
+    events.publish(req.user.id, 'mail.labels', { id: mail.id, labels: mail.labels });
     const message = mail.labels.includes('spam') ? 'Marked as spam' : 'Unmarked as spam';
     return res.status(200).json({ message, mail: mail.toObject() });
   } catch (err) {
@@ -202,6 +224,7 @@ exports.updateMail = async (req, res) => {
     if (subject) mail.subject = subject.trim();
     if (content) mail.content = content.trim();
     await mail.save();
+    events.publish(req.user.id, 'mail.new', { ids: [mail.id] });
     return res.status(204).end();
   } catch (err) {
     console.error('updateMail error:', err);
@@ -218,6 +241,7 @@ exports.deleteMail = async (req, res) => {
     if (!deletedCount) {
       return res.status(404).json({ error: 'Mail not found' });
     }
+    events.publish(req.user.id, 'mail.delete', { ids: [req.params.id] });
     return res.status(204).end();
   } catch (err) {
     console.error('deleteMail error:', err);
@@ -231,6 +255,7 @@ exports.deleteMail = async (req, res) => {
 exports.clearTrash = async (req, res) => {
   try {
     const count = await mailsService.clearTrash(req.user.id);
+    if (count > 0) events.publish(req.user.id, 'reset');
     return res.status(200).json({ message: `Deleted ${count} emails from trash.` });
   } catch (err) {
     console.error('clearTrash error:', err);
@@ -316,6 +341,7 @@ exports.addLabelToEmail = async (req, res) => {
     }
 
     await mail.save();
+    events.publish(req.user.id, 'mail.labels', { id: mail.id, labels: mail.labels });
     return res.status(200).json({
       message: `Label '${label}' ${resolvedAction}ed`,
       mail: mail.toObject(),
@@ -337,6 +363,7 @@ exports.removeLabelFromEmail = async (req, res) => {
     }
     mail.labels = mail.labels.filter(l => l !== req.params.label);
     await mail.save();
+    events.publish(req.user.id, 'mail.labels', { id: mail.id, labels: mail.labels });
     return res.status(200).json({
       message: `Label '${req.params.label}' removed`,
       mail: mail.toObject()
@@ -354,6 +381,7 @@ exports.markAsRead = async (req, res) => {
   try {
     await mailsService.markAsReadById(req.params.id, req.user.id);
     const mail = await mailsService.getMailById(req.params.id);
+    events.publish(req.user.id, 'mail.read', { ids: [mail.id], read: true });
     return res.status(200).json(mail);
   } catch (err) {
     console.error('markAsRead error:', err);
@@ -371,6 +399,7 @@ exports.markAsUnread = async (req, res) => {
       return res.status(400).json({ error: 'Expected array of IDs' });
     }
     await mailsService.markAsUnreadByIds(ids, req.user.id);
+    events.publish(req.user.id, 'mail.read', { ids, read: false });
     return res.sendStatus(204);
   } catch (err) {
     console.error('markAsUnread error:', err);
@@ -384,6 +413,7 @@ exports.markAsUnread = async (req, res) => {
 exports.markAllAsRead = async (req, res) => {
   try {
     await mailsService.markAllAsRead(req.user.id);
+    events.publish(req.user.id, 'reset');
     return res.sendStatus(204);
   } catch (err) {
     console.error('markAllAsRead error:', err);
@@ -408,9 +438,20 @@ exports.toggleStar = async (req, res) => {
     }
 
     await mail.save();
+    events.publish(req.user.id, 'mail.labels', { id: mail.id, labels: mail.labels });
     return res.status(200).json({ message: 'Star toggled', mail: mail.toObject() });
   } catch (err) {
     console.error('toggleStar error:', err);
     return res.status(500).json({ error: 'Internal server error' });
   }
 };
+
+/**
+ * Server-sent event stream of compact mailbox changes for the authenticated user.
+ * Resumes from the Last-Event-ID header (or ?lastEventId=) when possible,
+ * otherwise emits a single 'reset' telling the client to do a full reload.
+ */
+exports.streamEvents = (req, res) => {
+  const lastId = req.get('Last-Event-ID') || req.query.lastEventId || null;
+  events.stream(req, res, req.user.id, lastId);
+};
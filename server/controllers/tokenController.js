@@ -3,6 +3,27 @@
 const jwt                     = require("jsonwebtoken");
 // Use the user service instead of direct model access
 const { validateCredentials } = require("../services/user");
+const User                    = require("../models/user");
+
+const ACCESS_TTL_MS = 2 * 60 * 60 * 1000; // 2 hours
+
+function signAccess(userId) {
+  return jwt.sign({ userId }, process.env.JWT_SECRET, { expiresIn: "2h" });
+}
+
+// Long-lived token only accepted by POST /api/tokens/refresh (see middleware/auth)
+function signRefresh(userId) {
+  return jwt.sign({ userId, type: "refresh" }, process.env.JWT_SECRET, { expiresIn: "30d" });
+}
+
+function setTokenCookie(res, token) {
+  return res.cookie("token", token, {
+    httpOnly: true,
+    sameSite: "Lax",
+    secure: process.env.NODE_ENV === "production",
+    maxAge: ACCESS_TTL_MS,
+  });
+}
 
 exports.login = async (req, res) => {
   const { email, password } = req.body;
@@ -19,22 +40,13 @@ exports.login = async (req, res) => {
       return res.status(401).json({ error: "Invalid credentials" });
     }
 
-    // 4. Sign JWT with your UUID field
-    const token = jwt.sign(
-      { userId: user.id },
-      process.env.JWT_SECRET,
-      { expiresIn: "2h" }
-    );
+    // 4. Sign JWT with your UUID field (+ a refresh token for mobile clients)
+    const token = signAccess(user.id);
+    const refreshToken = signRefresh(user.id);
 
     // 5. Set cookie + respond
-    return res
-      .cookie("token", token, {
-        httpOnly: true,
-        sameSite: "Lax",
-        secure: process.env.NODE_ENV === "production",
-        maxAge: 2 * 60 * 60 * 1000, // 2 hours
-      })
-      .json({ message: "Login successful" });
+    return setTokenCookie(res, token)
+      .json({ message: "Login successful", refreshToken });
 
   } catch (err) {
     console.error("login error:", err);
@@ -42,6 +54,41 @@ exports.login = async (req, res) => {
   }
 };
 
+/**
+ * Exchange a refresh token for a new access token (rotates the refresh token).
+ * Body: { refreshToken }
+ */
+exports.refresh = async (req, res) => {
+  const { refreshToken } = req.body || {};
+  if (!refreshToken) {
+    return res.status(400).json({ error: "refreshToken required" });
+  }
+
+  let payload;
+  try {
+    payload = jwt.verify(refreshToken, process.env.JWT_SECRET);
+  } catch (err) {
+    return res.status(401).json({ error: "Invalid or expired refresh token" });
+  }
+  if (payload.type !== "refresh") {
+    return res.status(401).json({ error: "Invalid or expired refresh token" });
+  }
+
+  try {
+    const user = await User.findOne({ id: payload.userId }).lean();
+    if (!user) {
+      return res.status(401).json({ error: "Invalid refresh token: user not found" });
+    }
+
+    const token = signAccess(user.id);
+    return setTokenCookie(res, token)
+      .json({ token, refreshToken: signRefresh(user.id) });
+  } catch (err) {
+    console.error("refresh error:", err);
+    return res.status(500).json({ error: "Internal server error" });
+  }
+};
+
 exports.logout = (req, res) => {
   res.clearCookie("token", {
     httpOnly: true,
@@ -22,6 +22,9 @@ async function authenticate(req, res, next) {
   } catch (err) {
     return res.status(401).json({ error: "Invalid or expired token" });
   }
+  if (payload.type === "refresh") {
+    return res.status(401).json({ error: "Refresh token cannot be used here" });
+  }
 
   // 2. Look up the user in Mongo by your UUID field
   const user = await User.findOne({ id: payload.userId }).lean();
@@ -0,0 +1,137 @@
+// server/middleware/idempotency.js
+
+// How long a completed response is replayed for the same key
+const TTL_MS = 24 * 60 * 60 * 1000;
+// A first request still running after this is given up on: its key runs again
+const PENDING_MAX_MS = 2 * 60 * 1000;
+const MAX_ENTRIES = 10000;
+
+// `${userId}:${key}` -> { status, body, json, expiresAt } once finished,
+//                       { pending: Promise, settle, startedAt } while the first request is running
+const entries = new Map();
+
+function dropPending(k, e) {
+  entries.delete(k);
+  e.settle();
+}
+
+function sweep(now) {
+  for (const [k, e] of entries) {
+    if (e.pending) {
+      if (e.startedAt + PENDING_MAX_MS <= now) dropPending(k, e);
+    } else if (e.expiresAt <= now) {
+      entries.delete(k);
+    }
+  }
+  // Still too big: drop oldest completed entries (Map keeps insertion order)
+  for (const [k, e] of entries) {
+    if (entries.size <= MAX_ENTRIES) break;
+    if (!e.pending) entries.delete(k);
+  }
+}
+
+function replay(res, entry) {
+  res.set('Idempotent-Replayed', 'true');
+  res.status(entry.status);
+  return entry.json ? res.json(entry.body) : res.end();
+}
+
+// Wait for the first request, but never past its age bound
+function waitFor(entry) {
+  const left = entry.startedAt + PENDING_MAX_MS - Date.now();
+  if (left <= 0) return Promise.resolve();
+  let timer;
+  const timeout = new Promise(resolve => { timer = setTimeout(resolve, left); });
+  return Promise.race([entry.pending, timeout]).finally(() => clearTimeout(timer));
+}
+
+/**
+ * Deduplicate requests carrying an `Idempotency-Key` header (scoped per user).
+ * The first request runs normally; concurrent duplicates wait for it and
+ * later duplicates get the stored response. 5xx results are not stored so
+ * the client can retry them. Must run after `authenticate`.
+ */
+async function idempotency(req, res, next) {
+  const key = req.get('Idempotency-Key');
+  if (!key) return next();
+  if (key.length > 200) {
+    return res.status(400).json({ error: 'Idempotency-Key too long' });
+  }
+
+  const id = `${req.user.id}:${key}`;
+  if (entries.size > MAX_ENTRIES) sweep(Date.now());
+
+  let entry = entries.get(id);
+  if (entry && entry.pending) {
+    await waitFor(entry);
+    entry = entries.get(id);
+    // Still running past its bound: stop waiting on it and run this one
+    if (entry && entry.pending) {
+      dropPending(id, entry);
+      entry = undefined;
+    }
+  }
+  if (entry && !entry.pending && entry.expiresAt > Date.now()) {
+    return replay(res, entry);
+  }
+
+  let settle;
+  const pending = new Promise(resolve => { settle = resolve; });
+  const mine = { pending, settle, startedAt: Date.now() };
+  entries.set(id, mine);
+
+  // Every way of answering (json, send, sendStatus, end, the error handler)
+  // goes through res.end; json only records the body for replays.
+  let jsonBody;
+  let isJson = false;
+  let ended = false;
+  const json = res.json.bind(res);
+  res.json = (body) => {
+    jsonBody = body;
+    isJson = true;
+    return json(body);
+  };
+
+  function finalize() {
+    if (entries.get(id) !== mine) {
+      // Aged out meanwhile; the key may already belong to a newer request
+      settle();
+      return;
+    }
+    if (res.statusCode < 500) {
+      entries.set(id, { status: res.statusCode, body: jsonBody, json: isJson, expiresAt: Date.now() + TTL_MS });
+    } else {
+      entries.delete(id);
+    }
+    settle();
+  }
+
+  const end = res.end.bind(res);
+  res.end = (...args) => {
+    if (!ended) {
+      ended = true;
+      finalize();
+    }
+    return end(...args);
+  };
+
+  // Backstops for responses that never reach res.end above. A dropped
+  // connection alone is not one: the handler keeps running and its answer
+  // still lands through res.end, so a retry waits instead of sending twice.
+  res.on('finish', () => {
+    if (!ended) {
+      ended = true;
+      finalize();
+    }
+  });
+  res.on('close', () => {
+    if (!ended && res.headersSent) {
+      ended = true;
+      finalize();
+    }
+  });
+
+  next();
+}
+
+module.exports = idempotency;
@@ -7,6 +7,16 @@ const blacklistSchema = new mongoose.Schema({
     required: true,
     unique: true,
     trim: true
+  },
+  // Sync version of the last change to this url (see blacklistService.changesSince)
+  version: {
+    type: Number,
+    index: true
+  },
+  // Tombstone: removed urls stay (with a new version) so clients learn of the removal
+  deleted: {
+    type: Boolean,
+    default: false
   }
 }, {
   timestamps: true
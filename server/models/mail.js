@@ -19,5 +19,7 @@ const mailSchema = new mongoose.Schema({
   read:           { type: Boolean, required: true, default: false }
 });
 
+// Keyset pagination for the initial sync (see services/mail.getMailsPage)
+mailSchema.index({ ownerId: 1, timestamp: -1, id: -1 });
 
 module.exports = mongoose.model('Mail', mailSchema);
@@ -6,6 +6,9 @@ const blacklistController = require('../controllers/blacklistController');
 const authenticate = require('../middleware/auth');
 router.use(authenticate); 
 
+// GET /api/blacklist/changes?since=N - Additions and removals after version N
+router.get('/changes', blacklistController.getChanges);
+
 
 // POST /api/blacklist - Add a URL to the blacklist
 router.post('/', blacklistController.addToBlacklist);
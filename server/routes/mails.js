@@ -3,11 +3,14 @@ const express = require('express');
 const router = express.Router();
 const mailsController = require('../controllers/mailsController');
 const authenticate = require('../middleware/auth');
+const idempotency = require('../middleware/idempotency');
 
 router.use(authenticate);
 
 //  GET Routes 
 router.get('/spam', mailsController.getSpam);
+router.get('/events', mailsController.streamEvents);
+router.get('/sync', mailsController.syncMails);
 router.get('/search/:label/:query', mailsController.searchMailsByLabel);
 router.get('/search/:query', mailsController.searchMails);
 router.get('/', mailsController.getInbox);
@@ -16,7 +19,7 @@ router.get('/:id', mailsController.getMailById); //
 //POST Routes 
 router.post('/draft', mailsController.saveDraft);
 router.post('/:id/spam', mailsController.toggleSpam);
-router.post('/', mailsController.sendMail);
+router.post('/', idempotency, mailsController.sendMail);
 
 // PATCH Routes 
 router.patch('/markAllRead', mailsController.markAllAsRead);
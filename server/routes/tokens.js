@@ -5,6 +5,7 @@ const auth = require("../middleware/auth");
 const tokenController = require("../controllers/tokenController");
 
 router.post("/", tokenController.login);
+router.post("/refresh", tokenController.refresh);
 router.post("/logout", tokenController.logout);
 router.get("/me", auth, tokenController.getCurrentUser);
 
@@ -1,57 +1,170 @@
 // server/services/blacklistService.js
 const Blacklist = require('../models/blacklist');
 
-async function addUrl(url) {
+const LIVE = { deleted: { $ne: true } };
+
+/* =========================
+   Versions
+   =========================
+ * Every add and remove stamps the url's document with the next version, so a
+ * client can ask for "everything after version N". The counter lives in this
+ * process (one Node instance), seeded from the collection on first use.
+ *
+ * Versions are taken before the write lands, so a later version can commit
+ * first. changesSince only reports up to the last version below every write
+ * still in flight: a client never skips past a change that hasn't landed yet.
+ */
+let lastVersion = 0;
+let ready = null;
+const inFlight = new Set();
+
+function init() {
+  if (!ready) {
+    ready = (async () => {
+      const top = await Blacklist.findOne({ version: { $ne: null } }).sort({ version: -1 }).lean();
+      lastVersion = top ? top.version : 0;
+      // Entries from before versioning: number them once
+      const legacy = await Blacklist.find({ version: null }, { _id: 1 }).lean();
+      for (const doc of legacy) {
+        await Blacklist.updateOne({ _id: doc._id }, { $set: { version: ++lastVersion } });
+      }
+    })().catch(err => {
+      ready = null;
+      throw err;
+    });
+  }
+  return ready;
+}
+
+async function stamped(write) {
+  await init();
+  const version = ++lastVersion;
+  inFlight.add(version);
   try {
-    const entry = await Blacklist.create({ url });
-    return entry.toObject();
-  } catch (err) {
-    if (err.code === 11000) {
-      const e = new Error('URL already blacklisted');
-      e.code = 409;
-      throw e;
-    }
-    throw err;
+    return await write(version);
+  } finally {
+    inFlight.delete(version);
   }
 }
 
+function stableVersion() {
+  let v = lastVersion;
+  for (const pending of inFlight) v = Math.min(v, pending - 1);
+  return v;
+}
+
+/* =========================
+   Writes
+   ========================= */
+
+async function addUrl(url) {
+  return stamped(async version => {
+    // Revive a tombstone, else insert; a live entry is a duplicate
+    const revived = await Blacklist.findOneAndUpdate(
+      { url, deleted: true },
+      { $set: { deleted: false, version } },
+      { new: true }
+    ).lean();
+    if (revived) return revived;
+    try {
+      const entry = await Blacklist.create({ url, version });
+      return entry.toObject();
+    } catch (err) {
+      if (err.code === 11000) {
+        const e = new Error('URL already blacklisted');
+        e.code = 409;
+        throw e;
+      }
+      throw err;
+    }
+  });
+}
+
 async function removeUrl(url) {
-  const result = await Blacklist.deleteOne({ url });
-  if (result.deletedCount === 0) {
-    const e = new Error('URL not found in blacklist');
-    e.code = 404;
-    throw e;
+  return stamped(async version => {
+    const result = await Blacklist.updateOne(
+      { url, ...LIVE },
+      { $set: { deleted: true, version } }
+    );
+    if (result.matchedCount === 0) {
+      const e = new Error('URL not found in blacklist');
+      e.code = 404;
+      throw e;
+    }
+  });
+}
+
+/** Bulk add (dedup, ignore duplicates) */
+async function addMany(urls) {
+  if (!urls || urls.length === 0) return;
+  for (const u of new Set(urls)) {
+    try { await addUrl(u); } catch (err) { if (err.code !== 409) throw err; }
   }
 }
 
+/* =========================
+   Reads
+   ========================= */
+
 async function isBlacklisted(url) {
-  const count = await Blacklist.countDocuments({ url });
+  const count = await Blacklist.countDocuments({ url, ...LIVE });
   return count > 0;
 }
 
-/** NEW: return all urls as array of strings */
+/** All urls as an array of strings */
 async function getAllUrls() {
-  const docs = await Blacklist.find({}, { url: 1, _id: 0 }).lean();
+  const docs = await Blacklist.find(LIVE, { url: 1, _id: 0 }).lean();
   return docs.map(d => d.url);
 }
 
-/** NEW: bulk add (dedup, ignore duplicates) */
-async function addMany(urls) {
-  if (!urls || urls.length === 0) return;
-  const ops = urls.map(u => ({
-    updateOne: {
-      filter: { url: u },
-      update: { $setOnInsert: { url: u } },
-      upsert: true
-    }
-  }));
-  await Blacklist.bulkWrite(ops, { ordered: false });
+/**
+ * Changes after version `since`, oldest first, at most `limit`:
+ * { version, reset, more, added: [{ url, createdAt, updatedAt }], removed: [url] }.
+ * Ask again with since = version while `more` is true. `reset` means the
+ * client's version is unknown here (another database): the page starts from
+ * scratch and the client should drop whatever it has that isn't listed.
+ * From 0 tombstones are left out; there is nothing to remove yet.
+ */
+async function changesSince(since, limit) {
+  await init();
+  const upTo = stableVersion();
+  let from = Number.isInteger(since) && since > 0 ? since : 0;
+  let reset = false;
+  if (from > lastVersion) {
+    reset = true;
+    from = 0;
+  }
+
+  const query = { version: { $gt: from, $lte: upTo } };
+  if (from === 0) Object.assign(query, LIVE);
+  const docs = await Blacklist.find(query, { url: 1, deleted: 1, version: 1, createdAt: 1, updatedAt: 1, _id: 0 })
+    .sort({ version: 1 })
+    .limit(limit + 1)
+    .lean();
+
+  const more = docs.length > limit;
+  if (more) docs.pop();
+
+  const added = [];
+  const removed = [];
+  for (const d of docs) {
+    if (d.deleted) removed.push(d.url);
+    else added.push({ url: d.url, createdAt: d.createdAt, updatedAt: d.updatedAt });
+  }
+  return {
+    version: more ? docs[docs.length - 1].version : Math.max(upTo, from),
+    reset,
+    more,
+    added,
+    removed
+  };
 }
 
 module.exports = {
   addUrl,
   removeUrl,
   isBlacklisted,
-  getAllUrls,   // NEW
-  addMany       // NEW
+  getAllUrls,
+  addMany,
+  changesSince
 };
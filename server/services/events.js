@@ -0,0 +1,121 @@
+// server/services/events.js
+
+const { EventEmitter } = require('events');
+const crypto = require('crypto');
+
+// How many recent events we keep per user so a reconnecting client can resume
+const BUFFER_SIZE = 500;
+const HEARTBEAT_MS = 25000;
+
+const emitter = new EventEmitter();
+emitter.setMaxListeners(0);
+
+// Event ids are "<bootId>.<seq>". The buffers live in memory, so an id from
+// another boot (or one we cannot parse) can never be resumed from.
+const BOOT_ID = crypto.randomBytes(6).toString('hex');
+let lastSeq = 0;
+
+// userId -> { events: [{ id, seq, type, data }] (oldest first), evictedUpTo }
+const buffers = new Map();
+
+/**
+ * Publish a compact change event for one user.
+ * Types: mail.new { ids }, mail.read { ids, read }, mail.labels { id, labels },
+ *        mail.delete { ids }, reset {}
+ */
+function publish(userId, type, data = {}) {
+  if (!userId) return null;
+  const seq = ++lastSeq;
+  const event = { id: `${BOOT_ID}.${seq}`, seq, type, data };
+
+  let buf = buffers.get(userId);
+  if (!buf) {
+    buf = { events: [], evictedUpTo: 0 };
+    buffers.set(userId, buf);
+  }
+  buf.events.push(event);
+  if (buf.events.length > BUFFER_SIZE) {
+    buf.evictedUpTo = buf.events.shift().seq;
+  }
+
+  emitter.emit(userId, event);
+  return event;
+}
+
+/** Sequence number of an id issued by this boot, or null. */
+function seqOf(id) {
+  const m = /^([0-9a-f]+)\.(\d+)$/.exec(String(id));
+  if (!m || m[1] !== BOOT_ID) return null;
+  const seq = Number(m[2]);
+  return Number.isSafeInteger(seq) && seq <= lastSeq ? seq : null;
+}
+
+/**
+ * Events for a user after the given id.
+ * `reset` is true when the client cannot be resumed from the buffer
+ * (the id is unknown, from another boot, or already evicted).
+ */
+function since(userId, afterId) {
+  if (!afterId) return { reset: false, events: [] };
+  const afterSeq = seqOf(afterId);
+  if (afterSeq === null) return { reset: true, events: [] };
+  const buf = buffers.get(userId);
+  if (!buf) return { reset: false, events: [] };
+  if (afterSeq < buf.evictedUpTo) return { reset: true, events: [] };
+  return { reset: false, events: buf.events.filter(e => e.seq > afterSeq) };
+}
+
+/**
+ * Subscribe to live events for a user. Returns an unsubscribe function.
+ */
+function subscribe(userId, listener) {
+  emitter.on(userId, listener);
+  return () => emitter.off(userId, listener);
+}
+
+function currentId() {
+  return `${BOOT_ID}.${lastSeq}`;
+}
+
+/**
+ * Serve the event stream for one user on an open response: a 'reset' if
+ * `lastEventId` cannot be resumed, the missed events otherwise, then live
+ * events and heartbeats until the request closes.
+ */
+function stream(req, res, userId, lastEventId) {
+  res.writeHead(200, {
+    'Content-Type':  'text/event-stream',
+    'Cache-Control': 'no-cache',
+    Connection:      'keep-alive'
+  });
+
+  const write = (e) => {
+    res.write(`id: ${e.id}\nevent: ${e.type}\ndata: ${JSON.stringify(e.data)}\n\n`);
+  };
+
+  // Tell EventSource-style clients how long to wait before reconnecting
+  res.write('retry: 3000\n\n');
+
+  const backlog = since(userId, lastEventId);
+  if (backlog.reset) {
+    write({ id: currentId(), type: 'reset', data: {} });
+  }
+  backlog.events.forEach(write);
+
+  const unsubscribe = subscribe(userId, write);
+  const heartbeat = setInterval(() => res.write(': ping\n\n'), HEARTBEAT_MS);
+
+  req.on('close', () => {
+    clearInterval(heartbeat);
+    unsubscribe();
+  });
+}
+
+module.exports = {
+  BUFFER_SIZE,
+  publish,
+  since,
+  subscribe,
+  currentId,
+  stream
+};
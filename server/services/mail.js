@@ -246,6 +246,52 @@ async function getEmailsByLabelName(labelName, userId) {
     .lean();
 }
 
+/**
+ * Encode/decode an opaque keyset cursor ({ timestamp, id } of the last mail sent).
+ */
+function encodeCursor(mail) {
+  const raw = JSON.stringify({ t: new Date(mail.timestamp).getTime(), id: mail.id });
+  return Buffer.from(raw).toString('base64url');
+}
+
+function decodeCursor(cursor) {
+  try {
+    const { t, id } = JSON.parse(Buffer.from(cursor, 'base64url').toString());
+    if (typeof t !== 'number' || typeof id !== 'string') return null;
+    return { t: new Date(t), id };
+  } catch (e) {
+    return null;
+  }
+}
+
+/**
+ * One page of every mail the user owns, newest first, for the initial sync.
+ * Keyset-paged on (timestamp, id) so pages stay stable while new mail arrives.
+ * Returns { mails, nextCursor, total } where nextCursor is null on the last page
+ * and total is only computed for the first page.
+ * Throws on a malformed cursor.
+ */
+async function getMailsPage(userId, cursor, limit) {
+  const query = { ownerId: userId };
+  if (cursor) {
+    const c = decodeCursor(cursor);
+    if (!c) throw new Error('Invalid cursor');
+    query.$or = [
+      { timestamp: { $lt: c.t } },
+      { timestamp: c.t, id: { $lt: c.id } }
+    ];
+  }
+
+  const mails = await Mail.find(query)
+    .sort({ timestamp: -1, id: -1 })
+    .limit(limit)
+    .lean();
+
+  const nextCursor = mails.length === limit ? encodeCursor(mails[mails.length - 1]) : null;
+  const total = cursor ? null : await Mail.countDocuments({ ownerId: userId });
+  return { mails, nextCursor, total };
+}
+
 module.exports = {
   createMail,
   saveDraft,
@@ -258,6 +304,7 @@ module.exports = {
   getInboxForUser,
   searchMails,
   searchMailsWithLabel,
-  getEmailsByLabelName
+  getEmailsByLabelName,
+  getMailsPage
 
 };
@@ -0,0 +1,113 @@
+// server/tests/events.test.js
+// Run with: npm test (node --test, no extra dependencies)
+
+const test = require('node:test');
+const assert = require('node:assert');
+const http = require('http');
+
+const events = require('../services/events');
+
+// Stand-in for the Express route: same stream, user from ?user=
+function startServer() {
+  const server = http.createServer((req, res) => {
+    const url = new URL(req.url, 'http://localhost');
+    events.stream(req, res, url.searchParams.get('user'), req.headers['last-event-id'] || null);
+  });
+  return new Promise(resolve => server.listen(0, () => resolve(server)));
+}
+
+// Open the stream and collect parsed events until `count` arrived
+function read(server, user, lastEventId, count) {
+  return new Promise((resolve, reject) => {
+    const headers = lastEventId ? { 'Last-Event-ID': lastEventId } : {};
+    const req = http.get({ port: server.address().port, path: `/?user=${user}`, headers }, res => {
+      const got = [];
+      let buf = '';
+      res.setEncoding('utf8');
+      res.on('data', chunk => {
+        buf += chunk;
+        let end;
+        while ((end = buf.indexOf('\n\n')) >= 0) {
+          const block = buf.slice(0, end);
+          buf = buf.slice(end + 2);
+          const e = {};
+          for (const line of block.split('\n')) {
+            const m = /^(id|event|data): (.*)$/.exec(line);
+            if (m) e[m[1]] = m[2];
+          }
+          if (e.event) got.push({ id: e.id, type: e.event, data: JSON.parse(e.data) });
+        }
+        if (got.length >= count) {
+          clearTimeout(timer);
+          req.destroy();
+          resolve(got);
+        }
+      });
+    });
+    req.on('error', err => { if (!req.destroyed) reject(err); });
+    const timer = setTimeout(() => { req.destroy(); reject(new Error(`timed out waiting for ${count} events`)); }, 2000);
+  });
+}
+
+test('resumes after Last-Event-ID with only the missed events', async () => {
+  const server = await startServer();
+  try {
+    const first = events.publish('u-resume', 'mail.new', { ids: ['a'] });
+    events.publish('u-resume', 'mail.new', { ids: ['b'] });
+    events.publish('u-resume', 'mail.read', { ids: ['a'], read: true });
+
+    const got = await read(server, 'u-resume', first.id, 2);
+    assert.deepStrictEqual(got.map(e => e.type), ['mail.new', 'mail.read']);
+    assert.deepStrictEqual(got[0].data, { ids: ['b'] });
+  } finally {
+    server.close();
+  }
+});
+
+test('answers with reset once the id fell out of the buffer', async () => {
+  const server = await startServer();
+  try {
+    const first = events.publish('u-overflow', 'mail.new', { ids: ['0'] });
+    for (let i = 1; i <= events.BUFFER_SIZE + 1; i++) {
+      events.publish('u-overflow', 'mail.new', { ids: [String(i)] });
+    }
+    const got = await read(server, 'u-overflow', first.id, 1);
+    assert.strictEqual(got[0].type, 'reset');
+    // The reset carries an id the client can resume from next time
+    assert.deepStrictEqual(events.since('u-overflow', got[0].id), { reset: false, events: [] });
+  } finally {
+    server.close();
+  }
+});
+
+test('answers with reset for ids from another boot or unknown ids', () => {
+  events.publish('u-foreign', 'mail.new', { ids: ['a'] });
+  const [, seq] = events.currentId().split('.');
+  for (const id of ['1712345678901', `deadbeef.${seq}`, 'garbage', `${events.currentId()}0`]) {
+    assert.strictEqual(events.since('u-foreign', id).reset, true, id);
+  }
+  assert.strictEqual(events.since('u-foreign', null).reset, false);
+});
+
+test('a reconnect picks up what was published while disconnected', async () => {
+  const server = await startServer();
+  try {
+    const live = read(server, 'u-reconnect', null, 1);
+    // Let the subscription register before publishing
+    await new Promise(r => setTimeout(r, 50));
+    events.publish('u-reconnect', 'mail.new', { ids: ['a'] });
+    const [seen] = await live;
+    assert.deepStrictEqual(seen.data, { ids: ['a'] });
+
+    // Disconnected now; these must come back on the next connection
+    events.publish('u-reconnect', 'mail.delete', { ids: ['a'] });
+    events.publish('u-reconnect', 'mail.new', { ids: ['b'] });
+    events.publish('u-other', 'mail.new', { ids: ['x'] });
+
+    const got = await read(server, 'u-reconnect', seen.id, 2);
+    assert.deepStrictEqual(got.map(e => e.type), ['mail.delete', 'mail.new']);
+    assert.deepStrictEqual(got[1].data, { ids: ['b'] });
+  } finally {
+    server.close();
+  }
+});
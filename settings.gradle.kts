@@ -17,4 +17,5 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "Gmailish-tsk5"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":macrobenchmark")
\ No newline at end of file
@@ -8,10 +8,13 @@
 #include "BlackList.h"          // blacklist for exact URL storage
 #include "CommandManager.h"     // handles command parsing and execution
 
-// Constructor: store the client socket and reference to shared BloomFilter
+const std::string SessionHandler::BloomFile = "data/bloom_shared.bin";
+const std::string SessionHandler::BlackListFile = "data/blacklist_shared.txt";
 
-SessionHandler::SessionHandler(int socket, BloomFilter& sharedFilter)
-    : clientSocket(socket), bloom(sharedFilter) {}  // Copy the shared BloomFilter config reference
+// Constructor: store the client socket and references to the server's shared state
+
+SessionHandler::SessionHandler(int socket, BloomFilter& sharedFilter, BlackList& sharedBlacklist, std::mutex& mutex)
+    : clientSocket(socket), bloom(sharedFilter), blacklist(sharedBlacklist), stateMutex(mutex) {}
 
 
 // Reads a single line (terminated by '\n') from the client socket
@@ -63,20 +66,8 @@ void SessionHandler::sendResponse(const std::string& response) {
 
 // Main session handler for one client connection
 void SessionHandler::handle() {
-    // Ensure the data directory exists (used for persistence files)
-    std::filesystem::create_directory("data");
-
-    // Fixed shared persistence file paths (used across all sessions)
-    std::string BloomFile = "data/bloom_shared.bin";
-    std::string BlackListFile = "data/blacklist_shared.txt";
-
-    // Create a BlackList object to hold exact blacklisted URLs
-
-    BlackList blacklist;
-
-    // Load existing Bloom filter and blacklist from persistent files
-    bloom.loadFromFile(BloomFile);
-    blacklist.load(BlackListFile);
+    // State is loaded once by the Server and shared: a long-lived session sees
+    // every other session's writes, and never saves an outdated copy over them.
 
     // CommandManager handles interpreting and executing client commands
     CommandManager commandManager(bloom, blacklist);
@@ -92,15 +83,23 @@ void SessionHandler::handle() {
             break;
         }
 
-        // Process the command and get the server's response
-        std::string response = commandManager.execute(command);
+        std::string response;
+        {
+            std::lock_guard<std::mutex> lock(stateMutex);
+
+            // Process the command and get the server's response
+            response = commandManager.execute(command);
+
+            // Persist only after a write (201/204), and before replying:
+            // once the client has the answer, the change is on disk
+            if (response.rfind("201", 0) == 0 || response.rfind("204", 0) == 0) {
+                bloom.saveToFile(BloomFile);
+                blacklist.save(BlackListFile);
+            }
+        }
 
         // Send the result back to the client
         sendResponse(response);
-
-        // Persist the updated Bloom filter and blacklist to files
-        bloom.saveToFile(BloomFile);
-        blacklist.save(BlackListFile);
     }
 
     // Close the socket once the session ends
@@ -1,21 +1,29 @@
 #pragma once
 
 #include <string>
+#include <mutex>
 #include "BloomFilter.h"
 #include "IHashFunctions.h"
 #include "StdHashFunction.h"
 #include "CommandManager.h"
+#include "BlackList.h"
 
 // Handles interaction with a single client
 class SessionHandler {
 public:
-    SessionHandler(int socket, BloomFilter& sharedFilter);  // Now accepts BloomFilter
+    SessionHandler(int socket, BloomFilter& sharedFilter, BlackList& sharedBlacklist, std::mutex& stateMutex);
 
     void handle();
 
+    // Fixed shared persistence file paths (used across all sessions)
+    static const std::string BloomFile;
+    static const std::string BlackListFile;
+
 private:
     int clientSocket;                      // Client socket
-    BloomFilter& bloom;                    // Copy of server's BloomFilter (per session)
+    BloomFilter& bloom;                    // Server's BloomFilter (shared)
+    BlackList& blacklist;                  // Server's BlackList (shared)
+    std::mutex& stateMutex;                // Guards both, and their files
 
     std::string receiveLine();            // Read command from client
     void sendResponse(const std::string& response);  // Send response
@@ -6,12 +6,18 @@
 #include <unistd.h>         // for close()
 #include <string.h>         // for memset()
 #include <thread>
+#include <filesystem>     // for the data directory
 
 // Constructor: initializes the server socket and BloomFilter reference
 
 Server::Server(int port, BloomFilter& filter)
     : serverSocket(-1), bloomFilter(filter), running(true) {
     initSocket(port);  // Set up listening socket
+
+    // Load the persisted state once; sessions share it from here on
+    std::filesystem::create_directory("data");
+    bloomFilter.loadFromFile(SessionHandler::BloomFile);
+    blacklist.load(SessionHandler::BlackListFile);
 }
 
 // Destructor: calls shutdown to cleanly close the socket
@@ -86,7 +92,7 @@ void Server::run() {
 
 // Handles a single client session using SessionHandler
 void Server::handleClient(int clientSocket) {
-    // Construct a session handler with the accepted client socket and shared BloomFilter
-    SessionHandler session(clientSocket, bloomFilter);
+    // Construct a session handler with the accepted client socket and the shared state
+    SessionHandler session(clientSocket, bloomFilter, blacklist, stateMutex);
     session.handle();  // Process client commands
 }
@@ -3,6 +3,7 @@
 #include "BlackList.h"
 #include "CommandManager.h"
 #include <atomic>
+#include <mutex>
 
 // The Server class owns the listening socket.
 // It handles initialization, accepting clients, and delegating each connection to a handler.
@@ -19,6 +20,8 @@ public:
 private:
     int serverSocket;                 // Listening socket
     BloomFilter& bloomFilter;
+    BlackList blacklist;              // Exact URL list, shared by all sessions
+    std::mutex stateMutex;            // Serializes commands (and their saves) across sessions
      std::atomic<bool> running;  // Controls server loop
     // Initializes the server socket: bind, listen, etc.
     void initSocket(int port);